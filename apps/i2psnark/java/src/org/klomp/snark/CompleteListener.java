@@ -21,6 +21,8 @@
 
 package org.klomp.snark;
 
+import java.io.File;
+
 import org.klomp.snark.comments.CommentSet;
 
 
@@ -60,6 +62,12 @@ public interface CompleteListener {
     /** not really listeners but the easiest way to get back to an optional SnarkManager */
     public long getSavedTorrentTime(Snark snark);
     public BitField getSavedTorrentBitField(Snark snark);
+    /**
+     * The fast-resume file state from Storage.getFileState()
+     * @return may be null
+     * @since 0.9.65
+     */
+    public String getSavedFileState(Snark snark);
     /**
      * @since 0.9.15
      */
@@ -88,4 +96,11 @@ public interface CompleteListener {
      * @since 0.9.62
      */
     public BandwidthListener getBandwidthListener();
+
+    /**
+     * Where to save the progress of a storage check.
+     * @return may be null
+     * @since 0.9.65
+     */
+    public File getCheckpointFile(Snark snark);
 }
@@ -0,0 +1,139 @@
+package org.klomp.snark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  A bounded LRU cache of read-only memory mappings of data files,
+ *  shared by all torrents, so that piece requests are served
+ *  with a memory copy instead of a seek and read per request.
+ *
+ *  Files are mapped in fixed-size regions. Evicted mappings are
+ *  unmapped by the JVM when garbage collected, so the cache bounds the
+ *  number of live mappings, not the address space in use at any instant.
+ *  Only use on 64-bit JVMs, and not on Windows, where a mapped file
+ *  cannot be deleted.
+ *
+ *  Writes still go through RandomAccessFile; on the platforms where this is
+ *  used, the mappings share the page cache and see the written data.
+ *
+ *  @since 0.9.65
+ */
+class MappedFileCache {
+
+    private final int _maxRegions;
+    private final Map<Region, MappedByteBuffer> _cache;
+
+    static final int REGION_SIZE = 4*1024*1024;
+
+    /**
+     *  @param maxBytes the maximum total size of the cached mappings
+     */
+    public MappedFileCache(long maxBytes) {
+        _maxRegions = (int) Math.max(1, maxBytes / REGION_SIZE);
+        _cache = new LinkedHashMap<Region, MappedByteBuffer>(_maxRegions, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Region, MappedByteBuffer> eldest) {
+                return size() > _maxRegions;
+            }
+        };
+    }
+
+    /**
+     *  Copy len bytes at offset in the file into buf.
+     *  The range must be entirely within the file.
+     *
+     *  @param fileLength the expected length of the file
+     *  @throws IOException if the file could not be mapped;
+     *          the caller should fall back to a regular read
+     */
+    public void read(File file, long fileLength, long offset, byte[] buf, int off, int len) throws IOException {
+        if (offset < 0 || offset + len > fileLength)
+            throw new IOException("Read past end of " + file + ": " + offset + '+' + len + " > " + fileLength);
+        while (len > 0) {
+            int index = (int) (offset / REGION_SIZE);
+            int roff = (int) (offset - (index * (long) REGION_SIZE));
+            ByteBuffer bb = getRegion(file, fileLength, index).duplicate();
+            int n = Math.min(len, bb.limit() - roff);
+            bb.position(roff);
+            bb.get(buf, off, n);
+            offset += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     *  Drop all mappings for this file, e.g. when closed or resized.
+     */
+    public void remove(File file) {
+        synchronized(_cache) {
+            for (Iterator<Region> iter = _cache.keySet().iterator(); iter.hasNext(); ) {
+                if (iter.next().file.equals(file))
+                    iter.remove();
+            }
+        }
+    }
+
+    /**
+     *  Map outside the lock; if two threads race, the first one in the cache wins.
+     */
+    private MappedByteBuffer getRegion(File file, long fileLength, int index) throws IOException {
+        Region key = new Region(file, index);
+        MappedByteBuffer rv;
+        synchronized(_cache) {
+            rv = _cache.get(key);
+        }
+        if (rv != null)
+            return rv;
+        long start = index * (long) REGION_SIZE;
+        long size = Math.min(REGION_SIZE, fileLength - start);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            if (raf.length() < start + size)
+                throw new IOException("File " + file + " shorter than expected " + fileLength);
+            // the mapping remains valid after the channel is closed
+            rv = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+        } finally {
+            if (raf != null) try { raf.close(); } catch (IOException ioe) {}
+        }
+        synchronized(_cache) {
+            MappedByteBuffer old = _cache.get(key);
+            if (old != null)
+                return old;
+            _cache.put(key, rv);
+        }
+        return rv;
+    }
+
+    private static class Region {
+        public final File file;
+        public final int index;
+
+        public Region(File f, int i) {
+            file = f;
+            index = i;
+        }
+
+        @Override
+        public int hashCode() {
+            return file.hashCode() ^ index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Region))
+                return false;
+            Region r = (Region) o;
+            return index == r.index && file.equals(r.file);
+        }
+    }
+}
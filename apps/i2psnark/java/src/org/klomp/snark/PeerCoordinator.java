@@ -133,10 +133,10 @@ class PeerCoordinator implements PeerListener, BandwidthListener
   private final byte[] id;
   private final byte[] infohash;
 
-  /** The wanted pieces. We could use a TreeSet but we'd have to clear and re-add everything
-   *  when priorities change.
+  /** The wanted pieces, indexed for rarest-first picks.
+   *  Also the lock for partialPieces and wantedBytes.
    */
-  private final List<Piece> wantedPieces;
+  private final PiecePicker wantedPieces;
 
   /** The total number of bytes in wantedPieces, or -1 if not yet known.
    *  Sync on wantedPieces.
@@ -183,7 +183,7 @@ class PeerCoordinator implements PeerListener, BandwidthListener
     this.snark = torrent;
     bwListener = bwl;
 
-    wantedPieces = new ArrayList<Piece>();
+    wantedPieces = new PiecePicker();
     setWantedPieces();
     partialPieces = new ArrayList<PartialPiece>(getMaxConnections() + 1);
     peers = new LinkedBlockingDeque<Peer>();
@@ -267,7 +267,7 @@ class PeerCoordinator implements PeerListener, BandwidthListener
     }
     // Make a list of pieces
       synchronized(wantedPieces) {
-          wantedPieces.clear();
+          wantedPieces.clear(metainfo.getPieces());
           BitField bitfield = storage.getBitField();
           int[] pri = storage.getPiecePriorities();
           long count = 0;
@@ -283,7 +283,6 @@ class PeerCoordinator implements PeerListener, BandwidthListener
               }
           }
           wantedBytes = count;
-          Collections.shuffle(wantedPieces, _random);
       }
   }
 
@@ -672,9 +671,7 @@ class PeerCoordinator implements PeerListener, BandwidthListener
     }
     // failsafe
     synchronized(wantedPieces) {
-        for (Piece pc : wantedPieces) {
-            pc.clear();
-        }
+        wantedPieces.clearPeers();
     }
     timer.schedule((CHECK_PERIOD / 2) + _random.nextInt((int) CHECK_PERIOD));
   }
@@ -897,11 +894,10 @@ class PeerCoordinator implements PeerListener, BandwidthListener
     //  listener.peerChange(this, peer);
 
     synchronized(wantedPieces) {
-        for (Piece pc : wantedPieces) {
-            if (pc.getId() == piece) {
-                pc.addPeer(peer);
-                return true;
-            }
+        Piece pc = wantedPieces.get(piece);
+        if (pc != null) {
+            wantedPieces.addPeer(pc, peer);
+            return true;
         }
         return false;
     }
@@ -918,11 +914,15 @@ class PeerCoordinator implements PeerListener, BandwidthListener
 
     boolean rv = false;
     synchronized(wantedPieces) {
-        for (Piece p : wantedPieces) {
-            int i = p.getId();
+        if (wantedPieces.isEmpty())
+            return false;
+        for (int i = 0; i < bitfield.size(); i++) {
             if (bitfield.get(i)) {
-              p.addPeer(peer);
-              rv = true;
+                Piece p = wantedPieces.get(i);
+                if (p != null) {
+                    wantedPieces.addPeer(p, peer);
+                    rv = true;
+                }
             }
         }
     }
@@ -957,43 +957,24 @@ class PeerCoordinator implements PeerListener, BandwidthListener
       return null;
     }
 
-    Piece piece = null;
-    List<Piece> requested = new ArrayList<Piece>(); 
-    int wantedSize = END_GAME_THRESHOLD + 1;
+    Piece piece;
+    List<Piece> requested;
+    int wantedSize;
     synchronized(wantedPieces)
       {
-        if (record)
-            Collections.sort(wantedPieces); // Sort in order of rarest first.
-        Iterator<Piece> it = wantedPieces.iterator();
-        while (piece == null && it.hasNext())
-          {
-            Piece p = it.next();
-            // sorted by priority, so when we hit a disabled piece we are done
-            if (p.isDisabled())
-                break;
-            if (havePieces.get(p.getId()) && !p.isRequested())
-              {
-                // never ever choose one that's in partialPieces, or we
-                // will create a second one and leak
-                boolean hasPartial = false;
-                for (PartialPiece pp : partialPieces) {
-                    if (pp.getPiece() == p.getId()) {
-                        if (_log.shouldLog(Log.INFO))
-                            _log.info("wantPiece() skipping partial for " + peer + ": piece = " + pp);
-                        hasPartial = true;
-                        break;
-                    }
-                }
-                if (!hasPartial)
-                    piece = p;
-              }
-            else if (p.isRequested()) 
-            {
-                requested.add(p);
+        // rarest first, never choose one that's requested,
+        // or in partialPieces, or we will create a second one and leak
+        piece = wantedPieces.pick(havePieces, new UnrequestedFilter(peer), _random);
+        wantedSize = wantedPieces.size();
+        if (piece == null && wantedSize <= END_GAME_THRESHOLD) {
+            requested = new ArrayList<Piece>(wantedSize);
+            for (Piece p : wantedPieces) {
+                if (p.isRequested())
+                    requested.add(p);
             }
-          }
-        if (piece == null)
-            wantedSize = wantedPieces.size();
+        } else {
+            requested = null;
+        }
         
         //Only request a piece we've requested before if there's no other choice.
         if (piece == null) {
@@ -1002,8 +983,7 @@ class PeerCoordinator implements PeerListener, BandwidthListener
             // when the seeder is super-slow and all the peers are "caught up"
             if (wantedSize > END_GAME_THRESHOLD) {
                 if (_log.shouldLog(Log.INFO))
-                    _log.info("Nothing to request, " + requested.size() + " being requested and " +
-                              wantedSize + " still wanted");
+                    _log.info("Nothing to request, " + wantedSize + " still wanted");
                 return null;  // nothing to request and not in end game
             }
             // let's not all get on the same piece
@@ -1049,6 +1029,32 @@ class PeerCoordinator implements PeerListener, BandwidthListener
       } // synch
   }
 
+  /**
+   *  Accepts pieces that are not requested and not in partialPieces.
+   *  Caller must synchronize on wantedPieces.
+   *  @since 0.9.65
+   */
+  private class UnrequestedFilter implements PiecePicker.Filter {
+      private final Peer _peer;
+
+      public UnrequestedFilter(Peer peer) {
+          _peer = peer;
+      }
+
+      public boolean accept(Piece p) {
+          if (p.isRequested())
+              return false;
+          for (PartialPiece pp : partialPieces) {
+              if (pp.getPiece() == p.getId()) {
+                  if (_log.shouldLog(Log.INFO))
+                      _log.info("wantPiece() skipping partial for " + _peer + ": piece = " + pp);
+                  return false;
+              }
+          }
+          return true;
+      }
+  }
+
   /**
    *  Maps file priorities to piece priorities.
    *  Call after updating file priorities Storage.setPriority()
@@ -1065,17 +1071,12 @@ class PeerCoordinator implements PeerListener, BandwidthListener
       List<Piece> toCancel = new ArrayList<Piece>();
       synchronized(wantedPieces) {
           // Add incomplete and previously unwanted pieces to the list
-          // Temp to avoid O(n**2)
-          BitField want = new BitField(pri.length);
-          for (Piece p : wantedPieces) {
-              want.set(p.getId());
-          }
           BitField bitfield = storage.getBitField();
           for (int i = 0; i < pri.length; i++) {
               if (pri[i] >= 0 && !bitfield.get(i)) {
-                  if (!want.get(i)) {
+                  if (wantedPieces.get(i) == null) {
                       Piece piece = new Piece(i);
-                      wantedPieces.add(piece);
+                      piece.setPriority(pri[i]);
                       wantedBytes += metainfo.getPieceLength(i);
                       // As connections are already up, new Pieces will
                       // not have their PeerID list populated, so do that.
@@ -1088,25 +1089,26 @@ class PeerCoordinator implements PeerListener, BandwidthListener
                                       piece.addPeer(p);
                               }
                           }
+                      wantedPieces.add(piece);
                   }
               }
           }
           // now set the new priorities and remove newly unwanted pieces
-          for (Iterator<Piece> iter = wantedPieces.iterator(); iter.hasNext(); ) {
-               Piece p = iter.next();
-               int priority = pri[p.getId()];
+          for (int i = 0; i < pri.length; i++) {
+               Piece p = wantedPieces.get(i);
+               if (p == null)
+                   continue;
+               int priority = pri[i];
                if (priority >= 0) {
-                   p.setPriority(priority);
+                   wantedPieces.setPriority(p, priority);
                } else {
-                   iter.remove();
+                   wantedPieces.remove(i);
                    toCancel.add(p);
-                   wantedBytes -= metainfo.getPieceLength(p.getId());
+                   wantedBytes -= metainfo.getPieceLength(i);
                }
           }
           if (_log.shouldLog(Log.DEBUG))
-              _log.debug("Updated piece priorities, now wanted: " + wantedPieces);
-          // if we added pieces, they will be in-order unless we shuffle
-          Collections.shuffle(wantedPieces, _random);
+              _log.debug("Updated piece priorities, now wanted: " + wantedPieces.size());
       }
 
       // cancel outside of wantedPieces lock to avoid deadlocks
@@ -1176,8 +1178,8 @@ class PeerCoordinator implements PeerListener, BandwidthListener
     // try/catch outside the synch to avoid deadlock in the catch
     try {
       synchronized(wantedPieces) {
-        Piece p = new Piece(piece);
-        if (!wantedPieces.contains(p))
+        Piece p = wantedPieces.get(piece);
+        if (p == null)
           {
             _log.info("Got unwanted piece " + piece + "/" + metainfo.getPieces() +" from " + peer + " for " + metainfo.getName());
             
@@ -1208,19 +1210,16 @@ class PeerCoordinator implements PeerListener, BandwidthListener
                 // Reports of counter going negative?
                 //downloaded.addAndGet(0 - metainfo.getPieceLength(piece));
                 // Mark this peer as not having the piece. PeerState will update its bitfield.
-                for (Piece pc : wantedPieces) {
-                    if (pc.getId() == piece) {
-                        pc.removePeer(peer);
-                        break;
-                    }
-                }
+                Piece pc = wantedPieces.get(piece);
+                if (pc != null)
+                    wantedPieces.removePeer(pc, peer);
                 if (_log.shouldWarn())
                     _log.warn("Got BAD piece " + piece + "/" + metainfo.getPieces() + " from " + peer + " for " + metainfo.getName());
                 return false; // No need to announce BAD piece to peers.
               }
 
-        wantedPieces.remove(p);
-        wantedBytes -= metainfo.getPieceLength(p.getId());
+        if (wantedPieces.remove(piece) != null)
+            wantedBytes -= metainfo.getPieceLength(piece);
       }  // synch
     } catch (IOException ioe) {
             String msg = "Error writing storage (piece " + piece + ") for " + metainfo.getName() + ": " + ioe;
@@ -1334,7 +1333,7 @@ class PeerCoordinator implements PeerListener, BandwidthListener
   private void removePeerFromPieces(Peer peer) {
       synchronized(wantedPieces) {
           for (Piece piece : wantedPieces) {
-              piece.removePeer(peer);
+              wantedPieces.removePeer(piece, peer);
               piece.setRequested(peer, false);
           }
       } 
@@ -1428,46 +1427,45 @@ class PeerCoordinator implements PeerListener, BandwidthListener
               if (havePieces.get(savedPiece)) {
                  // this is just a double-check, it should be in there
                  boolean skipped = false;
+                 Piece piece = wantedPieces.get(savedPiece);
                  outer:
-                 for(Piece piece : wantedPieces) {
-                     if (piece.getId() == savedPiece) {
-                         if (peer.isCompleted() && piece.getPeerCount() > 1 &&
-                             wantedPieces.size() > 2*END_GAME_THRESHOLD &&
-                             partialPieces.size() < 4 &&
-                             _random.nextInt(4) != 0) {
-                             // Try to preserve rarest-first
-                             // by not requesting a partial piece that at least two non-seeders also have
-                             // from a seeder
-                             int nonSeeds = 0;
-                             int seeds = 0;
-                             for (Peer pr : peers) {
-                                 if (pr.isCompleted()) {
-                                     if (++seeds >= 4)
-                                         break;
-                                 } else {
-                                     // TODO don't access state directly
-                                     PeerState state = pr.state;
-                                     if (state == null) continue;
-                                     BitField bf = state.bitfield;
-                                     if (bf == null) continue;
-                                     if (bf.get(savedPiece)) {
-                                         if (++nonSeeds > 1) {
-                                             skipped = true;
-                                             break outer;
-                                         }
+                 if (piece != null) {
+                     if (peer.isCompleted() && piece.getPeerCount() > 1 &&
+                         wantedPieces.size() > 2*END_GAME_THRESHOLD &&
+                         partialPieces.size() < 4 &&
+                         _random.nextInt(4) != 0) {
+                         // Try to preserve rarest-first
+                         // by not requesting a partial piece that at least two non-seeders also have
+                         // from a seeder
+                         int nonSeeds = 0;
+                         int seeds = 0;
+                         for (Peer pr : peers) {
+                             if (pr.isCompleted()) {
+                                 if (++seeds >= 4)
+                                     break;
+                             } else {
+                                 // TODO don't access state directly
+                                 PeerState state = pr.state;
+                                 if (state == null) continue;
+                                 BitField bf = state.bitfield;
+                                 if (bf == null) continue;
+                                 if (bf.get(savedPiece)) {
+                                     if (++nonSeeds > 1) {
+                                         skipped = true;
+                                         break outer;
                                      }
                                  }
                              }
                          }
-                         iter.remove();
-                         piece.setRequested(peer, true);
-                         if (_log.shouldLog(Log.INFO)) {
-                             _log.info("Restoring orphaned partial piece " + pp + " to " + peer +
-                                       " Partial list size now: " + partialPieces.size());
-                         }
-                         return pp;
-                      }
-                  }
+                     }
+                     iter.remove();
+                     piece.setRequested(peer, true);
+                     if (_log.shouldLog(Log.INFO)) {
+                         _log.info("Restoring orphaned partial piece " + pp + " to " + peer +
+                                   " Partial list size now: " + partialPieces.size());
+                     }
+                     return pp;
+                 }
                   if (_log.shouldLog(Log.INFO)) {
                       if (skipped)
                           _log.info("Partial piece " + pp + " with multiple peers skipped for seeder");
@@ -1508,14 +1506,12 @@ class PeerCoordinator implements PeerListener, BandwidthListener
               int savedPiece = pp.getPiece();
               if (havePieces.get(savedPiece)) {
                  // this is just a double-check, it should be in there
-                 for(Piece piece : wantedPieces) {
-                     if (piece.getId() == savedPiece) {
-                         if (_log.shouldLog(Log.INFO)) {
-                             _log.info("We could restore orphaned partial piece " + pp);
-                         }
-                         return true;
-                      }
-                  }
+                 if (wantedPieces.get(savedPiece) != null) {
+                     if (_log.shouldLog(Log.INFO)) {
+                         _log.info("We could restore orphaned partial piece " + pp);
+                     }
+                     return true;
+                 }
               }
           }
       }
@@ -1547,12 +1543,9 @@ class PeerCoordinator implements PeerListener, BandwidthListener
   {
     synchronized(wantedPieces)
       {
-        for (Piece pc : wantedPieces) {
-          if (pc.getId() == piece) {
+        Piece pc = wantedPieces.get(piece);
+        if (pc != null)
             pc.setRequested(peer, false);
-            return;
-          }
-        }
       }
   }
 
@@ -15,6 +15,8 @@ class Piece implements Comparable<Piece> {
     private volatile Set<PeerID> requests;
     /** @since 0.8.1 */
     private int priority;
+    /** position in the PiecePicker bucket, -1 if none @since 0.9.65 */
+    private int slot = -1;
     
     public Piece(int id) {
         this.id = id;
@@ -128,6 +130,12 @@ class Piece implements Comparable<Piece> {
     /** @since 0.8.1 */
     public boolean isDisabled() { return this.priority < 0; }
 
+    /** for PiecePicker only @since 0.9.65 */
+    int getSlot() { return this.slot; }
+
+    /** for PiecePicker only @since 0.9.65 */
+    void setSlot(int s) { this.slot = s; }
+
     /** @since 0.8.1 */
     public void setDisabled() { this.priority = -1; }
 
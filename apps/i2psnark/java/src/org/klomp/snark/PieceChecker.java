@@ -0,0 +1,383 @@
+package org.klomp.snark;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Log;
+import net.i2p.util.SystemVersion;
+
+/**
+ *  Verifies the pieces of a torrent in parallel.
+ *
+ *  The calling thread reads the files sequentially, in large chunks,
+ *  through a direct buffer, and the pieces are hashed on a
+ *  worker pool shared by all torrents.
+ *  Reads are limited per device (file store), so that checking many
+ *  torrents at once on the same disk doesn't thrash it.
+ *
+ *  Results are delivered in piece order through the Callback,
+ *  so the caller may checkpoint its progress and resume later.
+ *
+ *  @since 0.9.65
+ */
+class PieceChecker {
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final MetaInfo _meta;
+    private final List<File> _files;
+    private final long[] _lengths;
+    private final int _pieceSize;
+    private final int _pieces;
+
+    /** concurrent readers per device, default 1 */
+    public static final String PROP_READERS_PER_DEVICE = "i2psnark.checkReadersPerDevice";
+    private static final int DEFAULT_READERS_PER_DEVICE = 1;
+    private static final int READ_SIZE = 1024*1024;
+    private static final int MAX_HASHERS = Math.max(1, Math.min(SystemVersion.getCores(), 8));
+    private static final long HASHER_IDLE_TIME = 60*1000;
+
+    private static final Map<String, Semaphore> _devices = new ConcurrentHashMap<String, Semaphore>();
+    private static final BlockingQueue<ByteBuffer> _readBuffers = new LinkedBlockingQueue<ByteBuffer>(4);
+    private static ThreadPoolExecutor _hashers;
+
+    /**
+     *  Callbacks, on the checking thread, in piece order.
+     */
+    interface Callback {
+        /** a piece was checked */
+        public void pieceChecked(int piece, boolean correct);
+
+        /**
+         *  Called periodically and when stopped.
+         *  All pieces before nextPiece have been reported.
+         */
+        public void checkpoint(int nextPiece);
+
+        /** @return true to abort the check */
+        public boolean shouldStop();
+    }
+
+    /**
+     *  @param files the files, in torrent order
+     *  @param lengths the expected length of each file; each file must be at least this long
+     */
+    public PieceChecker(I2PAppContext ctx, MetaInfo meta, List<File> files, long[] lengths) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(PieceChecker.class);
+        _meta = meta;
+        _files = files;
+        _lengths = lengths;
+        _pieceSize = meta.getPieceLength(0);
+        _pieces = meta.getPieces();
+    }
+
+    /**
+     *  Check pieces startPiece through endPiece - 1.
+     *
+     *  @param endPiece exclusive, usually the number of pieces
+     *  @param progress set to the number of the next piece to be reported
+     *  @param checkpointInterval ms between calls to cb.checkpoint()
+     *  @throws InterruptedIOException if cb.shouldStop() returned true, after calling cb.checkpoint()
+     *  @throws IOException on read error
+     */
+    public void check(int startPiece, int endPiece, AtomicInteger progress, Callback cb, long checkpointInterval) throws IOException {
+        endPiece = Math.min(endPiece, _pieces);
+        if (startPiece >= endPiece)
+            return;
+        long start = System.currentTimeMillis();
+        int inFlight = maxInFlight();
+        ThreadPoolExecutor hashers = getHashers();
+        ArrayDeque<HashTask> pending = new ArrayDeque<HashTask>(inFlight);
+        ArrayDeque<byte[]> free = new ArrayDeque<byte[]>(inFlight);
+        SequentialReader reader = new SequentialReader();
+        int next = startPiece;
+        long lastCheckpoint = start;
+        try {
+            reader.seek(startPiece * (long) _pieceSize);
+            for (int i = startPiece; i < endPiece; i++) {
+                if (cb.shouldStop()) {
+                    cb.checkpoint(next);
+                    throw new InterruptedIOException("Check stopped at piece " + next);
+                }
+                // retire finished pieces, and wait for one if all buffers are in use
+                while (!pending.isEmpty() && (pending.size() >= inFlight || pending.peekFirst().isDone())) {
+                    HashTask task = pending.removeFirst();
+                    cb.pieceChecked(next, getResult(task));
+                    free.addLast(task.getBuffer());
+                    progress.set(++next);
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastCheckpoint >= checkpointInterval) {
+                    cb.checkpoint(next);
+                    lastCheckpoint = now;
+                }
+                byte[] buf = free.pollFirst();
+                if (buf == null)
+                    buf = new byte[_pieceSize];
+                int length = _meta.getPieceLength(i);
+                reader.read(buf, length);
+                HashTask task = new HashTask(i, buf, length);
+                try {
+                    hashers.execute(task);
+                } catch (RejectedExecutionException ree) {
+                    task.run();
+                }
+                pending.addLast(task);
+            }
+            while (!pending.isEmpty()) {
+                HashTask task = pending.removeFirst();
+                cb.pieceChecked(next, getResult(task));
+                progress.set(++next);
+            }
+        } finally {
+            for (HashTask task : pending) {
+                task.cancel(false);
+            }
+            reader.close();
+        }
+        if (_log.shouldInfo())
+            _log.info("Checked " + (endPiece - startPiece) + " pieces of " + _meta.getName() +
+                      " in " + (System.currentTimeMillis() - start) + " ms with " +
+                      hashers.getMaximumPoolSize() + " hashers and " + inFlight + " buffers");
+    }
+
+    /**
+     *  Bounded by available memory, as pieces may be up to 32 MB.
+     */
+    private int maxInFlight() {
+        long mem = SystemVersion.getMaxMemory() / 16;
+        long max = mem / _pieceSize;
+        return (int) Math.max(2, Math.min(2 * MAX_HASHERS, max));
+    }
+
+    private static boolean getResult(HashTask task) throws IOException {
+        try {
+            return task.get().booleanValue();
+        } catch (InterruptedException ie) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException ee) {
+            IOException ioe = new IOException("Hash failed for piece " + task.getPiece());
+            ioe.initCause(ee.getCause());
+            throw ioe;
+        }
+    }
+
+    /**
+     *  Hashes one piece and compares it to the metainfo.
+     */
+    private class HashTask extends FutureTask<Boolean> {
+        private final int _piece;
+        private final byte[] _buf;
+
+        public HashTask(final int piece, final byte[] buf, final int length) {
+            super(new Callable<Boolean>() {
+                public Boolean call() {
+                    return Boolean.valueOf(_meta.checkPiece(piece, buf, 0, length));
+                }
+            });
+            _piece = piece;
+            _buf = buf;
+        }
+
+        public int getPiece() { return _piece; }
+
+        public byte[] getBuffer() { return _buf; }
+    }
+
+    /**
+     *  Reads the concatenated files front to back.
+     *  Holds a read permit for the device of the current file.
+     *  Not thread safe.
+     */
+    private class SequentialReader {
+        private final ByteBuffer _buf;
+        private int _index = -1;
+        private RandomAccessFile _raf;
+        private FileChannel _chan;
+        /** bytes of the current file not yet read into _buf */
+        private long _fileRemaining;
+        private Semaphore _permit;
+
+        public SequentialReader() {
+            ByteBuffer buf = _readBuffers.poll();
+            if (buf == null)
+                buf = ByteBuffer.allocateDirect(READ_SIZE);
+            buf.clear();
+            buf.flip();
+            _buf = buf;
+        }
+
+        /**
+         *  Position at the given offset in the concatenated files.
+         *  Only call once, before reading.
+         */
+        public void seek(long offset) throws IOException {
+            int i = 0;
+            while (i < _lengths.length - 1 && offset >= _lengths[i]) {
+                offset -= _lengths[i];
+                i++;
+            }
+            open(i);
+            _chan.position(offset);
+            _fileRemaining = _lengths[i] - offset;
+        }
+
+        /**
+         *  Fill dst[0:len] with the next len bytes
+         */
+        public void read(byte[] dst, int len) throws IOException {
+            int off = 0;
+            while (off < len) {
+                if (!_buf.hasRemaining())
+                    fill();
+                int n = Math.min(len - off, _buf.remaining());
+                _buf.get(dst, off, n);
+                off += n;
+            }
+        }
+
+        private void fill() throws IOException {
+            while (_fileRemaining <= 0) {
+                if (_index + 1 >= _lengths.length)
+                    throw new EOFException("Read past end of torrent");
+                open(_index + 1);
+            }
+            _buf.clear();
+            if (_fileRemaining < READ_SIZE)
+                _buf.limit((int) _fileRemaining);
+            while (_buf.hasRemaining()) {
+                int n = _chan.read(_buf);
+                if (n < 0)
+                    throw new EOFException("EOF reading " + _files.get(_index));
+            }
+            _buf.flip();
+            _fileRemaining -= _buf.remaining();
+        }
+
+        /**
+         *  Close the current file and open file i,
+         *  waiting for a permit if the device changed.
+         */
+        private void open(int i) throws IOException {
+            closeFile();
+            File f = _files.get(i);
+            Semaphore permit = getPermit(f);
+            if (permit != _permit) {
+                releasePermit();
+                try {
+                    permit.acquire();
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException();
+                }
+                _permit = permit;
+            }
+            _index = i;
+            _fileRemaining = _lengths[i];
+            if (_fileRemaining > 0) {
+                try {
+                    _raf = new RandomAccessFile(f, "r");
+                    _chan = _raf.getChannel();
+                } catch (IOException ioe) {
+                    IOException ioe2 = new IOException("Error reading " + f.getAbsolutePath());
+                    ioe2.initCause(ioe);
+                    throw ioe2;
+                }
+            }
+        }
+
+        private void closeFile() {
+            if (_raf != null) {
+                try { _raf.close(); } catch (IOException ioe) {}
+                _raf = null;
+                _chan = null;
+            }
+        }
+
+        private void releasePermit() {
+            if (_permit != null) {
+                _permit.release();
+                _permit = null;
+            }
+        }
+
+        public void close() {
+            closeFile();
+            releasePermit();
+            _readBuffers.offer(_buf);
+        }
+    }
+
+    /**
+     *  The read permits for the device holding f.
+     *  Falls back to the top-level directory if the file store is unavailable.
+     */
+    private Semaphore getPermit(File f) {
+        String key;
+        try {
+            FileStore store = Files.getFileStore(f.toPath());
+            key = store.toString();
+        } catch (IOException ioe) {
+            key = f.getAbsoluteFile().toPath().getRoot().toString();
+        } catch (RuntimeException re) {
+            key = "";
+        }
+        Semaphore rv = _devices.get(key);
+        if (rv == null) {
+            int permits = _context.getProperty(PROP_READERS_PER_DEVICE, DEFAULT_READERS_PER_DEVICE);
+            Semaphore s = new Semaphore(Math.max(1, permits), true);
+            rv = _devices.putIfAbsent(key, s);
+            if (rv == null)
+                rv = s;
+        }
+        return rv;
+    }
+
+    /**
+     *  Threads time out when idle, so this costs nothing when not checking.
+     */
+    private static synchronized ThreadPoolExecutor getHashers() {
+        if (_hashers == null) {
+            _hashers = new ThreadPoolExecutor(MAX_HASHERS, MAX_HASHERS, HASHER_IDLE_TIME, TimeUnit.MILLISECONDS,
+                                              new LinkedBlockingQueue<Runnable>(), new HasherThreadFactory());
+            _hashers.allowCoreThreadTimeOut(true);
+        }
+        return _hashers;
+    }
+
+    /** just to set the name and set Daemon */
+    private static class HasherThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread rv = Executors.defaultThreadFactory().newThread(r);
+            rv.setName("Snark piece hasher " + _count.incrementAndGet());
+            rv.setDaemon(true);
+            return rv;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package org.klomp.snark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import net.i2p.util.RandomSource;
+
+/**
+ *  The wanted pieces, indexed by id, and bucketed by priority and then
+ *  by availability (the number of peers that have the piece),
+ *  so that the rarest-first pick doesn't require sorting all the pieces.
+ *
+ *  Availability is updated incrementally via addPeer() and removePeer()
+ *  as have and bitfield messages arrive and peers disconnect.
+ *  Ties within a bucket are broken randomly.
+ *
+ *  All changes to the priority or peers of a contained Piece
+ *  must go through this class, so that it stays in the right bucket.
+ *
+ *  This class is used solely by PeerCoordinator.
+ *  Not thread safe, caller must synchronize on it.
+ *
+ *  @since 0.9.65
+ */
+class PiecePicker implements Iterable<Piece> {
+
+    /** indexed by piece id, null if not wanted */
+    private Piece[] _pieces;
+    private int _size;
+    /** highest priority first */
+    private final TreeMap<Integer, Level> _levels;
+
+    /**
+     *  Decides whether a piece may be picked.
+     */
+    interface Filter {
+        public boolean accept(Piece piece);
+    }
+
+    /**
+     *  All the pieces of one priority.
+     *  buckets.get(n) holds the pieces that n peers have.
+     */
+    private static class Level {
+        public final List<List<Piece>> buckets = new ArrayList<List<Piece>>();
+        public int size;
+    }
+
+    public PiecePicker() {
+        _pieces = new Piece[0];
+        _levels = new TreeMap<Integer, Level>(Collections.reverseOrder());
+    }
+
+    /**
+     *  Remove all pieces and size the index.
+     */
+    public void clear(int numPieces) {
+        _pieces = new Piece[numPieces];
+        _size = 0;
+        _levels.clear();
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     *  @return the piece or null if not wanted
+     */
+    public Piece get(int id) {
+        if (id < 0 || id >= _pieces.length)
+            return null;
+        return _pieces[id];
+    }
+
+    /**
+     *  Add a piece, at its current priority and peer count.
+     *  Replaces any piece with the same id.
+     */
+    public void add(Piece piece) {
+        int id = piece.getId();
+        if (id >= _pieces.length)
+            throw new IndexOutOfBoundsException("no piece: " + id);
+        if (_pieces[id] != null)
+            remove(id);
+        _pieces[id] = piece;
+        _size++;
+        place(piece);
+    }
+
+    /**
+     *  @return the removed piece or null if not wanted
+     */
+    public Piece remove(int id) {
+        Piece rv = get(id);
+        if (rv != null) {
+            unplace(rv);
+            _pieces[id] = null;
+            _size--;
+        }
+        return rv;
+    }
+
+    /**
+     *  Set the priority of a contained piece.
+     */
+    public void setPriority(Piece piece, int priority) {
+        if (piece.getPriority() == priority)
+            return;
+        unplace(piece);
+        piece.setPriority(priority);
+        place(piece);
+    }
+
+    /**
+     *  Add a peer to a contained piece.
+     *  @return true if added
+     */
+    public boolean addPeer(Piece piece, Peer peer) {
+        unplace(piece);
+        boolean rv = piece.addPeer(peer);
+        place(piece);
+        return rv;
+    }
+
+    /**
+     *  Remove a peer from a contained piece.
+     *  @return true if removed
+     */
+    public boolean removePeer(Piece piece, Peer peer) {
+        unplace(piece);
+        boolean rv = piece.removePeer(peer);
+        place(piece);
+        return rv;
+    }
+
+    /**
+     *  Clear all knowledge of peers.
+     */
+    public void clearPeers() {
+        _levels.clear();
+        for (int i = 0; i < _pieces.length; i++) {
+            Piece piece = _pieces[i];
+            if (piece != null) {
+                piece.clear();
+                place(piece);
+            }
+        }
+    }
+
+    /**
+     *  Rarest-first pick, highest priority first.
+     *  Only pieces the peer has, that are not disabled, and that are accepted
+     *  by the filter, are candidates. Ties are broken randomly.
+     *
+     *  @param havePieces the pieces the peer has
+     *  @param filter may be null
+     *  @return a piece, or null if none
+     */
+    public Piece pick(BitField havePieces, Filter filter, RandomSource random) {
+        for (Map.Entry<Integer, Level> e : _levels.entrySet()) {
+            if (e.getKey().intValue() < 0)
+                break;
+            Level level = e.getValue();
+            // A piece the peer has has at least one peer, if its bitfield was recorded,
+            // so check bucket 0, which may be large, last.
+            int nb = level.buckets.size();
+            for (int b = 1; b <= nb; b++) {
+                Piece p = pick(level.buckets.get(b % nb), havePieces, filter, random);
+                if (p != null)
+                    return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *  Random start, then in order
+     */
+    private static Piece pick(List<Piece> bucket, BitField havePieces, Filter filter, RandomSource random) {
+        int sz = bucket.size();
+        if (sz == 0)
+            return null;
+        int start = sz > 1 ? random.nextInt(sz) : 0;
+        for (int i = 0; i < sz; i++) {
+            Piece p = bucket.get((start + i) % sz);
+            if (havePieces.get(p.getId()) && (filter == null || filter.accept(p)))
+                return p;
+        }
+        return null;
+    }
+
+    /**
+     *  Over all pieces, in id order. Do not add or remove pieces while iterating;
+     *  changing priorities and peers is fine.
+     *  Iterator.remove() is not supported.
+     */
+    public Iterator<Piece> iterator() {
+        return new PieceIterator();
+    }
+
+    private class PieceIterator implements Iterator<Piece> {
+        private int _next = -1;
+
+        public PieceIterator() {
+            advance();
+        }
+
+        private void advance() {
+            do {
+                _next++;
+            } while (_next < _pieces.length && _pieces[_next] == null);
+        }
+
+        public boolean hasNext() {
+            return _next < _pieces.length;
+        }
+
+        public Piece next() {
+            if (_next >= _pieces.length)
+                throw new NoSuchElementException();
+            Piece rv = _pieces[_next];
+            advance();
+            return rv;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     *  Put the piece in the bucket for its current priority and peer count.
+     */
+    private void place(Piece piece) {
+        Integer pri = Integer.valueOf(piece.getPriority());
+        Level level = _levels.get(pri);
+        if (level == null) {
+            level = new Level();
+            _levels.put(pri, level);
+        }
+        int avail = piece.getPeerCount();
+        while (level.buckets.size() <= avail) {
+            level.buckets.add(new ArrayList<Piece>(4));
+        }
+        List<Piece> bucket = level.buckets.get(avail);
+        piece.setSlot(bucket.size());
+        bucket.add(piece);
+        level.size++;
+    }
+
+    /**
+     *  Take the piece out of its bucket, which must be for its current priority and peer count.
+     *  The last piece in the bucket is moved to its slot.
+     */
+    private void unplace(Piece piece) {
+        Integer pri = Integer.valueOf(piece.getPriority());
+        Level level = _levels.get(pri);
+        int slot = piece.getSlot();
+        List<Piece> bucket = level.buckets.get(piece.getPeerCount());
+        Piece last = bucket.remove(bucket.size() - 1);
+        if (last != piece) {
+            bucket.set(slot, last);
+            last.setSlot(slot);
+        }
+        piece.setSlot(-1);
+        if (--level.size <= 0)
+            _levels.remove(pri);
+    }
+}
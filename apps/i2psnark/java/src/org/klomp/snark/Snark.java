@@ -455,8 +455,10 @@ public class Snark
             }
             storage = new Storage(_util, baseFile, meta, slistener, shouldPreserve);
             if (completeListener != null) {
+                storage.setCheckpointFile(completeListener.getCheckpointFile(this));
                 storage.check(completeListener.getSavedTorrentTime(this),
-                              completeListener.getSavedTorrentBitField(this));
+                              completeListener.getSavedTorrentBitField(this),
+                              completeListener.getSavedFileState(this));
             } else {
                 storage.check();
             }
@@ -130,10 +130,13 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
     private static final String PROP_META_COMMENTS = "comments";
     /** @since 0.9.42 */
     private static final String PROP_META_ACTIVITY = "activity";
+    /** @since 0.9.65 */
+    private static final String PROP_META_FILESTATE = "filestate";
 
     private static final String CONFIG_FILE_SUFFIX = ".config";
     public static final String CONFIG_FILE = "i2psnark" + CONFIG_FILE_SUFFIX;
     private static final String COMMENT_FILE_SUFFIX = ".comments.txt.gz";
+    private static final String CHECK_FILE_SUFFIX = ".check";
     public static final String PROP_FILES_PUBLIC = "i2psnark.filesPublic";
     public static final String PROP_OLD_AUTO_START = "i2snark.autoStart";   // oops
     public static final String PROP_AUTO_START = "i2psnark.autoStart";      // convert in migration to new config file
@@ -773,6 +776,33 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
         return new File(subdir, hex + COMMENT_FILE_SUFFIX);
     }
 
+    /**
+     *  The file to save the progress of an interrupted check for a torrent
+     *  @param confDir the config directory
+     *  @param ih 20-byte infohash
+     *  @since 0.9.65
+     */
+    private static File checkFile(File confDir, byte[] ih) {
+        String hex = I2PSnarkUtil.toHex(ih);
+        File subdir = new SecureDirectory(confDir, SUBDIR_PREFIX + B64.charAt((ih[0] >> 2) & 0x3f));
+        return new File(subdir, hex + CHECK_FILE_SUFFIX);
+    }
+
+    /**
+     *  Where to save the progress of a storage check.
+     *  A Snark.CompleteListener method.
+     *
+     *  @return non-null
+     *  @since 0.9.65
+     */
+    public File getCheckpointFile(Snark snark) {
+        File rv = checkFile(_configDir, snark.getInfoHash());
+        File subdir = rv.getParentFile();
+        if (!subdir.exists())
+            subdir.mkdirs();
+        return rv;
+    }
+
     /**
      *  The conmments for a torrent
      *  @return null if none
@@ -2107,6 +2137,17 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
             return null;
         return new BitField(bitfield, len);
     }
+
+    /**
+     * Get the saved fast-resume file state for a torrent from the config file.
+     * A Snark.CompleteListener method.
+     *
+     * @return may be null
+     * @since 0.9.65
+     */
+    public String getSavedFileState(Snark snark) {
+        return getConfig(snark).getProperty(PROP_META_FILESTATE);
+    }
     
     /**
      * Get the saved priorities for a torrent from the config file.
@@ -2244,7 +2285,8 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
             return;
         saveTorrentStatus(meta, storage.getBitField(), storage.getFilePriorities(), storage.getInOrder(),
                           storage.getBase(), storage.getPreserveFileNames(),
-                          snark.getUploaded(), storage.getActivity(), snark.isStopped(), comments);
+                          snark.getUploaded(), storage.getActivity(), snark.isStopped(), comments,
+                          storage.getFileState());
     }
 
     /**
@@ -2261,24 +2303,26 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
      */
     private void saveTorrentStatus(MetaInfo metainfo, BitField bitfield, int[] priorities, boolean inOrder,
                                    File base, boolean preserveNames, long uploaded, long activity, boolean stopped) {
-        saveTorrentStatus(metainfo, bitfield, priorities, inOrder, base, preserveNames, uploaded, activity, stopped, null);
+        saveTorrentStatus(metainfo, bitfield, priorities, inOrder, base, preserveNames, uploaded, activity, stopped, null, null);
     }
 
     /*
      * @param comments null for no change
+     * @param fileState fast-resume file state, null to remove
      * @since 0.9.31
      */
     private void saveTorrentStatus(MetaInfo metainfo, BitField bitfield, int[] priorities, boolean inOrder,
                                    File base, boolean preserveNames, long uploaded, long activity, boolean stopped,
-                                   Boolean comments) {
+                                   Boolean comments, String fileState) {
         synchronized (_configLock) {
-            locked_saveTorrentStatus(metainfo, bitfield, priorities, inOrder, base, preserveNames, uploaded, activity, stopped, comments);
+            locked_saveTorrentStatus(metainfo, bitfield, priorities, inOrder, base, preserveNames, uploaded, activity, stopped,
+                                     comments, fileState);
         }
     }
 
     private void locked_saveTorrentStatus(MetaInfo metainfo, BitField bitfield, int[] priorities, boolean inOrder,
                                           File base, boolean preserveNames, long uploaded, long activity, boolean stopped,
-                                          Boolean comments) {
+                                          Boolean comments, String fileState) {
         byte[] ih = metainfo.getInfoHash();
         Properties config = getConfig(ih);
         String now = Long.toString(System.currentTimeMillis());
@@ -2309,6 +2353,10 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
             config.setProperty(PROP_META_COMMENTS, comments.toString());
         if (activity > 0)
             config.setProperty(PROP_META_ACTIVITY, Long.toString(activity));
+        if (fileState != null)
+            config.setProperty(PROP_META_FILESTATE, fileState);
+        else
+            config.remove(PROP_META_FILESTATE);
 
         // now the file priorities
         if (priorities != null) {
@@ -2375,8 +2423,10 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
         byte[] ih = snark.getInfoHash();
         File conf = configFile(_configDir, ih);
         File comm = commentFile(_configDir, ih);
+        File check = checkFile(_configDir, ih);
         synchronized (_configLock) {
             comm.delete();
+            check.delete();
             boolean ok = conf.delete();
             if (ok) {
                 if (_log.shouldInfo())
@@ -2767,12 +2817,7 @@ public class SnarkManager implements CompleteListener, ClientApp, DisconnectList
      * A Snark.CompleteListener method.
      */
     public void updateStatus(Snark snark) {
-        MetaInfo meta = snark.getMetaInfo();
-        Storage storage = snark.getStorage();
-        if (meta != null && storage != null)
-            saveTorrentStatus(meta, storage.getBitField(), storage.getFilePriorities(), storage.getInOrder(),
-                              storage.getBase(), storage.getPreserveFileNames(), snark.getUploaded(), storage.getActivity(),
-                              snark.isStopped());
+        saveTorrentStatus(snark);
     }
     
     /**
@@ -37,6 +37,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
 import java.util.SortedSet;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
@@ -48,6 +49,7 @@ import gnu.getopt.Getopt;
 
 import net.i2p.I2PAppContext;
 import net.i2p.crypto.SHA1;
+import net.i2p.data.Base64;
 import net.i2p.data.ByteArray;
 import net.i2p.data.DataHelper;
 import net.i2p.util.ByteCache;
@@ -81,6 +83,8 @@ public class Storage implements Closeable
   private final AtomicInteger _allocateCount = new AtomicInteger();
   private final AtomicInteger _checkProgress = new AtomicInteger();
   private final AtomicLong _activity = new AtomicLong();
+  private volatile boolean _stopCheck;
+  private File _checkpointFile;
 
   /** The default piece size. */
   private static final int DEFAULT_PIECE_SIZE = 256*1024;
@@ -99,6 +103,18 @@ public class Storage implements Closeable
 
   private static final int BUFSIZE = PeerState.PARTSIZE;
   private static final ByteCache _cache = ByteCache.getInstance(16, BUFSIZE);
+  private static final long CHECKPOINT_INTERVAL = 60*1000;
+  private static final String PROP_CP_PIECES = "pieces";
+  private static final String PROP_CP_NEXT = "next";
+  private static final String PROP_CP_BITFIELD = "bitfield";
+  private static final String PROP_CP_STAMP = "stamp";
+  /** set to false to disable memory-mapped reads */
+  public static final String PROP_MMAP = "i2psnark.mmap";
+  private static final long MAX_MAPPED = 512*1024*1024L;
+  /** null if unsupported */
+  private static final MappedFileCache _mapCache =
+      (SystemVersion.is64Bit() && !_isWindows && !SystemVersion.isAndroid()) ?
+      new MappedFileCache(MAX_MAPPED) : null;
 
   /**
    * Creates a new storage based on the supplied MetaInfo.
@@ -745,6 +761,18 @@ public class Storage implements Closeable
       return _preserveFileNames;
   }
 
+  /**
+   * Where to save the progress of a check, so that an interrupted
+   * check may be resumed later instead of starting over.
+   * Call before check().
+   *
+   * @param file may be null to disable
+   * @since 0.9.65
+   */
+  public synchronized void setCheckpointFile(File file) {
+      _checkpointFile = file;
+  }
+
   /**
    * Creates (and/or checks) all files from the metainfo file list.
    * Only call this once, and only after the constructor with the metainfo.
@@ -754,7 +782,7 @@ public class Storage implements Closeable
    */
   public void check() throws IOException
   {
-    check(0, null);
+    check(0, null, null);
   }
 
   /**
@@ -766,9 +794,28 @@ public class Storage implements Closeable
    * @throws IllegalStateException if called more than once
    */
   public void check(long savedTime, BitField savedBitField) throws IOException
+  {
+    check(savedTime, savedBitField, null);
+  }
+
+  /**
+   * Creates (and/or checks) all files from the metainfo file list.
+   * Use a saved bitfield and timestamp from a config file.
+   * If the fast-resume file state is also available, and the only change
+   * is the modification time of some files, only the pieces in those
+   * files are checked.
+   * Only call this once, and only after the constructor with the metainfo.
+   * Use recheck() to check again later.
+   *
+   * @param savedFileState from getFileState(), may be null
+   * @throws IllegalStateException if called more than once
+   * @since 0.9.65
+   */
+  public void check(long savedTime, BitField savedBitField, String savedFileState) throws IOException
   {
     boolean areFilesPublic = _util.getFilesPublic();
     boolean useSavedBitField = savedTime > 0 && savedBitField != null;
+    long[] savedState = savedBitField != null ? parseFileState(savedFileState) : null;
 
     if (!_torrentFiles.isEmpty())
         throw new IllegalStateException();
@@ -784,6 +831,8 @@ public class Storage implements Closeable
           throw new IOException("Could not create file " + _base);
 
         _torrentFiles.add(new TorrentFile(_base, _base, metainfo.getTotalLength()));
+        if (savedState != null && savedState.length != 2)
+            savedState = null;
         if (useSavedBitField) {
             long lm = _base.lastModified();
             if (lm <= 0 || lm > savedTime)
@@ -803,6 +852,8 @@ public class Storage implements Closeable
         List<Long> ls = metainfo.getLengths();
         int size = files.size();
         long total = 0;
+        if (savedState != null && savedState.length != 2 * size)
+            savedState = null;
         for (int i = 0; i < size; i++)
           {
             List<String> path = files.get(i);
@@ -844,12 +895,18 @@ public class Storage implements Closeable
           throw new IOException("File lengths do not add up "
                                 + total + " != " + metalength);
       }
+    boolean[] modified = useSavedBitField ? null : getModifiedFiles(savedState);
     if (useSavedBitField) {
       bitfield = savedBitField;
       needed = metainfo.getPieces() - bitfield.count();
       _probablyComplete = complete();
       if (_log.shouldLog(Log.INFO))
           _log.info("Found saved state and files unchanged, skipping check");
+    } else if (modified != null) {
+      bitfield = savedBitField;
+      needed = metainfo.getPieces() - bitfield.count();
+      changed = true;
+      checkModifiedFiles(modified);
     } else {
       // the following sets the needed variable
       changed = true;
@@ -867,6 +924,157 @@ public class Storage implements Closeable
     }
   }
 
+  /**
+   * The fast-resume file state, to be saved along with the bitfield
+   * and passed to check() on restart.
+   * Format: length,lastModified,length,lastModified,...
+   *
+   * @return null if not checked yet
+   * @since 0.9.65
+   */
+  public String getFileState() {
+      if (_torrentFiles.isEmpty())
+          return null;
+      StringBuilder buf = new StringBuilder(32 * _torrentFiles.size());
+      for (TorrentFile tf : _torrentFiles) {
+          if (buf.length() > 0)
+              buf.append(',');
+          buf.append(tf.RAFfile.length()).append(',').append(tf.RAFfile.lastModified());
+      }
+      return buf.toString();
+  }
+
+  /**
+   * @return length, lastModified pairs, or null on error
+   * @since 0.9.65
+   */
+  private static long[] parseFileState(String state) {
+      if (state == null || state.length() == 0)
+          return null;
+      String[] ss = DataHelper.split(state, ",");
+      if ((ss.length & 0x01) != 0)
+          return null;
+      long[] rv = new long[ss.length];
+      try {
+          for (int i = 0; i < ss.length; i++) {
+              rv[i] = Long.parseLong(ss[i]);
+          }
+      } catch (NumberFormatException nfe) {
+          return null;
+      }
+      return rv;
+  }
+
+  /**
+   * Compare the files to the saved fast-resume state.
+   * Only the modification time may change; if any file is missing or has the
+   * wrong length, a full check is required.
+   *
+   * @param savedState may be null
+   * @return which files were modified, or null if a full check is required
+   *         or nothing was modified
+   * @since 0.9.65
+   */
+  private boolean[] getModifiedFiles(long[] savedState) {
+      if (savedState == null || savedState.length != 2 * _torrentFiles.size())
+          return null;
+      boolean[] rv = new boolean[_torrentFiles.size()];
+      boolean any = false;
+      for (int i = 0; i < rv.length; i++) {
+          TorrentFile tf = _torrentFiles.get(i);
+          File f = tf.RAFfile;
+          long len = f.length();
+          if (!f.exists() || len != tf.length || len != savedState[2 * i])
+              return null;
+          long lm = f.lastModified();
+          if (lm <= 0 || lm != savedState[(2 * i) + 1]) {
+              rv[i] = true;
+              any = true;
+          }
+      }
+      return any ? rv : null;
+  }
+
+  /**
+   * Check only the pieces in the modified files, trusting the bitfield for the rest.
+   * Files must exist and be the correct length.
+   *
+   * @param modified non-null, one per file
+   * @since 0.9.65
+   */
+  private void checkModifiedFiles(boolean[] modified) throws IOException {
+      synchronized(this) {
+          _stopCheck = false;
+          _isChecking = true;
+          try {
+              locked_checkModifiedFiles(modified);
+          } finally {
+              _isChecking = false;
+          }
+      }
+      if (listener != null) {
+          listener.storageAllChecked(this);
+          if (needed <= 0)
+              listener.storageCompleted(this);
+      }
+  }
+
+  /**
+   * @since 0.9.65
+   */
+  private void locked_checkModifiedFiles(boolean[] modified) throws IOException {
+      _checkProgress.set(0);
+      List<File> files = new ArrayList<File>(_torrentFiles.size());
+      long[] lengths = new long[_torrentFiles.size()];
+      for (int i = 0; i < _torrentFiles.size(); i++) {
+          TorrentFile tf = _torrentFiles.get(i);
+          files.add(tf.RAFfile);
+          lengths[i] = tf.length;
+      }
+      // first clear the pieces, in case a later piece check fails with an IOE
+      int count = 0;
+      long fileStart = 0;
+      for (int i = 0; i < modified.length; i++) {
+          long fileEnd = fileStart + lengths[i];
+          if (modified[i] && lengths[i] > 0) {
+              int last = (int) ((fileEnd - 1) / piece_size);
+              for (int j = (int) (fileStart / piece_size); j <= last; j++) {
+                  if (bitfield.get(j)) {
+                      bitfield.clear(j);
+                      needed++;
+                  }
+              }
+              count++;
+              if (_log.shouldLog(Log.INFO))
+                  _log.info("File modified since last saved, checking " + _torrentFiles.get(i));
+          }
+          fileStart = fileEnd;
+      }
+      CheckCallback cb = new CheckCallback(bitfield, needed, false);
+      PieceChecker checker = new PieceChecker(_util.getContext(), metainfo, files, lengths);
+      fileStart = 0;
+      int next = 0;
+      for (int i = 0; i < modified.length; i++) {
+          long fileEnd = fileStart + lengths[i];
+          if (modified[i] && lengths[i] > 0) {
+              // pieces may span files, don't check twice
+              int first = Math.max(next, (int) (fileStart / piece_size));
+              int last = (int) ((fileEnd - 1) / piece_size);
+              if (first <= last) {
+                  checker.check(first, last + 1, _checkProgress, cb, CHECKPOINT_INTERVAL);
+                  next = last + 1;
+              }
+          }
+          fileStart = fileEnd;
+      }
+      needed = cb.getNeeded();
+      _checkProgress.set(pieces);
+      _probablyComplete = complete();
+      if (_log.shouldLog(Log.INFO))
+          _log.info("Checked " + count + " modified files of " + _torrentFiles.size() +
+                    ", still need " + needed + " pieces");
+  }
+
   /**
    * Doesn't really reopen the file descriptors for a restart.
    * Just does an existence check but no length check or data reverification
@@ -1120,6 +1328,7 @@ public class Storage implements Closeable
    */
   private boolean checkCreateFiles(boolean recheck) throws IOException {
       synchronized(this) {
+          _stopCheck = false;
           _isChecking = true;
           try {
               return locked_checkCreateFiles(recheck);
@@ -1198,6 +1407,8 @@ public class Storage implements Closeable
           resume = true;
           _checkProgress.set(0);
           _probablyComplete = false; // to force RW
+          if (_mapCache != null)
+              _mapCache.remove(tf.RAFfile);
           synchronized(tf) {
               RandomAccessFile raf = tf.checkRAF();
               raf.setLength(tf.length);
@@ -1211,35 +1422,25 @@ public class Storage implements Closeable
     // Check which pieces match and which don't
     if (resume)
       {
-        byte[] piece = new byte[piece_size];
-        int file = 0;
-        long fileEnd = _torrentFiles.get(0).length;
-        long pieceEnd = 0;
-        for (int i = 0; i < pieces; i++)
-          {
-            _checkProgress.set(i);
-            int length = getUncheckedPiece(i, piece);
-            boolean correctHash = metainfo.checkPiece(i, piece, 0, length);
-            // close as we go so we don't run out of file descriptors
-            pieceEnd += length;
-            while (fileEnd <= pieceEnd) {
-                TorrentFile tf = _torrentFiles.get(file);
-                try {
-                    tf.closeRAF();
-                } catch (IOException ioe) {}
-                if (++file >= _torrentFiles.size())
-                    break;
-                fileEnd += _torrentFiles.get(file).length;
-            }
-            if (correctHash)
-              {
-                bfield.set(i);
-                need--;
-              }
-
-            if (listener != null)
-              listener.storageChecked(this, i, correctHash);
-          }
+        // The checker reads the files itself, close ours so we don't run out of file descriptors
+        List<File> files = new ArrayList<File>(_torrentFiles.size());
+        long[] lengths = new long[_torrentFiles.size()];
+        for (int i = 0; i < _torrentFiles.size(); i++) {
+            TorrentFile tf = _torrentFiles.get(i);
+            try {
+                tf.closeRAF();
+            } catch (IOException ioe) {}
+            files.add(tf.RAFfile);
+            lengths[i] = tf.length;
+        }
+        CheckCallback cb = new CheckCallback(bfield, need, true);
+        int start = cb.resume();
+        _checkProgress.set(start);
+        PieceChecker checker = new PieceChecker(_util.getContext(), metainfo, files, lengths);
+        checker.check(start, pieces, _checkProgress, cb, CHECKPOINT_INTERVAL);
+        need = cb.getNeeded();
+        if (_checkpointFile != null)
+            _checkpointFile.delete();
       }
 
     _checkProgress.set(pieces);
@@ -1274,6 +1475,109 @@ public class Storage implements Closeable
     return rv;
   }
 
+  /**
+   *  Collects the results from the PieceChecker,
+   *  and saves and restores them from the checkpoint file.
+   *  Caller must synchronize on this Storage.
+   *
+   *  @since 0.9.65
+   */
+  private class CheckCallback implements PieceChecker.Callback {
+      private final BitField _bfield;
+      private int _need;
+      private final boolean _useCheckpoint;
+
+      /**
+       *  @param bfield will be modified
+       *  @param need the current needed count, will be decremented for each good piece
+       *  @param useCheckpoint if false, never read or write the checkpoint file
+       */
+      public CheckCallback(BitField bfield, int need, boolean useCheckpoint) {
+          _bfield = bfield;
+          _need = need;
+          _useCheckpoint = useCheckpoint;
+      }
+
+      public int getNeeded() {
+          return _need;
+      }
+
+      /**
+       *  Restore the results of an interrupted check, if the checkpoint file
+       *  is present and no file was modified since it was written.
+       *
+       *  @return the next piece to check, 0 if none restored
+       */
+      public int resume() {
+          File f = _useCheckpoint ? _checkpointFile : null;
+          if (f == null || !f.exists())
+              return 0;
+          Properties props = new Properties();
+          try {
+              I2PSnarkUtil.loadProps(props, f);
+              if (Integer.parseInt(props.getProperty(PROP_CP_PIECES, "0")) != pieces)
+                  return 0;
+              int next = Integer.parseInt(props.getProperty(PROP_CP_NEXT, "0"));
+              long stamp = Long.parseLong(props.getProperty(PROP_CP_STAMP, "0"));
+              String b64 = props.getProperty(PROP_CP_BITFIELD);
+              if (next <= 0 || next > pieces || stamp <= 0 || b64 == null)
+                  return 0;
+              byte[] bf = Base64.decode(b64);
+              if (bf == null || bf.length * 8 < pieces)
+                  return 0;
+              for (TorrentFile tf : _torrentFiles) {
+                  // allow for coarse file system timestamps
+                  long lm = tf.RAFfile.lastModified();
+                  if (lm <= 0 || lm + 2000 > stamp || tf.RAFfile.length() != tf.length)
+                      return 0;
+              }
+              BitField saved = new BitField(bf, pieces);
+              for (int i = 0; i < next; i++) {
+                  if (saved.get(i) && !_bfield.get(i)) {
+                      _bfield.set(i);
+                      _need--;
+                  }
+              }
+              if (_log.shouldLog(Log.INFO))
+                  _log.info("Resuming check of " + metainfo.getName() + " at piece " + next + " of " + pieces);
+              return next;
+          } catch (IOException ioe) {
+          } catch (NumberFormatException nfe) {
+          }
+          return 0;
+      }
+
+      public void pieceChecked(int piece, boolean correct) {
+          if (correct && !_bfield.get(piece)) {
+              _bfield.set(piece);
+              _need--;
+          }
+          if (listener != null)
+              listener.storageChecked(Storage.this, piece, correct);
+      }
+
+      public void checkpoint(int nextPiece) {
+          File f = _useCheckpoint ? _checkpointFile : null;
+          if (f == null || nextPiece <= 0)
+              return;
+          Properties props = new Properties();
+          props.setProperty(PROP_CP_PIECES, Integer.toString(pieces));
+          props.setProperty(PROP_CP_NEXT, Integer.toString(nextPiece));
+          props.setProperty(PROP_CP_BITFIELD, Base64.encode(_bfield.getFieldBytes()));
+          props.setProperty(PROP_CP_STAMP, Long.toString(System.currentTimeMillis()));
+          try {
+              I2PSnarkUtil.storeProps(props, f);
+          } catch (IOException ioe) {
+              if (_log.shouldLog(Log.WARN))
+                  _log.warn("Unable to save check progress to " + f, ioe);
+          }
+      }
+
+      public boolean shouldStop() {
+          return _stopCheck;
+      }
+  }
+
   /**
    *  This creates a (presumably) sparse file so that reads won't fail with IOE.
    *  Sets isSparse[nr] = true. balloonFile(nr) should be called later to
@@ -1296,9 +1600,13 @@ public class Storage implements Closeable
   /**
    * Closes the Storage and makes sure that all RandomAccessFiles are
    * closed. The Storage is unusable after this.
+   * A check in progress will be stopped, and may be resumed later
+   * if a checkpoint file was set.
    */
   public void close() throws IOException
   {
+    if (_isChecking)
+        _stopCheck = true;
     for (TorrentFile tf : _torrentFiles)
       {
         try {
@@ -1307,6 +1615,8 @@ public class Storage implements Closeable
             _log.error("Error closing " + tf, ioe);
             // gobble gobble
         }
+        if (_mapCache != null)
+            _mapCache.remove(tf.RAFfile);
       }
     changed = false;
   }
@@ -1335,11 +1645,61 @@ public class Storage implements Closeable
       return null;
     }
     bs = rv.getData();
-    getUncheckedPiece(piece, bs, off, len);
+    if (_mapCache == null || !getMappedPiece(piece, bs, off, len))
+        getUncheckedPiece(piece, bs, off, len);
     setActivity();
     return rv;
   }
 
+  /**
+   * Read from the memory-mapped files.
+   * Only call for pieces we have, so the data doesn't change.
+   *
+   * @return success, false if the caller should fall back to getUncheckedPiece()
+   * @since 0.9.65
+   */
+  private boolean getMappedPiece(int piece, byte[] bs, int off, int length) {
+    if (!_util.getContext().getBooleanPropertyDefaultTrue(PROP_MMAP))
+        return false;
+    long start = ((long) piece * (long) piece_size) + off;
+    int i = 0;
+    long raflen = _torrentFiles.get(i).length;
+    while (start >= raflen) {
+        i++;
+        start -= raflen;
+        raflen = _torrentFiles.get(i).length;
+    }
+    int read = 0;
+    try {
+        while (read < length) {
+            TorrentFile tf = _torrentFiles.get(i);
+            int need = length - read;
+            int len = (start + need < raflen) ? need : (int)(raflen - start);
+            if (len > 0)
+                _mapCache.read(tf.RAFfile, tf.length, start, bs, read, len);
+            read += len;
+            if (read < length) {
+                i++;
+                raflen = _torrentFiles.get(i).length;
+                start = 0;
+            }
+        }
+    } catch (IOException ioe) {
+        if (_log.shouldLog(Log.WARN))
+            _log.warn("Mapped read failed for piece " + piece, ioe);
+        return false;
+    } catch (InternalError ie) {
+        // file truncated under the mapping
+        if (_log.shouldLog(Log.WARN))
+            _log.warn("Mapped read failed for piece " + piece, ie);
+        for (TorrentFile tf : _torrentFiles) {
+            _mapCache.remove(tf.RAFfile);
+        }
+        return false;
+    }
+    return true;
+  }
+
   /**
    * Put the piece in the Storage if it is correct.
    * Warning - takes a LONG time if complete as it does the recheck here.
@@ -296,6 +296,11 @@ class UpdateRunner implements UpdateTask, CompleteListener {
         return _smgr.getSavedTorrentBitField(snark);
     }
 
+    /** @since 0.9.65 */
+    public String getSavedFileState(Snark snark) {
+        return _smgr.getSavedFileState(snark);
+    }
+
     public boolean getSavedPreserveNamesSetting(Snark snark) {
         return _smgr.getSavedPreserveNamesSetting(snark);
     }
@@ -326,6 +331,13 @@ class UpdateRunner implements UpdateTask, CompleteListener {
         return _smgr.getBandwidthListener();
     }
 
+    /**
+     * @since 0.9.65
+     */
+    public File getCheckpointFile(Snark snark) {
+        return _smgr.getCheckpointFile(snark);
+    }
+
     //////// end CompleteListener methods
 
     private static String linkify(String url) {
@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 
 import net.i2p.data.DataHelper;
 
@@ -83,12 +84,32 @@ public class BEncoder
 
   public static void bencode(byte[] bs, OutputStream out) throws IOException
   {
-    String l = Integer.toString(bs.length);
-    out.write(l.getBytes("UTF-8"));
+    writeDecimal(bs.length, out);
     out.write(':');
     out.write(bs);
   }
 
+  /**
+   * ASCII digits, without going through a String.
+   *
+   * @param n non-negative
+   * @since 0.9.65
+   */
+  private static void writeDecimal(int n, OutputStream out) throws IOException
+  {
+    if (n < 10) {
+        out.write('0' + n);
+        return;
+    }
+    byte[] b = new byte[10];
+    int i = b.length;
+    while (n > 0) {
+        b[--i] = (byte) ('0' + (n % 10));
+        n /= 10;
+    }
+    out.write(b, i, b.length - i);
+  }
+
   /**
    * Keys must be Strings or (supported as of 0.9.31) byte[]s
    * A mix in the same Map is not supported.
@@ -120,6 +141,20 @@ public class BEncoder
   {
     out.write('d');
 
+    if (m instanceof SortedMap && ((SortedMap<?, ?>) m).comparator() == null) {
+        // Already in the order we would sort the keys in below,
+        // so skip the copy and sort.
+        for (Map.Entry<?, ?> e : m.entrySet()) {
+            Object k = e.getKey();
+            if (!(k instanceof String))
+                throw new IllegalArgumentException("Cannot bencode sorted map: contains key of type " + k.getClass());
+            bencode((String) k, out);
+            bencode(e.getValue(), out);
+        }
+        out.write('e');
+        return;
+    }
+
     Set<?> s = m.keySet();
     List<String> l = null;
     List<byte[]> b = null;
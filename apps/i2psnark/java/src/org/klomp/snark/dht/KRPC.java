@@ -5,13 +5,13 @@ package org.klomp.snark.dht;
  */
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -19,8 +19,10 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.i2p.I2PAppContext;
@@ -146,7 +148,7 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     public static final boolean SECURE_NID = true;
 
     /** how long since generated do we delete - BEP 5 says 10 minutes */
-    private static final long MAX_TOKEN_AGE = 10*60*1000;
+    static final long MAX_TOKEN_AGE = 10*60*1000;
     private static final long MAX_INBOUND_TOKEN_AGE = MAX_TOKEN_AGE - 2*60*1000;
     private static final int MAX_OUTBOUND_TOKENS = 5000;
     /** how long since sent do we wait for a reply */
@@ -162,6 +164,9 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private static final long NODES_SAVE_TIME = 3*60*60*1000;
     public static final String DHT_FILE_SUFFIX = ".dht.dat";
 
+    /** reusable bencoding buffers, shared by the sending threads */
+    private final LinkedBlockingQueue<EncodeBuffer> _encodeBuffers = new LinkedBlockingQueue<EncodeBuffer>(4);
+
     private static final int SEND_CRYPTO_TAGS = 8;
     private static final int LOW_CRYPTO_TAGS = 4;
 
@@ -630,7 +635,7 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
         _session.addMuxedSessionListener(this, I2PSession.PROTO_DATAGRAM, _qPort);
         _knownNodes.start();
         _tracker.start();
-        PersistDHT.loadDHT(this, _dhtFile, _backupDhtFile);
+        PersistDHT.loadDHT(this, _outgoingTokens, _incomingTokens, _dhtFile, _backupDhtFile);
         // start the explore thread
         _isRunning = true;
         _cleaner = new Cleaner();
@@ -661,7 +666,7 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
         _tracker.stop();
         // don't lose all our peers if we didn't have time to check them
         boolean saveAll = _context.clock().now() - _started < 20*60*1000;
-        PersistDHT.saveDHT(_knownNodes, saveAll, _dhtFile);
+        PersistDHT.saveDHT(_knownNodes, _outgoingTokens, _incomingTokens, saveAll, _dhtFile);
         _knownNodes.stop();
         for (Iterator<ReplyWaiter> iter = _sentQueries.values().iterator(); iter.hasNext(); ) {
             ReplyWaiter waiter = iter.next();
@@ -721,9 +726,9 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private ReplyWaiter sendPing(NodeInfo nInfo) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending ping to: " + nInfo);
-        Map<String, Object> map = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
         map.put("q", "ping");
-        Map<String, Object> args = new HashMap<String, Object>();
+        Map<String, Object> args = new TreeMap<String, Object>();
         map.put("a", args);
         return sendQuery(nInfo, map, true);
     }
@@ -738,9 +743,9 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private ReplyWaiter sendFindNode(NodeInfo nInfo, NID tID) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending find node of " + tID + " to: " + nInfo);
-        Map<String, Object> map = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
         map.put("q", "find_node");
-        Map<String, Object> args = new HashMap<String, Object>();
+        Map<String, Object> args = new TreeMap<String, Object>();
         args.put("target", tID.getData());
         map.put("a", args);
         return sendQuery(nInfo, map, true);
@@ -756,9 +761,9 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private ReplyWaiter sendGetPeers(NodeInfo nInfo, InfoHash ih, boolean noSeeds) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending get peers of " + ih + " to: " + nInfo + " noseeds? " + noSeeds);
-        Map<String, Object> map = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
         map.put("q", "get_peers");
-        Map<String, Object> args = new HashMap<String, Object>();
+        Map<String, Object> args = new TreeMap<String, Object>();
         args.put("info_hash", ih.getData());
         if (noSeeds)
             args.put("noseed", Integer.valueOf(1));
@@ -780,9 +785,9 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private ReplyWaiter sendAnnouncePeer(NodeInfo nInfo, InfoHash ih, Token token, boolean isSeed) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending announce of " + ih + " to: " + nInfo + " seed? " + isSeed);
-        Map<String, Object> map = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
         map.put("q", "announce_peer");
-        Map<String, Object> args = new HashMap<String, Object>();
+        Map<String, Object> args = new TreeMap<String, Object>();
         args.put("info_hash", ih.getData());
         // port ignored
         args.put("port", Integer.valueOf(TrackerClient.PORT));
@@ -804,8 +809,8 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private boolean sendPong(NodeInfo nInfo, MsgID msgID) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending pong to: " + nInfo);
-        Map<String, Object> map = new HashMap<String, Object>();
-        Map<String, Object> resps = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
+        Map<String, Object> resps = new TreeMap<String, Object>();
         map.put("r", resps);
         return sendResponse(nInfo, msgID, map);
     }
@@ -823,8 +828,8 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private boolean sendNodes(NodeInfo nInfo, MsgID msgID, Token token, byte[] ids) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending nodes to: " + nInfo);
-        Map<String, Object> map = new HashMap<String, Object>();
-        Map<String, Object> resps = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
+        Map<String, Object> resps = new TreeMap<String, Object>();
         map.put("r", resps);
         if (token != null)
             resps.put("token", token.getData());
@@ -836,8 +841,8 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private boolean sendPeers(NodeInfo nInfo, MsgID msgID, Token token, List<byte[]> peers) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending peers to: " + nInfo);
-        Map<String, Object> map = new HashMap<String, Object>();
-        Map<String, Object> resps = new HashMap<String, Object>();
+        Map<String, Object> map = new TreeMap<String, Object>();
+        Map<String, Object> resps = new TreeMap<String, Object>();
         map.put("r", resps);
         resps.put("token", token.getData());
         resps.put("values", peers);
@@ -856,7 +861,7 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
     private boolean sendError(NodeInfo nInfo, MsgID msgID, int err, String msg) {
         if (_log.shouldLog(Log.INFO))
             _log.info("Sending error " + msg + " to: " + nInfo);
-        Map<String, Object> map = new HashMap<String, Object>(4);
+        Map<String, Object> map = new TreeMap<String, Object>();
         List<Object> error = new ArrayList<Object>(2);
         error.add(Integer.valueOf(err));
         error.add(msg);
@@ -1016,9 +1021,21 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
         }
         if (dest.calculateHash().equals(_myNodeInfo.getHash()))
             throw new IllegalArgumentException("don't send to ourselves");
-        byte[] payload = BEncoder.bencode(map);
+        // Bencode into a reusable buffer; the TreeMaps are already in key order
+        EncodeBuffer buf = _encodeBuffers.poll();
+        if (buf == null)
+            buf = new EncodeBuffer();
+        else
+            buf.reset();
+        try {
+            BEncoder.bencode(map, buf);
+        } catch (IOException ioe) {
+            // can't happen
+            _encodeBuffers.offer(buf);
+            return false;
+        }
         if (_log.shouldLog(Log.DEBUG)) {
-            ByteArrayInputStream bais = new ByteArrayInputStream(payload);
+            ByteArrayInputStream bais = new ByteArrayInputStream(buf.getData(), 0, buf.size());
             try {
                 _log.debug("Sending to: " + dest.calculateHash() + ' ' + BDecoder.bdecode(bais).toString());
             } catch (IOException ioe) {}
@@ -1026,14 +1043,23 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
 
         // Always send query port, peer will increment for unsigned replies
         int fromPort = _qPort;
+        byte[] payload;
+        int length;
         if (repliable) {
             I2PDatagramMaker dgMaker = new I2PDatagramMaker(_session);
-            payload = dgMaker.makeI2PDatagram(payload);
+            payload = dgMaker.makeI2PDatagram(buf.toByteArray());
+            _encodeBuffers.offer(buf);
+            buf = null;
             if (payload == null) {
                 if (_log.shouldLog(Log.WARN))
                     _log.warn("DGM fail");
                 return false;
             }
+            length = payload.length;
+        } else {
+            // the session copies the payload, so we can reuse the buffer after sending
+            payload = buf.getData();
+            length = buf.size();
         }
 
         SendMessageOptions opts = new SendMessageOptions();
@@ -1044,12 +1070,12 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
         if (!repliable)
             opts.setSendLeaseSet(false);
         try {
-            boolean success = _session.sendMessage(dest, payload, 0, payload.length,
+            boolean success = _session.sendMessage(dest, payload, 0, length,
                                                    repliable ? I2PSession.PROTO_DATAGRAM : I2PSession.PROTO_DATAGRAM_RAW,
                                                    fromPort, toPort, opts);
             if (success) {
                 _txPkts.incrementAndGet();
-                _txBytes.addAndGet(payload.length);
+                _txBytes.addAndGet(length);
             } else {
                 if (_log.shouldLog(Log.WARN))
                     _log.warn("sendMessage fail");
@@ -1059,6 +1085,26 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
             if (_log.shouldLog(Log.WARN))
                 _log.warn("sendMessage fail", ise);
             return false;
+        } finally {
+            if (buf != null)
+                _encodeBuffers.offer(buf);
+        }
+    }
+
+    /**
+     *  A ByteArrayOutputStream with access to the buffer,
+     *  to avoid the copy in toByteArray().
+     *
+     *  @since 0.9.65
+     */
+    private static class EncodeBuffer extends ByteArrayOutputStream {
+        public EncodeBuffer() {
+            super(1024);
+        }
+
+        /** valid up to size() */
+        public byte[] getData() {
+            return buf;
         }
     }
 
@@ -1704,7 +1750,7 @@ public class KRPC implements I2PSessionMuxedListener, DHT {
                 }
             }
             if (now - _nodesLastSaved > NODES_SAVE_TIME) {
-                PersistDHT.saveDHT(_knownNodes, false, _dhtFile);
+                PersistDHT.saveDHT(_knownNodes, _outgoingTokens, _incomingTokens, false, _dhtFile);
                 _nodesLastSaved = now;
             }
             // TODO sent queries?
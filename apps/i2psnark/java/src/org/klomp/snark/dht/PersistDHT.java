@@ -1,101 +1,350 @@
 package org.klomp.snark.dht;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import net.i2p.I2PAppContext;
 import net.i2p.data.DataFormatException;
+import net.i2p.data.DataHelper;
+import net.i2p.data.Destination;
 import net.i2p.util.Log;
 import net.i2p.util.SecureFileOutputStream;
 
 /**
  *  Retrieve / Store the local DHT in a file
  *
+ *  As of 0.9.65, the file is binary, and also contains the
+ *  unexpired tokens, so that announces in progress survive a restart.
+ *  The old text format is still read.
+ *
+ *  Binary format:
+ *  <pre>
+ *    magic (6 bytes) "I2PDHT"
+ *    version (1 byte) 1
+ *    saved time (8 bytes)
+ *    node count (4 bytes), then for each node, most recently seen first:
+ *      compact info (54 bytes: NID, Hash, port)
+ *      last seen (8 bytes)
+ *      has dest (1 byte), then the Destination if nonzero
+ *    sent token count (4 bytes), then for each:
+ *      length (1 byte), token, created (8 bytes), compact info of the recipient (54 bytes)
+ *    received token count (4 bytes), then for each:
+ *      NID of the sender (20 bytes), length (1 byte), token, created (8 bytes)
+ *  </pre>
+ *
  *  @since 0.9.2
  */
 abstract class PersistDHT {
 
     private static final long MAX_AGE = 60*60*1000;
+    private static final byte[] MAGIC = DataHelper.getASCII("I2PDHT");
+    private static final int VERSION = 1;
+    /** sanity checks */
+    private static final int MAX_NODES = 10000;
+    private static final int MAX_TOKENS = 50000;
 
     /**
+     *  Tokens are only loaded from the primary file, the backup belongs to another instance.
+     *
+     *  @param outgoing tokens we generated will be added here, may be null
+     *  @param incoming tokens we received will be added here, may be null
      *  @param backupFile may be null
-     *  @since 0.9.6
+     *  @since 0.9.65
      */
-    public static synchronized void loadDHT(KRPC krpc, File file, File backupFile) {
+    public static synchronized void loadDHT(KRPC krpc, Map<Token, NodeInfo> outgoing, Map<NID, Token> incoming,
+                                            File file, File backupFile) {
         if (file.exists())
-            loadDHT(krpc, file);
+            loadDHT(krpc, outgoing, incoming, file);
         else if (backupFile != null)
-            loadDHT(krpc, backupFile);
+            loadDHT(krpc, null, null, backupFile);
     }
 
     public static synchronized void loadDHT(KRPC krpc, File file) {
+        loadDHT(krpc, null, null, file);
+    }
+
+    /**
+     *  Reads either format.
+     *
+     *  @param outgoing may be null
+     *  @param incoming may be null
+     *  @since 0.9.65
+     */
+    private static void loadDHT(KRPC krpc, Map<Token, NodeInfo> outgoing, Map<NID, Token> incoming, File file) {
         Log log = I2PAppContext.getGlobalContext().logManager().getLog(PersistDHT.class);
-        int count = 0;
-        BufferedReader br = null;
+        InputStream in = null;
         try {
-            br = new BufferedReader(new InputStreamReader(
-            		new FileInputStream(file), "ISO-8859-1"));
-            String line = null;
-            while ( (line = br.readLine()) != null) {
-                if (line.startsWith("#"))
-                    continue;
-                try {
-                    krpc.heardAbout(new NodeInfo(line));
-                    count++;
-                    // TODO limit number? this will flush the router's SDS caches
-                } catch (IllegalArgumentException iae) {
-                    if (log.shouldLog(Log.WARN))
-                        log.warn("Error reading DHT entry", iae);
-                } catch (DataFormatException dfe) {
-                    if (log.shouldLog(Log.WARN))
-                        log.warn("Error reading DHT entry", dfe);
-                }
-            }
+            in = new BufferedInputStream(new FileInputStream(file));
+            in.mark(MAGIC.length);
+            byte[] magic = new byte[MAGIC.length];
+            int read = DataHelper.read(in, magic);
+            in.reset();
+            if (read == MAGIC.length && DataHelper.eq(magic, MAGIC))
+                loadBinary(krpc, outgoing, incoming, new DataInputStream(in), file, log);
+            else
+                loadText(krpc, in, file, log);
         } catch (IOException ioe) {
             if (log.shouldLog(Log.WARN) && file.exists())
                 log.warn("Error reading the DHT File", ioe);
         } finally {
-            if (br != null) try { br.close(); } catch (IOException ioe) {}
+            if (in != null) try { in.close(); } catch (IOException ioe) {}
+        }
+    }
+
+    /**
+     *  The pre-0.9.65 format, one node per line
+     *
+     *  @since 0.9.65 split out of loadDHT()
+     */
+    private static void loadText(KRPC krpc, InputStream in, File file, Log log) throws IOException {
+        int count = 0;
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, "ISO-8859-1"));
+        String line = null;
+        while ( (line = br.readLine()) != null) {
+            if (line.startsWith("#"))
+                continue;
+            try {
+                krpc.heardAbout(new NodeInfo(line));
+                count++;
+                // TODO limit number? this will flush the router's SDS caches
+            } catch (IllegalArgumentException iae) {
+                if (log.shouldLog(Log.WARN))
+                    log.warn("Error reading DHT entry", iae);
+            } catch (DataFormatException dfe) {
+                if (log.shouldLog(Log.WARN))
+                    log.warn("Error reading DHT entry", dfe);
+            }
         }
         if (log.shouldLog(Log.INFO))
             log.info("Loaded " + count + " nodes from " + file);
     }
 
     /**
+     *  @param outgoing may be null
+     *  @param incoming may be null
+     *  @since 0.9.65
+     */
+    private static void loadBinary(KRPC krpc, Map<Token, NodeInfo> outgoing, Map<NID, Token> incoming,
+                                   DataInputStream in, File file, Log log) throws IOException {
+        in.skipBytes(MAGIC.length);
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported DHT file version " + version);
+        in.readLong();
+        int count = readCount(in, MAX_NODES);
+        byte[] compact = new byte[NodeInfo.LENGTH];
+        int loaded = 0;
+        for (int i = 0; i < count; i++) {
+            in.readFully(compact);
+            in.readLong();
+            Destination dest = null;
+            try {
+                if (in.readUnsignedByte() != 0)
+                    dest = Destination.create(in);
+            } catch (DataFormatException dfe) {
+                throw new IOException("Bad destination", dfe);
+            }
+            try {
+                NodeInfo nInfo = new NodeInfo(compact, 0);
+                if (dest != null)
+                    nInfo.setDestination(dest);
+                // added most recently seen first, so if the buckets fill up
+                // the freshest nodes are the ones kept
+                krpc.heardAbout(nInfo);
+                loaded++;
+            } catch (IllegalArgumentException iae) {
+                if (log.shouldLog(Log.WARN))
+                    log.warn("Error reading DHT entry", iae);
+            }
+        }
+
+        long expire = I2PAppContext.getGlobalContext().clock().now() - KRPC.MAX_TOKEN_AGE;
+        int out = 0;
+        int inb = 0;
+        count = readCount(in, MAX_TOKENS);
+        for (int i = 0; i < count; i++) {
+            byte[] tok = readToken(in);
+            long created = in.readLong();
+            in.readFully(compact);
+            if (outgoing == null || created < expire)
+                continue;
+            try {
+                outgoing.put(new Token(tok, created), new NodeInfo(compact, 0));
+                out++;
+            } catch (IllegalArgumentException iae) {}
+        }
+        count = readCount(in, MAX_TOKENS);
+        for (int i = 0; i < count; i++) {
+            byte[] nid = new byte[NID.HASH_LENGTH];
+            in.readFully(nid);
+            byte[] tok = readToken(in);
+            long created = in.readLong();
+            if (incoming == null || created < expire)
+                continue;
+            try {
+                incoming.put(new NID(nid), new Token(tok, created));
+                inb++;
+            } catch (IllegalArgumentException iae) {}
+        }
+        if (log.shouldLog(Log.INFO))
+            log.info("Loaded " + loaded + " nodes, " + out + " sent and " + inb +
+                     " received tokens from " + file);
+    }
+
+    private static int readCount(DataInputStream in, int max) throws IOException {
+        int rv = in.readInt();
+        if (rv < 0 || rv > max)
+            throw new IOException("Bad count " + rv);
+        return rv;
+    }
+
+    private static byte[] readToken(DataInputStream in) throws IOException {
+        int len = in.readUnsignedByte();
+        if (len == 0)
+            throw new IOException("Bad token");
+        byte[] rv = new byte[len];
+        in.readFully(rv);
+        return rv;
+    }
+
+    /**
+     *  @param outgoing tokens we generated, may be null
+     *  @param incoming tokens we received, may be null
      *  @param saveAll if true, don't check last seen time
+     *  @since 0.9.65
      */
-    public static synchronized void saveDHT(DHTNodes nodes, boolean saveAll, File file) {
+    public static synchronized void saveDHT(DHTNodes nodes, Map<Token, NodeInfo> outgoing, Map<NID, Token> incoming,
+                                            boolean saveAll, File file) {
         if (nodes.size() <= 0)
             return;
         Log log = I2PAppContext.getGlobalContext().logManager().getLog(PersistDHT.class);
+        long now = I2PAppContext.getGlobalContext().clock().now();
+        long maxAge = saveAll ? 0 : now - MAX_AGE;
+        List<SavedNode> list = new ArrayList<SavedNode>(nodes.size());
+        for (NodeInfo ni : nodes.values()) {
+             long seen = ni.lastSeen();
+             if (seen < maxAge)
+                 continue;
+             // DHTNodes shouldn't contain us, if that changes check here
+             list.add(new SavedNode(ni, seen));
+        }
+        Collections.sort(list);
         int count = 0;
-        long maxAge = saveAll ? 0 : I2PAppContext.getGlobalContext().clock().now() - MAX_AGE;
-        PrintWriter out = null;
+        int out = 0;
+        int inb = 0;
+        DataOutputStream dos = null;
         try {
-            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new SecureFileOutputStream(file), "ISO-8859-1")));
-            out.println("# DHT nodes, format is NID:Hash:Destination:port");
-            for (NodeInfo ni : nodes.values()) {
-                 if (ni.lastSeen() < maxAge)
-                     continue;
-                 // DHTNodes shouldn't contain us, if that changes check here
-                 out.println(ni.toPersistentString());
-                 count++;
+            dos = new DataOutputStream(new BufferedOutputStream(new SecureFileOutputStream(file)));
+            dos.write(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeLong(now);
+            dos.writeInt(Math.min(list.size(), MAX_NODES));
+            for (SavedNode sn : list) {
+                if (count >= MAX_NODES)
+                    break;
+                NodeInfo ni = sn.nInfo;
+                dos.write(ni.getData());
+                dos.writeLong(sn.lastSeen);
+                Destination dest = ni.getDestination();
+                if (dest != null) {
+                    dos.writeByte(1);
+                    dest.writeBytes(dos);
+                } else {
+                    dos.writeByte(0);
+                }
+                count++;
+            }
+
+            long expire = now - KRPC.MAX_TOKEN_AGE;
+            List<Map.Entry<Token, NodeInfo>> outList = new ArrayList<Map.Entry<Token, NodeInfo>>();
+            if (outgoing != null) {
+                for (Map.Entry<Token, NodeInfo> e : outgoing.entrySet()) {
+                    if (outList.size() >= MAX_TOKENS)
+                        break;
+                    Token tok = e.getKey();
+                    if (tok.lastSeen() >= expire && tok.getData().length > 0)
+                        outList.add(e);
+                }
+            }
+            dos.writeInt(outList.size());
+            for (Map.Entry<Token, NodeInfo> e : outList) {
+                writeToken(dos, e.getKey());
+                dos.write(e.getValue().getData());
+                out++;
+            }
+
+            List<Map.Entry<NID, Token>> inList = new ArrayList<Map.Entry<NID, Token>>();
+            if (incoming != null) {
+                for (Map.Entry<NID, Token> e : incoming.entrySet()) {
+                    if (inList.size() >= MAX_TOKENS)
+                        break;
+                    Token tok = e.getValue();
+                    if (tok.lastSeen() >= expire && tok.getData().length > 0)
+                        inList.add(e);
+                }
+            }
+            dos.writeInt(inList.size());
+            for (Map.Entry<NID, Token> e : inList) {
+                dos.write(e.getKey().getData());
+                writeToken(dos, e.getValue());
+                inb++;
             }
-            if (out.checkError())
-                throw new IOException("Failed write to " + file);
+            dos.close();
+            dos = null;
+        } catch (DataFormatException dfe) {
+            if (log.shouldLog(Log.WARN))
+                log.warn("Error writing the DHT File", dfe);
         } catch (IOException ioe) {
             if (log.shouldLog(Log.WARN))
                 log.warn("Error writing the DHT File", ioe);
         } finally {
-            if (out != null) out.close();
+            if (dos != null) try { dos.close(); } catch (IOException ioe) {}
         }
         if (log.shouldLog(Log.INFO))
-            log.info("Stored " + count + " nodes to " + file);
+            log.info("Stored " + count + " nodes, " + out + " sent and " + inb +
+                     " received tokens to " + file);
+    }
+
+    private static void writeToken(DataOutputStream dos, Token token) throws IOException {
+        byte[] data = token.getData();
+        dos.writeByte(data.length);
+        dos.write(data);
+        dos.writeLong(token.lastSeen());
+    }
+
+    /**
+     *  A node and its last seen time, which may change while we are sorting.
+     *  Sorts most recently seen first.
+     *
+     *  @since 0.9.65
+     */
+    private static class SavedNode implements Comparable<SavedNode> {
+        public final NodeInfo nInfo;
+        public final long lastSeen;
+
+        public SavedNode(NodeInfo ni, long seen) {
+            nInfo = ni;
+            lastSeen = seen;
+        }
+
+        public int compareTo(SavedNode sn) {
+            if (lastSeen > sn.lastSeen)
+                return -1;
+            if (lastSeen < sn.lastSeen)
+                return 1;
+            return 0;
+        }
     }
 }
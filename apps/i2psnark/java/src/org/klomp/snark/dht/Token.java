@@ -39,6 +39,18 @@ class Token extends ByteArray {
         lastSeen = ctx.clock().now();
     }
 
+    /**
+     *  Either direction - from persistent storage
+     *  @param created the original lastSeen
+     *  @since 0.9.65
+     */
+    public Token(byte[] data, long created) {
+        super(data);
+        if (data.length > MAX_TOK_LEN)
+            throw new IllegalArgumentException();
+        lastSeen = created;
+    }
+
     /** incoming  - for lookup only, not storage, lastSeen is 0 */
     public Token(byte[] data) {
         super(data);
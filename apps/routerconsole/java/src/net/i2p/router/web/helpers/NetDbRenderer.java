@@ -1027,9 +1027,9 @@ class NetDbRenderer {
                     buf.append(ls.getSigningKey().getType());
                 }
                 if (type == DatabaseEntry.KEY_TYPE_LEASESET) {
-                    buf.append("</td></tr>\n<tr><td colspan=\"2\"><b>Encryption Key:</b> ELGAMAL_2048 ")
-                       .append(ls.getEncryptionKey().toBase64(), 0, 20)
-                       .append("&hellip;");
+                    buf.append("</td></tr>\n<tr><td colspan=\"2\"><b>Encryption Key:</b> ELGAMAL_2048 ");
+                    appendKeyPrefix(buf, ls.getEncryptionKey());
+                    buf.append("&hellip;");
                 } else if (type == DatabaseEntry.KEY_TYPE_LS2) {
                     LeaseSet2 ls2 = (LeaseSet2) ls;
                     for (PublicKey pk : ls2.getEncryptionKeys()) {
@@ -1039,9 +1039,9 @@ class NetDbRenderer {
                             buf.append(etype);
                         else
                             buf.append("Unsupported type ").append(pk.getUnknownTypeCode());
-                        buf.append(' ')
-                           .append(pk.toBase64(), 0, 20)
-                           .append("&hellip;");
+                        buf.append(' ');
+                        appendKeyPrefix(buf, pk);
+                        buf.append("&hellip;");
                     }
                 }
                 buf.append("</td></tr>\n<tr><td colspan=\"2\">");
@@ -1075,6 +1075,16 @@ class NetDbRenderer {
                        "</table>\n");
     }
 
+    /**
+     *  The first 20 chars of the key's Base64, without encoding the whole key.
+     *
+     *  @since 0.9.65
+     */
+    private static void appendKeyPrefix(StringBuilder buf, PublicKey pk) {
+        byte[] data = pk.getData();
+        Base64.encode(data, 0, Math.min(15, data.length), buf);
+    }
+
     /**
      *  @param mode 0: charts only; 1: full routerinfos; 2: abbreviated routerinfos
      *         mode 3: Same as 0 but sort countries by count
@@ -9,9 +9,7 @@ package net.i2p.sam;
  */
 
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.Buffer;
@@ -123,45 +121,62 @@ class SAMv3DatagramServer implements Handler {
 					break ;
 				}
 				((Buffer)inBuf).flip();
-				ByteBuffer outBuf = ByteBuffer.wrap(new byte[inBuf.remaining()]);
-				outBuf.put(inBuf);
-				((Buffer)outBuf).flip();
+				// Split the header from the payload in place,
+				// so the payload is copied only once, straight from the receive buffer
+				int len = inBuf.remaining();
+				int max = Math.min(len, MessageDispatcher.MAX_LINE_LENGTH + 1);
+				int eol = -1;
+				for (int i = 0; i < max; i++) {
+					if (inBuf.get(i) == '\n') {
+						eol = i;
+						break;
+					}
+				}
+				if (eol < 0 && len > MessageDispatcher.MAX_LINE_LENGTH) {
+					MessageDispatcher.warn("Error handling datagram",
+					                       new IOException("Line too long - max " + MessageDispatcher.MAX_LINE_LENGTH));
+					continue;
+				}
+				byte[] header = new byte[eol >= 0 ? eol : len];
+				inBuf.get(header);
+				byte[] data;
+				if (eol >= 0) {
+					inBuf.get();
+					data = new byte[inBuf.remaining()];
+					inBuf.get(data);
+				} else {
+					data = new byte[0];
+				}
 				// A new thread for every message is wildly inefficient...
 				//new I2PAppThread(new MessageDispatcher(outBuf.array()), "MessageDispatcher").start();
 				// inline
 				// Even though we could be sending messages through multiple sessions,
 				// that isn't a common use case, and blocking should be rare.
 				// Inside router context, I2CP drops on overflow.
-				(new MessageDispatcher(outBuf.array())).run();
+				(new MessageDispatcher(header, data)).run();
 			}
 		}
 	}
 
 	private static class MessageDispatcher implements Runnable {
-		private final ByteArrayInputStream is;
+		private final byte[] header;
+		private final byte[] data;
 		private static final int MAX_LINE_LENGTH = 2*1024;
 	
-		public MessageDispatcher(byte[] buf) {
-			this.is = new ByteArrayInputStream(buf) ;
+		/**
+		 *  @param header the first line, without the newline
+		 *  @param data the payload after the newline
+		 *  @since 0.9.65, was a single buffer
+		 */
+		public MessageDispatcher(byte[] header, byte[] data) {
+			this.header = header;
+			this.data = data;
 		}
 	
 		public void run() {
 			try {
-				// not UTF-8
-				//String header = DataHelper.readLine(is).trim();
 				// we cannot use SAMUtils.parseParams() here
-				final UTF8Reader reader = new UTF8Reader(is);
-				final StringBuilder buf = new StringBuilder(MAX_LINE_LENGTH);
-				int c;
-				int i = 0;
-				while ((c = reader.read()) != -1) {
-					if (++i > MAX_LINE_LENGTH)
-						throw new IOException("Line too long - max " + MAX_LINE_LENGTH);
-					if (c == '\n')
-						break;
-					buf.append((char)c);
-				}
-				String header = buf.toString();
+				String header = DataHelper.getUTF8(this.header);
 				StringTokenizer tok = new StringTokenizer(header, " ");
 				if (tok.countTokens() < 3) {
 					// This is not a correct message, for sure
@@ -245,9 +260,6 @@ class SAMv3DatagramServer implements Handler {
 						warn("Bad datagram header received");
 						return;
 					}
-					// TODO too many allocations and copies. One here and one in Listener above.
-					byte[] data = new byte[is.available()];
-					is.read(data);
 					Session sess = rec.getHandler().getSession();
 					if (sess != null) {
 						if (sendTags > 0 || tagThreshold > 0 || expires > 0 || !sendLeaseSet) {
@@ -20,6 +20,8 @@ import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.NoRouteToHostException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
 import java.util.Properties;
@@ -528,10 +530,7 @@ class SAMv3Handler extends SAMv1Handler
 					return writeString(SESSION_ERROR, "Unrecognized SESSION STYLE");
 				}
 				// kill the detector
-				detector.done = true;
-				synchronized(socketRLock) {
-					detector.interrupt();
-				}
+				detector.stop();
 				String ignoredCommand = detector.ignoredCommand;
 				detector = null;
 				ok = true;
@@ -576,10 +575,7 @@ class SAMv3Handler extends SAMv1Handler
 		} finally {
 			if (detector != null) {
 				// kill the detector
-				detector.done = true;
-				synchronized(socketRLock) {
-					detector.interrupt();
-				}
+				detector.stop();
 				String ignoredCommand = detector.ignoredCommand;
 				if (ignoredCommand != null)
 					writeString(ignoredCommand + " STATUS RESULT=I2P_ERROR", "invalid state");
@@ -596,25 +592,121 @@ class SAMv3Handler extends SAMv1Handler
 	 *  Check for socket close while tunnels are being built,
 	 *  by doing what is hopefully a dummy read for the next command.
 	 *  Interrupt the handler if it happens.
-	 *  After tunnel build success or failure, the handler will interrupt us.
+	 *  After tunnel build success or failure, the handler will stop us.
 	 *
 	 *  If the command is QUIT or equivalent, do that.
 	 *  If it's anything else, set ignoredCommand, and execSessionMessage() will deal with it.
 	 *
+	 *  As of 0.9.65, the socket is watched by the shared selector,
+	 *  except for SSL sockets, which are not selectable, and are polled
+	 *  by a thread as before.
+	 *
 	 *  @since 0.9.58
 	 */
-	private class SocketCloseDetector extends I2PAppThread {
+	private class SocketCloseDetector implements SAMv3Selector.Listener, Runnable {
 		private final Thread _handler = Thread.currentThread();
+		private final StringBuilder buf = new StringBuilder();
 		public volatile String ignoredCommand;
-		public volatile boolean done;
+		private volatile boolean done;
+		private SAMv3Selector _selector;
+		private SAMv3Selector.Registration _reg;
+		private Thread _thread;
+
+		/**
+		 *  Start watching the socket. Call at most once.
+		 *  @since 0.9.65
+		 */
+		public void start() {
+			if (!(socket instanceof SSLSocketChannel)) {
+				try {
+					_selector = SAMv3Selector.getInstance();
+					socket.configureBlocking(false);
+					_reg = _selector.register(socket, SelectionKey.OP_READ, this);
+					return;
+				} catch (IOException ioe) {
+					if (_log.shouldWarn())
+						_log.warn("Unable to use selector for close detector", ioe);
+					try {
+						socket.configureBlocking(true);
+					} catch (IOException ioe2) {}
+				}
+			}
+			_thread = new I2PAppThread(this, "SAM control socket close detector");
+			_thread.start();
+		}
+
+		/**
+		 *  Stop watching the socket, and put it back in blocking mode.
+		 *  If that isn't possible, close the socket.
+		 *  Call from the handler thread after tunnel build success or failure.
+		 *  @since 0.9.65
+		 */
+		public void stop() {
+			done = true;
+			if (_reg != null) {
+				// wait until the selector is no longer reading
+				boolean ok = _selector.unregister(_reg, true);
+				if (ok) {
+					try {
+						socket.configureBlocking(true);
+					} catch (IOException ioe) {
+						ok = false;
+					} catch (IllegalBlockingModeException ibme) {
+						ok = false;
+					}
+				}
+				if (!ok) {
+					// still registered with the selector, we can't read it in blocking mode
+					if (_log.shouldWarn())
+						_log.warn("Unable to stop close detector, closing socket");
+					try {
+						socket.close();
+					} catch (IOException ioe) {}
+				}
+			} else if (_thread != null) {
+				// interrupting a SocketChannel read will close the socket,
+				// so the thread only reads under lock
+				synchronized(socketRLock) {
+					_thread.interrupt();
+				}
+			}
+		}
 
-		public SocketCloseDetector() {
-			super("SAM control socket close detector");
+		/**
+		 *  Selector thread. Read what's available without blocking.
+		 *  @since 0.9.65
+		 */
+		public void ready(SAMv3Selector.Registration reg, int readyOps) {
+			if (done)
+				return;
+			ByteBuffer bb = ByteBuffer.allocate(256);
+			try {
+				int n;
+				while ((n = socket.read(bb)) > 0) {
+					bb.flip();
+					while (bb.hasRemaining()) {
+						if (process(bb.get() & 0xff)) {
+							_selector.unregister(reg, false);
+							return;
+						}
+					}
+					bb.clear();
+				}
+				if (n < 0)
+					throw new IOException("Socket closed");
+			} catch (IOException ioe) {
+				_selector.unregister(reg, false);
+				if (!done) {
+					_log.error("SAM socket closed while waiting for tunnels to build", ioe);
+					_handler.interrupt();
+				}
+			}
 		}
 
-		@Override
+		/**
+		 *  Thread for SSL sockets
+		 */
 		public void run() {
-			StringBuilder buf = new StringBuilder();
 			try {
 				Socket s = socket.socket();
 				InputStream in = s.getInputStream();
@@ -626,7 +718,7 @@ class SAMv3Handler extends SAMv1Handler
 						break;
 					}
 					// Only read under lock
-					// And execSessionMessage() must lock before interrupting us
+					// And stop() must lock before interrupting us
 					// Because interrupting a SocketChannel read will close the socket
 					synchronized(socketRLock) {
 						s.setSoTimeout(20);
@@ -636,30 +728,8 @@ class SAMv3Handler extends SAMv1Handler
 								int c = in.read();
 								if (c < 0)
 									throw new IOException("Socket closed");
-								if (c == '\n') {
-									String line = buf.toString();
-									buf.setLength(0);					
-									try {
-										Properties props = SAMUtils.parseParams(line);
-										String domain = props.getProperty(SAMUtils.COMMAND);
-										if (domain == null)
-											continue;  // empty line
-										if (domain.equals("QUIT") || domain.equals("STOP") || domain.equals("EXIT")) {
-											_log.error("SAM socket closed while waiting for tunnels to build");
-											writeString(SESSION_ERROR, "Tunnel build interrupted");
-											writeString(domain + " STATUS RESULT=OK", "bye");
-											try { closeClientSocket(); } catch (IOException ioe) {}
-											_handler.interrupt();
-											return;
-										}
-										ignoredCommand = domain;
-									} catch (SAMException e) {
-										ignoredCommand = "SESSION";
-									}
-									if (_log.shouldWarn())
-										_log.warn("Ignoring SAM command during tunnel build: " + line);
-								}
-								buf.append((char) c);
+								if (process(c))
+									return;
 							}
 						} catch (SocketTimeoutException ste) {}
 						s.setSoTimeout(0);
@@ -672,6 +742,41 @@ class SAMv3Handler extends SAMv1Handler
 				_handler.interrupt();
 			}
 		}
+
+		/**
+		 *  Process one character of the next command.
+		 *
+		 *  @return true if the client quit and the socket was closed
+		 *  @since 0.9.65 split out of run()
+		 */
+		private boolean process(int c) {
+			if (c != '\n') {
+				buf.append((char) c);
+				return false;
+			}
+			String line = buf.toString();
+			buf.setLength(0);
+			try {
+				Properties props = SAMUtils.parseParams(line);
+				String domain = props.getProperty(SAMUtils.COMMAND);
+				if (domain == null)
+					return false;  // empty line
+				if (domain.equals("QUIT") || domain.equals("STOP") || domain.equals("EXIT")) {
+					_log.error("SAM socket closed while waiting for tunnels to build");
+					writeString(SESSION_ERROR, "Tunnel build interrupted");
+					writeString(domain + " STATUS RESULT=OK", "bye");
+					try { closeClientSocket(); } catch (IOException ioe) {}
+					_handler.interrupt();
+					return true;
+				}
+				ignoredCommand = domain;
+			} catch (SAMException e) {
+				ignoredCommand = "SESSION";
+			}
+			if (_log.shouldWarn())
+				_log.warn("Ignoring SAM command during tunnel build: " + line);
+			return false;
+		}
 	}
 
 	/**
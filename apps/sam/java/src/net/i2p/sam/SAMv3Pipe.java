@@ -0,0 +1,261 @@
+package net.i2p.sam;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.i2p.I2PAppContext;
+import net.i2p.client.streaming.I2PSocket;
+import net.i2p.util.Log;
+
+/**
+ *  Both directions between a SAM client socket and an I2P socket,
+ *  without a thread per direction.
+ *
+ *  Client to I2P: the shared selector waits for data from the client,
+ *  then a worker drains it into the I2P stream, which may block,
+ *  and rearms the selector. Idle clients do not hold a thread.
+ *
+ *  I2P to client: I2P streams are not selectable, so a worker
+ *  blocks on the I2P input stream, and when the client socket is full,
+ *  waits for the selector to report it writable.
+ *
+ *  Either side closing closes everything, as the threaded pipes did.
+ *
+ *  @since 0.9.65
+ */
+class SAMv3Pipe implements SAMv3Selector.Listener, Handler {
+
+    private final SAMv3Selector _selector;
+    private final SocketChannel _client;
+    private final I2PSocket _i2ps;
+    private final InputStream _fromI2P;
+    private final OutputStream _toI2P;
+    private final SAMBridge _bridge;
+    private final Set<SAMv3Pipe> _pipes;
+    private final Log _log;
+    private SAMv3Selector.Registration _reg;
+    /** the following are guarded by this */
+    private boolean _readArmed = true;
+    private boolean _writeWaiting;
+    private boolean _closed;
+
+    private static final long MAX_WRITE_WAIT = 60*1000;
+
+    /**
+     *  Caller must call start().
+     *
+     *  @param client will be set non-blocking, must not be an SSLSocketChannel
+     *  @param bridge may be null
+     *  @param pipes we add ourselves here and remove ourselves when closed, may be null
+     */
+    public SAMv3Pipe(SAMv3Selector selector, SocketChannel client, I2PSocket i2ps,
+                     SAMBridge bridge, Set<SAMv3Pipe> pipes) throws IOException {
+        _selector = selector;
+        _client = client;
+        _i2ps = i2ps;
+        _fromI2P = i2ps.getInputStream();
+        _toI2P = i2ps.getOutputStream();
+        _bridge = bridge;
+        _pipes = pipes;
+        _log = I2PAppContext.getGlobalContext().logManager().getLog(SAMv3Pipe.class);
+    }
+
+    /**
+     *  @throws IOException on failure, the caller should close the sockets
+     */
+    public void start() throws IOException {
+        _client.configureBlocking(false);
+        if (_pipes != null)
+            _pipes.add(this);
+        if (_bridge != null)
+            _bridge.register(this);
+        try {
+            _selector.execute(new I2PReader());
+        } catch (RejectedExecutionException ree) {
+            close();
+            throw new IOException("SAM shutting down");
+        }
+        synchronized(this) {
+            if (_closed)
+                return;
+            _reg = _selector.register(_client, SelectionKey.OP_READ, this);
+        }
+    }
+
+    /**
+     *  Selector thread
+     */
+    public void ready(SAMv3Selector.Registration reg, int readyOps) {
+        boolean read = false;
+        synchronized(this) {
+            if (_closed)
+                return;
+            if ((readyOps & SelectionKey.OP_READ) != 0 && _readArmed) {
+                _readArmed = false;
+                read = true;
+            }
+            if ((readyOps & SelectionKey.OP_WRITE) != 0 && _writeWaiting) {
+                _writeWaiting = false;
+                notifyAll();
+            }
+            updateInterest();
+        }
+        if (read) {
+            try {
+                _selector.execute(new ClientReader());
+            } catch (RejectedExecutionException ree) {
+                close();
+            }
+        }
+    }
+
+    /** caller must synch */
+    private void updateInterest() {
+        if (_reg == null)
+            return;
+        int ops = 0;
+        if (_readArmed)
+            ops |= SelectionKey.OP_READ;
+        if (_writeWaiting)
+            ops |= SelectionKey.OP_WRITE;
+        _selector.setInterest(_reg, ops);
+    }
+
+    /**
+     *  Write all of buf to the non-blocking client socket,
+     *  waiting for the selector when it is full.
+     */
+    private void writeToClient(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (_client.write(buf) > 0)
+                continue;
+            synchronized(this) {
+                if (_closed)
+                    throw new IOException("closed");
+                _writeWaiting = true;
+                updateInterest();
+                long end = System.currentTimeMillis() + MAX_WRITE_WAIT;
+                long now;
+                while (_writeWaiting && !_closed && (now = System.currentTimeMillis()) < end) {
+                    try {
+                        wait(end - now);
+                    } catch (InterruptedException ie) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (_closed)
+                    throw new IOException("closed");
+                if (_writeWaiting)
+                    throw new IOException("timeout writing to SAM client");
+            }
+        }
+    }
+
+    /**
+     *  Worker thread, started when the client has data, runs until it doesn't.
+     */
+    private class ClientReader implements Runnable {
+        public void run() {
+            ByteBuffer buf = _selector.acquireBuffer();
+            try {
+                while (true) {
+                    buf.clear();
+                    int n = _client.read(buf);
+                    if (n < 0) {
+                        close();
+                        return;
+                    }
+                    if (n == 0)
+                        break;
+                    // blocks while the window is full
+                    _toI2P.write(buf.array(), 0, n);
+                }
+                synchronized(SAMv3Pipe.this) {
+                    if (_closed)
+                        return;
+                    _readArmed = true;
+                    updateInterest();
+                }
+            } catch (IOException ioe) {
+                if (_log.shouldDebug())
+                    _log.debug("Client to I2P pipe closed", ioe);
+                close();
+            } finally {
+                _selector.releaseBuffer(buf);
+            }
+        }
+    }
+
+    /**
+     *  Worker thread for the life of the pipe
+     */
+    private class I2PReader implements Runnable {
+        public void run() {
+            ByteBuffer buf = _selector.acquireBuffer();
+            byte[] data = buf.array();
+            try {
+                int n;
+                while ((n = _fromI2P.read(data, 0, data.length)) >= 0) {
+                    buf.clear();
+                    buf.limit(n);
+                    writeToClient(buf);
+                }
+            } catch (IOException ioe) {
+                if (_log.shouldDebug())
+                    _log.debug("I2P to client pipe closed", ioe);
+            } finally {
+                close();
+                _selector.releaseBuffer(buf);
+            }
+        }
+    }
+
+    /**
+     *  Close both sockets. Idempotent.
+     */
+    public void close() {
+        SAMv3Selector.Registration reg;
+        synchronized(this) {
+            if (_closed)
+                return;
+            _closed = true;
+            reg = _reg;
+            notifyAll();
+        }
+        if (reg != null)
+            _selector.unregister(reg, false);
+        try {
+            _client.close();
+        } catch (IOException ioe) {}
+        try {
+            // graceful close, sends any data written
+            _toI2P.close();
+        } catch (IOException ioe) {}
+        try {
+            _i2ps.close();
+        } catch (IOException ioe) {}
+        if (_pipes != null)
+            _pipes.remove(this);
+        if (_bridge != null)
+            _bridge.unregister(this);
+    }
+
+    /**
+     *  Handler interface
+     */
+    public void stopHandling() {
+        close();
+    }
+
+    @Override
+    public String toString() {
+        return "SAMv3Pipe " + _i2ps;
+    }
+}
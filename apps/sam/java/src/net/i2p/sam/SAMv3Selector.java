@@ -0,0 +1,320 @@
+package net.i2p.sam;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.I2PAppThread;
+import net.i2p.util.Log;
+
+/**
+ *  A single selector thread for the client sockets of all SAMv3 sessions,
+ *  a shared pool of worker threads for the blocking I2P side,
+ *  and a shared pool of transfer buffers.
+ *
+ *  Channels are registered with a Listener, which is called on the
+ *  selector thread and must not block.
+ *  Interest ops may be changed from any thread.
+ *
+ *  SSLSocketChannels are not selectable and may not be registered.
+ *
+ *  @since 0.9.65
+ */
+class SAMv3Selector implements Runnable {
+
+    private final Log _log;
+    private final Selector _selector;
+    private final Thread _thread;
+    private final Queue<Registration> _pending;
+    private final ThreadPoolExecutor _workers;
+    private final LinkedBlockingQueue<ByteBuffer> _buffers;
+
+    public static final int BUFFER_SIZE = 16*1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final long WORKER_IDLE_TIME = 60*1000;
+    private static final long MAX_UNREGISTER_WAIT = 5*1000;
+
+    private static SAMv3Selector _instance;
+
+    /**
+     *  Called on the selector thread. Must not block.
+     */
+    interface Listener {
+        /**
+         *  The ready ops remain in the interest set until changed
+         *  with setInterest(), so the listener should remove them
+         *  if it is going to handle them in another thread.
+         */
+        public void ready(Registration reg, int readyOps);
+    }
+
+    /**
+     *  A registered channel.
+     */
+    static class Registration {
+        private final SelectableChannel _channel;
+        private final Listener _listener;
+        /** selector thread only */
+        private SelectionKey _key;
+        /** guarded by this */
+        private int _ops;
+        private boolean _cancelled;
+        private boolean _queued;
+        private boolean _done;
+
+        private Registration(SelectableChannel channel, int ops, Listener listener) {
+            _channel = channel;
+            _ops = ops;
+            _listener = listener;
+        }
+
+        public SelectableChannel getChannel() {
+            return _channel;
+        }
+    }
+
+    private SAMv3Selector() throws IOException {
+        _log = I2PAppContext.getGlobalContext().logManager().getLog(SAMv3Selector.class);
+        _selector = Selector.open();
+        _pending = new ConcurrentLinkedQueue<Registration>();
+        _buffers = new LinkedBlockingQueue<ByteBuffer>(MAX_POOLED_BUFFERS);
+        // unbounded, like the threads it replaces, but the threads are reused,
+        // and only the I2P side of active streams needs one
+        _workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, WORKER_IDLE_TIME, TimeUnit.MILLISECONDS,
+                                          new SynchronousQueue<Runnable>(), new WorkerThreadFactory());
+        _thread = new I2PAppThread(this, "SAM Selector", true);
+    }
+
+    /**
+     *  The selector thread is started on first use and runs until the JVM exits.
+     */
+    public static synchronized SAMv3Selector getInstance() throws IOException {
+        if (_instance == null) {
+            _instance = new SAMv3Selector();
+            _instance._thread.start();
+        }
+        return _instance;
+    }
+
+    /**
+     *  Register a non-blocking channel. Asynchronous.
+     *
+     *  @param ops the initial interest ops
+     *  @return the handle for setInterest() and unregister()
+     */
+    public Registration register(SelectableChannel channel, int ops, Listener listener) {
+        if (channel.isBlocking())
+            throw new IllegalArgumentException("Channel must be non-blocking");
+        Registration rv = new Registration(channel, ops, listener);
+        synchronized(rv) {
+            rv._queued = true;
+        }
+        _pending.offer(rv);
+        _selector.wakeup();
+        return rv;
+    }
+
+    /**
+     *  Change the interest ops. May be called from any thread.
+     */
+    public void setInterest(Registration reg, int ops) {
+        boolean queue;
+        synchronized(reg) {
+            if (reg._cancelled || reg._ops == ops)
+                return;
+            reg._ops = ops;
+            if (Thread.currentThread() == _thread && reg._key != null) {
+                // safe to apply directly
+                applyInterest(reg);
+                return;
+            }
+            queue = !reg._queued;
+            reg._queued = true;
+        }
+        if (queue) {
+            _pending.offer(reg);
+            _selector.wakeup();
+        }
+    }
+
+    /**
+     *  Cancel the registration.
+     *  If wait is true, blocks until the channel is deregistered from the selector,
+     *  after which it may be put back in blocking mode.
+     *  An interrupt does not end the wait early, the interrupt status is restored on return.
+     *  Do not call with wait = true from a Listener.
+     *
+     *  @return true if the channel is no longer registered with the selector,
+     *          false if wait is false or it timed out; if false, the channel
+     *          may not be put back in blocking mode
+     */
+    public boolean unregister(Registration reg, boolean wait) {
+        boolean queue;
+        synchronized(reg) {
+            if (reg._cancelled && !wait)
+                return !reg._channel.isRegistered();
+            reg._cancelled = true;
+            queue = !reg._queued;
+            reg._queued = true;
+        }
+        if (queue)
+            _pending.offer(reg);
+        _selector.wakeup();
+        if (!wait || Thread.currentThread() == _thread)
+            return !reg._channel.isRegistered();
+        long end = System.currentTimeMillis() + MAX_UNREGISTER_WAIT;
+        boolean interrupted = false;
+        synchronized(reg) {
+            long now;
+            while (!reg._done && (now = System.currentTimeMillis()) < end) {
+                try {
+                    reg.wait(end - now);
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return !reg._channel.isRegistered();
+    }
+
+    /**
+     *  Run a blocking task on a worker thread.
+     *
+     *  @throws java.util.concurrent.RejectedExecutionException if shut down
+     */
+    public void execute(Runnable task) {
+        _workers.execute(task);
+    }
+
+    /**
+     *  A cleared heap buffer of BUFFER_SIZE. Return it with releaseBuffer().
+     */
+    public ByteBuffer acquireBuffer() {
+        ByteBuffer rv = _buffers.poll();
+        if (rv == null)
+            rv = ByteBuffer.allocate(BUFFER_SIZE);
+        return rv;
+    }
+
+    public void releaseBuffer(ByteBuffer buf) {
+        buf.clear();
+        _buffers.offer(buf);
+    }
+
+    public void run() {
+        List<Registration> cancelled = new ArrayList<Registration>();
+        while (true) {
+            try {
+                _selector.select();
+                processSelected();
+                processPending(cancelled);
+                if (!cancelled.isEmpty()) {
+                    // flush the cancelled keys so the channels are deregistered
+                    _selector.selectNow();
+                    processSelected();
+                    for (Registration reg : cancelled) {
+                        synchronized(reg) {
+                            reg._done = true;
+                            reg.notifyAll();
+                        }
+                    }
+                    cancelled.clear();
+                }
+            } catch (IOException ioe) {
+                _log.error("SAM selector error", ioe);
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {}
+            } catch (RuntimeException re) {
+                _log.error("SAM selector error", re);
+            }
+        }
+    }
+
+    private void processSelected() {
+        for (Iterator<SelectionKey> iter = _selector.selectedKeys().iterator(); iter.hasNext(); ) {
+            SelectionKey key = iter.next();
+            iter.remove();
+            Registration reg = (Registration) key.attachment();
+            int ready;
+            try {
+                if (!key.isValid())
+                    continue;
+                ready = key.readyOps();
+            } catch (CancelledKeyException cke) {
+                continue;
+            }
+            try {
+                reg._listener.ready(reg, ready);
+            } catch (RuntimeException re) {
+                _log.error("SAM selector listener error", re);
+                unregister(reg, false);
+            }
+        }
+    }
+
+    private void processPending(List<Registration> cancelled) {
+        Registration reg;
+        while ((reg = _pending.poll()) != null) {
+            synchronized(reg) {
+                reg._queued = false;
+                if (reg._cancelled) {
+                    if (reg._key != null)
+                        reg._key.cancel();
+                    cancelled.add(reg);
+                } else if (reg._key == null) {
+                    try {
+                        reg._key = reg._channel.register(_selector, reg._ops, reg);
+                    } catch (ClosedChannelException cce) {
+                        reg._cancelled = true;
+                        cancelled.add(reg);
+                    } catch (RuntimeException re) {
+                        _log.error("SAM selector register error", re);
+                        reg._cancelled = true;
+                        cancelled.add(reg);
+                    }
+                } else {
+                    applyInterest(reg);
+                }
+            }
+        }
+    }
+
+    /** selector thread, caller must synch on reg */
+    private static void applyInterest(Registration reg) {
+        try {
+            reg._key.interestOps(reg._ops);
+        } catch (CancelledKeyException cke) {}
+    }
+
+    /** just to set the name and set Daemon */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread rv = Executors.defaultThreadFactory().newThread(r);
+            rv.setName("SAM Pipe " + _count.incrementAndGet());
+            rv.setDaemon(true);
+            return rv;
+        }
+    }
+}
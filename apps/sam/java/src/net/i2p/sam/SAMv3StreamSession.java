@@ -22,6 +22,7 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,6 +37,7 @@ import net.i2p.client.streaming.I2PSocketManager;
 import net.i2p.client.streaming.I2PSocketOptions;
 import net.i2p.data.DataFormatException;
 import net.i2p.data.Destination;
+import net.i2p.util.ConcurrentHashSet;
 import net.i2p.util.I2PAppThread;
 import net.i2p.util.I2PSSLSocketFactory;
 import net.i2p.util.Log;
@@ -59,6 +61,8 @@ class SAMv3StreamSession  extends SAMStreamSession implements Session
 		private final AtomicInteger _acceptors = new AtomicInteger();
 		/** for subsession only, null otherwise */
 		private final LinkedBlockingQueue<I2PSocket> _acceptQueue;
+		/** selector pipes, so we can close them */
+		private final Set<SAMv3Pipe> _pipes = new ConcurrentHashSet<SAMv3Pipe>();
 
 		private static I2PSSLSocketFactory _sslSocketFactory;
 	
@@ -202,18 +206,8 @@ class SAMv3StreamSession  extends SAMStreamSession implements Session
 
 	        handler.stealSocket() ;
 	        
-	        ReadableByteChannel fromClient = handler.getClientSocket();
-	        ReadableByteChannel fromI2P    = Channels.newChannel(i2ps.getInputStream());
-	        WritableByteChannel toClient   = handler.getClientSocket();
-	        WritableByteChannel toI2P      = Channels.newChannel(i2ps.getOutputStream());
-	        
-		SAMBridge bridge = handler.getBridge();
-		(new I2PAppThread(rec.getThreadGroup(),
-		            new Pipe(fromClient, toI2P, bridge),
-		            "ConnectV3 SAMPipeClientToI2P")).start();
-		(new I2PAppThread(rec.getThreadGroup(),
-		            new Pipe(fromI2P, toClient, bridge),
-		            "ConnectV3 SAMPipeI2PToClient")).start();
+		startPipes(handler.getClientSocket(), i2ps, handler.getBridge(),
+		           rec.getThreadGroup(), "ConnectV3");
 	    }
 
 	    /**
@@ -264,18 +258,34 @@ class SAMv3StreamSession  extends SAMStreamSession implements Session
 			                                       i2ps.getPort(), i2ps.getLocalPort());
 		}
 	        handler.stealSocket() ;
-	        ReadableByteChannel fromClient = handler.getClientSocket();
-	        ReadableByteChannel fromI2P    = Channels.newChannel(i2ps.getInputStream());
-	        WritableByteChannel toClient   = handler.getClientSocket();
-	        WritableByteChannel toI2P      = Channels.newChannel(i2ps.getOutputStream());
-	        
-		SAMBridge bridge = handler.getBridge();
-		(new I2PAppThread(rec.getThreadGroup(),
-		            new Pipe(fromClient, toI2P, bridge),
-		            "AcceptV3 SAMPipeClientToI2P")).start();
-		(new I2PAppThread(rec.getThreadGroup(),
-		            new Pipe(fromI2P, toClient, bridge),
-		            "AcceptV3 SAMPipeI2PToClient")).start();
+		startPipes(handler.getClientSocket(), i2ps, handler.getBridge(),
+		           rec.getThreadGroup(), "AcceptV3");
+	    }
+
+	    /**
+	     *  Pipe data between the client and I2P sockets.
+	     *  Uses the shared selector unless the client socket is SSL,
+	     *  which is not selectable; then it's two threads.
+	     *
+	     *  @param bridge may be null
+	     *  @param group for the SSL threads, may be null
+	     *  @since 0.9.65
+	     */
+	    private void startPipes(SocketChannel client, I2PSocket i2ps, SAMBridge bridge,
+	                            ThreadGroup group, String name) throws IOException {
+		if (!(client instanceof SSLSocketChannel)) {
+			SAMv3Pipe pipe = new SAMv3Pipe(SAMv3Selector.getInstance(), client, i2ps, bridge, _pipes);
+			pipe.start();
+			return;
+		}
+		ReadableByteChannel fromClient = client;
+		ReadableByteChannel fromI2P    = Channels.newChannel(i2ps.getInputStream());
+		WritableByteChannel toClient   = client;
+		WritableByteChannel toI2P      = Channels.newChannel(i2ps.getOutputStream());
+		(new I2PAppThread(group, new Pipe(fromClient, toI2P, bridge),
+		                  name + " SAMPipeClientToI2P")).start();
+		(new I2PAppThread(group, new Pipe(fromI2P, toClient, bridge),
+		                  name + " SAMPipeI2PToClient")).start();
 	    }
 
 	    
@@ -420,14 +430,7 @@ class SAMv3StreamSession  extends SAMStreamSession implements Session
 	    							clientServerSock, i2ps.getPeerDestination());
 						}
 					}
-	    				ReadableByteChannel fromClient = clientServerSock ;
-	    				ReadableByteChannel fromI2P    = Channels.newChannel(i2ps.getInputStream());
-	    				WritableByteChannel toClient   = clientServerSock ;
-	    				WritableByteChannel toI2P      = Channels.newChannel(i2ps.getOutputStream());
-	    				(new I2PAppThread(new Pipe(fromClient, toI2P, null),
-					                  "ForwardV3 SAMPipeClientToI2P")).start();
-	    				(new I2PAppThread(new Pipe(fromI2P,toClient, null),
-					                  "ForwardV3 SAMPipeI2PToClient")).start();
+	    				startPipes(clientServerSock, i2ps, null, null, "ForwardV3");
 
 	    			} catch (IOException e) {
 	    				try {
@@ -544,5 +547,9 @@ class SAMv3StreamSession  extends SAMStreamSession implements Session
 	    public void close() {
 		if (_isOwnSession)
 			socketMgr.destroySocketManager();
+		// the pipes are not in the session's thread group, close them here
+		for (SAMv3Pipe pipe : _pipes) {
+			pipe.close();
+		}
 	    }
 }
@@ -0,0 +1,100 @@
+package net.i2p.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.southernstorm.noise.crypto.x25519.Curve25519;
+
+import net.i2p.I2PAppContext;
+
+/**
+ * X25519 key generation and DH, in operations per second.
+ *
+ * handshake() is one side of a Noise XK handshake as in NTCP2 and SSU2:
+ * one ephemeral key generation and three DH.
+ * handshake2() runs it in two threads, there is no shared state
+ * so it should scale with the cores, as the precalc helper threads do.
+ *
+ * Results (2026-10, 4 core x86_64, ops/s, main()-based, noisy):
+ * <pre>
+ *              0.9.64   0.9.65
+ * keygen        2200    11500
+ * dh            2200     3900
+ * handshake      550     1100
+ * </pre>
+ *
+ * @since 0.9.65
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class X25519Bench {
+    I2PAppContext ctx = I2PAppContext.getGlobalContext();
+    byte[] priv, pub, remotePub, out;
+
+    @Setup
+    public void prepare() {
+        priv = new byte[32];
+        pub = new byte[32];
+        remotePub = new byte[32];
+        out = new byte[32];
+        byte[] remotePriv = new byte[32];
+        ctx.random().nextBytes(priv);
+        ctx.random().nextBytes(remotePriv);
+        Curve25519.eval(pub, 0, priv, null);
+        Curve25519.eval(remotePub, 0, remotePriv, null);
+    }
+
+    @Benchmark
+    public byte[] keygen() {
+        Curve25519.eval(out, 0, priv, null);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] dh() {
+        Curve25519.eval(out, 0, priv, remotePub);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] handshake() {
+        Curve25519.eval(out, 0, priv, null);
+        Curve25519.eval(out, 0, priv, remotePub);
+        Curve25519.eval(out, 0, priv, remotePub);
+        Curve25519.eval(out, 0, priv, remotePub);
+        return out;
+    }
+
+    @Benchmark
+    @Threads(2)
+    public byte[] handshake2() {
+        return handshake();
+    }
+
+    public static void main(String args[]) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(X25519Bench.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,109 @@
+package net.i2p.crypto.eddsa;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.i2p.I2PAppContext;
+import net.i2p.crypto.KeyGenerator;
+import net.i2p.crypto.SigType;
+import net.i2p.crypto.SigUtil;
+import net.i2p.data.Signature;
+import net.i2p.data.SigningPrivateKey;
+import net.i2p.data.SigningPublicKey;
+import net.i2p.data.SimpleDataStructure;
+
+/**
+ * Ed25519 verification of a batch of signatures, one at a time
+ * with verifySignature() vs. EdDSABatchVerifier.
+ * Time is per batch, divide by the batch size.
+ *
+ * The keys are cached by SigUtil after the first pass, so the individual
+ * times don't include the -A precomputation that a new key costs.
+ *
+ * Results (2026-10, 4 core x86_64, us per signature, main()-based, noisy):
+ * <pre>
+ * size  individual  batch
+ *    1     220       215
+ *    4     235       145
+ *   16     245       100
+ *   64     265       130
+ *  256     230       110
+ * </pre>
+ *
+ * @since 0.9.65
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EdDSABench {
+    I2PAppContext ctx = I2PAppContext.getGlobalContext();
+
+    @Param({"1", "4", "16", "64", "256"})
+    public int size;
+
+    Signature[] sigs;
+    byte[][] data;
+    SigningPublicKey[] keys;
+    EdDSAPublicKey[] edKeys;
+    byte[][] sigBytes;
+
+    @Setup
+    public void prepare() throws Exception {
+        sigs = new Signature[size];
+        data = new byte[size][];
+        keys = new SigningPublicKey[size];
+        edKeys = new EdDSAPublicKey[size];
+        sigBytes = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            SimpleDataStructure[] kp = KeyGenerator.getInstance().generateSigningKeys(SigType.EdDSA_SHA512_Ed25519);
+            keys[i] = (SigningPublicKey) kp[0];
+            // typical RouterInfo
+            data[i] = new byte[500];
+            ctx.random().nextBytes(data[i]);
+            sigs[i] = ctx.dsa().sign(data[i], (SigningPrivateKey) kp[1]);
+            edKeys[i] = SigUtil.toJavaEdDSAKey(keys[i]);
+            sigBytes[i] = sigs[i].getData();
+        }
+    }
+
+    @Benchmark
+    public boolean individual() {
+        boolean rv = true;
+        for (int i = 0; i < size; i++) {
+            rv &= ctx.dsa().verifySignature(sigs[i], data[i], keys[i]);
+        }
+        return rv;
+    }
+
+    @Benchmark
+    public boolean[] batch() {
+        return EdDSABatchVerifier.verify(SigType.EdDSA_SHA512_Ed25519.getDigestInstance(),
+                                         edKeys, data, sigBytes);
+    }
+
+    public static void main(String args[]) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(EdDSABench.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,122 @@
+package net.i2p.data;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Base64 and Base32, String API vs. the byte[] and Appendable API.
+ * 32 bytes is a Hash, 391 bytes is a typical Destination.
+ * Base64 decode is close to the old time, most of it is the allocations.
+ *
+ * Results (2026-10, 4 core x86_64, ns per op, main()-based, noisy),
+ * old is the String API before 0.9.65:
+ * <pre>
+ *                    old    String  byte[]  Appendable
+ * b64 encode   32    350     130      70       90
+ * b64 encode  391   3400     830     700      900
+ * b64 decode  391   1300    1150    1000       -
+ * b32 encode   32    290     110      95       -
+ * b32 decode   32    300     150     130       -
+ * </pre>
+ *
+ * @since 0.9.65
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Base64Bench {
+
+    @Param({"32", "391"})
+    public int size;
+
+    byte[] data;
+    String b64;
+    String b32;
+    byte[] out;
+    StringBuilder sb;
+
+    @Setup
+    public void prepare() {
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        b64 = Base64.encode(data);
+        b32 = Base32.encode(data);
+        out = new byte[Math.max(Base64.encodedLength(size), Base32.encodedLength(size))];
+        sb = new StringBuilder(out.length);
+    }
+
+    @Benchmark
+    public String base64EncodeString() {
+        return Base64.encode(data);
+    }
+
+    @Benchmark
+    public int base64EncodeBytes() {
+        return Base64.encode(data, 0, size, out, 0);
+    }
+
+    @Benchmark
+    public int base64EncodeAppendable() throws IOException {
+        sb.setLength(0);
+        Base64.encode(data, 0, size, sb);
+        return sb.length();
+    }
+
+    @Benchmark
+    public byte[] base64DecodeString() {
+        return Base64.decode(b64);
+    }
+
+    @Benchmark
+    public int base64DecodeBytes() {
+        return Base64.decode(b64, 0, b64.length(), out, 0);
+    }
+
+    @Benchmark
+    public String base32EncodeString() {
+        return Base32.encode(data);
+    }
+
+    @Benchmark
+    public int base32EncodeBytes() {
+        return Base32.encode(data, 0, size, out, 0);
+    }
+
+    @Benchmark
+    public byte[] base32DecodeString() {
+        return Base32.decode(b32);
+    }
+
+    @Benchmark
+    public int base32DecodeBytes() {
+        return Base32.decode(b32, 0, b32.length(), out, 0);
+    }
+
+    public static void main(String args[]) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(Base64Bench.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,163 @@
+package net.i2p.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.i2p.client.I2PClient;
+import net.i2p.client.I2PClientFactory;
+import net.i2p.crypto.EncType;
+import net.i2p.crypto.KeyGenerator;
+import net.i2p.crypto.SigType;
+import net.i2p.util.RandomSource;
+
+/**
+ * Destination and LeaseSet2 serialization, streams vs. ByteBuffers.
+ * Ed25519 destination, LS2 with X25519 and ElGamal keys, 4 leases and 2 options.
+ * The reads don't go through the Destination cache.
+ * See RouterInfoBench in the router tests for RouterInfos.
+ *
+ * Results (2026-10, ns per op, main()-based, 1 core VM, noisy,
+ * average of two runs):
+ * <pre>
+ *                 stream   buffer
+ * dest write         225       65
+ * dest read          650      410
+ * LS2 write         1400      550
+ * LS2 read          3450     1500
+ * </pre>
+ *
+ * @since 0.9.65
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataStructureBench {
+
+    Destination dest;
+    byte[] destBytes;
+    LeaseSet2 ls2;
+    byte[] ls2Bytes;
+
+    @State(Scope.Thread)
+    public static class Buffers {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+    }
+
+    @Setup
+    public void prepare() throws Exception {
+        I2PClient client = I2PClientFactory.createClient();
+        ByteArrayOutputStream keys = new ByteArrayOutputStream();
+        client.createDestination(keys, SigType.EdDSA_SHA512_Ed25519);
+        PrivateKeyFile pkf = new PrivateKeyFile(new ByteArrayInputStream(keys.toByteArray()));
+        dest = pkf.getDestination();
+        destBytes = dest.toByteArray();
+
+        ls2 = new LeaseSet2();
+        ls2.setDestination(dest);
+        long now = System.currentTimeMillis() + 5*60*1000;
+        RandomSource rand = RandomSource.getInstance();
+        for (int i = 0; i < 4; i++) {
+            Lease2 l2 = new Lease2();
+            l2.setEndDate(new Date(now + i * 10000));
+            byte[] gw = new byte[Hash.HASH_LENGTH];
+            rand.nextBytes(gw);
+            l2.setGateway(new Hash(gw));
+            l2.setTunnelId(new TunnelId(1 + rand.nextLong(TunnelId.MAX_ID_VALUE - 1)));
+            ls2.addLease(l2);
+        }
+        Properties opts = new Properties();
+        opts.setProperty("s", "1");
+        opts.setProperty("t", "2");
+        ls2.setOptions(opts);
+        ls2.addEncryptionKey(KeyGenerator.getInstance().generatePKIKeys(EncType.ECIES_X25519).getPublic());
+        ls2.addEncryptionKey((PublicKey) KeyGenerator.getInstance().generatePKIKeys()[0]);
+        ls2.sign(pkf.getSigningPrivKey());
+        ls2Bytes = ls2.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] destWriteStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(400);
+        dest.writeBytes(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public ByteBuffer destWriteBuffer(Buffers b) throws Exception {
+        b.buf.clear();
+        dest.writeBytes(b.buf);
+        return b.buf;
+    }
+
+    @Benchmark
+    public Destination destReadStream() throws Exception {
+        Destination d = new Destination();
+        d.readBytes(new ByteArrayInputStream(destBytes));
+        return d;
+    }
+
+    @Benchmark
+    public Destination destReadBuffer() throws Exception {
+        Destination d = new Destination();
+        d.readBytes(ByteBuffer.wrap(destBytes));
+        return d;
+    }
+
+    @Benchmark
+    public byte[] ls2WriteStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        ls2.writeBytes(out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public ByteBuffer ls2WriteBuffer(Buffers b) throws Exception {
+        b.buf.clear();
+        ls2.writeBytes(b.buf);
+        return b.buf;
+    }
+
+    @Benchmark
+    public LeaseSet2 ls2ReadStream() throws Exception {
+        LeaseSet2 ls = new LeaseSet2();
+        ls.readBytes(new ByteArrayInputStream(ls2Bytes));
+        return ls;
+    }
+
+    @Benchmark
+    public LeaseSet2 ls2ReadBuffer() throws Exception {
+        LeaseSet2 ls = new LeaseSet2();
+        ls.readBytes(ByteBuffer.wrap(ls2Bytes));
+        return ls;
+    }
+
+    public static void main(String args[]) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(DataStructureBench.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+}
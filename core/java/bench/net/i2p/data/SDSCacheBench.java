@@ -0,0 +1,85 @@
+package net.i2p.data;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * SDSCache lookups of Hashes from a working set that fits in the cache (mostly hits)
+ * and one that is 10 times larger (mostly misses and evictions).
+ * Includes a clone of the 32 bytes, as the cache takes ownership of the data.
+ *
+ * Results (2026-10, ns per op per thread, main()-based, 1 core VM, noisy),
+ * old is the LRU map of WeakReferences before 0.9.65:
+ * <pre>
+ *               ws    old    new
+ * 1 thread    1000     95     87
+ * 1 thread   20000    690    310
+ * 4 threads   1000    440    270
+ * 4 threads  20000   2400    790
+ * </pre>
+ *
+ * @since 0.9.65
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SDSCacheBench {
+
+    @Param({"1000", "20000"})
+    public int workingSet;
+
+    SDSCache<Hash> cache;
+    byte[][] keys;
+
+    @Setup
+    public void prepare() {
+        cache = new SDSCache<Hash>(Hash.class, Hash.HASH_LENGTH, 2048);
+        keys = new byte[workingSet][Hash.HASH_LENGTH];
+        Random r = new Random(42);
+        for (int i = 0; i < workingSet; i++) {
+            r.nextBytes(keys[i]);
+        }
+    }
+
+    @Benchmark
+    public Hash get() {
+        byte[] k = keys[ThreadLocalRandom.current().nextInt(workingSet)];
+        return cache.get(k.clone());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Hash get4() {
+        byte[] k = keys[ThreadLocalRandom.current().nextInt(workingSet)];
+        return cache.get(k.clone());
+    }
+
+    public static void main(String args[]) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(SDSCacheBench.class.getSimpleName())
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,96 @@
+package net.i2p.util;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import net.i2p.I2PAppContext;
+
+/**
+ * Contention on the shared Fortuna lock vs. per-thread generators
+ * (prng.threadLocal), with the small requests typical of
+ * the transports: padding sizes, IVs, peer selection.
+ * main() runs it with 1, 2, 4 and 8 threads;
+ * throughput should scale with the threads only with threadLocal=true.
+ *
+ * On a single core VM the two are about even (2.9 vs 3.6 M nextInt(n) +
+ * nextBytes(16) per second, 1 thread, main()-based), as there is no
+ * parallelism to gain.
+ *
+ * @since 0.9.65
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FortunaRandomSourceBench {
+
+    @Param({"false", "true"})
+    public boolean threadLocal;
+
+    RandomSource random;
+
+    @State(Scope.Thread)
+    public static class Buffers {
+        byte[] iv = new byte[16];
+        byte[] data = new byte[1024];
+    }
+
+    @Setup
+    public void prepare() {
+        Properties props = new Properties();
+        props.setProperty(FortunaRandomSource.PROP_THREAD_LOCAL, Boolean.toString(threadLocal));
+        random = new I2PAppContext(props).random();
+    }
+
+    @Benchmark
+    public int nextInt() {
+        return random.nextInt(1000);
+    }
+
+    @Benchmark
+    public long nextLong() {
+        return random.nextLong();
+    }
+
+    @Benchmark
+    public byte[] nextBytes16(Buffers b) {
+        random.nextBytes(b.iv);
+        return b.iv;
+    }
+
+    @Benchmark
+    public byte[] nextBytes1K(Buffers b) {
+        random.nextBytes(b.data);
+        return b.data;
+    }
+
+    public static void main(String args[]) throws RunnerException {
+        int[] threads = { 1, 2, 4, 8 };
+        for (int i = 0; i < threads.length; i++) {
+            Options opt = new OptionsBuilder()
+                    .include(FortunaRandomSourceBench.class.getSimpleName())
+                    .threads(threads[i])
+                    .build();
+
+            new Runner(opt).run();
+        }
+    }
+}
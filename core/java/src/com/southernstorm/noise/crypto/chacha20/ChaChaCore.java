@@ -44,30 +44,68 @@ public final class ChaChaCore {
 	 */
 	public static void hash(int[] output, int[] input)
 	{
-		int index;
-		
-		// Copy the input to the output to start with.
-		System.arraycopy(input, 0, output, 0, 16);
-		
+		// I2P - state in locals, so the JIT can keep it in registers
+		int x0 = input[0], x1 = input[1], x2 = input[2], x3 = input[3];
+		int x4 = input[4], x5 = input[5], x6 = input[6], x7 = input[7];
+		int x8 = input[8], x9 = input[9], x10 = input[10], x11 = input[11];
+		int x12 = input[12], x13 = input[13], x14 = input[14], x15 = input[15];
+
 		// Perform the 20 ChaCha rounds in groups of two.
-		for (index = 0; index < 20; index += 2) {
+		for (int index = 0; index < 20; index += 2) {
 			// Column round.
-			quarterRound(output, 0, 4, 8,  12);
-			quarterRound(output, 1, 5, 9,  13);
-			quarterRound(output, 2, 6, 10, 14);
-			quarterRound(output, 3, 7, 11, 15);
+			x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 16);
+			x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 12);
+			x0 += x4; x12 = Integer.rotateLeft(x12 ^ x0, 8);
+			x8 += x12; x4 = Integer.rotateLeft(x4 ^ x8, 7);
+			x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 16);
+			x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 12);
+			x1 += x5; x13 = Integer.rotateLeft(x13 ^ x1, 8);
+			x9 += x13; x5 = Integer.rotateLeft(x5 ^ x9, 7);
+			x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 16);
+			x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 12);
+			x2 += x6; x14 = Integer.rotateLeft(x14 ^ x2, 8);
+			x10 += x14; x6 = Integer.rotateLeft(x6 ^ x10, 7);
+			x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 16);
+			x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 12);
+			x3 += x7; x15 = Integer.rotateLeft(x15 ^ x3, 8);
+			x11 += x15; x7 = Integer.rotateLeft(x7 ^ x11, 7);
 
 			// Diagonal round.
-			quarterRound(output, 0, 5, 10, 15);
-			quarterRound(output, 1, 6, 11, 12);
-			quarterRound(output, 2, 7, 8,  13);
-			quarterRound(output, 3, 4, 9,  14);
+			x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 16);
+			x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 12);
+			x0 += x5; x15 = Integer.rotateLeft(x15 ^ x0, 8);
+			x10 += x15; x5 = Integer.rotateLeft(x5 ^ x10, 7);
+			x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 16);
+			x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 12);
+			x1 += x6; x12 = Integer.rotateLeft(x12 ^ x1, 8);
+			x11 += x12; x6 = Integer.rotateLeft(x6 ^ x11, 7);
+			x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 16);
+			x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 12);
+			x2 += x7; x13 = Integer.rotateLeft(x13 ^ x2, 8);
+			x8 += x13; x7 = Integer.rotateLeft(x7 ^ x8, 7);
+			x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 16);
+			x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 12);
+			x3 += x4; x14 = Integer.rotateLeft(x14 ^ x3, 8);
+			x9 += x14; x4 = Integer.rotateLeft(x4 ^ x9, 7);
 		}
 
 		// Add the input block to the output.
-		for (index = 0; index < 16; ++index) {
-			output[index] += input[index];
-		}
+		output[0] = x0 + input[0];
+		output[1] = x1 + input[1];
+		output[2] = x2 + input[2];
+		output[3] = x3 + input[3];
+		output[4] = x4 + input[4];
+		output[5] = x5 + input[5];
+		output[6] = x6 + input[6];
+		output[7] = x7 + input[7];
+		output[8] = x8 + input[8];
+		output[9] = x9 + input[9];
+		output[10] = x10 + input[10];
+		output[11] = x11 + input[11];
+		output[12] = x12 + input[12];
+		output[13] = x13 + input[13];
+		output[14] = x14 + input[14];
+		output[15] = x15 + input[15];
 	}
 
 	private static int char4(char c1, char c2, char c3, char c4)
@@ -143,38 +181,6 @@ public final class ChaChaCore {
 		output[15] = (int)(iv >> 32);
 	}
 	
-	private static int leftRotate16(int v)
-	{
-		return v << 16 | (v >>> 16);
-	}
-
-	private static int leftRotate12(int v)
-	{
-		return v << 12 | (v >>> 20);
-	}
-
-	private static int leftRotate8(int v)
-	{
-		return v << 8 | (v >>> 24);
-	}
-
-	private static int leftRotate7(int v)
-	{
-		return v << 7 | (v >>> 25);
-	}
-
-	private static void quarterRound(int[] v, int a, int b, int c, int d)
-	{
-		v[a] += v[b];
-		v[d] = leftRotate16(v[d] ^ v[a]);
-		v[c] += v[d];
-		v[b] = leftRotate12(v[b] ^ v[c]);
-		v[a] += v[b];
-		v[d] = leftRotate8(v[d] ^ v[a]);
-		v[c] += v[d];
-		v[b] = leftRotate7(v[b] ^ v[c]);
-	}
-
 	/**
 	 * XOR's the output of ChaCha20 with a byte buffer.
 	 * 
@@ -213,4 +219,36 @@ public final class ChaChaCore {
 			output[outputOffset] = (byte)(input[inputOffset] ^ value);
 		}
 	}
+
+	/**
+	 * XOR's the ChaCha20 key stream with a byte buffer, starting at the
+	 * block counter in input[12] and input[13], which are incremented
+	 * for each block.
+	 * 
+	 * @param input The ChaCha20 input block.
+	 * @param block Temporary storage for the output block, 16 words.
+	 * @param src The input byte buffer.
+	 * @param srcOffset The offset of the first input byte.
+	 * @param dst The output byte buffer (can be the same as the input).
+	 * @param dstOffset The offset of the first output byte.
+	 * @param length The number of bytes to XOR, any length.
+	 *
+	 * @since 0.9.65
+	 */
+	public static void xorKeyStream(int[] input, int[] block, byte[] src, int srcOffset,
+	                                byte[] dst, int dstOffset, int length)
+	{
+		while (length > 0) {
+			int tempLen = 64;
+			if (tempLen > length)
+				tempLen = length;
+			hash(block, input);
+			xorBlock(src, srcOffset, dst, dstOffset, tempLen, block);
+			if (++(input[12]) == 0)
+				++(input[13]);
+			srcOffset += tempLen;
+			dstOffset += tempLen;
+			length -= tempLen;
+		}
+	}
 }
@@ -213,8 +213,10 @@ public class FortunaStandalone extends BasePRNGStandalone implements Serializabl
    * The Fortuna generator function. The generator is a PRNG in its own
    * right; Fortuna itself is basically a wrapper around this generator
    * that manages reseeding in a secure way.
+   *
+   * i2p: package private since 0.9.65, for LocalFortunaStandalone
    */
-  private static class Generator extends BasePRNGStandalone implements Cloneable
+  static class Generator extends BasePRNGStandalone implements Cloneable
   {
 
     private static final int LIMIT = 1 << 20;
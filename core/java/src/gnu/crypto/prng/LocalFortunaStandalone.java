@@ -0,0 +1,87 @@
+package gnu.crypto.prng;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A Fortuna generator for a single thread, seeded from a shared
+ * Fortuna instance and periodically reseeded from it,
+ * so the callers don't contend for the shared instance's lock.
+ *
+ * The shared instance keeps the entropy pools; entropy added there
+ * reaches this generator at the next reseed.
+ * The generator is rekeyed after each buffer, as in Fortuna.
+ *
+ * Not thread safe! One instance per thread, typically in a ThreadLocal.
+ * addRandomByte() and addRandomBytes() are unsupported,
+ * add entropy to the parent.
+ *
+ * @since 0.9.65
+ */
+public class LocalFortunaStandalone extends BasePRNGStandalone {
+
+    private static final long serialVersionUID = 0xFACADE;
+
+    private static final int BUFSIZE = 4*1024;
+    private static final int SEED_SIZE = 32;
+    /** reseed after this many bytes */
+    public static final long RESEED_BYTES = 1024*1024;
+    /** reseed at the next refill after this many ms */
+    public static final long RESEED_INTERVAL = 10*1000;
+
+    private final IRandomStandalone _parent;
+    private final FortunaStandalone.Generator _generator;
+    private final byte[] _seed = new byte[SEED_SIZE];
+    private long _lastReseed;
+    private long _bytesSinceReseed;
+
+    /**
+     *  @param parent initialized, synchronized on when reseeding
+     *  @throws IllegalStateException if the parent is not initialized or shut down
+     */
+    public LocalFortunaStandalone(IRandomStandalone parent) {
+        super("Fortuna local i2p");
+        _parent = parent;
+        _generator = new FortunaStandalone.Generator();
+        buffer = new byte[BUFSIZE];
+        synchronized(parent) {
+            parent.nextBytes(_seed);
+        }
+        Map<String, byte[]> props = Collections.singletonMap(FortunaStandalone.SEED, _seed);
+        _generator.init(props);
+        Arrays.fill(_seed, (byte) 0);
+        _lastReseed = System.currentTimeMillis();
+        init(props);
+        // fill on first use
+        ndx = BUFSIZE;
+    }
+
+    public void setup(Map<String, byte[]> attributes) {}
+
+    public void fillBlock() {
+        long now = System.currentTimeMillis();
+        if (_bytesSinceReseed >= RESEED_BYTES || now - _lastReseed >= RESEED_INTERVAL)
+            reseed(now);
+        _generator.nextBytes(buffer);
+        _bytesSinceReseed += BUFSIZE;
+    }
+
+    /**
+     *  Mix in fresh output from the parent, and discard what's buffered.
+     */
+    public void reseed() {
+        reseed(System.currentTimeMillis());
+        ndx = BUFSIZE;
+    }
+
+    private void reseed(long now) {
+        synchronized(_parent) {
+            _parent.nextBytes(_seed);
+        }
+        _generator.addRandomBytes(_seed);
+        Arrays.fill(_seed, (byte) 0);
+        _lastReseed = now;
+        _bytesSinceReseed = 0;
+    }
+}
@@ -16,6 +16,7 @@ import net.i2p.crypto.DSAEngine;
 import net.i2p.crypto.ElGamalEngine;
 import net.i2p.crypto.HMAC256Generator;
 import net.i2p.crypto.KeyGenerator;
+import net.i2p.crypto.KeyPrecalcService;
 import net.i2p.crypto.SHA256Generator;
 import net.i2p.crypto.SessionKeyManager;
 import net.i2p.data.Base64;
@@ -87,6 +88,7 @@ public class I2PAppContext {
     private SimpleScheduler _simpleScheduler;
     private SimpleTimer _simpleTimer;
     private SimpleTimer2 _simpleTimer2;
+    private KeyPrecalcService _keyPrecalcService;
     private final PortMapper _portMapper;
     private volatile boolean _statManagerInitialized;
     protected volatile boolean _sessionKeyManagerInitialized;
@@ -104,6 +106,7 @@ public class I2PAppContext {
     private volatile boolean _simpleSchedulerInitialized;
     private volatile boolean _simpleTimerInitialized;
     private volatile boolean _simpleTimer2Initialized;
+    private volatile boolean _keyPrecalcServiceInitialized;
     protected final Set<Runnable> _shutdownTasks;
     private final File _baseDir;
     private final File _configDir;
@@ -120,7 +123,8 @@ public class I2PAppContext {
                          _lock5 = new Object(), _lock7 = new Object(), _lock8 = new Object(),
                          _lock10 = new Object(), _lock11 = new Object(), _lock12 = new Object(),
                          _lock13 = new Object(), _lock14 = new Object(), _lock16 = new Object(),
-                         _lock17 = new Object(), _lock18 = new Object(), _lock19 = new Object(), _lock20 = new Object();
+                         _lock17 = new Object(), _lock18 = new Object(), _lock19 = new Object(), _lock20 = new Object(),
+                         _lock21 = new Object();
 
     /**
      * Pull the default context, creating a new one if necessary, else using 
@@ -1025,6 +1029,24 @@ public class I2PAppContext {
         }
     }
 
+    /**
+     * Shared background precalculation of keys, for ElGamal, X25519, etc.
+     * @since 0.9.65
+     */
+    public KeyPrecalcService keyPrecalcService() {
+        if (!_keyPrecalcServiceInitialized)
+            initializeKeyPrecalcService();
+        return _keyPrecalcService;
+    }
+
+    private void initializeKeyPrecalcService() {
+        synchronized (_lock21) {
+            if (_keyPrecalcService == null)
+                _keyPrecalcService = new KeyPrecalcService(this);
+            _keyPrecalcServiceInitialized = true;
+        }
+    }
+
     /**
      *  As of 0.9.30, returns non-null in I2PAppContext, null in RouterContext.
      *  Prior to that, returned null always.
@@ -309,7 +309,10 @@ public final class Blinding {
         b[1] ^= (byte) (check >> 8);
         b[2] ^= (byte) (check >> 16);
         // todo privkey
-        return Base32.encode(b) + ".b32.i2p";
+        StringBuilder buf = new StringBuilder(Base32.encodedLength(b.length) + 8);
+        Base32.encode(b, 0, b.length, buf);
+        buf.append(".b32.i2p");
+        return buf.toString();
     }
 
     public static void main(String args[]) throws Exception {
@@ -115,24 +115,7 @@ public final class ChaCha20 {
         input[15] = (int) DataHelper.fromLongLE(iv, ivOffset + 8, 4);
         //System.out.println("initIV");
         //dumpBlock(input);
-        ChaChaCore.hash(output, input);
-        //int ctr = 1;
-        //System.out.println("hash " + ctr);
-        //dumpBlock(output);
-        while (length > 0) {
-            int tempLen = 64;
-            if (tempLen > length)
-                tempLen = length;
-            ChaChaCore.hash(output, input);
-            //System.out.println("hash " + ++ctr);
-            //dumpBlock(output);
-            ChaChaCore.xorBlock(plaintext, plaintextOffset, ciphertext, ciphertextOffset, tempLen, output);
-            if (++(input[12]) == 0)
-                ++(input[13]);
-            plaintextOffset += tempLen;
-            ciphertextOffset += tempLen;
-            length -= tempLen;
-        }
+        ChaChaCore.xorKeyStream(input, output, plaintext, plaintextOffset, ciphertext, ciphertextOffset, length);
     }
 
     /**
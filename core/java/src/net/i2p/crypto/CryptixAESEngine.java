@@ -12,7 +12,6 @@ package net.i2p.crypto;
 import java.security.InvalidKeyException;
 
 // for using system version
-import java.util.concurrent.LinkedBlockingQueue;
 import java.security.GeneralSecurityException;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -28,6 +27,7 @@ import net.i2p.data.SessionKey;
 import net.i2p.util.Log;
 import net.i2p.util.SimpleByteCache;
 import net.i2p.util.SystemVersion;
+import net.i2p.util.TryCache;
 
 /** 
  * Wrapper for AES cypher operation using Cryptix's Rijndael implementation.  Implements
@@ -38,7 +38,7 @@ import net.i2p.util.SystemVersion;
  * @author jrandom, thecrypto
  */
 public final class CryptixAESEngine extends AESEngine {
-    private final LinkedBlockingQueue<Cipher> _ciphers;
+    private final CryptoObjectPool<Cipher> _ciphers;
 
     // keys are now cached in the SessionKey objects
     //private CryptixAESKeyCache _cache;
@@ -48,7 +48,6 @@ public final class CryptixAESEngine extends AESEngine {
     private static final boolean USE_SYSTEM_AES = hasAESNI() && CryptoCheck.isUnlimited();
 
     private static final boolean CACHE = true;
-    private static final int CACHE_SIZE = 8;
     private static final SecretKeySpec ZERO_KEY = new SecretKeySpec(new byte[32], "AES");
     private static final IvParameterSpec ZERO_IV = new IvParameterSpec(new byte[16], 0, 16);
 
@@ -75,8 +74,7 @@ public final class CryptixAESEngine extends AESEngine {
     public CryptixAESEngine(I2PAppContext context) {
         super(context);
         // testing
-        //_ciphers = new LinkedBlockingQueue<Cipher>(CACHE_SIZE);
-        _ciphers = USE_SYSTEM_AES ? new LinkedBlockingQueue<Cipher>(CACHE_SIZE) : null;
+        _ciphers = USE_SYSTEM_AES ? new CryptoObjectPool<Cipher>(new CipherFactory()) : null;
         //_cache = new CryptixAESKeyCache();
     }
     
@@ -266,15 +264,20 @@ public final class CryptixAESEngine extends AESEngine {
      *  @since 0.9.49
      */
     private Cipher acquire() {
-        Cipher rv = _ciphers.poll();
-        if (rv == null) {
+        return _ciphers.acquire();
+    }
+
+    /**
+     *  @since 0.9.65
+     */
+    private static class CipherFactory implements TryCache.ObjectFactory<Cipher> {
+        public Cipher newInstance() {
             try {
-                rv = Cipher.getInstance("AES/CBC/NoPadding");
+                return Cipher.getInstance("AES/CBC/NoPadding");
             } catch (GeneralSecurityException e) {
                 throw new UnsupportedOperationException("AES/CBC/NoPadding", e);
             }
         }
-        return rv;
     }
     
     /**
@@ -289,7 +292,7 @@ public final class CryptixAESEngine extends AESEngine {
             } catch (GeneralSecurityException e) {
                 return;
             }
-            _ciphers.offer(cipher);
+            _ciphers.release(cipher);
         }
     }
     
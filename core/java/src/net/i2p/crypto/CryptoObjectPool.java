@@ -0,0 +1,157 @@
+package net.i2p.crypto;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.i2p.util.SystemVersion;
+import net.i2p.util.TryCache;
+
+/**
+ * A cache of reusable crypto objects (MessageDigest, Mac, Cipher)
+ * for the hot paths, without blocking and without allocating.
+ *<p>
+ * Each platform thread has one slot of its own, which is the common case:
+ * a thread releases what it acquired and gets it back next time.
+ * Behind that is a small shared array of slots, for a second object
+ * acquired by the same thread, and for virtual threads, which are
+ * short-lived and numerous, so they never get a thread-local slot.
+ * Objects that don't fit anywhere are dropped.
+ *</p><p>
+ * Objects must be reset or reinitialized by the caller before release(),
+ * and must not be used after release().
+ *</p>
+ *
+ * @since 0.9.65
+ */
+public final class CryptoObjectPool<T> {
+
+    private final TryCache.ObjectFactory<T> _factory;
+    private final ThreadLocal<Slot<T>> _local;
+    private final AtomicReferenceArray<T> _shared;
+    private final int _mask;
+
+    /** Thread.isVirtual(), Java 21+, never on Android, or null */
+    private static final Method IS_VIRTUAL = getIsVirtual();
+
+    /**
+     *  Holder so the ThreadLocal is looked up only once per operation.
+     */
+    private static class Slot<T> {
+        T item;
+    }
+
+    /**
+     * @param factory creates new objects when the cache is empty
+     * @param sharedSize size of the shared cache, rounded up to a power of 2,
+     *                   typically a small multiple of the number of cores
+     */
+    public CryptoObjectPool(TryCache.ObjectFactory<T> factory, int sharedSize) {
+        _factory = factory;
+        int sz = 1;
+        while (sz < sharedSize) {
+            sz <<= 1;
+        }
+        _shared = new AtomicReferenceArray<T>(sz);
+        _mask = sz - 1;
+        _local = new ThreadLocal<Slot<T>>() {
+            @Override
+            protected Slot<T> initialValue() {
+                return new Slot<T>();
+            }
+        };
+    }
+
+    /**
+     * Default shared size of 4 per core, 8 minimum, 64 maximum.
+     *
+     * @param factory creates new objects when the cache is empty
+     */
+    public CryptoObjectPool(TryCache.ObjectFactory<T> factory) {
+        this(factory, Math.max(8, Math.min(64, 4 * SystemVersion.getCores())));
+    }
+
+    /**
+     * @return a cached or new object
+     */
+    public T acquire() {
+        Thread t = Thread.currentThread();
+        if (!isVirtual(t)) {
+            Slot<T> slot = _local.get();
+            T rv = slot.item;
+            if (rv != null) {
+                slot.item = null;
+                return rv;
+            }
+        }
+        int start = hash(t);
+        for (int i = 0; i <= _mask; i++) {
+            int idx = (start + i) & _mask;
+            if (_shared.get(idx) != null) {
+                T rv = _shared.getAndSet(idx, null);
+                if (rv != null)
+                    return rv;
+            }
+        }
+        return _factory.newInstance();
+    }
+
+    /**
+     * Return an object to the cache. The caller must have reset it.
+     * It may be dropped if the cache is full.
+     */
+    public void release(T item) {
+        Thread t = Thread.currentThread();
+        if (!isVirtual(t)) {
+            Slot<T> slot = _local.get();
+            if (slot.item == null) {
+                slot.item = item;
+                return;
+            }
+        }
+        int start = hash(t);
+        for (int i = 0; i <= _mask; i++) {
+            int idx = (start + i) & _mask;
+            if (_shared.get(idx) == null && _shared.compareAndSet(idx, null, item))
+                return;
+        }
+    }
+
+    /**
+     * Clears the shared cache and the current thread's slot.
+     * Other threads' slots are not affected.
+     */
+    public void clear() {
+        _local.remove();
+        for (int i = 0; i <= _mask; i++) {
+            _shared.set(i, null);
+        }
+    }
+
+    /**
+     *  Spread the threads over the shared slots
+     */
+    private static int hash(Thread t) {
+        int h = (int) t.getId();
+        return h ^ (h >>> 7);
+    }
+
+    private static boolean isVirtual(Thread t) {
+        if (IS_VIRTUAL == null)
+            return false;
+        try {
+            return ((Boolean) IS_VIRTUAL.invoke(t)).booleanValue();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Method getIsVirtual() {
+        if (SystemVersion.isAndroid() || !SystemVersion.isJava(21))
+            return null;
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
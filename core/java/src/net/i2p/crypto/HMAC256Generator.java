@@ -4,7 +4,6 @@ import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -13,6 +12,7 @@ import net.i2p.I2PAppContext;
 import net.i2p.data.DataHelper;
 import net.i2p.data.Hash;
 import net.i2p.data.SessionKey;
+import net.i2p.util.TryCache;
 
 /**
  * Calculate the HMAC-SHA256 of a key+message.
@@ -24,10 +24,9 @@ import net.i2p.data.SessionKey;
  */
 public final class HMAC256Generator extends HMACGenerator {
 
-    private final LinkedBlockingQueue<Mac> _macs;
+    private final CryptoObjectPool<Mac> _macs;
 
     private static final boolean CACHE = true;
-    private static final int CACHE_SIZE = 8;
     private static final SecretKey ZERO_KEY = new HMACKey(new byte[32]);
 
     /**
@@ -35,7 +34,20 @@ public final class HMAC256Generator extends HMACGenerator {
      */
     public HMAC256Generator(I2PAppContext context) {
         super();
-        _macs = new LinkedBlockingQueue<Mac>(CACHE_SIZE);
+        _macs = new CryptoObjectPool<Mac>(new MacFactory());
+    }
+
+    /**
+     *  @since 0.9.65
+     */
+    private static class MacFactory implements TryCache.ObjectFactory<Mac> {
+        public Mac newInstance() {
+            try {
+                return Mac.getInstance("HmacSHA256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new UnsupportedOperationException("HmacSHA256", e);
+            }
+        }
     }
     
     /**
@@ -102,15 +114,7 @@ public final class HMAC256Generator extends HMACGenerator {
      *  @since 0.9.48
      */
     Mac acquire() {
-        Mac rv = _macs.poll();
-        if (rv == null) {
-            try {
-                rv = Mac.getInstance("HmacSHA256");
-            } catch (NoSuchAlgorithmException e) {
-                throw new UnsupportedOperationException("HmacSHA256", e);
-            }
-        }
-        return rv;
+        return _macs.acquire();
     }
     
     /**
@@ -126,7 +130,7 @@ public final class HMAC256Generator extends HMACGenerator {
             } catch (GeneralSecurityException e) {
                 return;
             }
-            _macs.offer(mac);
+            _macs.release(mac);
         }
     }
     
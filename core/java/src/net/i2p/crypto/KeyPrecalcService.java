@@ -0,0 +1,418 @@
+package net.i2p.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.I2PThread;
+import net.i2p.util.Log;
+import net.i2p.util.SystemVersion;
+import net.i2p.util.TryCache;
+
+/**
+ * Precalculates keys and similar expensive values in the background,
+ * for all the users in the context, with a shared set of worker threads.
+ * Get it with I2PAppContext.keyPrecalcService().
+ *<p>
+ * Each user registers a Stock with a factory and a min and max size.
+ * The target size of each stock moves between the min and the max,
+ * following how fast it is being used, so about 30 seconds' worth is kept.
+ *</p><p>
+ * One worker refills the stocks that are below target, most depleted first,
+ * pausing after each value so it doesn't hog the CPU.
+ * When a stock falls below a third of its target, or runs out,
+ * more workers are started, without pauses, up to the
+ * number needed for the observed usage rate and generation time,
+ * and up to crypto.precalc.threads (default: cores - 1, max 4).
+ * They exit when all stocks are back to half their targets.
+ *</p><p>
+ * Callers that find a stock empty should generate the value themselves.
+ *</p>
+ *
+ * @since 0.9.65
+ */
+public class KeyPrecalcService {
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final List<Stock<?>> _stocks = new CopyOnWriteArrayList<Stock<?>>();
+    private final Object _lock = new Object();
+    private final int _maxThreads;
+    /** protected by _lock */
+    private int _threads;
+    /** protected by _lock */
+    private int _nextID;
+    private volatile long _lastRecompute;
+
+    public static final String PROP_THREADS = "crypto.precalc.threads";
+    /** how much to keep, in seconds of usage */
+    private static final int TARGET_SECONDS = 30;
+    private static final long RECOMPUTE_INTERVAL = 10*1000;
+    private static final long MAX_PAUSE = 200;
+
+    public KeyPrecalcService(I2PAppContext context) {
+        _context = context;
+        _log = context.logManager().getLog(KeyPrecalcService.class);
+        int cores = SystemVersion.getCores();
+        int defaultThreads = SystemVersion.isSlow() ? 1 : Math.max(1, Math.min(4, cores - 1));
+        _maxThreads = Math.max(1, context.getProperty(PROP_THREADS, defaultThreads));
+    }
+
+    /**
+     *  Register a new stock and start filling it.
+     *
+     *  @param name for stats and thread names, e.g. "XDH"
+     *  @param factory generates the values, called from the worker threads
+     *  @param min minimum target size, 0 to disable precalculation
+     *  @param max maximum target size, and capacity
+     *  @param delay pause in ms after each value when not urgent
+     *  @return non-null, call shutdown() on it when done
+     */
+    public <T> Stock<T> register(String name, TryCache.ObjectFactory<T> factory, int min, int max, int delay) {
+        Stock<T> rv = new Stock<T>(this, name, factory, min, max, delay);
+        if (rv.getMax() <= 0)
+            return rv;
+        _context.statManager().createRateStat("crypto.precalc." + name, "Precalculated values available", "Encryption", new long[] { 60*60*1000 });
+        _stocks.add(rv);
+        if (_log.shouldLog(Log.DEBUG))
+            _log.debug("Registered " + rv + ", max threads: " + _maxThreads);
+        synchronized (_lock) {
+            if (_threads == 0)
+                startWorker();
+            _lock.notifyAll();
+        }
+        return rv;
+    }
+
+    /**
+     *  @return a copy of the registered stocks
+     */
+    public List<Stock<?>> getStocks() {
+        return new ArrayList<Stock<?>>(_stocks);
+    }
+
+    /**
+     *  @return the number of worker threads running
+     */
+    public int getThreadCount() {
+        synchronized (_lock) {
+            return _threads;
+        }
+    }
+
+    /**
+     *  @return the maximum number of worker threads
+     */
+    public int getMaxThreads() {
+        return _maxThreads;
+    }
+
+    private void unregister(Stock<?> stock) {
+        _stocks.remove(stock);
+        wakeup();
+    }
+
+    private void wakeup() {
+        synchronized (_lock) {
+            _lock.notifyAll();
+        }
+    }
+
+    /**
+     *  A stock is low or empty, start more workers if the load calls for it.
+     */
+    private void urgent(boolean stalled) {
+        synchronized (_lock) {
+            int wanted = stalled ? _maxThreads : Math.min(_maxThreads, 1 + neededThreads());
+            while (_threads < wanted) {
+                startWorker();
+            }
+            _lock.notifyAll();
+        }
+    }
+
+    /**
+     *  Cores needed to keep up with the current usage, doubled and rounded up,
+     *  so we catch up rather than just keep even.
+     */
+    private int neededThreads() {
+        double load = 0;
+        for (Stock<?> s : _stocks) {
+            load += s._rate * s._genTime / 1000d;
+        }
+        return (int) Math.ceil(2 * load);
+    }
+
+    /**
+     *  Caller must synch on _lock
+     */
+    private void startWorker() {
+        _threads++;
+        int id = _nextID++;
+        I2PThread t = new I2PThread(new Worker(id == 0), "Key Precalc " + (id + 1), true);
+        if (!SystemVersion.isWindows())
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+        t.start();
+    }
+
+    /**
+     *  Update the rates and targets
+     */
+    private void recompute() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - _lastRecompute;
+        if (elapsed < RECOMPUTE_INTERVAL)
+            return;
+        _lastRecompute = now;
+        for (Stock<?> s : _stocks) {
+            s.recompute(elapsed);
+            _context.statManager().addRateData("crypto.precalc." + s.getName(), s.size());
+        }
+    }
+
+    /**
+     *  @param lowOnly only those below half their target
+     *  @return the stock with the lowest size / target ratio, below its target, or null
+     */
+    private Stock<?> next(boolean lowOnly) {
+        Stock<?> rv = null;
+        double best = lowOnly ? 0.5d : 1.0d;
+        for (Stock<?> s : _stocks) {
+            double ratio = s.size() / (double) s.getTarget();
+            if (ratio < best) {
+                best = ratio;
+                rv = s;
+            }
+        }
+        return rv;
+    }
+
+    private class Worker implements Runnable {
+        /** the first one stays running while there are stocks */
+        private final boolean _main;
+
+        public Worker(boolean main) {
+            _main = main;
+        }
+
+        public void run() {
+            try {
+                run2();
+            } catch (IllegalStateException ise) {
+                // thread can be slow to shutdown on Android,
+                // PRNG gets stopped first and throws ISE
+                if (!_stocks.isEmpty())
+                    throw ise;
+            } finally {
+                synchronized (_lock) {
+                    _threads--;
+                    if (_threads == 0) {
+                        _nextID = 0;
+                        // registered while we were exiting
+                        if (!_stocks.isEmpty())
+                            startWorker();
+                    }
+                }
+            }
+        }
+
+        private void run2() {
+            while (true) {
+                if (_main)
+                    recompute();
+                Stock<?> s = next(!_main);
+                if (s == null) {
+                    if (!_main)
+                        return;
+                    synchronized (_lock) {
+                        if (_stocks.isEmpty())
+                            return;
+                        try {
+                            _lock.wait(RECOMPUTE_INTERVAL);
+                        } catch (InterruptedException ie) {}
+                    }
+                    continue;
+                }
+                long genTime = s.fill();
+                if (_main && !s.isLow()) {
+                    // for some relief...
+                    long pause = Math.min(MAX_PAUSE, Math.max(10, s._delay + (genTime * 3)));
+                    synchronized (_lock) {
+                        try {
+                            _lock.wait(pause);
+                        } catch (InterruptedException ie) {}
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A stock of precalculated values of one type.
+     */
+    public static final class Stock<T> {
+        private final KeyPrecalcService _service;
+        private final String _name;
+        private final TryCache.ObjectFactory<T> _factory;
+        private final LinkedBlockingQueue<T> _values;
+        private final int _min, _max, _delay;
+        private final AtomicLong _used = new AtomicLong();
+        private final AtomicLong _stalls = new AtomicLong();
+        private final AtomicLong _generated = new AtomicLong();
+        private volatile int _target;
+        /** per second, updated by recompute() */
+        private volatile double _rate;
+        /** ms, average */
+        private volatile double _genTime;
+        private long _lastUsed;
+
+        private Stock(KeyPrecalcService service, String name, TryCache.ObjectFactory<T> factory,
+                      int min, int max, int delay) {
+            _service = service;
+            _name = name;
+            _factory = factory;
+            _min = Math.max(0, Math.min(min, max));
+            _max = Math.max(0, max);
+            _delay = delay;
+            _target = Math.max(1, _min);
+            _values = new LinkedBlockingQueue<T>(Math.max(1, _max));
+        }
+
+        /**
+         *  @return a precalculated value, or null if empty,
+         *          in which case the caller should generate one
+         */
+        public T poll() {
+            _used.incrementAndGet();
+            T rv = _values.poll();
+            if (rv == null) {
+                if (_max > 0) {
+                    _stalls.incrementAndGet();
+                    _service.urgent(true);
+                }
+            } else if (isLow()) {
+                _service.urgent(false);
+            }
+            return rv;
+        }
+
+        /**
+         *  Put an unused value back
+         *
+         *  @return false if full
+         */
+        public boolean offer(T value) {
+            if (_max <= 0)
+                return false;
+            return _values.offer(value);
+        }
+
+        /**
+         *  Stop filling and clear it.
+         *  Register again to restart.
+         */
+        public void shutdown() {
+            _service.unregister(this);
+            _values.clear();
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public int size() {
+            return _values.size();
+        }
+
+        public int getMin() {
+            return _min;
+        }
+
+        public int getMax() {
+            return _max;
+        }
+
+        /**
+         *  @return current target size, between min and max, depending on usage
+         */
+        public int getTarget() {
+            return _target;
+        }
+
+        /**
+         *  @return total values requested
+         */
+        public long getUsed() {
+            return _used.get();
+        }
+
+        /**
+         *  @return total times it was empty
+         */
+        public long getStalls() {
+            return _stalls.get();
+        }
+
+        /**
+         *  @return total values generated in the background
+         */
+        public long getGenerated() {
+            return _generated.get();
+        }
+
+        /**
+         *  @return usage per second, recent average
+         */
+        public double getRate() {
+            return _rate;
+        }
+
+        /**
+         *  @return generation time in ms, recent average
+         */
+        public double getGenerationTime() {
+            return _genTime;
+        }
+
+        private boolean isLow() {
+            return _values.size() <= _target / 3;
+        }
+
+        /**
+         *  Generate one and add it
+         *
+         *  @return generation time in ms
+         */
+        private long fill() {
+            long start = System.currentTimeMillis();
+            T value = _factory.newInstance();
+            long time = System.currentTimeMillis() - start;
+            _genTime = (_genTime * 7 + time) / 8;
+            if (_values.offer(value))
+                _generated.incrementAndGet();
+            return time;
+        }
+
+        /**
+         *  Only called from the main worker
+         */
+        private void recompute(long elapsed) {
+            long used = _used.get();
+            double rate = (used - _lastUsed) * 1000d / elapsed;
+            _lastUsed = used;
+            _rate = (_rate + rate) / 2;
+            int target = (int) Math.ceil(_rate * TARGET_SECONDS);
+            _target = Math.max(Math.max(1, _min), Math.min(_max, target));
+        }
+
+        @Override
+        public String toString() {
+            return "Stock " + _name + ": " + size() + '/' + _target + " (" + _min + '-' + _max +
+                   ") rate " + ((int) (_rate * 10)) / 10d + "/s gen " + ((int) (_genTime * 10)) / 10d +
+                   "ms used " + _used + " stalls " + _stalls;
+        }
+    }
+}
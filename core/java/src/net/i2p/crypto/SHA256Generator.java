@@ -3,10 +3,10 @@ package net.i2p.crypto;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import net.i2p.I2PAppContext;
 import net.i2p.data.Hash;
+import net.i2p.util.TryCache;
 
 /** 
  * Defines a wrapper for SHA-256 operation.
@@ -17,13 +17,22 @@ import net.i2p.data.Hash;
  * is removed as of 0.9.28.
  */
 public final class SHA256Generator {
-    private final LinkedBlockingQueue<MessageDigest> _digests;
+    private final CryptoObjectPool<MessageDigest> _digests;
 
     /**
      *  @param context unused
      */
     public SHA256Generator(I2PAppContext context) {
-        _digests = new LinkedBlockingQueue<MessageDigest>(32);
+        _digests = new CryptoObjectPool<MessageDigest>(new DigestFactory());
+    }
+
+    /**
+     *  @since 0.9.65
+     */
+    private static class DigestFactory implements TryCache.ObjectFactory<MessageDigest> {
+        public MessageDigest newInstance() {
+            return getDigestInstance();
+        }
     }
     
     public static final SHA256Generator getInstance() {
@@ -69,16 +78,13 @@ public final class SHA256Generator {
     }
     
     private MessageDigest acquire() {
-        MessageDigest rv = _digests.poll();
-        if (rv != null)
-            rv.reset();
-        else
-            rv = getDigestInstance();
+        MessageDigest rv = _digests.acquire();
+        rv.reset();
         return rv;
     }
     
     private void release(MessageDigest digest) {
-        _digests.offer(digest);
+        _digests.release(digest);
     }
     
     /**
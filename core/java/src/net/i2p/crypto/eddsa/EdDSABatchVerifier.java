@@ -0,0 +1,237 @@
+package net.i2p.crypto.eddsa;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import net.i2p.crypto.eddsa.math.Curve;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.math.ScalarOps;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
+import net.i2p.util.RandomSource;
+
+/**
+ * Batch verification of Ed25519 signatures.
+ *<p>
+ * For signatures (R_i, S_i) by keys A_i with h_i = H(R_i, A_i, M_i),
+ * random 128 bit z_i are chosen and the single equation
+ *<pre>
+ *   8 * ( -(sum z_i S_i) B + sum z_i R_i + sum (z_i h_i) A_i ) == 0
+ *</pre>
+ * is checked with one multi-scalar multiplication,
+ * sharing the doublings across all the points, and without the
+ * eight inversions per key that the single verify spends precomputing -A.
+ * A forger must guess the z_i to get a bad signature through.
+ *</p><p>
+ * If the batch fails, it is split in half and each half is checked,
+ * down to single signatures, which are verified as in EdDSAEngine,
+ * so the result for each signature is still known.
+ *</p><p>
+ * This is the cofactored equation from RFC 8032 section 5.1.7.
+ * The single verify in EdDSAEngine is cofactorless, so a batch may accept
+ * a crafted signature with small order components in R or A that EdDSAEngine
+ * would reject. Signatures from honest signers are never affected.
+ * The other checks (S &lt; L, canonical R) are the same.
+ *</p><p>
+ * So this is NOT a drop-in replacement for EdDSAEngine or DSAEngine,
+ * and must not be used where all routers have to agree on which signatures
+ * are valid, e.g. for netDb entries.
+ * Making the results the same would take a subgroup check on every R,
+ * a full scalar multiplication each, which costs more than the batch saves.
+ * See EdDSABatchVerifierTest.
+ *</p><p>
+ * Package private, as there are no callers yet.
+ * Make it public when there is one where the cofactored results are acceptable.
+ * See EdDSABench for the speed.
+ *</p><p>
+ * Ed25519 only, not for RedDSA.
+ *</p>
+ *
+ * @since 0.9.65
+ */
+final class EdDSABatchVerifier {
+
+    private static final EdDSAParameterSpec SPEC = EdDSANamedCurveTable.ED_25519_CURVE_SPEC;
+    private static final byte[] ZERO = new byte[32];
+    /** L - 1, little endian, to negate mod L */
+    private static final byte[] L_MINUS_1 = Utils.hexToBytes("ecd3f55c1a631258d69cf7a2def9de1400000000000000000000000000000010");
+    /** L, little endian */
+    private static final byte[] L = Utils.hexToBytes("edd3f55c1a631258d69cf7a2def9de1400000000000000000000000000000010");
+    /** bytes of randomness per signature */
+    private static final int Z_BYTES = 16;
+    /**
+     * Larger batches are split up. The gain per signature is small above this,
+     * and it limits the memory for the tables and the cost of a bisection.
+     */
+    private static final int MAX_BATCH = 64;
+
+    private EdDSABatchVerifier() {}
+
+    /**
+     * A signature that passed the cheap checks, ready for the batch.
+     */
+    private static class Entry {
+        final int index;
+        final EdDSAPublicKey key;
+        final GroupElement R;
+        final byte[] Rbyte, S, h;
+
+        Entry(int index, EdDSAPublicKey key, GroupElement R, byte[] Rbyte, byte[] S, byte[] h) {
+            this.index = index;
+            this.key = key;
+            this.R = R;
+            this.Rbyte = Rbyte;
+            this.S = S;
+            this.h = h;
+        }
+    }
+
+    /**
+     * Verify the signatures. Arrays must all be the same length.
+     *
+     * @param digest SHA-512, will be reset
+     * @param keys must all be Ed25519, else the result for that one is false
+     * @param data the signed data
+     * @param sigs 64 bytes each, else the result for that one is false
+     * @return the results, same length as keys
+     */
+    static boolean[] verify(MessageDigest digest, EdDSAPublicKey[] keys, byte[][] data, byte[][] sigs) {
+        int n = keys.length;
+        if (data.length != n || sigs.length != n)
+            throw new IllegalArgumentException();
+        boolean[] rv = new boolean[n];
+        Entry[] entries = new Entry[n];
+        int count = 0;
+        Curve curve = SPEC.getCurve();
+        ScalarOps sc = SPEC.getScalarOps();
+        digest.reset();
+        for (int i = 0; i < n; i++) {
+            EdDSAPublicKey key = keys[i];
+            byte[] sig = sigs[i];
+            if (key == null || sig == null || data[i] == null || sig.length != 64 ||
+                !SPEC.equals(key.getParams()))
+                continue;
+            // RFC 8032
+            if (!isLessThanL(sig, 32))
+                continue;
+            byte[] Rbyte = Arrays.copyOfRange(sig, 0, 32);
+            if (!isCanonicalY(Rbyte))
+                continue;
+            GroupElement R;
+            try {
+                R = new GroupElement(curve, Rbyte);
+            } catch (IllegalArgumentException iae) {
+                continue;
+            }
+            // encoded negative zero
+            if ((Rbyte[31] & 0x80) != 0 && !R.getX().isNonZero())
+                continue;
+            // h = H(Rbar,Abar,M) mod l
+            digest.update(Rbyte);
+            digest.update(key.getAbyte());
+            digest.update(data[i]);
+            byte[] h = sc.reduce(digest.digest());
+            byte[] S = Arrays.copyOfRange(sig, 32, 64);
+            entries[count++] = new Entry(i, key, R, Rbyte, S, h);
+        }
+        for (int i = 0; i < count; i += MAX_BATCH) {
+            verify(entries, i, Math.min(i + MAX_BATCH, count), rv);
+        }
+        return rv;
+    }
+
+    /**
+     * Recursive, sets the results for entries from (inclusive) to to (exclusive)
+     */
+    private static void verify(Entry[] entries, int from, int to, boolean[] rv) {
+        int n = to - from;
+        if (n <= 0)
+            return;
+        if (n == 1) {
+            Entry e = entries[from];
+            rv[e.index] = verifyOne(e);
+            return;
+        }
+        if (batch(entries, from, to)) {
+            for (int i = from; i < to; i++) {
+                rv[entries[i].index] = true;
+            }
+            return;
+        }
+        int mid = from + (n / 2);
+        verify(entries, from, mid, rv);
+        verify(entries, mid, to, rv);
+    }
+
+    /**
+     * @return true if all entries from (inclusive) to to (exclusive) are good
+     */
+    private static boolean batch(Entry[] entries, int from, int to) {
+        int n = to - from;
+        ScalarOps sc = SPEC.getScalarOps();
+        GroupElement[] points = new GroupElement[2 * n];
+        byte[][] scalars = new byte[2 * n][];
+        byte[] sum = ZERO;
+        RandomSource rand = RandomSource.getInstance();
+        for (int i = 0; i < n; i++) {
+            Entry e = entries[from + i];
+            byte[] z = new byte[32];
+            do {
+                rand.nextBytes(z, 0, Z_BYTES);
+            } while (Arrays.equals(z, ZERO));
+            points[2 * i] = e.R;
+            scalars[2 * i] = z;
+            points[(2 * i) + 1] = e.key.getA();
+            scalars[(2 * i) + 1] = sc.multiplyAndAdd(z, e.h, ZERO);
+            sum = sc.multiplyAndAdd(z, e.S, sum);
+        }
+        // -sum mod l
+        byte[] b = sc.multiplyAndAdd(sum, L_MINUS_1, ZERO);
+        GroupElement r = SPEC.getB().multiScalarMultiplyVariableTime(points, scalars, b);
+        // clear the small order components
+        r = r.dbl().toP2().dbl().toP2().dbl().toP2();
+        // neutral element is (0 : Z : Z)
+        return !r.getX().isNonZero() && !r.getY().subtract(r.getZ()).isNonZero();
+    }
+
+    /**
+     * Same as EdDSAEngine
+     */
+    private static boolean verifyOne(Entry e) {
+        // R = SB - H(Rbar,Abar,M)A
+        GroupElement R = SPEC.getB().doubleScalarMultiplyVariableTime(e.key.getNegativeA(), e.h, e.S);
+        return Arrays.equals(R.toByteArray(), e.Rbyte);
+    }
+
+    /**
+     * Variable time.
+     *
+     * @return true if the 32 byte little endian value at off is less than L
+     */
+    private static boolean isLessThanL(byte[] b, int off) {
+        for (int i = 31; i >= 0; i--) {
+            int x = b[off + i] & 0xff;
+            int y = L[i] & 0xff;
+            if (x < y)
+                return true;
+            if (x > y)
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Variable time.
+     *
+     * @return true if the y coordinate, ignoring the sign bit, is less than p = 2**255 - 19
+     */
+    private static boolean isCanonicalY(byte[] b) {
+        if ((b[31] & 0x7f) != 0x7f)
+            return true;
+        for (int i = 30; i > 0; i--) {
+            if (b[i] != (byte) 0xff)
+                return true;
+        }
+        return (b[0] & 0xff) < 0xed;
+    }
+}
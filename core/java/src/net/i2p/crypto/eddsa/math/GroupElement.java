@@ -1069,6 +1069,85 @@ public class GroupElement implements Serializable {
         return r;
     }
 
+    /**
+     * $r = b * B + \sum a_i * A_i$ where $B$ is this point,
+     * using interleaved sliding windows (Straus), so all the points
+     * share the same 256 doublings.
+     * <p>
+     * Unlike {@link #doubleScalarMultiplyVariableTime(GroupElement, byte[], byte[])},
+     * the $A_i$ need not have been precomputed; a table of odd multiples
+     * in CACHED representation is built here for each, with no inversions.
+     * This point must have been precomputed.
+     * <p>
+     * Variable time, only for public values.
+     *
+     * @param A in P3 representation.
+     * @param a $a_i = a[i][0]+256*a[i][1]+\dots+256^{31} a[i][31]$, same length as A
+     * @param b $= b[0]+256*b[1]+\dots+256^{31} b[31]$
+     * @return the GroupElement in P2 representation
+     * @since 0.9.65
+     */
+    public GroupElement multiScalarMultiplyVariableTime(final GroupElement[] A, final byte[][] a, final byte[] b) {
+        final int n = A.length;
+        if (a.length != n)
+            throw new IllegalArgumentException();
+        final byte[][] aslide = new byte[n][];
+        // P,3P,5P,7P,9P,11P,13P,15P
+        final GroupElement[][] tables = new GroupElement[n][8];
+        for (int j = 0; j < n; j++) {
+            aslide[j] = slide(a[j]);
+            GroupElement P = A[j];
+            if (P.repr != Representation.P3)
+                throw new IllegalArgumentException();
+            GroupElement[] table = tables[j];
+            table[0] = P.toCached();
+            GroupElement P2 = P.dbl().toP3();
+            for (int k = 1; k < 8; k++) {
+                table[k] = P2.add(table[k - 1]).toP3().toCached();
+            }
+        }
+        final byte[] bslide = slide(b);
+
+        int i;
+        for (i = 255; i >= 0; --i) {
+            if (bslide[i] != 0)
+                break;
+            boolean any = false;
+            for (int j = 0; j < n; j++) {
+                if (aslide[j][i] != 0) {
+                    any = true;
+                    break;
+                }
+            }
+            if (any)
+                break;
+        }
+
+        GroupElement r = this.curve.getZero(Representation.P2);
+        for (; i >= 0; --i) {
+            GroupElement t = r.dbl();
+
+            for (int j = 0; j < n; j++) {
+                int d = aslide[j][i];
+                if (d > 0) {
+                    t = t.toP3().add(tables[j][d/2]);
+                } else if (d < 0) {
+                    t = t.toP3().sub(tables[j][(-d)/2]);
+                }
+            }
+
+            if (bslide[i] > 0) {
+                t = t.toP3().madd(this.dblPrecmp[bslide[i]/2]);
+            } else if (bslide[i] < 0) {
+                t = t.toP3().msub(this.dblPrecmp[(-bslide[i])/2]);
+            }
+
+            r = t.toP2();
+        }
+
+        return r;
+    }
+
     /**
      * Verify that a point is on its curve.
      * @return true if the point lies on its curve.
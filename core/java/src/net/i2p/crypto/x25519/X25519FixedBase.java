@@ -0,0 +1,241 @@
+package net.i2p.crypto.x25519;
+
+import net.i2p.crypto.eddsa.math.Curve;
+import net.i2p.crypto.eddsa.math.FieldElement;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.math.ed25519.Field25519;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+
+/**
+ * X25519 public keys from private keys, i.e. scalar multiplication of the
+ * base point u = 9, for key generation.
+ *<p>
+ * Instead of the Montgomery ladder's 255 steps, the scalar is multiplied
+ * with the Ed25519 base point on the birationally equivalent Edwards curve,
+ * using a fixed table of 32 * 8 precomputed multiples (as in ref10 and
+ * GroupElement.scalarMultiply()), 64 additions and 4 doublings,
+ * and the result is mapped back with u = (1 + y) / (1 - y).
+ * Constant time, using Field25519 on preallocated arrays.
+ *</p><p>
+ * The table is built from the Ed25519 base point on first use,
+ * which takes a few milliseconds.
+ *</p>
+ *
+ * @since 0.9.65
+ */
+public final class X25519FixedBase {
+
+    /** [32 * 8][yplusx, yminusx, xy2d] */
+    private static final int[][][] TABLE = buildTable();
+
+    private final int[] X = Field25519.create();
+    private final int[] Y = Field25519.create();
+    private final int[] Z = Field25519.create();
+    private final int[] T = Field25519.create();
+    // p1p1
+    private final int[] rX = Field25519.create();
+    private final int[] rY = Field25519.create();
+    private final int[] rZ = Field25519.create();
+    private final int[] rT = Field25519.create();
+    // precomp
+    private final int[] ypx = Field25519.create();
+    private final int[] ymx = Field25519.create();
+    private final int[] xy2d = Field25519.create();
+    private final int[] nxy2d = Field25519.create();
+    private final int[] t0 = Field25519.create();
+    private final byte[] e = new byte[64];
+
+    private X25519FixedBase() {}
+
+    /**
+     * Same result as Curve25519.eval(result, offset, privateKey, null).
+     *
+     * @param result 32 bytes are written at offset
+     * @param privateKey 32 bytes, will be clamped, not modified
+     */
+    public static void eval(byte[] result, int offset, byte[] privateKey) {
+        X25519FixedBase state = new X25519FixedBase();
+        try {
+            state.scalarMultiply(privateKey);
+            state.toMontgomery(result, offset);
+        } finally {
+            state.destroy();
+        }
+    }
+
+    /**
+     *  Edwards X, Y, Z, T = clamp(a) * B
+     */
+    private void scalarMultiply(byte[] a) {
+        // signed radix 16 of the clamped scalar, as in GroupElement.toRadix16()
+        for (int i = 0; i < 32; i++) {
+            int b = a[i] & 0xff;
+            if (i == 0)
+                b &= 248;
+            else if (i == 31)
+                b = (b & 127) | 64;
+            e[2 * i] = (byte) (b & 15);
+            e[2 * i + 1] = (byte) ((b >> 4) & 15);
+        }
+        int carry = 0;
+        for (int i = 0; i < 63; i++) {
+            e[i] += carry;
+            carry = e[i] + 8;
+            carry >>= 4;
+            e[i] -= carry << 4;
+        }
+        e[63] += carry;
+
+        // neutral element
+        Field25519.zero(X);
+        Field25519.one(Y);
+        Field25519.one(Z);
+        Field25519.zero(T);
+        for (int i = 1; i < 64; i += 2) {
+            select(i / 2, e[i]);
+            madd();
+            p1p1ToP3();
+        }
+
+        // * 16
+        p2Dbl();
+        p1p1ToP2();
+        p2Dbl();
+        p1p1ToP2();
+        p2Dbl();
+        p1p1ToP2();
+        p2Dbl();
+        p1p1ToP3();
+
+        for (int i = 0; i < 64; i += 2) {
+            select(i / 2, e[i]);
+            madd();
+            p1p1ToP3();
+        }
+    }
+
+    /**
+     *  u = (1 + y) / (1 - y) = (Z + Y) / (Z - Y)
+     */
+    private void toMontgomery(byte[] result, int offset) {
+        Field25519.add(rX, Z, Y);
+        Field25519.sub(rY, Z, Y);
+        Field25519.invert(rY, rY);
+        Field25519.mul(rX, rX, rY);
+        Field25519.toBytes(result, offset, rX);
+    }
+
+    /**
+     *  Constant time.
+     *  Set ypx, ymx, xy2d to b * 16^(2 * pos) * B
+     *
+     *  @param b -8 to 8
+     */
+    private void select(int pos, int b) {
+        int bnegative = b >>> 31;
+        int babs = b - (((-bnegative) & b) << 1);
+        Field25519.one(ypx);
+        Field25519.one(ymx);
+        Field25519.zero(xy2d);
+        for (int j = 0; j < 8; j++) {
+            int[][] entry = TABLE[pos * 8 + j];
+            int eq = ((babs ^ (j + 1)) - 1) >>> 31;
+            Field25519.cmov(ypx, entry[0], eq);
+            Field25519.cmov(ymx, entry[1], eq);
+            Field25519.cmov(xy2d, entry[2], eq);
+        }
+        // negate: swap y+x and y-x, negate xy2d
+        Field25519.cswap(ypx, ymx, bnegative);
+        Field25519.neg(nxy2d, xy2d);
+        Field25519.cmov(xy2d, nxy2d, bnegative);
+    }
+
+    /**
+     *  r = p3 + precomp, as in GroupElement.madd()
+     */
+    private void madd() {
+        Field25519.add(rX, Y, X);
+        Field25519.sub(rY, Y, X);
+        Field25519.mul(rZ, rX, ypx);
+        Field25519.mul(rY, rY, ymx);
+        Field25519.mul(rT, xy2d, T);
+        Field25519.add(t0, Z, Z);
+        Field25519.sub(rX, rZ, rY);
+        Field25519.add(rY, rZ, rY);
+        Field25519.add(rZ, t0, rT);
+        Field25519.sub(rT, t0, rT);
+    }
+
+    /**
+     *  r = 2 * p2 or p3 (T is ignored), as in GroupElement.dbl()
+     */
+    private void p2Dbl() {
+        Field25519.sq(rX, X);
+        Field25519.sq(rZ, Y);
+        Field25519.sq2(rT, Z);
+        Field25519.add(rY, X, Y);
+        Field25519.sq(t0, rY);
+        Field25519.add(rY, rZ, rX);
+        Field25519.sub(rZ, rZ, rX);
+        Field25519.sub(rX, t0, rY);
+        Field25519.sub(rT, rT, rZ);
+    }
+
+    private void p1p1ToP2() {
+        Field25519.mul(X, rX, rT);
+        Field25519.mul(Y, rY, rZ);
+        Field25519.mul(Z, rZ, rT);
+    }
+
+    private void p1p1ToP3() {
+        Field25519.mul(X, rX, rT);
+        Field25519.mul(Y, rY, rZ);
+        Field25519.mul(Z, rZ, rT);
+        Field25519.mul(T, rX, rY);
+    }
+
+    private void destroy() {
+        int[][] all = { X, Y, Z, T, rX, rY, rZ, rT, ypx, ymx, xy2d, nxy2d, t0 };
+        for (int[] f : all) {
+            Field25519.zero(f);
+        }
+        for (int i = 0; i < e.length; i++) {
+            e[i] = 0;
+        }
+    }
+
+    /**
+     *  As in GroupElement.precomputeSingle(), but with Field25519 limbs
+     */
+    private static int[][][] buildTable() {
+        GroupElement B = EdDSANamedCurveTable.ED_25519_CURVE_SPEC.getB();
+        Curve curve = B.getCurve();
+        int[][][] rv = new int[32 * 8][3][];
+        GroupElement Bi = B.toP3();
+        for (int i = 0; i < 32; i++) {
+            GroupElement Bij = Bi;
+            GroupElement cached = Bi.toCached();
+            for (int j = 0; j < 8; j++) {
+                FieldElement recip = Bij.getZ().invert();
+                FieldElement x = Bij.getX().multiply(recip);
+                FieldElement y = Bij.getY().multiply(recip);
+                int[][] entry = rv[i * 8 + j];
+                entry[0] = decode(y.add(x));
+                entry[1] = decode(y.subtract(x));
+                entry[2] = decode(x.multiply(y).multiply(curve.get2D()));
+                Bij = Bij.add(cached).toP3();
+            }
+            // 16^2 = 256
+            for (int k = 0; k < 8; k++) {
+                Bi = Bi.add(Bi.toCached()).toP3();
+            }
+        }
+        return rv;
+    }
+
+    private static int[] decode(FieldElement f) {
+        int[] rv = Field25519.create();
+        Field25519.fromBytes(rv, f.toByteArray(), 0);
+        return rv;
+    }
+}
@@ -11,6 +11,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
 /**
@@ -55,8 +57,14 @@ public class Base32 {
                                              -9, -9, -9, -9, -9 // Decimal 123 - 127
     };
 
+    /** ALPHABET as ASCII bytes */
+    private final static byte[] ALPHABET_BYTES = DataHelper.getASCII(new String(ALPHABET));
+
     private final static byte BAD_ENCODING = -9; // Indicates error in encoding
 
+    /** bytes per chunk for the Appendable and direct ByteBuffer encoders, multiple of 5 */
+    private final static int CHUNK_BYTES = 160;
+
     /** Defeats instantiation. */
     private Base32() { // nop
     }
@@ -148,36 +156,121 @@ public class Base32 {
      * @param source The data to convert non-null
      */
     public static String encode(byte[] source) {
-        StringBuilder buf = new StringBuilder((source.length + 7) * 8 / 5);
-        encodeBytes(source, buf);
-        return buf.toString();
+        byte[] buf = new byte[encodedLength(source.length)];
+        encode(source, 0, source.length, buf, 0);
+        return new String(buf, StandardCharsets.ISO_8859_1);
     }
 
-    private final static byte[] emask = { (byte) 0x1f,
-                                          (byte) 0x01, (byte) 0x03, (byte) 0x07, (byte) 0x0f };
     /**
-     * Encodes a byte array into Base32 notation.
+     *  @param len the number of bytes to encode
+     *  @return the number of chars encode() will output
+     *  @since 0.9.65
+     */
+    public static int encodedLength(int len) {
+        return ((len * 8) + 4) / 5;
+    }
+
+    /**
+     * Encodes into a byte array as ASCII, lower case.
+     * Does not add trailing '='.
      *
-     * @param source The data to convert non-null
+     * @param out must have room for encodedLength(len) bytes at outOff
+     * @return the number of bytes written, encodedLength(len)
+     * @throws ArrayIndexOutOfBoundsException if out is too small
+     * @since 0.9.65
      */
-    private static void encodeBytes(byte[] source, StringBuilder out) {
-        int usedbits = 0;
-        for (int i = 0; i < source.length; ) {
-             int fivebits;
-             if (usedbits < 3) {
-                 fivebits = (source[i] >> (3 - usedbits)) & 0x1f;
-                 usedbits += 5;
-             } else if (usedbits == 3) {
-                 fivebits = source[i++] & 0x1f;
-                 usedbits = 0;
-             } else {
-                 fivebits = (source[i++] << (usedbits - 3)) & 0x1f;
-                 if (i < source.length) {
-                     usedbits -= 3;
-                     fivebits |= (source[i] >> (8 - usedbits)) & emask[usedbits];
-                 }
-             }
-             out.append(ALPHABET[fivebits]);
+    public static int encode(byte[] source, int off, int len, byte[] out, int outOff) {
+        int end = off + len - 4;
+        int o = outOff;
+        int i = off;
+        // 5 bytes to 8 chars
+        for (; i < end; i += 5) {
+            long v = ((source[i] & 0xffL) << 32) |
+                     ((source[i + 1] & 0xffL) << 24) |
+                     ((source[i + 2] & 0xffL) << 16) |
+                     ((source[i + 3] & 0xffL) << 8) |
+                     (source[i + 4] & 0xffL);
+            out[o] = ALPHABET_BYTES[(int) (v >>> 35)];
+            out[o + 1] = ALPHABET_BYTES[(int) (v >>> 30) & 0x1f];
+            out[o + 2] = ALPHABET_BYTES[(int) (v >>> 25) & 0x1f];
+            out[o + 3] = ALPHABET_BYTES[(int) (v >>> 20) & 0x1f];
+            out[o + 4] = ALPHABET_BYTES[(int) (v >>> 15) & 0x1f];
+            out[o + 5] = ALPHABET_BYTES[(int) (v >>> 10) & 0x1f];
+            out[o + 6] = ALPHABET_BYTES[(int) (v >>> 5) & 0x1f];
+            out[o + 7] = ALPHABET_BYTES[(int) v & 0x1f];
+            o += 8;
+        }
+        // remaining 0-4 bytes, zero padded, no '='
+        int rem = off + len - i;
+        if (rem > 0) {
+            long v = 0;
+            for (int j = 0; j < 5; j++) {
+                v <<= 8;
+                if (j < rem)
+                    v |= source[i + j] & 0xffL;
+            }
+            int chars = ((rem * 8) + 4) / 5;
+            for (int j = 0; j < chars; j++) {
+                out[o++] = ALPHABET_BYTES[(int) (v >>> (35 - (5 * j))) & 0x1f];
+            }
+        }
+        return o - outOff;
+    }
+
+    /**
+     * Encodes into a ByteBuffer as ASCII, lower case,
+     * starting at its position, and advances the position.
+     * Does not add trailing '='.
+     *
+     * @throws java.nio.BufferOverflowException if out is too small, nothing is written
+     * @since 0.9.65
+     */
+    public static void encode(byte[] source, int off, int len, ByteBuffer out) {
+        int elen = encodedLength(len);
+        if (out.remaining() < elen)
+            throw new java.nio.BufferOverflowException();
+        if (out.hasArray()) {
+            encode(source, off, len, out.array(), out.arrayOffset() + out.position());
+            out.position(out.position() + elen);
+        } else {
+            byte[] buf = new byte[Math.min(elen, CHUNK_BYTES * 8 / 5)];
+            for (int i = 0; i < len; i += CHUNK_BYTES) {
+                int n = encode(source, off + i, Math.min(CHUNK_BYTES, len - i), buf, 0);
+                out.put(buf, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Encodes to a StringBuilder, Writer, or other Appendable,
+     * without creating a String.
+     * Lower case. Does not add trailing '='.
+     *
+     * @param out if a StringBuilder, IOException will not be thrown
+     * @since 0.9.65
+     */
+    public static void encode(byte[] source, int off, int len, Appendable out) throws IOException {
+        // 5 bytes to 8 chars at a time
+        byte[] buf = new byte[Math.min(encodedLength(len), CHUNK_BYTES * 8 / 5)];
+        char[] cbuf = (out instanceof StringBuilder) ? null : new char[buf.length];
+        for (int i = 0; i < len; i += CHUNK_BYTES) {
+            int n = encode(source, off + i, Math.min(CHUNK_BYTES, len - i), buf, 0);
+            Base64.append(buf, cbuf, n, out);
+        }
+    }
+
+    /**
+     * Encodes to a StringBuilder without creating a String.
+     * Same as the Appendable version, but doesn't throw IOException.
+     * Lower case. Does not add trailing '='.
+     *
+     * @since 0.9.65
+     */
+    public static void encode(byte[] source, int off, int len, StringBuilder out) {
+        try {
+            encode(source, off, len, (Appendable) out);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw
         }
     }
 
@@ -205,63 +298,111 @@ public class Base32 {
      * @return decoded data, null on error
      */
     public static byte[] decode(String s) {
-        return decode(DataHelper.getASCII(s));
+        int len = s.length();
+        byte[] rv = new byte[decodedLength(len)];
+        if (decode(s, 0, len, rv, 0) < 0)
+            return null;
+        return rv;
+    }
+
+    /**
+     *  The number of bytes decode() will output, if the input is valid.
+     *
+     *  @param len the number of chars to decode
+     *  @since 0.9.65
+     */
+    public static int decodedLength(int len) {
+        if (len <= 1)
+            return len;
+        return len * 5 / 8;
     }
 
     private final static byte[] dmask = { (byte) 0xf8, (byte) 0x7c, (byte) 0x3e, (byte) 0x1f,
                                           (byte) 0x0f, (byte) 0x07, (byte) 0x03, (byte) 0x01 };
+
     /**
-     * Decodes Base32 content in byte array format and returns
-     * the decoded byte array.
+     * Decodes from a String, StringBuilder, or other CharSequence
+     * into a byte array, without copying the input.
+     * Case-insensitive.
+     * Does not allow trailing '='.
      *
-     * @param source The Base32 encoded data non-null
-     * @return decoded data, null on error
+     * @param s non-null
+     * @param start the first char to decode
+     * @param end the char after the last to decode
+     * @param out must have room for decodedLength(end - start) bytes at outOff
+     * @return the number of bytes written, decodedLength(end - start), or -1 on error
+     * @throws ArrayIndexOutOfBoundsException if out is too small
+     * @since 0.9.65
      */
-    private static byte[] decode(byte[] source) {
-        int len58;
-        if (source.length <= 1)
-            len58 = source.length;
-        else
-            len58 = source.length * 5 / 8;
-        byte[] outBuff = new byte[len58];
-        int outBuffPosn = 0;
+    public static int decode(CharSequence s, int start, int end, byte[] out, int outOff) {
+        int len58 = decodedLength(end - start);
+        int i = start;
+        int o = outOff;
+        // fast path, 8 chars to 5 bytes
+        for (; i + 8 <= end; i += 8) {
+            long v = 0;
+            int bad = 0;
+            for (int j = 0; j < 8; j++) {
+                int b = decode(s.charAt(i + j));
+                bad |= b;
+                v = (v << 5) | (b & 0x1f);
+            }
+            if (bad < 0)
+                return -1;
+            out[o] = (byte) (v >>> 32);
+            out[o + 1] = (byte) (v >>> 24);
+            out[o + 2] = (byte) (v >>> 16);
+            out[o + 3] = (byte) (v >>> 8);
+            out[o + 4] = (byte) v;
+            o += 5;
+        }
+        if (i == end)
+            return o - outOff;
 
+        // remainder, as in 0.9.64 and earlier
+        int outBuffPosn = o - outOff;
         int usedbits = 0;
-        for (int i = 0; i < source.length; i++) {
-            int fivebits;
-            if ((source[i] & 0x80) != 0 || source[i] < '2' || source[i] > 'z')
-                fivebits = BAD_ENCODING;
-            else
-                fivebits = DECODABET[source[i] - '2'];
+        for ( ; i < end; i++) {
+            int fivebits = decode(s.charAt(i));
 
             if (fivebits >= 0) {
                  if (outBuffPosn >= len58)
-                     return null;
+                     return -1;
                  if (usedbits == 0) {
-                     outBuff[outBuffPosn] = (byte) ((fivebits << 3) & 0xf8);
+                     out[outOff + outBuffPosn] = (byte) ((fivebits << 3) & 0xf8);
                      usedbits = 5;
                  } else if (usedbits < 3) {
-                     outBuff[outBuffPosn] |= (fivebits << (3 - usedbits)) & dmask[usedbits];
+                     out[outOff + outBuffPosn] |= (fivebits << (3 - usedbits)) & dmask[usedbits];
                      usedbits += 5;
                  } else if (usedbits == 3) {
-                     outBuff[outBuffPosn++] |= fivebits;
+                     out[outOff + outBuffPosn++] |= fivebits;
                      usedbits = 0;
                  } else {
-                     outBuff[outBuffPosn++] |= (fivebits >> (usedbits - 3)) & dmask[usedbits];
+                     out[outOff + outBuffPosn++] |= (fivebits >> (usedbits - 3)) & dmask[usedbits];
                      byte next = (byte) (fivebits << (11 - usedbits));
                      if (outBuffPosn < len58) {
-                         outBuff[outBuffPosn] = next;
+                         out[outOff + outBuffPosn] = next;
                          usedbits -= 3;
                      } else if (next != 0) {
                        //_log.warn("Extra data at the end: " + next + "(decimal)");
-                       return null;
+                       return -1;
                      }
                  }
             } else {
-                //_log.warn("Bad Base32 input character at " + i + ": " + source[i] + "(decimal)");
-                return null;
+                //_log.warn("Bad Base32 input character at " + i + ": " + s.charAt(i) + "(decimal)");
+                return -1;
             }
         }
-        return outBuff;
+        return len58;
+    }
+
+    /**
+     *  @return the 5-bit value, or negative
+     *  @since 0.9.65
+     */
+    private static int decode(char c) {
+        if (c < '2' || c > 'z')
+            return BAD_ENCODING;
+        return DECODABET[c - '2'];
     }
 }
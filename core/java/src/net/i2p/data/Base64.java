@@ -6,6 +6,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 
 /**
@@ -116,6 +120,141 @@ public class Base64 {
         return safeDecode(s, useStandardAlphabet);
     }
 
+    /**
+     *  @param len the number of bytes to encode
+     *  @return the number of chars encode() will output, including padding
+     *  @since 0.9.65
+     */
+    public static int encodedLength(int len) {
+        return ((len + 2) / 3) * 4;
+    }
+
+    /**
+     *  Encodes into a byte array as ASCII, using the I2P alphabet.
+     *  Output will be a multiple of 4 chars, including 0-2 trailing '='
+     *
+     *  @param out must have room for encodedLength(len) bytes at outOff
+     *  @return the number of bytes written, encodedLength(len)
+     *  @throws ArrayIndexOutOfBoundsException if out is too small
+     *  @since 0.9.65
+     */
+    public static int encode(byte[] source, int off, int len, byte[] out, int outOff) {
+        return encode(source, off, len, out, outOff, ALPHABET_ALT);
+    }
+
+    /**
+     *  Encodes into a ByteBuffer as ASCII, using the I2P alphabet,
+     *  starting at its position, and advances the position.
+     *  Output will be a multiple of 4 chars, including 0-2 trailing '='
+     *
+     *  @throws java.nio.BufferOverflowException if out is too small, nothing is written
+     *  @since 0.9.65
+     */
+    public static void encode(byte[] source, int off, int len, ByteBuffer out) {
+        int elen = encodedLength(len);
+        if (out.remaining() < elen)
+            throw new java.nio.BufferOverflowException();
+        if (out.hasArray()) {
+            encode(source, off, len, out.array(), out.arrayOffset() + out.position(), ALPHABET_ALT);
+            out.position(out.position() + elen);
+        } else {
+            byte[] buf = new byte[Math.min(elen, CHUNK_CHARS)];
+            for (int i = 0; i < len; i += CHUNK_BYTES) {
+                int n = encode(source, off + i, Math.min(CHUNK_BYTES, len - i), buf, 0, ALPHABET_ALT);
+                out.put(buf, 0, n);
+            }
+        }
+    }
+
+    /**
+     *  Encodes to a StringBuilder, Writer, or other Appendable, using the I2P alphabet,
+     *  without creating a String.
+     *  Output will be a multiple of 4 chars, including 0-2 trailing '='
+     *
+     *  @param out if a StringBuilder, IOException will not be thrown
+     *  @since 0.9.65
+     */
+    public static void encode(byte[] source, int off, int len, Appendable out) throws IOException {
+        byte[] buf = new byte[Math.min(encodedLength(len), CHUNK_CHARS)];
+        char[] cbuf = (out instanceof StringBuilder) ? null : new char[buf.length];
+        for (int i = 0; i < len; i += CHUNK_BYTES) {
+            int n = encode(source, off + i, Math.min(CHUNK_BYTES, len - i), buf, 0, ALPHABET_ALT);
+            append(buf, cbuf, n, out);
+        }
+    }
+
+    /**
+     *  Encodes to a StringBuilder, using the I2P alphabet, without creating a String.
+     *  Same as the Appendable version, but doesn't throw IOException.
+     *  Output will be a multiple of 4 chars, including 0-2 trailing '='
+     *
+     *  @since 0.9.65
+     */
+    public static void encode(byte[] source, int off, int len, StringBuilder out) {
+        try {
+            encode(source, off, len, (Appendable) out);
+        } catch (IOException ioe) {
+            // StringBuilder doesn't throw
+        }
+    }
+
+    /**
+     *  Append ASCII bytes, a chunk at a time rather than a char at a time.
+     *  Also used by Base32.
+     *
+     *  @param cbuf scratch, at least n long, may be null for a StringBuilder
+     *  @since 0.9.65
+     */
+    static void append(byte[] buf, char[] cbuf, int n, Appendable out) throws IOException {
+        if (out instanceof StringBuilder) {
+            // compact strings, this is two array copies, where append(char[]) is a loop
+            ((StringBuilder) out).append(new String(buf, 0, n, StandardCharsets.ISO_8859_1));
+            return;
+        }
+        for (int j = 0; j < n; j++) {
+            cbuf[j] = (char) buf[j];
+        }
+        if (out instanceof Writer)
+            ((Writer) out).write(cbuf, 0, n);
+        else
+            out.append(CharBuffer.wrap(cbuf, 0, n));
+    }
+
+    /**
+     *  Decodes from a String, StringBuilder, or other CharSequence
+     *  using the I2P alphabet, into a byte array.
+     *  Same rules as decode(String).
+     *
+     *  @param s Base 64 encoded chars using the I2P alphabet A-Z, a-z, 0-9, -, ~
+     *  @param start the first char to decode
+     *  @param end the char after the last to decode
+     *  @param out must have room for decodedLength(s, start, end) bytes at outOff
+     *  @return the number of bytes written, or -1 on decoding error
+     *  @throws ArrayIndexOutOfBoundsException if out is too small
+     *  @since 0.9.65
+     */
+    public static int decode(CharSequence s, int start, int end, byte[] out, int outOff) {
+        return decode(toASCII(s, start, end), 0, end - start, out, outOff, DECODABET);
+    }
+
+    /**
+     *  The number of bytes decode() will output, if s is valid.
+     *  Does not check the validity of s.
+     *
+     *  @param start the first char to decode
+     *  @param end the char after the last to decode
+     *  @since 0.9.65
+     */
+    public static int decodedLength(CharSequence s, int start, int end) {
+        int pad = 0;
+        if (end > start && s.charAt(end - 1) == EQUALS_SIGN) {
+            pad++;
+            if (end - 1 > start && s.charAt(end - 2) == EQUALS_SIGN)
+                pad++;
+        }
+        return ((end - start - pad) * 3) / 4;
+    }
+
     /** Maximum line length (76) of Base64 output. */
     private final static int MAX_LINE_LENGTH = 76;
 
@@ -183,8 +322,23 @@ public class Base64 {
     };
 
 
+    /**
+     *  DECODABET plus the standard alphabet's + and /
+     *  @since 0.9.65
+     */
+    private final static byte[] DECODABET_STD = DECODABET.clone();
+    static {
+        DECODABET_STD['+'] = 62;
+        DECODABET_STD['/'] = 63;
+    }
+
     private final static byte WHITE_SPACE_ENC = -5; // Indicates white space in encoding
     private final static byte EQUALS_SIGN_ENC = -1; // Indicates equals sign in encoding
+    private final static byte BAD_ENC = -9; // Indicates error in encoding
+
+    /** bytes per chunk for the Appendable and direct ByteBuffer encoders, multiple of 3 */
+    private final static int CHUNK_BYTES = 192;
+    private final static int CHUNK_CHARS = CHUNK_BYTES * 4 / 3;
 
     /** Defeats instantiation. */
     private Base64() { // nop
@@ -413,52 +567,6 @@ public class Base64 {
     } // end encode3to4
 ******/
 
-    /**
-     *  @param alpha alphabet
-     */
-    private static void encode3to4(byte[] source, int srcOffset, int numSigBytes, StringBuilder buf, byte alpha[]) {
-        //           1         2         3  
-        // 01234567890123456789012345678901 Bit position
-        // --------000000001111111122222222 Array position from threeBytes
-        // --------|    ||    ||    ||    | Six bit groups to index ALPHABET
-        //          >>18  >>12  >> 6  >> 0  Right shift necessary
-        //                0x3f  0x3f  0x3f  Additional AND
-
-        // Create buffer with zero-padding if there are only one or two
-        // significant bytes passed in the array.
-        // We have to shift left 24 in order to flush out the 1's that appear
-        // when Java treats a value as negative that is cast from a byte to an int.
-        int inBuff = (numSigBytes > 0 ? ((source[srcOffset] << 24) >>> 8) : 0)
-                     | (numSigBytes > 1 ? ((source[srcOffset + 1] << 24) >>> 16) : 0)
-                     | (numSigBytes > 2 ? ((source[srcOffset + 2] << 24) >>> 24) : 0);
-
-        switch (numSigBytes) {
-        case 3:
-            buf.append((char)alpha[(inBuff >>> 18)]);
-            buf.append((char)alpha[(inBuff >>> 12) & 0x3f]);
-            buf.append((char)alpha[(inBuff >>> 6) & 0x3f]);
-            buf.append((char)alpha[(inBuff) & 0x3f]);
-            return;
-
-        case 2:
-            buf.append((char)alpha[(inBuff >>> 18)]);
-            buf.append((char)alpha[(inBuff >>> 12) & 0x3f]);
-            buf.append((char)alpha[(inBuff >>> 6) & 0x3f]);
-            buf.append((char)EQUALS_SIGN);
-            return;
-
-        case 1:
-            buf.append((char)alpha[(inBuff >>> 18)]);
-            buf.append((char)alpha[(inBuff >>> 12) & 0x3f]);
-            buf.append((char)EQUALS_SIGN);
-            buf.append((char)EQUALS_SIGN);
-            return;
-
-        default:
-            return;
-        } // end switch
-    } // end encode3to4
-
     /**
      * Encodes a byte array into Base64 notation.
      * Equivalen to calling
@@ -480,12 +588,9 @@ public class Base64 {
     private static String safeEncode(byte[] source, int off, int len, boolean useStandardAlphabet) {
         if (len + off > source.length)
             throw new ArrayIndexOutOfBoundsException("Trying to encode too much!  source.len=" + source.length + " off=" + off + " len=" + len);
-        StringBuilder buf = new StringBuilder(len * 4 / 3);
-        if (useStandardAlphabet)
-            encodeBytes(source, off, len, false, buf, ALPHABET);
-        else
-            encodeBytes(source, off, len, false, buf, ALPHABET_ALT);
-        return buf.toString();
+        byte[] buf = new byte[encodedLength(len)];
+        encode(source, off, len, buf, 0, useStandardAlphabet ? ALPHABET : ALPHABET_ALT);
+        return new String(buf, StandardCharsets.ISO_8859_1);
     }
 
     /**
@@ -494,17 +599,9 @@ public class Base64 {
      */
     private static byte[] safeDecode(String source, boolean useStandardAlphabet) {
         if (source == null) return null;
-        String toDecode;
-        if (useStandardAlphabet) {
-            //toDecode = source;
-            toDecode = source.replace('/', '~');
-            toDecode = toDecode.replace('+', '-');
-        } else {
-            //toDecode = source.replace('~', '/');
-            //toDecode = toDecode.replace('-', '+');
-            toDecode = source;
-        }
-        return standardDecode(toDecode);
+        // As of 0.9.65, the standard alphabet table also accepts - and ~,
+        // as the replace() did before
+        return standardDecode(source, useStandardAlphabet ? DECODABET_STD : DECODABET);
     }
 
     /**
@@ -543,42 +640,47 @@ public class Base64 {
 ******/
         
     /**
-     * Encodes a byte array into Base64 notation.
+     * Encodes a byte array into Base64 notation, without line breaks.
+     * Three bytes to four chars at a time, straight from the table.
+     * As of 0.9.65, replaces encodeBytes(..., StringBuilder, ...)
      *
      * @param source The data to convert
      * @param off Offset in array where conversion should begin
      * @param len Length of data to convert
-     * @param breakLines Break lines at 80 characters or less.
-     * @since 1.4
+     * @param alpha alphabet
+     * @return the number of bytes written
+     * @since 0.9.65
      */
-    private static void encodeBytes(byte[] source, int off, int len, boolean breakLines, StringBuilder out, byte alpha[]) {
-        //int len43 = len * 4 / 3;
-        //byte[] outBuff = new byte[(len43) // Main 4:3
-        //                          + ((len % 3) > 0 ? 4 : 0) // Account for padding
-        //                          + (breakLines ? (len43 / MAX_LINE_LENGTH) : 0)]; // New lines      
-        int d = 0;
-        int len2 = len - 2;
-        int lineLength = 0;
-        for (; d < len2; d += 3) {
-            //encode3to4(source, d + off, 3, outBuff, e);
-            encode3to4(source, d + off, 3, out, alpha);
-
-            lineLength += 4;
-            if (breakLines && lineLength == MAX_LINE_LENGTH) {
-                //outBuff[e + 4] = NEW_LINE;
-                out.append('\n');
-                lineLength = 0;
-            } // end if: end of line
-        } // en dfor: each piece of array
-
-        if (d < len) {
-            //encode3to4(source, d + off, len - d, outBuff, e);
-            encode3to4(source, d + off, len - d, out, alpha);
-        } // end if: some padding needed
-
-        //out.append(new String(outBuff, 0, e));
-        //return new String(outBuff, 0, e);
-    } // end encodeBytes
+    private static int encode(byte[] source, int off, int len, byte[] out, int outOff, byte alpha[]) {
+        int end = off + len - 2;
+        int o = outOff;
+        int i = off;
+        for (; i < end; i += 3) {
+            int inBuff = ((source[i] & 0xff) << 16) | ((source[i + 1] & 0xff) << 8) | (source[i + 2] & 0xff);
+            out[o] = alpha[inBuff >>> 18];
+            out[o + 1] = alpha[(inBuff >>> 12) & 0x3f];
+            out[o + 2] = alpha[(inBuff >>> 6) & 0x3f];
+            out[o + 3] = alpha[inBuff & 0x3f];
+            o += 4;
+        }
+        int rem = off + len - i;
+        if (rem == 2) {
+            int inBuff = ((source[i] & 0xff) << 16) | ((source[i + 1] & 0xff) << 8);
+            out[o] = alpha[inBuff >>> 18];
+            out[o + 1] = alpha[(inBuff >>> 12) & 0x3f];
+            out[o + 2] = alpha[(inBuff >>> 6) & 0x3f];
+            out[o + 3] = EQUALS_SIGN;
+            o += 4;
+        } else if (rem == 1) {
+            int inBuff = (source[i] & 0xff) << 16;
+            out[o] = alpha[inBuff >>> 18];
+            out[o + 1] = alpha[(inBuff >>> 12) & 0x3f];
+            out[o + 2] = EQUALS_SIGN;
+            out[o + 3] = EQUALS_SIGN;
+            o += 4;
+        }
+        return o - outOff;
+    }
 
     /**
      * Encodes a string in Base64 notation with line breaks
@@ -620,6 +722,34 @@ public class Base64 {
     }
 ******/
 
+    /**
+     *  Non-ASCII chars are replaced with bytes that won't decode.
+     *  A String is converted by an intrinsic, faster than charAt()
+     *  one at a time.
+     *
+     *  @since 0.9.65
+     */
+    private static byte[] toASCII(CharSequence s, int start, int end) {
+        if (s instanceof String && start == 0 && end == s.length()) {
+            // unmappable chars become '?'
+            return ((String) s).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        byte[] rv = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            rv[i - start] = c < 128 ? (byte) c : (byte) 0x80;
+        }
+        return rv;
+    }
+
+    /**
+     *  @return the 6-bit value, or negative
+     *  @since 0.9.65
+     */
+    private static int decode(byte b, byte[] decodabet) {
+        return b >= 0 ? decodabet[b] : BAD_ENC;
+    }
+
     /**
      * Decodes four bytes from array <var>source</var>
      * and writes the resulting bytes (up to three of them)
@@ -639,12 +769,13 @@ public class Base64 {
      * @param srcOffset the index where conversion begins
      * @param destination the array to hold the conversion
      * @param destOffset the index where output will be put
+     * @param decodabet DECODABET or DECODABET_STD
      * @return the number of decoded bytes converted 1-3, or -1 on error, never zero
-     * @since 1.3
+     * @since 1.3, decodabet since 0.9.65
      */
-    private static int decode4to3(byte[] source, int srcOffset, byte[] destination, int destOffset) {
-        byte decode0 = DECODABET[source[srcOffset++]];
-        byte decode1 = DECODABET[source[srcOffset++]];
+    private static int decode4to3(byte[] source, int srcOffset, byte[] destination, int destOffset, byte[] decodabet) {
+        int decode0 = decode(source[srcOffset++], decodabet);
+        int decode1 = decode(source[srcOffset++], decodabet);
         if (decode0 < 0 || decode1 < 0)
             return -1;
 
@@ -663,7 +794,7 @@ public class Base64 {
 
         // Example: DkL=
         else if (source[srcOffset + 1] == EQUALS_SIGN) {
-            byte decode2 = DECODABET[source[srcOffset]];
+            int decode2 = decode(source[srcOffset], decodabet);
             if (decode2 < 0)
                 return -1;
             // verify no extra bits
@@ -679,8 +810,8 @@ public class Base64 {
 
         // Example: DkLE
         else {
-            byte decode2 = DECODABET[source[srcOffset++]];
-            byte decode3 = DECODABET[source[srcOffset]];
+            int decode2 = decode(source[srcOffset++], decodabet);
+            int decode3 = decode(source[srcOffset], decodabet);
             if (decode2 < 0 || decode3 < 0)
                 return -1;
             int outBuff = (decode0 << 18)
@@ -699,16 +830,23 @@ public class Base64 {
      * As of 0.9.14, this uses the I2P alphabet, so it is not "standard".
      *
      * @param s the string to decode
+     * @param decodabet DECODABET or DECODABET_STD
      * @return the decoded data, null on error
      * @since 1.4
      */
-    private static byte[] standardDecode(String s) {
-        // We use getUTF8() instead of getASCII() so we may verify
-        // there's no UTF-8 in there.
-        byte[] bytes = DataHelper.getUTF8(s);
-        if (bytes.length != s.length())
+    private static byte[] standardDecode(String s, byte[] decodabet) {
+        int len = s.length();
+        byte[] rv = new byte[decodedLength(s, 0, len)];
+        int sz = decode(toASCII(s, 0, len), 0, len, rv, 0, decodabet);
+        if (sz < 0)
             return null;
-        return decode(bytes, 0, bytes.length);
+        // shouldn't happen
+        if (sz != rv.length) {
+            byte[] out = new byte[sz];
+            System.arraycopy(rv, 0, out, 0, sz);
+            rv = out;
+        }
+        return rv;
     } // end decode
 
     /**
@@ -755,22 +893,40 @@ public class Base64 {
      *
      * @param source The Base64 encoded data
      * @param off    The offset of where to begin decoding
-     * @param len    The length of characters to decode
-     * @return decoded data, null on error
-     * @since 1.3
+     * @param end    The char after the last to decode
+     * @param decodabet DECODABET or DECODABET_STD
+     * @return number of bytes decoded, -1 on error
+     * @since 1.3, CharSequence since 0.9.65
      */
-    private static byte[] decode(byte[] source, int off, int len) {
-        int len34 = len * 3 / 4;
-        byte[] outBuff = new byte[len34]; // size of output
-        int outBuffPosn = 0;
+    private static int decode(byte[] source, int off, int end, byte[] out, int outOff, byte[] decodabet) {
+        int outBuffPosn = outOff;
 
         int i = off;
-        int end = off + len;
         int converted = 0;
         while (i + 3 < end) {
-            converted = decode4to3(source, i, outBuff, outBuffPosn);
+            byte c0 = source[i];
+            byte c1 = source[i + 1];
+            byte c2 = source[i + 2];
+            byte c3 = source[i + 3];
+            // fast path, four valid chars, no '='
+            if ((c0 | c1 | c2 | c3) >= 0) {
+                int d0 = decodabet[c0];
+                int d1 = decodabet[c1];
+                int d2 = decodabet[c2];
+                int d3 = decodabet[c3];
+                if ((d0 | d1 | d2 | d3) >= 0) {
+                    int outBuff = (d0 << 18) | (d1 << 12) | (d2 << 6) | d3;
+                    out[outBuffPosn++] = (byte) (outBuff >> 16);
+                    out[outBuffPosn++] = (byte) (outBuff >> 8);
+                    out[outBuffPosn++] = (byte) outBuff;
+                    converted = 3;
+                    i += 4;
+                    continue;
+                }
+            }
+            converted = decode4to3(source, i, out, outBuffPosn, decodabet);
             if (converted < 0)
-                return null;
+                return -1;
             outBuffPosn += converted;
             i += 4;
             if (converted < 3)
@@ -781,9 +937,9 @@ public class Base64 {
         int remaining = end - i;
         if (remaining > 0) {
             if (converted > 0 && converted < 3)
-                return null;
+                return -1;
             if (remaining == 1 || remaining > 3)
-                return null;
+                return -1;
             byte[] b4 = new byte[4];
             b4[0] = source[i++];
             b4[1] = source[i++];
@@ -792,18 +948,11 @@ public class Base64 {
             else
                 b4[2] = EQUALS_SIGN;
             b4[3] = EQUALS_SIGN;
-            converted = decode4to3(b4, 0, outBuff, outBuffPosn);
+            converted = decode4to3(b4, 0, out, outBuffPosn, decodabet);
             if (converted < 0)
-                return null;
+                return -1;
             outBuffPosn += converted;
         }
-
-        // don't copy unless we have to
-        if (outBuffPosn == outBuff.length)
-            return outBuff;
-        // and we shouldn't ever... would have returned null before
-        byte[] out = new byte[outBuffPosn];
-        System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
-        return out;
+        return outBuffPosn - outOff;
     } // end decode
 } // end class Base64
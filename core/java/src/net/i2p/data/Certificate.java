@@ -12,6 +12,7 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -115,6 +116,40 @@ public class Certificate extends DataStructureImpl {
         return new Certificate(type, payload);
     }
 
+    /**
+     * If null, P256 key, or Ed25519 key cert, return immutable static instance, else create new.
+     * Reads from the buffer, at its position, which is advanced.
+     * @throws DataFormatException if not enough bytes
+     * @since 0.9.65
+     */
+    public static Certificate create(ByteBuffer buf) throws DataFormatException {
+        if (buf.remaining() < 3)
+            throw new DataFormatException("Not enough bytes for the certificate");
+        int type = buf.get() & 0xff;
+        int length = (int) DataHelper.readLong(buf, 2);
+        if (type == 0 && length == 0)
+            return NULL_CERT;
+        // from here down roughly the same as readBytes() below
+        if (length == 0)
+            return new Certificate(type, null);
+        if (buf.remaining() < length)
+            throw new DataFormatException("Not enough bytes for the payload (available: " + buf.remaining() + " length: " + length + ')');
+        byte[] payload = new byte[length];
+        buf.get(payload);
+        if (type == CERTIFICATE_TYPE_KEY) {
+            if (length == 4) {
+                if (Arrays.equals(payload, KeyCertificate.X25519_Ed25519_PAYLOAD))
+                    return KeyCertificate.X25519_Ed25519_CERT;
+                if (Arrays.equals(payload, KeyCertificate.Ed25519_PAYLOAD))
+                    return KeyCertificate.ELG_Ed25519_CERT;
+                if (Arrays.equals(payload, KeyCertificate.ECDSA256_PAYLOAD))
+                    return KeyCertificate.ELG_ECDSA256_CERT;
+            }
+            return new KeyCertificate(payload);
+        }
+        return new Certificate(type, payload);
+    }
+
     public Certificate() {
     }
 
@@ -189,6 +224,46 @@ public class Certificate extends DataStructureImpl {
         }
     }
 
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  @throws IllegalStateException if already set
+     *  @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        if (_type != 0 || _payload != null)
+            throw new IllegalStateException("already set");
+        if (buf.remaining() < 3)
+            throw new DataFormatException("Not enough bytes for the certificate");
+        int type = buf.get() & 0xff;
+        int length = (int) DataHelper.readLong(buf, 2);
+        if (length > 0) {
+            if (buf.remaining() < length)
+                throw new DataFormatException("Not enough bytes for the payload (available: " + buf.remaining() + " length: " + length
+                                              + ")");
+            _payload = new byte[length];
+            buf.get(_payload);
+        }
+        _type = type;
+    }
+
+    /**
+     *  Writes to the buffer, at its position, which is advanced.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if (_type < 0) throw new DataFormatException("Invalid certificate type: " + _type);
+        buf.put((byte) _type);
+        if (_payload != null) {
+            DataHelper.writeLong(buf, 2, _payload.length);
+            buf.put(_payload);
+        } else {
+            DataHelper.writeLong(buf, 2, 0L);
+        }
+    }
+
     /**
      *  @return the written length (NOT the new offset)    
      */    
@@ -337,6 +412,18 @@ public class Certificate extends DataStructureImpl {
             out.write(NULL_DATA);
         }
     
+        /** @throws RuntimeException always */
+        @Override
+        public void readBytes(ByteBuffer buf) throws DataFormatException {
+            throw new RuntimeException("Data already set");
+        }
+    
+        /** Overridden for efficiency */
+        @Override
+        public void writeBytes(ByteBuffer buf) {
+            buf.put(NULL_DATA);
+        }
+    
         /** Overridden for efficiency */
         @Override
         public int writeBytes(byte target[], int offset) {
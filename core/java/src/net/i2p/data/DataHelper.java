@@ -25,6 +25,9 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
@@ -387,6 +390,111 @@ public class DataHelper {
         return offset + size;
     }
 
+    /**
+     * Reads the props from the buffer, at its position, which is advanced.
+     * See readProperties() for the format.
+     * Strings must be UTF-8 encoded.
+     *
+     * @param props The Properties to load into.
+     *              If null, a new OrderedProperties will be created.
+     * @return the parameter props, or a new OrderedProperties if props is null,
+     *                               and an immutable EmptyProperties if empty.
+     * @throws DataFormatException if the format is invalid, a key is duplicated,
+     *                             or there are not enough bytes
+     * @since 0.9.65
+     */
+    public static Properties readProperties(ByteBuffer buf, Properties props) throws DataFormatException {
+        int size = (int) readLong(buf, 2);
+        if (size == 0) {
+            return (props != null) ? props : EmptyProperties.INSTANCE;
+        }
+        if (buf.remaining() < size)
+            throw new DataFormatException("Not enough data to read the mapping: " + size);
+        if (props == null)
+            props = new OrderedProperties();
+        int end = buf.position() + size;
+        while (buf.position() < end) {
+            String key = readString(buf, end);
+            String cached = _propertiesKeyCache.get(key);
+            if (cached != null)
+                key = cached;
+            if (buf.position() >= end || buf.get() != '=')
+                throw new DataFormatException("Bad key");
+            String val = readString(buf, end);
+            if (buf.position() >= end || buf.get() != ';')
+                throw new DataFormatException("Bad value");
+            Object old = props.put(key, val);
+            if (old != null)
+                throw new DataFormatException("Duplicate key " + key);
+        }
+        return props;
+    }
+
+    /**
+     * Writes the props to the buffer, at its position, which is advanced,
+     * without an intermediate copy.
+     * Same as writeProperties(OutputStream, Properties):
+     * not UTF-8, sorted unless an OrderedProperties.
+     *
+     * @param props source may be null
+     * @throws DataFormatException if a length limit is exceeded
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public static void writeProperties(ByteBuffer buf, Properties props) throws DataFormatException {
+        writeProperties(buf, props, false, props != null && props.size() > 1 && !(props instanceof OrderedProperties));
+    }
+
+    /**
+     * Writes the props to the buffer, at its position, which is advanced,
+     * without an intermediate copy.
+     * Same format as writeProperties(OutputStream, Properties, boolean, boolean).
+     *
+     * @param props source may be null
+     * @param utf8 as in writeProperties(OutputStream, Properties, boolean, boolean)
+     * @param sort should we sort the properties? (set to false if already sorted, e.g. OrderedProperties)
+     * @throws DataFormatException if any string is over 255 bytes long, or if the total length
+     *                             (not including the two length bytes) is greater than 65535 bytes.
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public static void writeProperties(ByteBuffer buf, Properties props, boolean utf8, boolean sort)
+            throws DataFormatException {
+        if (props == null || props.isEmpty()) {
+            writeLong(buf, 2, 0);
+            return;
+        }
+        Properties p;
+        if (sort && props.size() > 1) {
+            p = new OrderedProperties();
+            p.putAll(props);
+        } else {
+            p = props;
+        }
+        // fill in the length after
+        int start = buf.position();
+        writeLong(buf, 2, 0);
+        for (Map.Entry<Object, Object> entry : p.entrySet()) {
+            String key = (String) entry.getKey();
+            String val = (String) entry.getValue();
+            if (utf8)
+                writeStringUTF8(buf, key);
+            else
+                writeString(buf, key);
+            buf.put((byte) '=');
+            if (utf8)
+                writeStringUTF8(buf, val);
+            else
+                writeString(buf, val);
+            buf.put((byte) ';');
+        }
+        int size = buf.position() - start - 2;
+        if (size > 65535)
+            throw new DataFormatException("Properties too big (65535 max): " + size);
+        buf.put(start, (byte) (size >> 8));
+        buf.put(start + 1, (byte) size);
+    }
+
     /**
      * Writes the props to returned byte array, not sorted
      * (unless the opts param is an OrderedProperties)
@@ -723,6 +831,66 @@ public class DataHelper {
             rawStream.write(cur);
         }
     }
+
+    /**
+     * Read an integer as defined by the I2P data structure specification,
+     * at the buffer's position, which is advanced.
+     * Big endian, regardless of the buffer's order.
+     *
+     * @param numBytes 1-8
+     * @return non-negative
+     * @throws DataFormatException if there aren't enough bytes,
+     *                             or if negative (only possible if numBytes = 8)
+     * @since 0.9.65
+     */
+    public static long readLong(ByteBuffer buf, int numBytes) throws DataFormatException {
+        if (numBytes <= 0 || numBytes > 8)
+            throw new DataFormatException("Bad byte count " + numBytes);
+        if (buf.remaining() < numBytes)
+            throw new DataFormatException("Not enough data to read a " + numBytes + " byte value");
+        long rv;
+        if (numBytes == 8 && buf.order() == ByteOrder.BIG_ENDIAN) {
+            rv = buf.getLong();
+        } else if (numBytes == 4 && buf.order() == ByteOrder.BIG_ENDIAN) {
+            rv = buf.getInt() & 0xffffffffL;
+        } else {
+            rv = 0;
+            for (int i = 0; i < numBytes; i++) {
+                rv <<= 8;
+                rv |= buf.get() & 0xff;
+            }
+        }
+        if (rv < 0)
+            throw new DataFormatException("readLong got a negative? " + rv + " numBytes=" + numBytes);
+        return rv;
+    }
+
+    /**
+     * Write an integer as defined by the I2P data structure specification,
+     * at the buffer's position, which is advanced.
+     * Big endian, regardless of the buffer's order.
+     *
+     * @param numBytes 1-8
+     * @param value non-negative
+     * @throws DataFormatException if value is negative or if numBytes not 1-8
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public static void writeLong(ByteBuffer buf, int numBytes, long value) throws DataFormatException {
+        if (numBytes <= 0 || numBytes > 8)
+            throw new DataFormatException("Bad byte count " + numBytes);
+        if (value < 0)
+            throw new DataFormatException("Value is negative (" + value + ")");
+        if (numBytes == 8 && buf.order() == ByteOrder.BIG_ENDIAN) {
+            buf.putLong(value);
+        } else if (numBytes == 4 && buf.order() == ByteOrder.BIG_ENDIAN) {
+            buf.putInt((int) value);
+        } else {
+            for (int i = (numBytes - 1) * 8; i >= 0; i -= 8) {
+                buf.put((byte) (value >> i));
+            }
+        }
+    }
     
     /**
      * Big endian.
@@ -987,6 +1155,95 @@ public class DataHelper {
         }
     }
 
+    /**
+     * Read in a string from the buffer as specified by the I2P data structure spec,
+     * at its position, which is advanced.
+     *
+     * @throws DataFormatException if there aren't enough bytes
+     * @return UTF-8 string
+     * @since 0.9.65
+     */
+    public static String readString(ByteBuffer buf) throws DataFormatException {
+        return readString(buf, buf.limit());
+    }
+
+    /**
+     * @param end don't read past here
+     * @since 0.9.65
+     */
+    private static String readString(ByteBuffer buf, int end) throws DataFormatException {
+        int pos = buf.position();
+        if (pos >= end)
+            throw new DataFormatException("Not enough data to read a string");
+        int size = buf.get() & 0xff;
+        if (size == 0)
+            return "";   // reduce object proliferation
+        pos++;
+        if (pos + size > end)
+            throw new DataFormatException("Not enough data to read a string of length " + size);
+        String rv;
+        if (buf.hasArray()) {
+            rv = new String(buf.array(), buf.arrayOffset() + pos, size, StandardCharsets.UTF_8);
+            buf.position(pos + size);
+        } else {
+            byte[] raw = new byte[size];
+            buf.get(raw);
+            rv = new String(raw, StandardCharsets.UTF_8);
+        }
+        return rv;
+    }
+
+    /**
+     * Write out a string to the buffer as specified by the I2P data structure spec,
+     * at its position, which is advanced.
+     *
+     * WARNING - this method destroys the encoding, as writeString(OutputStream, String) does,
+     * and therefore violates the data structure spec.
+     *
+     * @param string null strings are perfectly valid, but strings of excess length will
+     *               cause a DataFormatException to be thrown
+     * @throws DataFormatException if the string is not valid
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public static void writeString(ByteBuffer buf, String string) throws DataFormatException {
+        if (string == null) {
+            buf.put((byte) 0);
+        } else {
+            int len = string.length();
+            if (len > 255)
+                throw new DataFormatException("The I2P data spec limits strings to 255 bytes or less, but this is "
+                                              + len + " [" + string + "]");
+            buf.put((byte) len);
+            for (int i = 0; i < len; i++)
+                buf.put((byte)(string.charAt(i) & 0xFF));
+        }
+    }
+
+    /**
+     * Write out a UTF-8 string to the buffer as specified by the I2P data structure spec,
+     * at its position, which is advanced.
+     *
+     * @param string null strings are perfectly valid, but strings of excess length will
+     *               cause a DataFormatException to be thrown
+     * @throws DataFormatException if the string is not valid
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public static void writeStringUTF8(ByteBuffer buf, String string) throws DataFormatException {
+        if (string == null) {
+            buf.put((byte) 0);
+        } else {
+            byte[] raw = string.getBytes(StandardCharsets.UTF_8);
+            int len = raw.length;
+            if (len > 255)
+                throw new DataFormatException("The I2P data spec limits strings to 255 bytes or less, but this is "
+                                              + len + " [" + string + "]");
+            buf.put((byte) len);
+            buf.put(raw);
+        }
+    }
+
     //
     // The following comparator helpers make it simpler to write consistently comparing
     // functions for objects based on their value, not JVM memory address
@@ -13,7 +13,9 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import net.i2p.I2PAppContext;
 import net.i2p.crypto.SHA256Generator;
@@ -73,6 +75,43 @@ public abstract class DataStructureImpl implements DataStructure, Serializable {
         }
     }
 
+    /**
+     * Load up the current object with data from the buffer, at its position,
+     * which is advanced past the structure.
+     * This implementation reads through a stream view of the buffer, without copying;
+     * subclasses may read the buffer directly.
+     *
+     * @param buf the buffer to read from
+     * @throws DataFormatException if the data is improperly formatted or truncated
+     * @since 0.9.65
+     */
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        try {
+            readBytes(new BufferInputStream(buf));
+        } catch (IOException ioe) {
+            throw new DataFormatException("Error reading the buffer", ioe);
+        }
+    }
+
+    /**
+     * Write out the data structure to the buffer, at its position,
+     * which is advanced past the structure.
+     * This implementation writes through a stream view of the buffer, without copying;
+     * subclasses may write the buffer directly.
+     *
+     * @param buf the buffer to write to
+     * @throws DataFormatException if the data is improperly formatted
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        try {
+            writeBytes(new BufferOutputStream(buf));
+        } catch (IOException ioe) {
+            throw new DataFormatException("Error writing the buffer", ioe);
+        }
+    }
+
     /**
      * Repeated reads until the buffer is full or IOException is thrown
      *
@@ -81,4 +120,71 @@ public abstract class DataStructureImpl implements DataStructure, Serializable {
     protected int read(InputStream in, byte target[]) throws IOException {
         return DataHelper.read(in, target);
     }
+
+    /**
+     * A stream over the remaining bytes of a buffer
+     *
+     * @since 0.9.65
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer _buf;
+
+        public BufferInputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            if (!_buf.hasRemaining())
+                return -1;
+            return _buf.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            int rem = _buf.remaining();
+            if (rem <= 0)
+                return -1;
+            len = Math.min(len, rem);
+            _buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int len = (int) Math.max(0, Math.min(n, _buf.remaining()));
+            _buf.position(_buf.position() + len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return _buf.remaining();
+        }
+    }
+
+    /**
+     * A stream writing to a buffer
+     *
+     * @since 0.9.65
+     */
+    private static class BufferOutputStream extends OutputStream {
+        private final ByteBuffer _buf;
+
+        public BufferOutputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public void write(int b) {
+            _buf.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            _buf.put(b, off, len);
+        }
+    }
 }
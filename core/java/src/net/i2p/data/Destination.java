@@ -11,6 +11,7 @@ package net.i2p.data;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import net.i2p.util.LHMCache;
@@ -57,6 +58,27 @@ public class Destination extends KeysAndCert {
         PublicKey pk = PublicKey.create(in);
         SigningPublicKey sk = SigningPublicKey.create(in);
         Certificate c = Certificate.create(in);
+        return create(pk, sk, c);
+    }
+
+    /**
+     * Pull from cache or return new.
+     * Reads from the buffer, at its position, which is advanced.
+     * @since 0.9.65
+     */
+    public static Destination create(ByteBuffer buf) throws DataFormatException {
+        PublicKey pk = PublicKey.create(buf);
+        SigningPublicKey sk = SigningPublicKey.create(buf);
+        Certificate c = Certificate.create(buf);
+        return create(pk, sk, c);
+    }
+
+    /**
+     * Pull from cache or return new.
+     * The keys and cert are as read in, not yet converted to the key cert types.
+     * @since 0.9.65 split out of create(InputStream)
+     */
+    private static Destination create(PublicKey pk, SigningPublicKey sk, Certificate c) throws DataFormatException {
         byte[] padding;
         if (c.getCertificateType() == Certificate.CERTIFICATE_TYPE_KEY) {
             // convert SPK to new SPK and padding
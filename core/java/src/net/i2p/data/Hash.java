@@ -11,6 +11,8 @@ package net.i2p.data;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Defines the hash as defined by the I2P data structure spec.
@@ -27,6 +29,7 @@ public class Hash extends SimpleDataStructure {
     private static final int CACHE_SIZE = 2048;
     
     private static final SDSCache<Hash> _cache = new SDSCache<Hash>(Hash.class, HASH_LENGTH, CACHE_SIZE);
+    private static final byte[] B32_SUFFIX = DataHelper.getASCII(".b32.i2p");
 
     /**
      * Pull from cache or return new
@@ -62,6 +65,15 @@ public class Hash extends SimpleDataStructure {
         return _cache.get(in);
     }
 
+    /**
+     * Pull from cache or return new
+     * @throws DataFormatException if not enough bytes
+     * @since 0.9.65
+     */
+    public static Hash create(ByteBuffer buf) throws DataFormatException {
+        return _cache.get(buf);
+    }
+
     public Hash() {
         super();
     }
@@ -113,7 +125,10 @@ public class Hash extends SimpleDataStructure {
     public String toBase32() {
         if (_data == null)
             return null;
-        return Base32.encode(_data) + ".b32.i2p";
+        byte[] buf = new byte[Base32.encodedLength(_data.length) + B32_SUFFIX.length];
+        int len = Base32.encode(_data, 0, _data.length, buf, 0);
+        System.arraycopy(B32_SUFFIX, 0, buf, len, B32_SUFFIX.length);
+        return new String(buf, StandardCharsets.ISO_8859_1);
     }
 
     /**
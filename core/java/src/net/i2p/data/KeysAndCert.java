@@ -12,12 +12,13 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import net.i2p.crypto.EncType;
 import net.i2p.crypto.SHA256Generator;
 import net.i2p.crypto.SigType;
-import net.i2p.util.ByteArrayStream;
 
 /**
  * KeysAndCert has a public key, a signing key, and a certificate.
@@ -157,6 +158,29 @@ public class KeysAndCert extends DataStructureImpl {
         PublicKey pk = PublicKey.create(in);
         SigningPublicKey spk = SigningPublicKey.create(in);
         Certificate cert = Certificate.create(in);
+        setKeysAndCert(pk, spk, cert);
+    }
+
+    /**
+     * Reads from the buffer, at its position, which is advanced.
+     * @throws IllegalStateException if data already set
+     * @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        if (_publicKey != null || _signingKey != null || _certificate != null)
+            throw new IllegalStateException();
+        PublicKey pk = PublicKey.create(buf);
+        SigningPublicKey spk = SigningPublicKey.create(buf);
+        Certificate cert = Certificate.create(buf);
+        setKeysAndCert(pk, spk, cert);
+    }
+
+    /**
+     * Convert PK and SPK to new PK and SPK and padding, if a key cert
+     * @since 0.9.65 split out of readBytes()
+     */
+    private void setKeysAndCert(PublicKey pk, SigningPublicKey spk, Certificate cert) throws DataFormatException {
         if (cert.getCertificateType() == Certificate.CERTIFICATE_TYPE_KEY) {
             // convert PK and SPK to new PK and SPK and padding
             KeyCertificate kcert = cert.toKeyCertificate();
@@ -249,6 +273,55 @@ public class KeysAndCert extends DataStructureImpl {
         _signingKey.writeTruncatedBytes(out);
         _certificate.writeBytes(out);
     }
+
+    /**
+     * Writes to the buffer, at its position, which is advanced.
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if ((_certificate == null) || (_publicKey == null) || (_signingKey == null))
+            throw new DataFormatException("Not enough data to format the router identity");
+        _publicKey.writeBytes(buf);
+        if (_padding != null) {
+            if (_paddingBlocks <= 1) {
+                buf.put(_padding);
+            } else {
+                for (int i = 0; i <_paddingBlocks; i++) {
+                    buf.put(_padding, 0, PAD_COMP_LEN);
+                }
+            }
+        } else if (_signingKey.length() < SigningPublicKey.KEYSIZE_BYTES ||
+                 _publicKey.length() < PublicKey.KEYSIZE_BYTES) {
+            throw new DataFormatException("No padding set");
+        }
+        _signingKey.writeTruncatedBytes(buf);
+        _certificate.writeBytes(buf);
+    }
+
+    /**
+     * Overridden to write directly to an array of the exact size
+     * @return null on error
+     * @since 0.9.65
+     */
+    @Override
+    public byte[] toByteArray() {
+        if (_certificate == null)
+            return super.toByteArray();
+        byte[] rv = new byte[384 + _certificate.size()];
+        ByteBuffer buf = ByteBuffer.wrap(rv);
+        try {
+            writeBytes(buf);
+        } catch (DataFormatException dfe) {
+            return super.toByteArray();
+        } catch (BufferOverflowException boe) {
+            return super.toByteArray();
+        }
+        if (buf.hasRemaining())
+            return super.toByteArray();
+        return rv;
+    }
     
     @Override
     public boolean equals(Object object) {
@@ -319,19 +392,17 @@ public class KeysAndCert extends DataStructureImpl {
     public Hash getHash() {
         if (__calculatedHash != null)
             return __calculatedHash;
-        byte identBytes[];
+        if (_certificate == null)
+            throw new IllegalStateException("KAC hash error");
+        ByteBuffer buf = ByteBuffer.allocate(384 + _certificate.size());
         try {
-            if (_certificate == null)
-                throw new IllegalStateException("KAC hash error");
-            ByteArrayStream baos = new ByteArrayStream(384 + _certificate.size());
-            writeBytes(baos);
-            identBytes = baos.toByteArray();
-        } catch (IOException ioe) {
-            throw new IllegalStateException("KAC hash error", ioe);
+            writeBytes(buf);
         } catch (DataFormatException dfe) {
             throw new IllegalStateException("KAC hash error", dfe);
+        } catch (BufferOverflowException boe) {
+            throw new IllegalStateException("KAC hash error", boe);
         }
-        __calculatedHash = SHA256Generator.getInstance().calculateHash(identBytes);
+        __calculatedHash = SHA256Generator.getInstance().calculateHash(buf.array(), 0, buf.position());
         return __calculatedHash;
     }
 }
@@ -12,6 +12,7 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import net.i2p.util.Clock;
@@ -149,6 +150,32 @@ public class Lease extends DataStructureImpl {
         _tunnelId.writeBytes(out);
         DataHelper.writeLong(out, 8, _end);
     }
+
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        _gateway = Hash.create(buf);
+        _tunnelId = new TunnelId();
+        _tunnelId.readBytes(buf);
+        _end = DataHelper.readLong(buf, 8);
+    }
+
+    /**
+     *  Writes to the buffer, at its position, which is advanced.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if ((_gateway == null) || (_tunnelId == null))
+            throw new DataFormatException("Not enough data to write out a Lease");
+        _gateway.writeBytes(buf);
+        _tunnelId.writeBytes(buf);
+        DataHelper.writeLong(buf, 8, _end);
+    }
     
     @Override
     public boolean equals(Object object) {
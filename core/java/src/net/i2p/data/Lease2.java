@@ -3,6 +3,7 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 /**
@@ -33,6 +34,32 @@ public class Lease2 extends Lease {
         _tunnelId.writeBytes(out);
         DataHelper.writeLong(out, 4, _end / 1000);
     }
+
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        _gateway = Hash.create(buf);
+        _tunnelId = new TunnelId();
+        _tunnelId.readBytes(buf);
+        _end = DataHelper.readLong(buf, 4) * 1000;
+    }
+
+    /**
+     *  Writes to the buffer, at its position, which is advanced.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if ((_gateway == null) || (_tunnelId == null))
+            throw new DataFormatException("Not enough data to write out a Lease");
+        _gateway.writeBytes(buf);
+        _tunnelId.writeBytes(buf);
+        DataHelper.writeLong(buf, 4, _end / 1000);
+    }
     
     @Override
     public boolean equals(Object object) {
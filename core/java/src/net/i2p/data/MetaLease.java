@@ -3,6 +3,7 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 /**
@@ -76,6 +77,39 @@ public class MetaLease extends Lease {
         out.write(_cost);
         DataHelper.writeLong(out, 4, _end / 1000);
     }
+
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        _gateway = Hash.create(buf);
+        if (buf.remaining() < 8)
+            throw new DataFormatException("Not enough data to read a Lease");
+        // flags
+        buf.position(buf.position() + 2);
+        _type = buf.get() & 0xff;
+        _cost = buf.get() & 0xff;
+        _end = DataHelper.readLong(buf, 4) * 1000;
+    }
+
+    /**
+     *  Writes to the buffer, at its position, which is advanced.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if (_gateway == null)
+            throw new DataFormatException("Not enough data to write out a Lease");
+        _gateway.writeBytes(buf);
+        // flags
+        DataHelper.writeLong(buf, 2, 0);
+        buf.put((byte) _type);
+        buf.put((byte) _cost);
+        DataHelper.writeLong(buf, 4, _end / 1000);
+    }
     
     @Override
     public boolean equals(Object object) {
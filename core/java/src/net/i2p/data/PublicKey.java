@@ -11,6 +11,7 @@ package net.i2p.data;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import net.i2p.crypto.EncType;
@@ -57,6 +58,16 @@ public class PublicKey extends SimpleDataStructure {
         return _cache.get(in);
     }
 
+    /**
+     * Pull from cache or return new.
+     * ELGAMAL_2048 only!
+     * @throws DataFormatException if not enough bytes
+     * @since 0.9.65
+     */
+    public static PublicKey create(ByteBuffer buf) throws DataFormatException {
+        return _cache.get(buf);
+    }
+
     public PublicKey() {
         this(DEF_TYPE);
     }
@@ -3,25 +3,33 @@ package net.i2p.data;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.i2p.I2PAppContext;
-import net.i2p.util.LHMCache;
+import net.i2p.stat.StatManager;
 import net.i2p.util.SimpleByteCache;
+import net.i2p.util.SimpleTimer;
 import net.i2p.util.SystemVersion;
 
 /**
- *  A least recently used cache with a max size, for SimpleDataStructures.
- *  The index to the cache is the first 4 bytes of the data, so
- *  the data must be sufficiently random.
+ *  A cache with a max size, for SimpleDataStructures.
  *
  *  This caches the SDS objects, and also uses SimpleByteCache to cache
  *  the unused byte arrays themselves
  *
+ *  As of 0.9.65, this is a set-associative cache keyed by a hash of all
+ *  the data, with CLOCK eviction within each set of 8 entries.
+ *  Lookups don't lock. Inserts lock one of several stripes.
+ *  The entries are strong references, the size is bounded.
+ *  Hits, misses, and evictions go to the stats once a minute.
+ *  Previously, it was an LRU map of WeakReferences keyed
+ *  by the first 4 bytes of the data, under a single lock.
+ *
  *  Following is sample usage:
  *  <pre>
 
@@ -39,6 +47,10 @@ import net.i2p.util.SystemVersion;
         return _cache.get(in);
     }
 
+    public static Foo create(ByteBuffer buf) throws DataFormatException {
+        return _cache.get(buf);
+    }
+
  *  </pre>
  *  @since 0.8.3
  *  @author zzz
@@ -54,8 +66,27 @@ public class SDSCache<V extends SimpleDataStructure> {
         FACTOR = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, maxMemory / (128*1024*1024d)));
     }
 
-    /** the LRU cache */
-    private final Map<Integer, WeakReference<V>> _cache;
+    /** entries per set, power of 2 */
+    private static final int WAYS = 8;
+    private static final int WAYS_SHIFT = 3;
+    /** counters are this far apart to avoid false sharing */
+    private static final int PAD = 8;
+    private static final long STATS_FREQUENCY = 60*1000;
+
+    /** sets * WAYS entries */
+    private final AtomicReferenceArray<V> _cache;
+    /** hashCodeOf() of each entry, racy, to skip most of the compares */
+    private final int[] _hashes;
+    /** CLOCK reference bits, one per entry, racy */
+    private final byte[] _referenced;
+    /** CLOCK hand, one per set, protected by the stripe lock */
+    private final byte[] _hands;
+    private final int _setMask;
+    /** insert locks */
+    private final Object[] _locks;
+    private final int _stripeMask;
+    /** hits, misses, evictions per stripe, at stripe * PAD */
+    private final AtomicLongArray _hits, _misses, _evictions;
     /** the byte array length for the class we are caching */
     private final int _datalen;
     /** the constructor for the class we are caching */
@@ -70,7 +101,28 @@ public class SDSCache<V extends SimpleDataStructure> {
      */
     public SDSCache(Class<V> rvClass, int len, int max) {
         int size = (int) (max * FACTOR);
-        _cache = new LHMCache<Integer, WeakReference<V>>(size);
+        int sets = 1;
+        while (sets * WAYS < size) {
+            sets <<= 1;
+        }
+        _cache = new AtomicReferenceArray<V>(sets * WAYS);
+        _hashes = new int[sets * WAYS];
+        _referenced = new byte[sets * WAYS];
+        _hands = new byte[sets];
+        _setMask = sets - 1;
+        int stripes = 1;
+        int maxStripes = Math.min(sets, Math.max(4, Math.min(64, 4 * SystemVersion.getCores())));
+        while (stripes < maxStripes) {
+            stripes <<= 1;
+        }
+        _locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            _locks[i] = new Object();
+        }
+        _stripeMask = stripes - 1;
+        _hits = new AtomicLongArray(stripes * PAD);
+        _misses = new AtomicLongArray(stripes * PAD);
+        _evictions = new AtomicLongArray(stripes * PAD);
         _datalen = len;
         try {
             _rvCon = rvClass.getConstructor(byte[].class);
@@ -81,8 +133,14 @@ public class SDSCache<V extends SimpleDataStructure> {
         //if (_log.shouldLog(Log.DEBUG))
         //    _log.debug("New SDSCache for " + rvClass + " data size: " + len +
         //               " max: " + size + " max mem: " + (len * size));
-        I2PAppContext.getGlobalContext().statManager().createRateStat(_statName, "Hit rate", "Router", new long[] { 10*60*1000 });
-        I2PAppContext.getGlobalContext().addShutdownTask(new Shutdown());
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        StatManager sm = ctx.statManager();
+        long[] periods = new long[] { 10*60*1000 };
+        sm.createRateStat(_statName, "Hit rate (percent)", "Router", periods);
+        sm.createRateStat(_statName + ".misses", "Misses per minute", "Router", periods);
+        sm.createRateStat(_statName + ".evictions", "Evictions per minute", "Router", periods);
+        ctx.addShutdownTask(new Shutdown());
+        ctx.simpleTimer2().addPeriodicEvent(new Stats(sm), STATS_FREQUENCY);
     }
 
     /**
@@ -94,12 +152,51 @@ public class SDSCache<V extends SimpleDataStructure> {
         }
     }
 
+    /**
+     *  Totals since the last run to the stats.
+     *  Lookups aren't slowed down by the synchronized stats.
+     *
+     *  @since 0.9.65
+     */
+    private class Stats implements SimpleTimer.TimedEvent {
+        private final StatManager _sm;
+        private long _lastHits, _lastMisses, _lastEvictions;
+
+        public Stats(StatManager sm) {
+            _sm = sm;
+        }
+
+        public void timeReached() {
+            long hits = getHits();
+            long misses = getMisses();
+            long evictions = getEvictions();
+            long h = hits - _lastHits;
+            long m = misses - _lastMisses;
+            long e = evictions - _lastEvictions;
+            _lastHits = hits;
+            _lastMisses = misses;
+            _lastEvictions = evictions;
+            if (h + m <= 0)
+                return;
+            _sm.addRateData(_statName, (100 * h) / (h + m));
+            _sm.addRateData(_statName + ".misses", m);
+            _sm.addRateData(_statName + ".evictions", e);
+        }
+    }
+
     /**
      * @since 0.9.17
      */
     public void clear() {
-        synchronized(_cache) {
-            _cache.clear();
+        for (int i = 0; i < _locks.length; i++) {
+            synchronized(_locks[i]) {
+                for (int set = i; set <= _setMask; set += _locks.length) {
+                    int base = set << WAYS_SHIFT;
+                    for (int j = 0; j < WAYS; j++) {
+                        _cache.set(base + j, null);
+                    }
+                }
+            }
         }
     }
 
@@ -118,35 +215,107 @@ public class SDSCache<V extends SimpleDataStructure> {
     public V get(byte[] data) {
         if (data == null)
             throw new NullPointerException("Don't pull null data from the cache");
-        int found;
-        V rv;
-        Integer key = hashCodeOf(data);
-        synchronized(_cache) {
-            WeakReference<V> ref = _cache.get(key);
-            if (ref != null)
-                rv = ref.get();
-            else
-                rv = null;
-            if (rv != null && Arrays.equals(data, rv.getData())) {
-                // found it, we don't need the data passed in any more
-                SimpleByteCache.release(data);
-                found = 1;
-            } else {
-                // make a new one
-                try {
-                    rv = _rvCon.newInstance(new Object[] { data } );
-                } catch (InstantiationException e) {
-                    throw new RuntimeException("SDSCache error", e);
-                } catch (IllegalAccessException e) {
-                    throw new RuntimeException("SDSCache error", e);
-                } catch (InvocationTargetException e) {
-                    throw new RuntimeException("SDSCache error", e);
+        int hash = hashCodeOf(data);
+        int set = hash & _setMask;
+        int base = set << WAYS_SHIFT;
+        int stripe = set & _stripeMask;
+        V rv = find(data, hash, base);
+        if (rv != null) {
+            // found it, we don't need the data passed in any more
+            SimpleByteCache.release(data);
+            _hits.incrementAndGet(stripe * PAD);
+            return rv;
+        }
+        // make a new one, outside the lock
+        try {
+            rv = _rvCon.newInstance(new Object[] { data } );
+        } catch (InstantiationException e) {
+            throw new RuntimeException("SDSCache error", e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("SDSCache error", e);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("SDSCache error", e);
+        }
+        synchronized(_locks[stripe]) {
+            // check again, another thread may have added it
+            V cached = find(data, hash, base);
+            if (cached != null) {
+                _hits.incrementAndGet(stripe * PAD);
+                return cached;
+            }
+            // CLOCK, skip and clear referenced entries, take the first empty or unreferenced one,
+            // terminates in at most 2 * WAYS steps
+            int hand = _hands[set];
+            int idx;
+            while (true) {
+                idx = base + hand;
+                hand = (hand + 1) & (WAYS - 1);
+                if (_cache.get(idx) == null)
+                    break;
+                if (_referenced[idx] == 0) {
+                    _evictions.incrementAndGet(stripe * PAD);
+                    break;
                 }
-                _cache.put(key, new WeakReference<V>(rv));
-               found = 0;
+                _referenced[idx] = 0;
             }
+            _hands[set] = (byte) hand;
+            _referenced[idx] = 0;
+            _hashes[idx] = hash;
+            _cache.set(idx, rv);
+        }
+        _misses.incrementAndGet(stripe * PAD);
+        return rv;
+    }
+
+    /**
+     *  Lock-free lookup in the set
+     *
+     *  @return the cached value or null
+     *  @since 0.9.65
+     */
+    private V find(byte[] data, int hash, int base) {
+        for (int i = base; i < base + WAYS; i++) {
+            if (_hashes[i] != hash)
+                continue;
+            V v = _cache.get(i);
+            if (v != null && Arrays.equals(data, v.getData())) {
+                if (_referenced[i] == 0)
+                    _referenced[i] = 1;
+                return v;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *  @return total since startup
+     *  @since 0.9.65
+     */
+    public long getHits() {
+        return sum(_hits);
+    }
+
+    /**
+     *  @return total since startup
+     *  @since 0.9.65
+     */
+    public long getMisses() {
+        return sum(_misses);
+    }
+
+    /**
+     *  @return total since startup
+     *  @since 0.9.65
+     */
+    public long getEvictions() {
+        return sum(_evictions);
+    }
+
+    private static long sum(AtomicLongArray a) {
+        long rv = 0;
+        for (int i = 0; i < a.length(); i += PAD) {
+            rv += a.get(i);
         }
-        I2PAppContext.getGlobalContext().statManager().addRateData(_statName, found);
         return rv;
     }
 
@@ -178,13 +347,40 @@ public class SDSCache<V extends SimpleDataStructure> {
         return get(data);
     }
 
+    /*
+     *  @param buf a buffer from which the bytes will be read, at its position, which is advanced
+     *  @return the cached value if available, otherwise
+     *          makes a new object and returns it
+     *  @throws DataFormatException if not enough bytes
+     *  @since 0.9.65
+     */
+    public V get(ByteBuffer buf) throws DataFormatException {
+        if (buf.remaining() < _datalen)
+            throw new DataFormatException("Not enough bytes to read the data");
+        byte[] data = SimpleByteCache.acquire(_datalen);
+        buf.get(data);
+        return get(data);
+    }
+
     /**
-     * We assume the data has enough randomness in it, so use the first 4 bytes for speed.
+     * A hash of all the data, so data with a common prefix
+     * doesn't all go to the same set.
+     * As of 0.9.65. Previously, the first 4 bytes.
      */
-    private static Integer hashCodeOf(byte[] data) {
-        int rv = data[0];
-        for (int i = 1; i < 4; i++)
-            rv ^= (data[i] << (i*8));
-        return Integer.valueOf(rv);
+    private static int hashCodeOf(byte[] data) {
+        int rv = data.length;
+        int i = 0;
+        for ( ; i + 4 <= data.length; i += 4) {
+            int w = (data[i] & 0xff) |
+                    ((data[i+1] & 0xff) << 8) |
+                    ((data[i+2] & 0xff) << 16) |
+                    (data[i+3] << 24);
+            rv = (rv ^ w) * 0x9e3779b9;
+        }
+        for ( ; i < data.length; i++) {
+            rv = (rv ^ (data[i] & 0xff)) * 0x9e3779b9;
+        }
+        // spread, as the set index is the low bits
+        return rv ^ (rv >>> 16);
     }
 }
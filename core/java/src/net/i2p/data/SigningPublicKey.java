@@ -12,6 +12,7 @@ package net.i2p.data;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import net.i2p.crypto.Blinding;
@@ -56,6 +57,16 @@ public class SigningPublicKey extends SimpleDataStructure {
         return _cache.get(in);
     }
 
+    /**
+     * Pull from cache or return new.
+     * DSA_SHA1 only!
+     * @throws DataFormatException if not enough bytes
+     * @since 0.9.65
+     */
+    public static SigningPublicKey create(ByteBuffer buf) throws DataFormatException {
+        return _cache.get(buf);
+    }
+
     public SigningPublicKey() {
         this(DEF_TYPE);
     }
@@ -197,6 +208,20 @@ public class SigningPublicKey extends SimpleDataStructure {
             out.write(_data, 0, KEYSIZE_BYTES);
     }
 
+    /**
+     *  Write the data up to a max of 128 bytes, to the buffer, at its position, which is advanced.
+     *  If longer, the rest will be written in the KeyCertificate.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    public void writeTruncatedBytes(ByteBuffer buf) throws DataFormatException {
+        if (_data == null) throw new DataFormatException("No data to write out");
+        if (_data.length <= KEYSIZE_BYTES)
+            buf.put(_data);
+        else
+            buf.put(_data, 0, KEYSIZE_BYTES);
+    }
+
     /**
      *  Only for SigType EdDSA_SHA512_Ed25519
      *
@@ -7,6 +7,7 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import net.i2p.crypto.SHA256Generator;
@@ -81,6 +82,25 @@ public abstract class SimpleDataStructure implements DataStructure {
         read(in, _data);
     }
 
+    /**
+     * Sets the data from the buffer, at its position, which is advanced.
+     * @param buf the buffer to read
+     * @throws DataFormatException if there are not enough bytes
+     * @throws RuntimeException if data already set.
+     * @since 0.9.65
+     */
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        if (_data != null)
+            throw new RuntimeException("Data already set");
+        int length = length();
+        if (buf.remaining() < length)
+            throw new DataFormatException("Not enough data, expected " + length + " got " + buf.remaining());
+        byte[] data = new byte[length];
+        buf.get(data);
+        // call setData() instead of _data = data in case overridden
+        setData(data);
+    }
+
     /**
      * Repeated reads until the buffer is full or IOException is thrown
      *
@@ -95,6 +115,17 @@ public abstract class SimpleDataStructure implements DataStructure {
         if (_data == null) throw new DataFormatException("No data to write out");
         out.write(_data);
     }
+
+    /**
+     * Writes the data to the buffer, at its position, which is advanced.
+     * @param buf the buffer to write
+     * @throws java.nio.BufferOverflowException if there is not enough room
+     * @since 0.9.65
+     */
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if (_data == null) throw new DataFormatException("No data to write out");
+        buf.put(_data);
+    }
     
     public String toBase64() {
         if (_data == null)
@@ -11,6 +11,7 @@ package net.i2p.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Defines the tunnel ID that messages are passed through on a set of routers.
@@ -69,6 +70,23 @@ public class TunnelId {
         DataHelper.writeLong(out, 4, _tunnelId);
     }
 
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  @since 0.9.65
+     */
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        _tunnelId = DataHelper.readLong(buf, 4);
+    }
+
+    /**
+     *  Writes to the buffer, at its position, which is advanced.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        DataHelper.writeLong(buf, 4, _tunnelId);
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
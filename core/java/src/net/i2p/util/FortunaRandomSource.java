@@ -10,6 +10,8 @@ package net.i2p.util;
  */
 
 import gnu.crypto.prng.AsyncFortunaStandalone;
+import gnu.crypto.prng.IRandomStandalone;
+import gnu.crypto.prng.LocalFortunaStandalone;
 
 import java.io.IOException;
 import java.security.SecureRandom;
@@ -24,9 +26,17 @@ import net.i2p.data.DataHelper;
  * ./prngseed.rnd on startup (if they exist), writing a new seed to ./prngseed.rnd
  * on an explicit call to saveSeed().
  *
+ * As of 0.9.65, by default, each thread gets its own generator,
+ * seeded from the shared one and reseeded periodically,
+ * so threads don't contend for the shared one's lock.
+ * Entropy is still fed to the shared instance's pools.
+ * Set prng.threadLocal=false to use the shared instance only.
+ *
  */
 public class FortunaRandomSource extends RandomSource implements EntropyHarvester {
     private final AsyncFortunaStandalone _fortuna;
+    /** null if disabled */
+    private final ThreadLocal<LocalFortunaStandalone> _local;
     private double _nextGaussian;
     private boolean _haveNextGaussian;
 
@@ -52,6 +62,31 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
         // kickstart it
         _fortuna.nextBytes(seed);
         _haveNextGaussian = false;
+        boolean local = context.getProperty(PROP_THREAD_LOCAL, !context.getBooleanProperty("prng.useDevRandom"));
+        _local = local ? new LocalFortuna() : null;
+    }
+
+    /**
+     *  @since 0.9.65
+     */
+    public static final String PROP_THREAD_LOCAL = "prng.threadLocal";
+
+    /**
+     *  @since 0.9.65
+     */
+    private class LocalFortuna extends ThreadLocal<LocalFortunaStandalone> {
+        @Override
+        protected LocalFortunaStandalone initialValue() {
+            return new LocalFortunaStandalone(_fortuna);
+        }
+    }
+
+    /**
+     *  @return this thread's generator, or null if disabled
+     *  @since 0.9.65
+     */
+    private LocalFortunaStandalone getLocal() {
+        return _local != null ? _local.get() : null;
     }
     
     /**
@@ -128,10 +163,7 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
             numBits = 16;
         else
             numBits = 8;
-        int rv;
-        synchronized(_fortuna) {
-            rv = nextBits(numBits);
-        }
+        int rv = nextBits(numBits);
         return rv % n;
     }
 
@@ -166,18 +198,13 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
 
     @Override
     public boolean nextBoolean() { 
-        byte val;
-        synchronized(_fortuna) {
-            val = _fortuna.nextByte();
-        }
+        byte val = nextByte();
         return ((val & 0x01) != 0);
     }
 
     @Override
     public void nextBytes(byte buf[]) { 
-        synchronized(_fortuna) {
-            _fortuna.nextBytes(buf);
-        }
+        nextBytes(buf, 0, buf.length);
     }
 
     /**
@@ -187,6 +214,11 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
      */
     @Override
     public void nextBytes(byte buf[], int offset, int length) {
+        LocalFortunaStandalone local = getLocal();
+        if (local != null) {
+            local.nextBytes(buf, offset, length);
+            return;
+        }
         synchronized(_fortuna) {
             _fortuna.nextBytes(buf, offset, length);
         }
@@ -198,6 +230,9 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
      * @since 0.9.24
      */
     public byte nextByte() { 
+        LocalFortunaStandalone local = getLocal();
+        if (local != null)
+            return local.nextByte();
         synchronized(_fortuna) {
             return _fortuna.nextByte();
         }
@@ -208,10 +243,7 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
      */
     @Override
     public double nextDouble() { 
-        long d;
-        synchronized(_fortuna) {
-            d = ((long)nextBits(26) << 27) + nextBits(27);
-        }
+        long d = ((long)nextBits(26) << 27) + nextBits(27);
         return d / (double)(1L << 53);
     }
 
@@ -220,10 +252,7 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
      */
     @Override
     public float nextFloat() { 
-        int d;
-        synchronized(_fortuna) {
-            d = nextBits(24);
-        }
+        int d = nextBits(24);
         return d / ((float)(1 << 24));
     }
 
@@ -254,13 +283,27 @@ public class FortunaRandomSource extends RandomSource implements EntropyHarveste
      * Pull the next numBits of random data off the fortuna instance (returning 0
      * through 2^numBits-1
      *
-     * Caller must synchronize!
+     * As of 0.9.65, caller need not synchronize.
      */
     protected int nextBits(int numBits) {
+        LocalFortunaStandalone local = getLocal();
+        if (local != null)
+            return nextBits(local, numBits);
+        synchronized(_fortuna) {
+            return nextBits(_fortuna, numBits);
+        }
+    }
+
+    /**
+     * Caller must synchronize if rand is shared
+     *
+     * @since 0.9.65 split out of nextBits(int)
+     */
+    private static int nextBits(IRandomStandalone rand, int numBits) {
         long rv = 0;
         int bytes = (numBits + 7) / 8;
         for (int i = 0; i < bytes; i++)
-            rv += ((_fortuna.nextByte() & 0xFF) << i*8);
+            rv += ((rand.nextByte() & 0xFF) << i*8);
         //rv >>>= (64-numBits);
         if (rv < 0)
             rv = 0 - rv;
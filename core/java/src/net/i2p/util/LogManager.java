@@ -22,12 +22,11 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import net.i2p.I2PAppContext;
 import net.i2p.data.DataHelper;
@@ -100,8 +99,10 @@ public class LogManager implements Flushable {
 
     /** max to LogRecords to buffer in memory before we start blocking */
     private static final int MAX_BUFFER = 1024;
+    /** @since 0.9.65 */
+    private static final long BLOCK_WAIT_NANOS = 100*1000;
     /** Ordered list of LogRecord elements that have not been written out yet */
-    private final LinkedBlockingQueue<LogRecord> _records;
+    private final LogRecordQueue _records;
     /** List of explicit overrides of log levels (LogLimit objects) */
     private final Set<LogLimit> _limits;
     /** String (scope) or Log.LogScope to Log object */
@@ -157,7 +158,7 @@ public class LogManager implements Flushable {
         _log = getLog(LogManager.class);
         String location = context.getProperty(CONFIG_LOCATION_PROP, CONFIG_LOCATION_DEFAULT);
         setConfig(location);
-        _records = new LinkedBlockingQueue<LogRecord>(_logBufferSize);
+        _records = new LogRecordQueue(_logBufferSize);
         _consoleBuffer = new LogConsoleBuffer(_consoleBufferSize);
         // If we aren't in the router context, delay creating the LogWriter until required,
         // so it doesn't create a log directory and log files unless there is output.
@@ -296,6 +297,10 @@ public class LogManager implements Flushable {
      * Used by Log to add records to the queue.
      * This is generally nonblocking and unsyncrhonized but may block when under
      * massive logging load as a way of throttling logging threads.
+     *
+     * When the queue is full, the overflow policy is to block, or,
+     * if logger.dropOnOverflow=true, to drop the record.
+     * As of 0.9.65, the writer logs the number dropped.
      */
     void addRecord(LogRecord record) {
         if (_shutdown && !SystemVersion.isAndroid()) {
@@ -316,19 +321,21 @@ public class LogManager implements Flushable {
         boolean success = _records.offer(record);
         if (!success) {
             if (_dropOnOverflow) {
-                // TODO use the counter in a periodic drop msg
                 _droppedRecords.incrementAndGet();
                 return;
             }
-            // the writer waits 10 seconds *or* until we tell them to wake up
-            // before rereading the config and writing out any log messages
-            synchronized (_writer) {
-                _writer.notifyAll();
-            }
             // block as a way of slowing down out-of-control loggers (a little)
-            try {
-                _records.put(record);
-            } catch (InterruptedException ie) {}
+            do {
+                if (_shutdown)
+                    return;
+                // the writer waits 10 seconds *or* until we tell them to wake up
+                // before rereading the config and writing out any log messages.
+                // Tell them every time, as a notify while they are writing is lost.
+                synchronized (_writer) {
+                    _writer.notifyAll();
+                }
+                LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+            } while (!_records.offer(record));
         } else if (_flushInterval <= 0) {
             synchronized (_writer) {
                 _writer.notifyAll();
@@ -768,12 +775,21 @@ public class LogManager implements Flushable {
     /**
      *  Zero-copy.
      *  For the LogWriter
-     *  @since 0.8.2
+     *  @since 0.8.2, returns LogRecordQueue since 0.9.65
      */
-    Queue<LogRecord> getQueue() {
+    LogRecordQueue getQueue() {
         return _records;
     }
 
+    /**
+     *  For the LogWriter
+     *  @return the number of records dropped since the last call
+     *  @since 0.9.65
+     */
+    long getAndResetDroppedRecords() {
+        return _droppedRecords.getAndSet(0);
+    }
+
     public char[] getFormat() {
         return _format;
     }
@@ -53,13 +53,13 @@ class LogRecordFormatter {
                     i++;  // skip following space
                 break;
             case LogManager.CLASS:
-                buf.append(getWhere(rec));
+                appendWhere(buf, rec);
                 break;
             case LogManager.THREAD:
-                buf.append(getThread(rec));
+                append(buf, rec.getThreadName(), MAX_THREAD_LENGTH);
                 break;
             case LogManager.PRIORITY:
-                buf.append(getPriority(rec, manager.getContext()));
+                appendPriority(buf, rec, manager.getContext());
                 break;
             case LogManager.MESSAGE:
                 String msg = getWhat(rec);
@@ -82,16 +82,44 @@ class LogRecordFormatter {
         return buf.toString();
     }
 
-    private static String getThread(LogRecord logRecord) {
-        return toString(logRecord.getThreadName(), MAX_THREAD_LENGTH);
+    /**
+     *  The last date formatted, as records often come in bursts
+     *  with the same time stamp.
+     *  @since 0.9.65
+     */
+    private static class CachedDate {
+        final SimpleDateFormat fmt;
+        final long date;
+        final String formatted;
+
+        CachedDate(SimpleDateFormat fmt, long date, String formatted) {
+            this.fmt = fmt;
+            this.date = date;
+            this.formatted = formatted;
+        }
     }
 
+    private static volatile CachedDate _lastDate;
+
     public static String getWhen(LogManager manager, LogRecord logRecord) {
+        return getWhen(manager, logRecord.getDate());
+    }
+
+    /**
+     *  @since 0.9.65
+     */
+    static String getWhen(LogManager manager, long date) {
         SimpleDateFormat fmt = manager.getDateFormat();
-        Date d = new Date(logRecord.getDate());
+        CachedDate last = _lastDate;
+        if (last != null && last.date == date && last.fmt == fmt)
+            return last.formatted;
+        Date d = new Date(date);
+        String rv;
         synchronized(fmt) {
-            return fmt.format(d);
+            rv = fmt.format(d);
         }
+        _lastDate = new CachedDate(fmt, date, rv);
+        return rv;
     }
 
     /** don't translate */
@@ -108,35 +136,41 @@ class LogRecordFormatter {
         String[] levels = { _x("CRIT"), _x("ERROR"), _x("WARN"), _x("INFO"), _x("DEBUG") };
     }
 
-    /** translate @since 0.7.14 */
-    private static String getPriority(LogRecord rec, I2PAppContext ctx) {
+    /** translate @since 0.7.14, append since 0.9.65 */
+    private static void appendPriority(StringBuilder buf, LogRecord rec, I2PAppContext ctx) {
         int len;
         if (Translate.getLanguage(ctx).equals("de"))
             len = 8;  // KRITISCH
         else
             len = MAX_PRIORITY_LENGTH;
-        return toString(Translate.getString(Log.toLevelString(rec.getPriority()), ctx, BUNDLE_NAME), len);
+        append(buf, Translate.getString(Log.toLevelString(rec.getPriority()), ctx, BUNDLE_NAME), len);
     }
 
     private static String getWhat(LogRecord rec) {
         return rec.getMessage();
     }
 
-    private static String getWhere(LogRecord rec) {
+    /** append since 0.9.65 */
+    private static void appendWhere(StringBuilder buf, LogRecord rec) {
         String src = (rec.getSource() != null ? rec.getSource().getName() : rec.getSourceName());
         if (src == null) src = "<none>";
-        return toString(src, MAX_WHERE_LENGTH);
+        append(buf, src, MAX_WHERE_LENGTH);
     }
 
-    /** truncates or pads to the specified size */
-    private static String toString(String str, int size) {
-        StringBuilder buf = new StringBuilder();
+    /**
+     *  Truncates or pads to the specified size, without a temporary String
+     *  @since 0.9.65, was toString()
+     */
+    private static void append(StringBuilder buf, String str, int size) {
         if (str == null) str = "";
-        if (str.length() > size) str = str.substring(str.length() - size);
-        buf.append(str);
-        while (buf.length() < size)
+        int len = str.length();
+        if (len > size)
+            buf.append(str, len - size, len);
+        else
+            buf.append(str);
+        for (int i = len; i < size; i++) {
             buf.append(' ');
-        return buf.toString();
+        }
     }
 
     /**
@@ -0,0 +1,118 @@
+package net.i2p.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free queue of log records, from the logging threads
+ * to the LogWriter. The slots are preallocated, and offer() and poll()
+ * never lock or allocate.
+ *
+ * Each slot has a sequence number that tells producers and consumers
+ * whose turn it is (D. Vyukov's bounded MPMC queue).
+ * Multiple consumers are allowed, as LogManager.shutdown()
+ * may flush while the writer thread is running.
+ *
+ * @since 0.9.65
+ */
+class LogRecordQueue {
+    private final AtomicReferenceArray<LogRecord> _records;
+    private final AtomicLongArray _sequence;
+    private final int _mask;
+    /** next slot to write */
+    private final AtomicLong _tail = new AtomicLong();
+    /** next slot to read */
+    private final AtomicLong _head = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of 2
+     */
+    public LogRecordQueue(int capacity) {
+        int sz = 2;
+        while (sz < capacity) {
+            sz <<= 1;
+        }
+        _records = new AtomicReferenceArray<LogRecord>(sz);
+        _sequence = new AtomicLongArray(sz);
+        for (int i = 0; i < sz; i++) {
+            _sequence.set(i, i);
+        }
+        _mask = sz - 1;
+    }
+
+    /**
+     * @return false if full
+     */
+    public boolean offer(LogRecord rec) {
+        long pos = _tail.get();
+        while (true) {
+            int idx = (int) pos & _mask;
+            long diff = _sequence.get(idx) - pos;
+            if (diff == 0) {
+                if (_tail.compareAndSet(pos, pos + 1)) {
+                    _records.lazySet(idx, rec);
+                    // publish
+                    _sequence.set(idx, pos + 1);
+                    return true;
+                }
+                pos = _tail.get();
+            } else if (diff < 0) {
+                // the consumer hasn't freed the slot from the last lap
+                return false;
+            } else {
+                // another producer got it
+                pos = _tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return null if empty
+     */
+    public LogRecord poll() {
+        long pos = _head.get();
+        while (true) {
+            int idx = (int) pos & _mask;
+            long diff = _sequence.get(idx) - (pos + 1);
+            if (diff == 0) {
+                if (_head.compareAndSet(pos, pos + 1)) {
+                    LogRecord rv = _records.get(idx);
+                    _records.lazySet(idx, null);
+                    // free the slot for the next lap
+                    _sequence.set(idx, pos + _mask + 1);
+                    return rv;
+                }
+                pos = _head.get();
+            } else if (diff < 0) {
+                // empty, or a producer hasn't published yet
+                return null;
+            } else {
+                // another consumer got it
+                pos = _head.get();
+            }
+        }
+    }
+
+    /**
+     * Approximate if other threads are active
+     */
+    public boolean isEmpty() {
+        return _head.get() >= _tail.get();
+    }
+
+    /**
+     * Approximate if other threads are active
+     */
+    public int size() {
+        return (int) Math.max(0, _tail.get() - _head.get());
+    }
+
+    public int capacity() {
+        return _mask + 1;
+    }
+
+    public void clear() {
+        while (poll() != null) {}
+    }
+}
@@ -9,8 +9,6 @@ package net.i2p.util;
  *
  */
 
-import java.util.Queue;
-
 import net.i2p.app.ClientAppManager;
 import net.i2p.app.NotificationService;
 
@@ -96,10 +94,10 @@ abstract class LogWriter implements Runnable {
     public void flushRecords() { flushRecords(true); }
 
     public void flushRecords(boolean shouldWait) {
+        // zero copy, drain the manager queue directly
+        LogRecordQueue records = _manager.getQueue();
+        if (records == null) return;
         try {
-            // zero copy, drain the manager queue directly
-            Queue<LogRecord> records = _manager.getQueue();
-            if (records == null) return;
             if (!records.isEmpty()) {
                 if (_last != null && _firstTimestamp < _manager.getContext().clock().now() - 30*60*1000)
                     _last = null;
@@ -121,6 +119,10 @@ abstract class LogWriter implements Runnable {
                 if (dupCount > 0) {
                     writeDupMessage(dupCount, _last);
                 }
+                // after the records that were queued before the drops
+                long dropped = _manager.getAndResetDroppedRecords();
+                if (dropped > 0)
+                    writeDropMessage(dropped);
                 flushWriter();
             }
         } catch (Throwable t) {
@@ -129,7 +131,9 @@ abstract class LogWriter implements Runnable {
             if (shouldWait) {
                 try { 
                     synchronized (this) {
-                        this.wait(_flushInterval); 
+                        // don't sleep if the loggers are filling it up faster than we write
+                        if (records.size() < records.capacity() / 2)
+                            this.wait(_flushInterval); 
                     }
                 } catch (InterruptedException ie) { // nop
                 }
@@ -152,6 +156,22 @@ abstract class LogWriter implements Runnable {
             _manager.getBuffer().addCritical(dmsg);
     }
 
+    /**
+     *  Write a msg with the number of records dropped because the queue was full.
+     *  It isn't a LogRecord, so it doesn't go through the queue it's reporting on.
+     *  @since 0.9.65
+     */
+    private void writeDropMessage(long dropped) {
+        String dmsg = LogRecordFormatter.getWhen(_manager, _manager.getContext().clock().now()) + " *** " +
+                      ngettext("{0} log message dropped, log buffer full",
+                               "{0} log messages dropped, log buffer full", (int) Math.min(dropped, Integer.MAX_VALUE)) +
+                      " ***" + LogRecordFormatter.NL;
+        writeRecord(Log.WARN, dmsg);
+        _manager.getBuffer().add(dmsg);
+        if (_manager.getDisplayOnScreenLevel() <= Log.WARN && _manager.displayOnScreen())
+            System.out.print(dmsg);
+    }
+
     /**
      *  Return a msg with the date stamp of the last duplicate
      *  @since 0.9.3
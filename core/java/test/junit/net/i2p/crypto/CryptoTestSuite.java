@@ -25,9 +25,11 @@ public class CryptoTestSuite {
         suite.addTestSuite(CryptixRijndael_AlgorithmTest.class);
         suite.addTestSuite(DSATest.class);
         suite.addTestSuite(KeyGeneratorTest.class);
+        suite.addTestSuite(KeyPrecalcServiceTest.class);
         suite.addTestSuite(SHA1HashTest.class);
         suite.addTestSuite(SHA256Test.class);
         suite.addTestSuite(SipHashInlineTest.class);
+        suite.addTestSuite(X25519Test.class);
         
         return suite;
     }
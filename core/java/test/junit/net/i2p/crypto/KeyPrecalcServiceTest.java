@@ -0,0 +1,101 @@
+package net.i2p.crypto;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import net.i2p.I2PAppContext;
+import net.i2p.util.TryCache;
+
+/**
+ * @since 0.9.65
+ */
+public class KeyPrecalcServiceTest extends TestCase {
+
+    private static class Counter implements TryCache.ObjectFactory<Integer> {
+        private final AtomicInteger _count = new AtomicInteger();
+
+        public Integer newInstance() {
+            return Integer.valueOf(_count.incrementAndGet());
+        }
+    }
+
+    private static void waitForSize(KeyPrecalcService.Stock<?> stock, int size) throws InterruptedException {
+        for (int i = 0; i < 500 && stock.size() < size; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    public void testFillsToMin() throws Exception {
+        KeyPrecalcService svc = I2PAppContext.getGlobalContext().keyPrecalcService();
+        KeyPrecalcService.Stock<Integer> stock = svc.register("test1", new Counter(), 8, 16, 0);
+        try {
+            assertEquals(8, stock.getTarget());
+            waitForSize(stock, 8);
+            assertEquals(8, stock.size());
+            assertTrue(svc.getThreadCount() >= 1);
+            assertTrue(svc.getThreadCount() <= svc.getMaxThreads());
+            assertNotNull(stock.poll());
+            assertEquals(1, stock.getUsed());
+            assertEquals(0, stock.getStalls());
+            // refilled
+            waitForSize(stock, 8);
+            assertEquals(8, stock.size());
+            assertTrue(stock.getGenerated() >= 9);
+        } finally {
+            stock.shutdown();
+        }
+        assertEquals(0, stock.size());
+        assertFalse(svc.getStocks().contains(stock));
+    }
+
+    public void testStalls() throws Exception {
+        KeyPrecalcService svc = I2PAppContext.getGlobalContext().keyPrecalcService();
+        // empty until the workers get to it
+        TryCache.ObjectFactory<Integer> slow = new TryCache.ObjectFactory<Integer>() {
+            public Integer newInstance() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {}
+                return Integer.valueOf(1);
+            }
+        };
+        KeyPrecalcService.Stock<Integer> stock = svc.register("test2", slow, 4, 4, 0);
+        try {
+            assertNull(stock.poll());
+            assertEquals(1, stock.getStalls());
+            waitForSize(stock, 1);
+            assertNotNull(stock.poll());
+            assertEquals(2, stock.getUsed());
+        } finally {
+            stock.shutdown();
+        }
+    }
+
+    public void testDisabled() {
+        KeyPrecalcService svc = I2PAppContext.getGlobalContext().keyPrecalcService();
+        KeyPrecalcService.Stock<Integer> stock = svc.register("test3", new Counter(), 0, 0, 0);
+        assertFalse(svc.getStocks().contains(stock));
+        assertNull(stock.poll());
+        assertEquals(0, stock.getStalls());
+        assertFalse(stock.offer(Integer.valueOf(1)));
+        stock.shutdown();
+    }
+
+    public void testOffer() {
+        KeyPrecalcService svc = I2PAppContext.getGlobalContext().keyPrecalcService();
+        KeyPrecalcService.Stock<Integer> stock = svc.register("test4", new Counter(), 1, 1, 0);
+        try {
+            waitForSize(stock, 1);
+            // full
+            assertFalse(stock.offer(Integer.valueOf(-1)));
+            Integer i = stock.poll();
+            assertNotNull(i);
+            stock.offer(i);
+            assertTrue(stock.size() >= 1);
+        } catch (InterruptedException ie) {
+            fail();
+        } finally {
+            stock.shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.i2p.crypto;
+
+import java.util.Arrays;
+
+import com.southernstorm.noise.crypto.x25519.Curve25519;
+
+import junit.framework.TestCase;
+
+import net.i2p.crypto.eddsa.Utils;
+
+/**
+ * RFC 7748 test vectors for Curve25519.eval()
+ *
+ * @since 0.9.65
+ */
+public class X25519Test extends TestCase {
+
+    /** RFC 7748 section 5.2, first vector */
+    private static final byte[] SCALAR_1 = Utils.hexToBytes("a546e36bf0527c9d3b16154b82465edd62144c0ac1fc5a18506a2244ba449ac4");
+    private static final byte[] U_1 = Utils.hexToBytes("e6db6867583030db3594c1a424b15f7c726624ec26b3353b10a903a6d0ab1c4c");
+    private static final byte[] OUT_1 = Utils.hexToBytes("c3da55379de9c6908e94ea4df28d084f32eccf03491c71f754b4075577a28552");
+
+    /** RFC 7748 section 5.2, second vector, the u-coordinate has bit 255 set */
+    private static final byte[] SCALAR_2 = Utils.hexToBytes("4b66e9d4d1b4673c5ad22691957d6af5c11b6421e0ea01d42ca4169e7918ba0d");
+    private static final byte[] U_2 = Utils.hexToBytes("e5210f12786811d3f4b7959d0538ae2c31dbe7106fc03c3efc4cd549c715a493");
+    private static final byte[] OUT_2 = Utils.hexToBytes("95cbde9476e8907d7aade45cb4b873f88b595a68799fa152e6f8f7647aac7957");
+
+    /** RFC 7748 section 6.1, Alice */
+    private static final byte[] PRIV = Utils.hexToBytes("77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a");
+    private static final byte[] PUB = Utils.hexToBytes("8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a");
+
+    public void testVector1() {
+        byte[] out = new byte[32];
+        Curve25519.eval(out, 0, SCALAR_1, U_1);
+        assertTrue(Arrays.equals(OUT_1, out));
+    }
+
+    /**
+     * Bit 255 of the u-coordinate must be ignored.
+     * Before 0.9.65 it was not, and the result was different.
+     */
+    public void testVector2() {
+        byte[] out = new byte[32];
+        Curve25519.eval(out, 0, SCALAR_2, U_2);
+        assertTrue(Arrays.equals(OUT_2, out));
+        byte[] u = Arrays.copyOf(U_2, 32);
+        u[31] &= 0x7f;
+        out = new byte[32];
+        Curve25519.eval(out, 0, SCALAR_2, u);
+        assertTrue(Arrays.equals(OUT_2, out));
+    }
+
+    public void testBasePoint() {
+        byte[] out = new byte[32];
+        Curve25519.eval(out, 0, PRIV, null);
+        assertTrue(Arrays.equals(PUB, out));
+        byte[] nine = new byte[32];
+        nine[0] = 9;
+        out = new byte[32];
+        Curve25519.eval(out, 0, PRIV, nine);
+        assertTrue(Arrays.equals(PUB, out));
+    }
+}
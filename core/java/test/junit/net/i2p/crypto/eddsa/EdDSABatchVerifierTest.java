@@ -0,0 +1,117 @@
+package net.i2p.crypto.eddsa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import java.security.SignatureException;
+import java.util.Arrays;
+
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.math.ScalarOps;
+import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
+import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
+import net.i2p.crypto.eddsa.spec.EdDSAPrivateKeySpec;
+import net.i2p.crypto.eddsa.spec.EdDSAPublicKeySpec;
+import net.i2p.util.RandomSource;
+
+import org.junit.Test;
+
+/**
+ * @since 0.9.65
+ */
+public class EdDSABatchVerifierTest {
+    private static final EdDSAParameterSpec SPEC = EdDSANamedCurveTable.ED_25519_CURVE_SPEC;
+    /** (0, -1), the point of order 2 */
+    private static final byte[] ORDER_2 = Utils.hexToBytes("ecffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff7f");
+
+    private final EdDSAPrivateKey[] privs = new EdDSAPrivateKey[8];
+    private final EdDSAPublicKey[] keys = new EdDSAPublicKey[8];
+    private final byte[][] data = new byte[8][];
+    private final byte[][] sigs = new byte[8][];
+
+    public EdDSABatchVerifierTest() throws Exception {
+        RandomSource rand = RandomSource.getInstance();
+        for (int i = 0; i < keys.length; i++) {
+            byte[] seed = new byte[32];
+            rand.nextBytes(seed);
+            privs[i] = new EdDSAPrivateKey(new EdDSAPrivateKeySpec(seed, SPEC));
+            keys[i] = new EdDSAPublicKey(new EdDSAPublicKeySpec(privs[i].getA(), SPEC));
+            data[i] = new byte[100 + i];
+            rand.nextBytes(data[i]);
+            EdDSAEngine engine = new EdDSAEngine(MessageDigest.getInstance("SHA-512"));
+            engine.initSign(privs[i]);
+            engine.update(data[i]);
+            sigs[i] = engine.sign();
+        }
+    }
+
+    @Test
+    public void testAllGood() throws Exception {
+        boolean[] rv = EdDSABatchVerifier.verify(MessageDigest.getInstance("SHA-512"), keys, data, sigs);
+        for (int i = 0; i < rv.length; i++) {
+            assertTrue(rv[i]);
+        }
+    }
+
+    @Test
+    public void testSomeBad() throws Exception {
+        sigs[1][40] ^= 1;
+        data[4][0] ^= 1;
+        sigs[6][3] ^= 1;
+        sigs[7] = new byte[63];
+        boolean[] rv = EdDSABatchVerifier.verify(MessageDigest.getInstance("SHA-512"), keys, data, sigs);
+        for (int i = 0; i < rv.length; i++) {
+            assertEquals("sig " + i, verifyOne(i), rv[i]);
+        }
+    }
+
+    /**
+     * A signature with R = rB + T, T of order 2, and S for that R.
+     * EdDSAEngine rejects it, and so does a batch of one,
+     * but in a batch the cofactor clears T and it's accepted.
+     * That's why this isn't used by DSAEngine.
+     */
+    @Test
+    public void testCofactored() throws Exception {
+        ScalarOps sc = SPEC.getScalarOps();
+        byte[] rnd = new byte[64];
+        RandomSource.getInstance().nextBytes(rnd);
+        byte[] r = sc.reduce(rnd);
+        GroupElement T = new GroupElement(SPEC.getCurve(), ORDER_2);
+        GroupElement R = SPEC.getB().scalarMultiply(r).toP3().add(T.toCached()).toP3();
+        byte[] Rbyte = R.toByteArray();
+        MessageDigest md = MessageDigest.getInstance("SHA-512");
+        md.update(Rbyte);
+        md.update(keys[0].getAbyte());
+        md.update(data[0]);
+        byte[] h = sc.reduce(md.digest());
+        byte[] S = sc.multiplyAndAdd(h, privs[0].geta(), r);
+        byte[] sig = new byte[64];
+        System.arraycopy(Rbyte, 0, sig, 0, 32);
+        System.arraycopy(S, 0, sig, 32, 32);
+        sigs[0] = sig;
+
+        assertFalse(verifyOne(0));
+        boolean[] rv = EdDSABatchVerifier.verify(MessageDigest.getInstance("SHA-512"),
+                                                 Arrays.copyOf(keys, 1), Arrays.copyOf(data, 1), Arrays.copyOf(sigs, 1));
+        assertFalse(rv[0]);
+        rv = EdDSABatchVerifier.verify(MessageDigest.getInstance("SHA-512"), keys, data, sigs);
+        assertTrue(rv[0]);
+    }
+
+    private boolean verifyOne(int i) throws Exception {
+        EdDSAEngine engine = new EdDSAEngine(MessageDigest.getInstance("SHA-512"));
+        engine.initVerify(keys[i]);
+        engine.update(data[i]);
+        try {
+            return engine.verify(sigs[i]);
+        } catch (SignatureException se) {
+            return false;
+        } catch (IllegalArgumentException iae) {
+            // wrong length
+            return false;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package net.i2p.data;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @since 0.9.65
+ */
+public class Base32Test {
+
+    /** RFC 4648 section 10, lower case, without the '=' */
+    private static final String[][] VECTORS = {
+        { "", "" },
+        { "f", "my" },
+        { "fo", "mzxq" },
+        { "foo", "mzxw6" },
+        { "foob", "mzxw6yq" },
+        { "fooba", "mzxw6ytb" },
+        { "foobar", "mzxw6ytboi" }
+    };
+
+    /** lengths 0-40 cover all the remainders, 5000 covers the chunking */
+    private static final int[] LENGTHS;
+    static {
+        LENGTHS = new int[43];
+        for (int i = 0; i <= 40; i++)
+            LENGTHS[i] = i;
+        LENGTHS[41] = 32;
+        LENGTHS[42] = 5000;
+    }
+
+    @Test
+    public void testVectors() {
+        for (String[] v : VECTORS) {
+            assertEquals(v[1], Base32.encode(v[0]));
+            assertEquals(v[0], Base32.decodeToString(v[1]));
+            assertEquals(v[0], Base32.decodeToString(v[1].toUpperCase()));
+        }
+    }
+
+    private static byte[] random(int len) {
+        byte[] rv = new byte[len];
+        new Random(len).nextBytes(rv);
+        return rv;
+    }
+
+    /** the String API, from a copy of the slice */
+    private static String encode(byte[] src, int off, int len) {
+        byte[] b = new byte[len];
+        System.arraycopy(src, off, b, 0, len);
+        return Base32.encode(b);
+    }
+
+    @Test
+    public void testEncodeBytes() {
+        for (int len : LENGTHS) {
+            byte[] src = random(len + 7);
+            String expected = encode(src, 3, len);
+            int elen = Base32.encodedLength(len);
+            assertEquals(expected.length(), elen);
+            byte[] out = new byte[elen + 10];
+            out[4] = 1;
+            out[5 + elen] = 2;
+            assertEquals(elen, Base32.encode(src, 3, len, out, 5));
+            assertEquals(expected, new String(out, 5, elen, StandardCharsets.ISO_8859_1));
+            assertEquals(1, out[4]);
+            assertEquals(2, out[5 + elen]);
+        }
+    }
+
+    @Test
+    public void testEncodeByteBuffer() {
+        for (int len : LENGTHS) {
+            byte[] src = random(len + 7);
+            String expected = encode(src, 3, len);
+            int elen = expected.length();
+            ByteBuffer slice = ByteBuffer.allocate(elen + 20);
+            slice.position(11);
+            ByteBuffer[] bufs = { ByteBuffer.allocate(elen + 5), slice.slice(),
+                                  ByteBuffer.allocateDirect(elen + 5) };
+            for (ByteBuffer buf : bufs) {
+                buf.position(2);
+                Base32.encode(src, 3, len, buf);
+                assertEquals(2 + elen, buf.position());
+                buf.flip();
+                buf.position(2);
+                byte[] b = new byte[buf.remaining()];
+                buf.get(b);
+                assertEquals(expected, new String(b, StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeByteBufferOverflow() {
+        byte[] src = random(32);
+        ByteBuffer[] bufs = { ByteBuffer.allocate(51), ByteBuffer.allocateDirect(51) };
+        for (ByteBuffer buf : bufs) {
+            try {
+                Base32.encode(src, 0, 32, buf);
+                fail();
+            } catch (BufferOverflowException expected) {}
+            assertEquals(0, buf.position());
+            assertEquals(0, buf.get(0));
+        }
+    }
+
+    @Test
+    public void testEncodeAppendable() throws IOException {
+        for (int len : LENGTHS) {
+            byte[] src = random(len + 7);
+            String expected = encode(src, 3, len);
+            StringBuilder sb = new StringBuilder("x");
+            Base32.encode(src, 3, len, sb);
+            assertEquals("x" + expected, sb.toString());
+            StringWriter w = new StringWriter();
+            Base32.encode(src, 3, len, w);
+            assertEquals(expected, w.toString());
+            CharBuffer cb = CharBuffer.allocate(expected.length());
+            Base32.encode(src, 3, len, (Appendable) cb);
+            cb.flip();
+            assertEquals(expected, cb.toString());
+        }
+    }
+
+    @Test
+    public void testDecodeCharSequence() {
+        for (int len : LENGTHS) {
+            byte[] src = random(len);
+            String enc = Base32.encode(src);
+            String[] inputs = { enc, enc.toUpperCase() };
+            for (String in : inputs) {
+                String padded = "ab" + in + "cde";
+                int start = 2;
+                int end = 2 + in.length();
+                CharSequence[] seqs = { padded, new StringBuilder(padded), CharBuffer.wrap(padded) };
+                for (CharSequence cs : seqs) {
+                    assertEquals(len, Base32.decodedLength(end - start));
+                    byte[] out = new byte[len + 4];
+                    out[3] = 1;
+                    assertEquals(len, Base32.decode(cs, start, end, out, 4));
+                    assertTrue(DataHelper.eq(src, 0, out, 4, len));
+                    assertEquals(1, out[3]);
+                }
+                assertTrue(DataHelper.eq(src, Base32.decode(in)));
+            }
+        }
+    }
+
+    /**
+     * null from the String API, -1 from the CharSequence API
+     */
+    @Test
+    public void testMalformed() {
+        String[] bad = { "mzx", "mzxw6y", "mzxw6yt1", "my======", "mz8q", "m!",
+                         "mzxw 6", "mzxw6yt\u00e9", "mzxw6yt\u20ac",
+                         // unused bits not zero
+                         "mz", "mzxr" };
+        byte[] out = new byte[16];
+        for (String s : bad) {
+            assertNull(s, Base32.decode(s));
+            assertEquals(s, -1, Base32.decode(s, 0, s.length(), out, 0));
+            assertEquals(s, -1, Base32.decode(new StringBuilder(s), 0, s.length(), out, 0));
+            String padded = "aaaaaaaa" + s + "aaaaaaaa";
+            assertEquals(s, -1, Base32.decode(padded, 8, 8 + s.length(), out, 0));
+        }
+        assertNull(Base32.decodeToString("mzx"));
+    }
+}
@@ -10,6 +10,14 @@ package net.i2p.data;
  
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 import org.junit.Test;
  
 public class Base64Test {
@@ -28,4 +36,168 @@ public class Base64Test {
         decoded = Base64.decode(encoded);
         assertTrue(DataHelper.eq(decoded, all));
     }
+
+    /** lengths 0-70 cover all the padding cases, 5000 covers the chunking */
+    private static final int[] LENGTHS;
+    static {
+        LENGTHS = new int[73];
+        for (int i = 0; i <= 70; i++)
+            LENGTHS[i] = i;
+        LENGTHS[71] = 391;
+        LENGTHS[72] = 5000;
+    }
+
+    private static byte[] random(int len) {
+        byte[] rv = new byte[len];
+        new Random(len).nextBytes(rv);
+        return rv;
+    }
+
+    @Test
+    public void testEncodeBytes() {
+        for (int len : LENGTHS) {
+            byte[] src = random(len + 7);
+            String expected = Base64.encode(src, 3, len);
+            int elen = Base64.encodedLength(len);
+            assertEquals(expected.length(), elen);
+            byte[] out = new byte[elen + 10];
+            out[4] = 1;
+            out[5 + elen] = 2;
+            assertEquals(elen, Base64.encode(src, 3, len, out, 5));
+            assertEquals(expected, new String(out, 5, elen, StandardCharsets.ISO_8859_1));
+            assertEquals(1, out[4]);
+            assertEquals(2, out[5 + elen]);
+            assertTrue(DataHelper.eq(Base64.decode(expected), 0, src, 3, len));
+        }
+    }
+
+    @Test
+    public void testEncodeByteBuffer() {
+        for (int len : LENGTHS) {
+            byte[] src = random(len + 7);
+            String expected = Base64.encode(src, 3, len);
+            int elen = expected.length();
+            ByteBuffer slice = ByteBuffer.allocate(elen + 20);
+            slice.position(11);
+            ByteBuffer[] bufs = { ByteBuffer.allocate(elen + 5), slice.slice(),
+                                  ByteBuffer.allocateDirect(elen + 5) };
+            for (ByteBuffer buf : bufs) {
+                buf.position(2);
+                Base64.encode(src, 3, len, buf);
+                assertEquals(2 + elen, buf.position());
+                buf.flip();
+                buf.position(2);
+                byte[] b = new byte[buf.remaining()];
+                buf.get(b);
+                assertEquals(expected, new String(b, StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+
+    @Test
+    public void testEncodeByteBufferOverflow() {
+        byte[] src = random(32);
+        ByteBuffer[] bufs = { ByteBuffer.allocate(43), ByteBuffer.allocateDirect(43) };
+        for (ByteBuffer buf : bufs) {
+            try {
+                Base64.encode(src, 0, 32, buf);
+                fail();
+            } catch (BufferOverflowException expected) {}
+            assertEquals(0, buf.position());
+            assertEquals(0, buf.get(0));
+        }
+    }
+
+    @Test
+    public void testEncodeAppendable() throws IOException {
+        for (int len : LENGTHS) {
+            byte[] src = random(len + 7);
+            String expected = Base64.encode(src, 3, len);
+            StringBuilder sb = new StringBuilder("x");
+            Base64.encode(src, 3, len, sb);
+            assertEquals("x" + expected, sb.toString());
+            // the Writer path
+            StringWriter w = new StringWriter();
+            Base64.encode(src, 3, len, w);
+            assertEquals(expected, w.toString());
+            // neither a StringBuilder nor a Writer
+            CharBuffer cb = CharBuffer.allocate(expected.length());
+            Base64.encode(src, 3, len, (Appendable) cb);
+            cb.flip();
+            assertEquals(expected, cb.toString());
+        }
+    }
+
+    @Test
+    public void testDecodeCharSequence() {
+        for (int len : LENGTHS) {
+            byte[] src = random(len);
+            String enc = Base64.encode(src);
+            String unpadded = enc.replace("=", "");
+            String[] inputs = { enc, unpadded };
+            for (String in : inputs) {
+                String padded = "ab" + in + "cde";
+                int start = 2;
+                int end = 2 + in.length();
+                CharSequence[] seqs = { padded, new StringBuilder(padded), CharBuffer.wrap(padded) };
+                for (CharSequence cs : seqs) {
+                    int dlen = Base64.decodedLength(cs, start, end);
+                    assertEquals(len, dlen);
+                    byte[] out = new byte[len + 4];
+                    out[3] = 1;
+                    assertEquals(len, Base64.decode(cs, start, end, out, 4));
+                    assertTrue(DataHelper.eq(src, 0, out, 4, len));
+                    assertEquals(1, out[3]);
+                }
+                assertTrue(DataHelper.eq(src, Base64.decode(in)));
+            }
+        }
+    }
+
+    /**
+     * The I2P alphabet is the standard one with - for + and ~ for /.
+     */
+    @Test
+    public void testAlphabets() {
+        byte[] all = new byte[256 * 3];
+        for (int i = 0; i < all.length; i++)
+            all[i] = (byte) i;
+        String std = java.util.Base64.getEncoder().encodeToString(all);
+        assertTrue(std.indexOf('+') >= 0 && std.indexOf('/') >= 0);
+        String i2p = std.replace('+', '-').replace('/', '~');
+        assertEquals(std, Base64.encode(all, true));
+        assertEquals(std, Base64.encode(all, 0, all.length, true));
+        assertEquals(i2p, Base64.encode(all));
+        assertEquals(i2p, Base64.encode(all, false));
+        assertTrue(DataHelper.eq(all, Base64.decode(std, true)));
+        assertTrue(DataHelper.eq(all, Base64.decode(i2p)));
+        // the standard decoder also takes - and ~
+        assertTrue(DataHelper.eq(all, Base64.decode(i2p, true)));
+        // the I2P decoder doesn't take + or /
+        assertNull(Base64.decode(std));
+        byte[] out = new byte[all.length];
+        assertEquals(-1, Base64.decode(std, 0, std.length(), out, 0));
+    }
+
+    /**
+     * null from the String API, -1 from the CharSequence API
+     */
+    @Test
+    public void testMalformed() {
+        String[] bad = { "A", "AAAAA", "AA=A", "AAAA=", "AA==AA", "A===", "====",
+                         "AA AA", "AA\n", "AB+/", "AAA\u00e9", "AAA\u20ac",
+                         // unused bits not zero
+                         "AB==", "AAB=" };
+        byte[] out = new byte[16];
+        for (String s : bad) {
+            assertNull(s, Base64.decode(s));
+            assertEquals(s, -1, Base64.decode(s, 0, s.length(), out, 0));
+            assertEquals(s, -1, Base64.decode(new StringBuilder(s), 0, s.length(), out, 0));
+            String padded = "AAAA" + s + "AAAA";
+            assertEquals(s, -1, Base64.decode(padded, 4, 4 + s.length(), out, 0));
+        }
+        assertNull(Base64.decode(null));
+        assertEquals(0, Base64.decode("").length);
+        assertNull(Base64.decodeToString("A"));
+    }
 }
@@ -5,8 +5,11 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Properties;
 import java.util.Random;
 import java.util.TimeZone;
 
@@ -56,6 +59,62 @@ public class DataHelperTest {
         read = DataHelper.fromLong(written, 0, numBytes);
         assertTrue(read == value);
 
+        ByteBuffer buf = ByteBuffer.allocate(numBytes);
+        DataHelper.writeLong(buf, numBytes, value);
+        assertTrue(DataHelper.eq(written, buf.array()));
+        buf.flip();
+        read = DataHelper.readLong(buf, numBytes);
+        assertTrue(read == value);
+        // big endian regardless
+        buf.clear();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        DataHelper.writeLong(buf, numBytes, value);
+        assertTrue(DataHelper.eq(written, buf.array()));
+        buf.flip();
+        read = DataHelper.readLong(buf, numBytes);
+        assertTrue(read == value);
+    }
+
+    /**
+     * ByteBuffer properties and strings, same format as the stream versions
+     */
+    @Test
+    public void testByteBuffer() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("caps", "XfR");
+        props.setProperty("netId", "2");
+        props.setProperty("router.version", "0.9.65");
+        props.setProperty("empty", "");
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataHelper.writeProperties(baos, props);
+        DataHelper.writeString(baos, "foo");
+        byte[] expected = baos.toByteArray();
+
+        ByteBuffer buf = ByteBuffer.allocate(expected.length + 2);
+        DataHelper.writeProperties(buf, props);
+        DataHelper.writeString(buf, "foo");
+        assertEquals(expected.length, buf.position());
+        assertTrue(DataHelper.eq(expected, 0, buf.array(), 0, expected.length));
+
+        buf.flip();
+        Properties read = DataHelper.readProperties(buf, null);
+        assertEquals(props, read);
+        assertEquals("foo", DataHelper.readString(buf));
+        assertFalse(buf.hasRemaining());
+
+        // direct, not backed by an array
+        buf = ByteBuffer.allocateDirect(expected.length);
+        buf.put(expected);
+        buf.flip();
+        assertEquals(props, DataHelper.readProperties(buf, null));
+        assertEquals("foo", DataHelper.readString(buf));
+
+        // truncated
+        buf = ByteBuffer.wrap(expected, 0, expected.length - 6);
+        try {
+            DataHelper.readProperties(buf, null);
+            fail();
+        } catch (DataFormatException expectedException) {}
     }
 
     @Test
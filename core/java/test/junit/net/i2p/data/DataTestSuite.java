@@ -5,6 +5,7 @@ import org.junit.runner.RunWith;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+    Base32Test.class,
     Base64Test.class,
     CertificateTest.class,
     DataHelperTest.class,
@@ -18,6 +19,7 @@ import org.junit.runner.RunWith;
     PayloadTest.class,
     PrivateKeyTest.class,
     PublicKeyTest.class,
+    SDSCacheTest.class,
     SessionKeyTest.class,
     SignatureTest.class,
     SigningPrivateKeyTest.class,
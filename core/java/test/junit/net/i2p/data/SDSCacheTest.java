@@ -0,0 +1,79 @@
+package net.i2p.data;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @since 0.9.65
+ */
+public class SDSCacheTest {
+
+    private static byte[] random(Random r) {
+        byte[] rv = new byte[Hash.HASH_LENGTH];
+        r.nextBytes(rv);
+        return rv;
+    }
+
+    @Test
+    public void testSameInstance() {
+        SDSCache<Hash> cache = new SDSCache<Hash>(Hash.class, Hash.HASH_LENGTH, 64);
+        Random r = new Random(1);
+        byte[] data = random(r);
+        Hash h1 = cache.get(data.clone());
+        Hash h2 = cache.get(data.clone());
+        Hash h3 = cache.get(data, 0);
+        assertSame(h1, h2);
+        assertSame(h1, h3);
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertNotSame(h1, cache.get(random(r)));
+    }
+
+    @Test
+    public void testCommonPrefix() {
+        SDSCache<Hash> cache = new SDSCache<Hash>(Hash.class, Hash.HASH_LENGTH, 64);
+        Hash[] hashes = new Hash[8];
+        for (int i = 0; i < hashes.length; i++) {
+            byte[] data = new byte[Hash.HASH_LENGTH];
+            data[31] = (byte) i;
+            hashes[i] = cache.get(data);
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            byte[] data = new byte[Hash.HASH_LENGTH];
+            data[31] = (byte) i;
+            Hash h = cache.get(data);
+            assertEquals(hashes[i], h);
+        }
+    }
+
+    @Test
+    public void testBounded() {
+        SDSCache<Hash> cache = new SDSCache<Hash>(Hash.class, Hash.HASH_LENGTH, 64);
+        Random r = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            Hash h = cache.get(random(r));
+            assertNotNull(h);
+        }
+        assertEquals(10000, cache.getMisses());
+        assertTrue(cache.getEvictions() > 9000);
+        cache.clear();
+        byte[] data = random(r);
+        Hash h1 = cache.get(data.clone());
+        assertSame(h1, cache.get(data));
+    }
+
+    @Test
+    public void testRecentlyUsedKept() {
+        SDSCache<Hash> cache = new SDSCache<Hash>(Hash.class, Hash.HASH_LENGTH, 64);
+        Random r = new Random(3);
+        byte[] data = random(r);
+        Hash hot = cache.get(data.clone());
+        for (int i = 0; i < 1000; i++) {
+            cache.get(random(r));
+            assertSame(hot, cache.get(data.clone()));
+        }
+    }
+}
@@ -69,7 +69,7 @@ public class SimpleDataStructureTest {
 
         // now try to load via readBytes
         try {
-            struct.readBytes(null);
+            struct.readBytes((java.io.InputStream) null);
             fail("blah blah blah..");
         } catch(RuntimeException exc) {
             // all good
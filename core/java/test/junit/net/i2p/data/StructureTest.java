@@ -12,6 +12,7 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 import org.junit.Test;
 
@@ -59,4 +60,50 @@ public abstract class StructureTest {
         byte[] temp2 = baos2.toByteArray();
         assert(DataHelper.eq(temp, temp2));
     }
+
+    /**
+     * The ByteBuffer methods must read and write the same bytes as the streams
+     *
+     * @since 0.9.65
+     */
+    @Test
+    public void testByteBuffer() throws Exception {
+        DataStructure orig = createDataStructure();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        orig.writeBytes(baos);
+        byte[] temp = baos.toByteArray();
+
+        // extra room at both ends to check the position handling
+        ByteBuffer buf = ByteBuffer.allocate(temp.length + 4);
+        buf.position(2);
+        if (!writeBytes(orig, buf))
+            return;
+        assertEquals(temp.length + 2, buf.position());
+        assertTrue(DataHelper.eq(temp, 0, buf.array(), 2, temp.length));
+
+        buf.flip();
+        buf.position(2);
+        DataStructure ds = createStructureToRead();
+        readBytes(ds, buf);
+        assertEquals(temp.length + 2, buf.position());
+        if (!getClass().getName().startsWith("net.i2p.data.i2cp."))
+            assertEquals(orig, ds);
+    }
+
+    private static boolean writeBytes(DataStructure ds, ByteBuffer buf) throws DataFormatException {
+        if (ds instanceof DataStructureImpl)
+            ((DataStructureImpl) ds).writeBytes(buf);
+        else if (ds instanceof SimpleDataStructure)
+            ((SimpleDataStructure) ds).writeBytes(buf);
+        else
+            return false;
+        return true;
+    }
+
+    private static void readBytes(DataStructure ds, ByteBuffer buf) throws DataFormatException {
+        if (ds instanceof DataStructureImpl)
+            ((DataStructureImpl) ds).readBytes(buf);
+        else
+            ((SimpleDataStructure) ds).readBytes(buf);
+    }
 }
@@ -0,0 +1,114 @@
+package net.i2p.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @since 0.9.65
+ */
+public class LogRecordQueueTest extends TestCase {
+
+    private static LogRecord record(int producer, int seq) {
+        return new LogRecord(LogRecordQueueTest.class, null, Integer.toString(producer), Log.DEBUG,
+                             Integer.toString(seq), null);
+    }
+
+    public void testFIFO() {
+        LogRecordQueue q = new LogRecordQueue(10);
+        assertEquals(16, q.capacity());
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 16; i++) {
+                assertTrue(q.offer(record(0, i)));
+            }
+            assertFalse(q.offer(record(0, 16)));
+            assertEquals(16, q.size());
+            for (int i = 0; i < 16; i++) {
+                assertEquals(Integer.toString(i), q.poll().getMessage());
+            }
+            assertNull(q.poll());
+            assertTrue(q.isEmpty());
+        }
+        q.offer(record(0, 0));
+        q.clear();
+        assertTrue(q.isEmpty());
+    }
+
+    /**
+     *  Several producers and two consumers, every record received once,
+     *  in order for each producer.
+     */
+    public void testConcurrent() throws InterruptedException {
+        final int producers = 4;
+        final int count = 100000;
+        final LogRecordQueue q = new LogRecordQueue(64);
+        final int[][] received = new int[2][producers];
+        final int[][] last = new int[2][producers];
+        final boolean[] error = new boolean[1];
+        Thread[] threads = new Thread[producers + 2];
+        for (int i = 0; i < producers; i++) {
+            final int p = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        LogRecord rec = record(p, j);
+                        while (!q.offer(rec)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < 2; i++) {
+            final int c = i;
+            for (int j = 0; j < producers; j++) {
+                last[c][j] = -1;
+            }
+            threads[producers + i] = new Thread() {
+                public void run() {
+                    int total = 0;
+                    while (true) {
+                        LogRecord rec = q.poll();
+                        if (rec == null) {
+                            if (sum(received) >= producers * count)
+                                break;
+                            Thread.yield();
+                            continue;
+                        }
+                        int p = Integer.parseInt(rec.getThreadName());
+                        int seq = Integer.parseInt(rec.getMessage());
+                        if (seq <= last[c][p])
+                            error[0] = true;
+                        last[c][p] = seq;
+                        synchronized (received) {
+                            received[c][p]++;
+                        }
+                    }
+                }
+            };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertFalse(error[0]);
+        for (int j = 0; j < producers; j++) {
+            assertEquals(count, received[0][j] + received[1][j]);
+        }
+        assertTrue(q.isEmpty());
+    }
+
+    private static int sum(int[][] received) {
+        int rv = 0;
+        synchronized (received) {
+            for (int[] r : received) {
+                for (int i : r) {
+                    rv += i;
+                }
+            }
+        }
+        return rv;
+    }
+}
@@ -28,16 +28,23 @@ import com.southernstorm.noise.protocol.Destroyable;
 
 /**
  * Simple implementation of the Poly1305 message authenticator.
+ *
+ * I2P - as of 0.9.65, the state is kept in fields instead of arrays,
+ * and runs of whole blocks are processed with the state in locals,
+ * using 26-bit limbs, 64-bit products, and the precomputed 5 * r.
  */
 public final class Poly1305 implements Destroyable, Cloneable {
 
+	private static final int MASK26 = 0x03FFFFFF;
+
 	// The 130-bit intermediate values are broken up into five 26-bit words.
-	private final byte[] nonce;
-	private final byte[] block;
-	private final int[] h;
-	private final int[] r;
-	private final int[] c;
-	private final long[] t;
+	private int h0, h1, h2, h3, h4;
+	private int r0, r1, r2, r3, r4;
+	// r * 5
+	private int s1, s2, s3, s4;
+	// The nonce, little endian
+	private int n0, n1, n2, n3;
+	private byte[] block;
 	private int posn;
 
 	/**
@@ -45,15 +52,24 @@ public final class Poly1305 implements Destroyable, Cloneable {
 	 */
 	public Poly1305()
 	{
-		nonce = new byte [16];
 		block = new byte [16];
-		h = new int [5];
-		r = new int [5];
-		c = new int [5];
-		t = new long [10];
 		posn = 0;
 	}
 
+	private static int getInt(byte[] b, int offset)
+	{
+		return (b[offset] & 0xFF) | ((b[offset + 1] & 0xFF) << 8) |
+		       ((b[offset + 2] & 0xFF) << 16) | ((b[offset + 3] & 0xFF) << 24);
+	}
+
+	private static void putInt(byte[] b, int offset, int value)
+	{
+		b[offset] = (byte)value;
+		b[offset + 1] = (byte)(value >> 8);
+		b[offset + 2] = (byte)(value >> 16);
+		b[offset + 3] = (byte)(value >> 24);
+	}
+
 	/**
 	 * Resets the message authenticator with a new key.
 	 * 
@@ -62,31 +78,28 @@ public final class Poly1305 implements Destroyable, Cloneable {
 	 */
 	public void reset(byte[] key, int offset)
 	{
-		System.arraycopy(key, offset + 16, nonce, 0, 16);
-		Arrays.fill(h, 0);
+		n0 = getInt(key, offset + 16);
+		n1 = getInt(key, offset + 20);
+		n2 = getInt(key, offset + 24);
+		n3 = getInt(key, offset + 28);
+		h0 = h1 = h2 = h3 = h4 = 0;
 		posn = 0;
 		
 		// Convert the first 16 bytes of the key into a 130-bit
 		// "r" value while masking off the bits that we don't need.
-		r[0] = ((key[offset] & 0xFF)) |
-			   ((key[offset + 1] & 0xFF) << 8) |
-			   ((key[offset + 2] & 0xFF) << 16) |
-			   ((key[offset + 3] & 0x03) << 24);
-		r[1] = ((key[offset + 3] & 0x0C) >> 2) |
-			   ((key[offset + 4] & 0xFC) << 6) |
-			   ((key[offset + 5] & 0xFF) << 14) |
-			   ((key[offset + 6] & 0x0F) << 22);
-		r[2] = ((key[offset + 6] & 0xF0) >> 4) |
-			   ((key[offset + 7] & 0x0F) << 4) |
-			   ((key[offset + 8] & 0xFC) << 12) |
-			   ((key[offset + 9] & 0x3F) << 20);
-		r[3] = ((key[offset + 9] & 0xC0) >> 6) |
-			   ((key[offset + 10] & 0xFF) << 2) |
-			   ((key[offset + 11] & 0x0F) << 10) |
-			   ((key[offset + 12] & 0xFC) << 18);
-		r[4] = ((key[offset + 13] & 0xFF)) |
-			   ((key[offset + 14] & 0xFF) << 8) |
-			   ((key[offset + 15] & 0x0F) << 16);
+		int t0 = getInt(key, offset);
+		int t1 = getInt(key, offset + 4);
+		int t2 = getInt(key, offset + 8);
+		int t3 = getInt(key, offset + 12);
+		r0 = t0 & 0x03FFFFFF;
+		r1 = ((t0 >>> 26) | (t1 << 6)) & 0x03FFFF03;
+		r2 = ((t1 >>> 20) | (t2 << 12)) & 0x03FFC0FF;
+		r3 = ((t2 >>> 14) | (t3 << 18)) & 0x03F03FFF;
+		r4 = (t3 >>> 8) & 0x000FFFFF;
+		s1 = r1 * 5;
+		s2 = r2 * 5;
+		s3 = r3 * 5;
+		s4 = r4 * 5;
 	}
 
 	/**
@@ -98,26 +111,30 @@ public final class Poly1305 implements Destroyable, Cloneable {
 	 */
 	public void update(byte[] data, int offset, int length)
 	{
-		while (length > 0) {
-			if (posn == 0 && length >= 16) {
-				// We can process the chunk directly out of the input buffer.
-				processChunk(data, offset, false);
-				offset += 16;
-				length -= 16;
-			} else {
-				// Collect up partial bytes in the block buffer.
-				int temp = 16 - posn;
-				if (temp > length)
-					temp = length;
-				System.arraycopy(data, offset, block, posn, temp);
-				offset += temp;
-				length -= temp;
-				posn += temp;
-				if (posn >= 16) {
-					processChunk(block, 0, false);
-					posn = 0;
-				}
-			}
+		if (posn != 0) {
+			// Collect up partial bytes in the block buffer.
+			int temp = 16 - posn;
+			if (temp > length)
+				temp = length;
+			System.arraycopy(data, offset, block, posn, temp);
+			offset += temp;
+			length -= temp;
+			posn += temp;
+			if (posn < 16)
+				return;
+			processChunks(block, 0, 16, 1 << 24);
+			posn = 0;
+		}
+		int whole = length & ~15;
+		if (whole > 0) {
+			// We can process the chunks directly out of the input buffer.
+			processChunks(data, offset, whole, 1 << 24);
+			offset += whole;
+			length -= whole;
+		}
+		if (length > 0) {
+			System.arraycopy(data, offset, block, 0, length);
+			posn = length;
 		}
 	}
 
@@ -128,7 +145,7 @@ public final class Poly1305 implements Destroyable, Cloneable {
 	{
 		if (posn != 0) {
 			Arrays.fill(block, posn, 16, (byte)0);
-			processChunk(block, 0, false);
+			processChunks(block, 0, 16, 1 << 24);
 			posn = 0;
 		}
 	}
@@ -145,184 +162,107 @@ public final class Poly1305 implements Destroyable, Cloneable {
 		if (posn != 0) {
 			block[posn] = (byte)1;
 			Arrays.fill(block, posn + 1, 16, (byte)0);
-			processChunk(block, 0, true);
+			processChunks(block, 0, 16, 0);
+			posn = 0;
 		}
-		
-	    // At this point, processChunk() has left h as a partially reduced
-	    // result that is less than (2^130 - 5) * 6.  Perform one more
-	    // reduction and a trial subtraction to produce the final result.
 
-	    // Multiply the high bits of h by 5 and add them to the 130 low bits.
-		int carry = (h[4] >> 26) * 5 + h[0];
-		h[0] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[1];
-		h[1] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[2];
-		h[2] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[3];
-		h[3] = carry & 0x03FFFFFF;
-		h[4] = (carry >> 26) + (h[4] & 0x03FFFFFF);
+		// Fully carry h.
+		int g0, g1, g2, g3, g4;
+		int c;
+		c = h1 >>> 26; h1 &= MASK26;
+		h2 += c; c = h2 >>> 26; h2 &= MASK26;
+		h3 += c; c = h3 >>> 26; h3 &= MASK26;
+		h4 += c; c = h4 >>> 26; h4 &= MASK26;
+		h0 += c * 5; c = h0 >>> 26; h0 &= MASK26;
+		h1 += c;
 
-	    // Subtract (2^130 - 5) from h by computing c = h + 5 - 2^130.
-	    // The "minus 2^130" step is implicit.
-		carry = 5 + h[0];
-		c[0] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[1];
-		c[1] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[2];
-		c[2] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[3];
-		c[3] = carry & 0x03FFFFFF;
-		c[4] = (carry >> 26) + h[4];
+		// Compute g = h + 5 - 2^130.
+		g0 = h0 + 5; c = g0 >>> 26; g0 &= MASK26;
+		g1 = h1 + c; c = g1 >>> 26; g1 &= MASK26;
+		g2 = h2 + c; c = g2 >>> 26; g2 &= MASK26;
+		g3 = h3 + c; c = g3 >>> 26; g3 &= MASK26;
+		g4 = h4 + c - (1 << 26);
 
-	    // Borrow occurs if bit 2^130 of the previous c result is zero.
-	    // Carefully turn this into a selection mask so we can select either
-	    // h or c as the final result.
-		int mask = -((c[4] >> 26) & 0x01);
-		int nmask = ~mask;
-		h[0] = (h[0] & nmask) | (c[0] & mask);
-		h[1] = (h[1] & nmask) | (c[1] & mask);
-		h[2] = (h[2] & nmask) | (c[2] & mask);
-		h[3] = (h[3] & nmask) | (c[3] & mask);
-		h[4] = (h[4] & nmask) | (c[4] & mask);
-		
-		// Convert h into little-endian in the block buffer.
-		block[0] = (byte)(h[0]);
-		block[1] = (byte)(h[0] >> 8);
-		block[2] = (byte)(h[0] >> 16);
-		block[3] = (byte)((h[0] >> 24) | (h[1] << 2));
-		block[4] = (byte)(h[1] >> 6);
-		block[5] = (byte)(h[1] >> 14);
-		block[6] = (byte)((h[1] >> 22) | (h[2] << 4));
-		block[7] = (byte)(h[2] >> 4);
-		block[8] = (byte)(h[2] >> 12);
-		block[9] = (byte)((h[2] >> 20) | (h[3] << 6));
-		block[10] = (byte)(h[3] >> 2);
-		block[11] = (byte)(h[3] >> 10);
-		block[12] = (byte)(h[3] >> 18);
-		block[13] = (byte)(h[4]);
-		block[14] = (byte)(h[4] >> 8);
-		block[15] = (byte)(h[4] >> 16);
-		
-		// Add the nonce and write the final result to the token.
-		carry = (nonce[0] & 0xFF) + (block[0] & 0xFF);
-		token[offset] = (byte)carry;
-		for (int x = 1; x < 16; ++x) {
-			carry = (carry >> 8) + (nonce[x] & 0xFF) + (block[x] & 0xFF);
-			token[offset + x] = (byte)carry;
-		}
+		// Select h if h < 2^130 - 5 (g4 negative), else g. Constant time.
+		int mask = (g4 >>> 31) - 1;
+		g0 &= mask; g1 &= mask; g2 &= mask; g3 &= mask; g4 &= mask;
+		mask = ~mask;
+		h0 = (h0 & mask) | g0;
+		h1 = (h1 & mask) | g1;
+		h2 = (h2 & mask) | g2;
+		h3 = (h3 & mask) | g3;
+		h4 = (h4 & mask) | g4;
+
+		// h = h % 2^128, add the nonce
+		long f;
+		f = ((h0 | (h1 << 26)) & 0xFFFFFFFFL) + (n0 & 0xFFFFFFFFL);
+		putInt(token, offset, (int)f);
+		f = (((h1 >>> 6) | (h2 << 20)) & 0xFFFFFFFFL) + (n1 & 0xFFFFFFFFL) + (f >>> 32);
+		putInt(token, offset + 4, (int)f);
+		f = (((h2 >>> 12) | (h3 << 14)) & 0xFFFFFFFFL) + (n2 & 0xFFFFFFFFL) + (f >>> 32);
+		putInt(token, offset + 8, (int)f);
+		f = (((h3 >>> 18) | (h4 << 8)) & 0xFFFFFFFFL) + (n3 & 0xFFFFFFFFL) + (f >>> 32);
+		putInt(token, offset + 12, (int)f);
 	}
 
 	/**
-	 * Processes the next chunk of input data.
+	 * Processes whole 16-byte chunks of input data.
+	 * Compute h = ((h + c) * r) mod (2^130 - 5) for each chunk c,
+	 * leaving h partially reduced, each limb at most 26 bits plus a little.
 	 * 
-	 * @param chunk Buffer containing the input data chunk.
-	 * @param offset Offset of the first byte of the 16-byte chunk.
-	 * @param finalChunk Set to true if this is the final chunk.
+	 * @param data Buffer containing the input data.
+	 * @param offset Offset of the first byte.
+	 * @param length multiple of 16
+	 * @param hibit 1 << 24 for a full chunk, 0 for the final padded chunk
+	 * @since 0.9.65 replaces processChunk()
 	 */
-	private void processChunk(byte[] chunk, int offset, boolean finalChunk)
+	private void processChunks(byte[] data, int offset, int length, int hibit)
 	{
-		int x;
-		
-		// Unpack the 128-bit chunk into a 130-bit value in "c".
-		c[0] = ((chunk[offset] & 0xFF)) |
-			   ((chunk[offset + 1] & 0xFF) << 8) |
-			   ((chunk[offset + 2] & 0xFF) << 16) |
-			   ((chunk[offset + 3] & 0x03) << 24);
-		c[1] = ((chunk[offset + 3] & 0xFC) >> 2) |
-			   ((chunk[offset + 4] & 0xFF) << 6) |
-			   ((chunk[offset + 5] & 0xFF) << 14) |
-			   ((chunk[offset + 6] & 0x0F) << 22);
-		c[2] = ((chunk[offset + 6] & 0xF0) >> 4) |
-			   ((chunk[offset + 7] & 0xFF) << 4) |
-			   ((chunk[offset + 8] & 0xFF) << 12) |
-			   ((chunk[offset + 9] & 0x3F) << 20);
-		c[3] = ((chunk[offset + 9] & 0xC0) >> 6) |
-			   ((chunk[offset + 10] & 0xFF) << 2) |
-			   ((chunk[offset + 11] & 0xFF) << 10) |
-			   ((chunk[offset + 12] & 0xFF) << 18);
-		c[4] = ((chunk[offset + 13] & 0xFF)) |
-			   ((chunk[offset + 14] & 0xFF) << 8) |
-			   ((chunk[offset + 15] & 0xFF) << 16);
-		if (!finalChunk)
-			c[4] |= (1 << 24);
-		
-		// Compute h = ((h + c) * r) mod (2^130 - 5)
-		
-		// Start with h += c.  We assume that h is less than (2^130 - 5) * 6
-		// and that c is less than 2^129, so the result will be less than 2^133.
-		h[0] += c[0];
-		h[1] += c[1];
-		h[2] += c[2];
-		h[3] += c[3];
-		h[4] += c[4];
+		final long lr0 = r0, lr1 = r1, lr2 = r2, lr3 = r3, lr4 = r4;
+		final long ls1 = s1, ls2 = s2, ls3 = s3, ls4 = s4;
+		int a0 = h0, a1 = h1, a2 = h2, a3 = h3, a4 = h4;
+		int end = offset + length;
+		while (offset < end) {
+			// Unpack the 128-bit chunk into a 130-bit value, and add to h.
+			int t0 = getInt(data, offset);
+			int t1 = getInt(data, offset + 4);
+			int t2 = getInt(data, offset + 8);
+			int t3 = getInt(data, offset + 12);
+			a0 += t0 & MASK26;
+			a1 += ((t0 >>> 26) | (t1 << 6)) & MASK26;
+			a2 += ((t1 >>> 20) | (t2 << 12)) & MASK26;
+			a3 += ((t2 >>> 14) | (t3 << 18)) & MASK26;
+			a4 += (t3 >>> 8) | hibit;
+
+			// Multiply by r, folding the high limbs back in with 5 * r.
+			long d0 = a0 * lr0 + a1 * ls4 + a2 * ls3 + a3 * ls2 + a4 * ls1;
+			long d1 = a0 * lr1 + a1 * lr0 + a2 * ls4 + a3 * ls3 + a4 * ls2;
+			long d2 = a0 * lr2 + a1 * lr1 + a2 * lr0 + a3 * ls4 + a4 * ls3;
+			long d3 = a0 * lr3 + a1 * lr2 + a2 * lr1 + a3 * lr0 + a4 * ls4;
+			long d4 = a0 * lr4 + a1 * lr3 + a2 * lr2 + a3 * lr1 + a4 * lr0;
 
-		// Multiply h by r.  We know that r is less than 2^124 because the
-	    // top 4 bits were AND-ed off by reset().  That makes h * r less
-	    // than 2^257.  Which is less than the (2^130 - 6)^2 we want for
-	    // the modulo reduction step that follows.  The intermediate limbs
-		// are 52 bits in size, which allows us to collect up carries in the
-		// extra bits of the 64 bit longs and propagate them later.
-		long hv = h[0];
-		t[0] = hv * r[0];
-		t[1] = hv * r[1];
-		t[2] = hv * r[2];
-		t[3] = hv * r[3];
-		t[4] = hv * r[4];
-		for (x = 1; x < 5; ++x) {
-			hv = h[x];
-			t[x]     += hv * r[0];
-			t[x + 1] += hv * r[1];
-			t[x + 2] += hv * r[2];
-			t[x + 3] += hv * r[3];
-			t[x + 4]  = hv * r[4];
+			// Partial reduction.
+			long c;
+			c = d0 >>> 26; a0 = (int)d0 & MASK26;
+			d1 += c; c = d1 >>> 26; a1 = (int)d1 & MASK26;
+			d2 += c; c = d2 >>> 26; a2 = (int)d2 & MASK26;
+			d3 += c; c = d3 >>> 26; a3 = (int)d3 & MASK26;
+			d4 += c; c = d4 >>> 26; a4 = (int)d4 & MASK26;
+			a0 += (int)c * 5;
+			a1 += a0 >>> 26; a0 &= MASK26;
+			offset += 16;
 		}
-		
-		// Propagate carries to convert the t limbs from 52-bit back to 26-bit.
-		// The low bits are placed into h and the high bits are placed into c.
-		h[0] = ((int)t[0]) & 0x03FFFFFF;
-		hv = t[1] + (t[0] >> 26);
-		h[1] = ((int)hv) & 0x03FFFFFF;
-		hv = t[2] + (hv >> 26);
-		h[2] = ((int)hv) & 0x03FFFFFF;
-		hv = t[3] + (hv >> 26);
-		h[3] = ((int)hv) & 0x03FFFFFF;
-		hv = t[4] + (hv >> 26);
-		h[4] = ((int)hv) & 0x03FFFFFF;
-		hv = t[5] + (hv >> 26);
-		c[0] = ((int)hv) & 0x03FFFFFF;
-		hv = t[6] + (hv >> 26);
-		c[1] = ((int)hv) & 0x03FFFFFF;
-		hv = t[7] + (hv >> 26);
-		c[2] = ((int)hv) & 0x03FFFFFF;
-		hv = t[8] + (hv >> 26);
-		c[3] = ((int)hv) & 0x03FFFFFF;
-		hv = t[9] + (hv >> 26);
-		c[4] = ((int)hv);
-		
-		// Reduce h * r modulo (2^130 - 5) by multiplying the high 130 bits by 5
-		// and adding them to the low 130 bits.  This will leave the result at
-		// most 5 subtractions away from the answer we want.
-		int carry = h[0] + c[0] * 5;
-		h[0] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[1] + c[1] * 5;
-		h[1] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[2] + c[2] * 5;
-		h[2] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[3] + c[3] * 5;
-		h[3] = carry & 0x03FFFFFF;
-		carry = (carry >> 26) + h[4] + c[4] * 5;
-		h[4] = carry;
+		h0 = a0; h1 = a1; h2 = a2; h3 = a3; h4 = a4;
 	}
 
 	@Override
 	public void destroy() {
-		Arrays.fill(nonce, (byte)0);
 		Arrays.fill(block, (byte)0);
-		Arrays.fill(h, 0);
-		Arrays.fill(r, 0);
-		Arrays.fill(c, 0);
-		Arrays.fill(t, (long)0);
+		h0 = h1 = h2 = h3 = h4 = 0;
+		r0 = r1 = r2 = r3 = r4 = 0;
+		s1 = s2 = s3 = s4 = 0;
+		n0 = n1 = n2 = n3 = 0;
+		posn = 0;
 	}
 
 	/**
@@ -331,6 +271,8 @@ public final class Poly1305 implements Destroyable, Cloneable {
 	 */
 	@Override
 	public Poly1305 clone() throws CloneNotSupportedException {
-		return (Poly1305) super.clone();
+		Poly1305 rv = (Poly1305) super.clone();
+		rv.block = block.clone();
+		return rv;
 	}
 }
@@ -22,6 +22,7 @@
 
 package com.southernstorm.noise.protocol;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
@@ -185,18 +186,7 @@ public class ChaChaPolyCipherState implements CipherState {
 	 */
 	private void encrypt(byte[] plaintext, int plaintextOffset,
 			byte[] ciphertext, int ciphertextOffset, int length) {
-		while (length > 0) {
-			int tempLen = 64;
-			if (tempLen > length)
-				tempLen = length;
-			ChaChaCore.hash(output, input);
-			ChaChaCore.xorBlock(plaintext, plaintextOffset, ciphertext, ciphertextOffset, tempLen, output);
-			if (++(input[12]) == 0)
-				++(input[13]);
-			plaintextOffset += tempLen;
-			ciphertextOffset += tempLen;
-			length -= tempLen;
-		}
+		ChaChaCore.xorKeyStream(input, output, plaintext, plaintextOffset, ciphertext, ciphertextOffset, length);
 	}
 
 	@Override
@@ -288,6 +278,86 @@ public class ChaChaPolyCipherState implements CipherState {
 		return dataLen;
 	}
 
+	/**
+	 *  Encrypts in place the data from the buffer's position to its limit,
+	 *  and appends the 16 byte MAC.
+	 *  On return, the position is unchanged and the limit is increased by 16.
+	 *  Heap buffers are encrypted without a copy,
+	 *  direct buffers are copied to a temporary array and back.
+	 *
+	 *  I2P
+	 *
+	 *  @param ad may be null
+	 *  @param buf must have at least 16 bytes between limit and capacity
+	 *  @return the new remaining length, including the MAC
+	 *  @throws IllegalArgumentException if buf is read-only
+	 *  @since 0.9.65
+	 */
+	public int encryptWithAd(byte[] ad, int adOffset, int adLength, ByteBuffer buf) throws ShortBufferException {
+		if (buf.isReadOnly())
+			throw new IllegalArgumentException("read-only buffer");
+		int pos = buf.position();
+		int lim = buf.limit();
+		int len = lim - pos;
+		// the array may extend past the buffer's capacity
+		if (haskey && buf.capacity() - lim < 16)
+			throw new ShortBufferException();
+		int rv;
+		if (buf.hasArray()) {
+			byte[] data = buf.array();
+			int off = buf.arrayOffset() + pos;
+			rv = encryptWithAd(ad, adOffset, adLength, data, off, data, off, len);
+			buf.limit(pos + rv);
+		} else {
+			byte[] data = new byte[len + 16];
+			buf.get(data, 0, len);
+			rv = encryptWithAd(ad, adOffset, adLength, data, 0, data, 0, len);
+			buf.limit(pos + rv);
+			buf.position(pos);
+			buf.put(data, 0, rv);
+			buf.position(pos);
+		}
+		return rv;
+	}
+
+	/**
+	 *  Decrypts in place the data from the buffer's position to its limit,
+	 *  including the trailing 16 byte MAC.
+	 *  On return, the position is unchanged and the limit is decreased by 16.
+	 *  Heap buffers are decrypted without a copy,
+	 *  direct buffers are copied to a temporary array and back.
+	 *  If the MAC doesn't match, the buffer is unchanged.
+	 *
+	 *  I2P
+	 *
+	 *  @param ad may be null
+	 *  @return the new remaining length
+	 *  @throws IllegalArgumentException if buf is read-only
+	 *  @since 0.9.65
+	 */
+	public int decryptWithAd(byte[] ad, int adOffset, int adLength, ByteBuffer buf)
+	                         throws ShortBufferException, BadPaddingException {
+		if (buf.isReadOnly())
+			throw new IllegalArgumentException("read-only buffer");
+		int pos = buf.position();
+		int len = buf.remaining();
+		int rv;
+		if (buf.hasArray()) {
+			byte[] data = buf.array();
+			int off = buf.arrayOffset() + pos;
+			rv = decryptWithAd(ad, adOffset, adLength, data, off, data, off, len);
+		} else {
+			byte[] data = new byte[len];
+			buf.get(data);
+			buf.position(pos);
+			rv = decryptWithAd(ad, adOffset, adLength, data, 0, data, 0, len);
+			buf.put(data, 0, rv);
+			buf.position(pos);
+		}
+		buf.limit(pos + rv);
+		return rv;
+	}
+
 	@Override
 	public CipherState fork(byte[] key, int offset) {
 		CipherState cipher = new ChaChaPolyCipherState();
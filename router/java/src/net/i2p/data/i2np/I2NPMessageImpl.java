@@ -11,8 +11,7 @@ package net.i2p.data.i2np;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.i2p.I2PAppContext;
 import net.i2p.data.DataFormatException;
@@ -52,12 +51,24 @@ public abstract class I2NPMessageImpl implements I2NPMessage {
                         + 2 // payload length
                         + CHECKSUM_LENGTH;
 
-    /** unused */
-    private static final Map<Integer, Builder> _builders = new ConcurrentHashMap<Integer, Builder>(1);
+    /**
+     *  Indexed by type, so lookups in createMessage() don't box.
+     *  Unused.
+     *  @since 0.9.65 was a Map
+     */
+    private static final AtomicReferenceArray<Builder> _builders = new AtomicReferenceArray<Builder>(256);
 
-    /** @deprecated unused */
+    /**
+     *  @param type 0-255
+     *  @throws IllegalArgumentException if type out of range
+     *  @deprecated unused
+     */
     @Deprecated
-    public static final void registerBuilder(Builder builder, int type) { _builders.put(Integer.valueOf(type), builder); }
+    public static final void registerBuilder(Builder builder, int type) {
+        if (type < 0 || type > 255)
+            throw new IllegalArgumentException("Bad type " + type);
+        _builders.set(type, builder);
+    }
 
     /** interface for extending the types of messages handled - unused */
     public interface Builder {
@@ -452,7 +463,7 @@ public abstract class I2NPMessageImpl implements I2NPMessage {
                 return new ShortTunnelBuildMessage(context);
             default:
                 // unused
-                Builder builder = _builders.get(Integer.valueOf(type));
+                Builder builder = _builders.get(type);
                 if (builder != null)
                     return builder.build(context);
                 return new UnknownI2NPMessage(context, type);
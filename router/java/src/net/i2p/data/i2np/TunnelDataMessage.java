@@ -99,6 +99,9 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
 
     /** For use-after-free checks. Always false if PIPELINED_CACHE is false. */
     private boolean _hadCache;
+    /** pinData() count, releaseData() is deferred while nonzero */
+    private int _pins;
+    private boolean _releasePending;
 
     public TunnelDataMessage(I2PAppContext context) {
         super(context);
@@ -152,6 +155,8 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
     
     public void readMessage(byte data[], int offset, int dataSize, int type) throws I2NPMessageException {
         if (type != MESSAGE_TYPE) throw new I2NPMessageException("Message type is incorrect for this message");
+        if (dataSize < 4 + DATA_SIZE)
+            throw new I2NPMessageException("Short tunnel data message: " + dataSize);
         int curIndex = offset;
         
         _tunnelId = DataHelper.fromLong(data, curIndex, 4);
@@ -175,8 +180,11 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
     
     /** calculate the message body's length (not including the header and footer */
     protected int calculateWrittenLength() { return 4 + DATA_SIZE; }
-    /** write the message body to the output array, starting at the given index */
-    protected int writeMessageBody(byte out[], int curIndex) throws I2NPMessageException {
+    /**
+     *  write the message body to the output array, starting at the given index.
+     *  Synchronized with releaseData(), as SSU2 may write it directly into a packet.
+     */
+    protected synchronized int writeMessageBody(byte out[], int curIndex) throws I2NPMessageException {
         if ( (_tunnelId <= 0) || (_data == null) )
             throw new I2NPMessageException("Not enough data to write out (id=" + _tunnelId + ")");
         if (_data.length <= 0) 
@@ -193,15 +201,77 @@ public class TunnelDataMessage extends FastI2NPMessageImpl {
         System.arraycopy(_data, 0, out, curIndex, DATA_SIZE);
         curIndex += _data.length;
 
-        // We can use from the cache, we just can't release to the cache, due to the bug
-        // noted above. In effect, this means that transmitted TDMs don't get their
-        // dataBufs released - but received TDMs do (via FragmentHandler)
-        //if (_hadCache) {
-        //    _cache.release(_dataBuf);
-        //    _dataBuf = null;
-        //}
+        // We can't release to the cache here, due to the bug noted above,
+        // as we may be written more than once (e.g. a retransmission or another transport).
+        // Forwarded TDMs are released by OutNetMessage.discardData() once the
+        // transport is done with them, see releaseData().
         return curIndex;
     }
+
+    /**
+     *  Return the data buffer to the cache, if it came from there.
+     *  Only for received messages that are being forwarded or dropped,
+     *  and only once nobody will call getData() or write this message again;
+     *  afterwards, those will throw.
+     *  No-op for messages created locally via setData().
+     *  Deferred while pinned, see pinData().
+     *
+     *  @since 0.9.65
+     */
+    public synchronized void releaseData() {
+        if (_pins > 0) {
+            _releasePending = true;
+            return;
+        }
+        ByteArray ba = _dataBuf;
+        if (ba != null) {
+            _dataBuf = null;
+            _cache.release(ba, false);
+        }
+    }
+
+    /**
+     *  Keep the data from being released until unpinData(),
+     *  so SSU2 can write it into a packet after it has sized the blocks.
+     *  A releaseData() in the meantime takes effect at the last unpinData().
+     *
+     *  @return false if already released, do not write it and do not call unpinData()
+     *  @since 0.9.65
+     */
+    public synchronized boolean pinData() {
+        if (_hadCache && _dataBuf == null)
+            return false;
+        _pins++;
+        return true;
+    }
+
+    /**
+     *  Undo a successful pinData().
+     *
+     *  @since 0.9.65
+     */
+    public synchronized void unpinData() {
+        if (_pins <= 0)
+            return;
+        if (--_pins == 0 && _releasePending) {
+            _releasePending = false;
+            releaseData();
+        }
+    }
+
+    /**
+     *  Same as toRawByteArrayNTCP2(), but if the data was already released,
+     *  returns false without writing or logging anything.
+     *
+     *  @return success
+     *  @since 0.9.65
+     */
+    public synchronized boolean writeIfAvailable(byte[] out, int off) {
+        if (_hadCache && _dataBuf == null)
+            return false;
+        toRawByteArrayNTCP2(out, off);
+        return true;
+    }
     
     public int getType() { return MESSAGE_TYPE; }
     
@@ -12,6 +12,7 @@ package net.i2p.data.router;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
@@ -282,18 +283,42 @@ public class RouterAddress extends DataStructureImpl {
         // EOF will be thrown in next read
         _cost = (short) in.read();
         _expiration = DataHelper.readLong(in, 8);
-        _transportStyle = DataHelper.readString(in);
-        // reduce Object proliferation
-        if (_transportStyle.equals("SSU"))
-            _transportStyle = "SSU";
-        else if (_transportStyle.equals("NTCP2"))
-            _transportStyle = "NTCP2";
-        else if (_transportStyle.equals("NTCP"))
-            _transportStyle = "NTCP";
-        else if (_transportStyle.equals("SSU2"))
-            _transportStyle = "SSU2";
+        _transportStyle = internStyle(DataHelper.readString(in));
         DataHelper.readProperties(in, _options);
     }
+
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  @throws IllegalStateException if was already read in
+     *  @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        if (_transportStyle != null)
+            throw new IllegalStateException();
+        if (!buf.hasRemaining())
+            throw new DataFormatException("Not enough data to read a RouterAddress");
+        _cost = (short) (buf.get() & 0xff);
+        _expiration = DataHelper.readLong(buf, 8);
+        _transportStyle = internStyle(DataHelper.readString(buf));
+        DataHelper.readProperties(buf, _options);
+    }
+
+    /**
+     *  Reduce Object proliferation
+     *  @since 0.9.65 split out of readBytes()
+     */
+    private static String internStyle(String style) {
+        if (style.equals("SSU"))
+            return "SSU";
+        if (style.equals("NTCP2"))
+            return "NTCP2";
+        if (style.equals("NTCP"))
+            return "NTCP";
+        if (style.equals("SSU2"))
+            return "SSU2";
+        return style;
+    }
     
     /**
      *  As of 0.9.3, expiration MUST be all zeros as it is ignored on
@@ -307,6 +332,23 @@ public class RouterAddress extends DataStructureImpl {
         DataHelper.writeString(out, _transportStyle);
         DataHelper.writeProperties(out, _options);
     }
+
+    /**
+     *  Writes to the buffer, at its position, which is advanced.
+     *  As of 0.9.3, expiration MUST be all zeros as it is ignored on
+     *  readin and the signature will fail.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if (_transportStyle == null)
+            throw new DataFormatException("uninitialized");
+        buf.put((byte) _cost);
+        DataHelper.writeLong(buf, 8, _expiration);
+        DataHelper.writeString(buf, _transportStyle);
+        DataHelper.writeProperties(buf, _options);
+    }
     
     /**
      * Transport, host, and port only.
@@ -13,6 +13,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
@@ -629,6 +630,51 @@ public class RouterInfo extends DatabaseEntry {
         //_log.debug("Read routerInfo: " + toString());
     }
     
+    /**
+     *  Reads from the buffer, at its position, which is advanced.
+     *  This does NOT validate the signature
+     *
+     *  @throws IllegalStateException if RouterInfo was already read in
+     *  @since 0.9.65
+     */
+    @Override
+    public void readBytes(ByteBuffer buf) throws DataFormatException {
+        if (_signature != null)
+            throw new IllegalStateException();
+        _identity = new RouterIdentity();
+        _identity.readBytes(buf);
+        SigType type = _identity.getSigningPublicKey().getType();
+        if (type == null)
+            throw new DataFormatException("unknown sig type");
+        _published = DataHelper.readLong(buf, 8);
+        if (!buf.hasRemaining())
+            throw new DataFormatException("Not enough data to read a RouterInfo");
+        int numAddresses = buf.get() & 0xff;
+        if (numAddresses > MAX_ADDRESSES)
+            throw new DataFormatException("too many addresses");
+        for (int i = 0; i < numAddresses; i++) {
+            RouterAddress address = new RouterAddress();
+            address.readBytes(buf);
+            _addresses.add(address);
+        }
+        if (!buf.hasRemaining())
+            throw new DataFormatException("Not enough data to read a RouterInfo");
+        int numPeers = buf.get() & 0xff;
+        if (numPeers == 0) {
+            _peers = null;
+        } else {
+            _peers = new HashSet<Hash>(numPeers);
+            for (int i = 0; i < numPeers; i++) {
+                Hash peerIdentityHash = new Hash();
+                peerIdentityHash.readBytes(buf);
+                _peers.add(peerIdentityHash);
+            }
+        }
+        DataHelper.readProperties(buf, _options);
+        _signature = new Signature(type);
+        _signature.readBytes(buf);
+    }
+
     /**
      *  This does NOT validate the signature
      */
@@ -637,6 +683,23 @@ public class RouterInfo extends DatabaseEntry {
         writeDataBytes(out);
         _signature.writeBytes(out);
     }
+
+    /**
+     *  Overridden to write the cached bytes directly, if available.
+     *  @throws java.nio.BufferOverflowException if there is not enough room
+     *  @since 0.9.65
+     */
+    @Override
+    public void writeBytes(ByteBuffer buf) throws DataFormatException {
+        if (_signature == null) throw new DataFormatException("Signature is null");
+        byte[] data = _byteified;
+        if (data != null) {
+            buf.put(data);
+            _signature.writeBytes(buf);
+        } else {
+            super.writeBytes(buf);
+        }
+    }
     
     @Override
     public boolean equals(Object object) {
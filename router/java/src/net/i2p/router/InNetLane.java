@@ -0,0 +1,283 @@
+package net.i2p.router;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.i2p.data.Hash;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.router.RouterIdentity;
+import net.i2p.util.I2PThread;
+import net.i2p.util.Log;
+
+/**
+ * A bounded queue and its own worker threads for one class of inbound messages,
+ * so that a flood of one type (e.g. lookups to a floodfill) can't delay the others
+ * by filling up the shared JobQueue.
+ *
+ * Entries are either a message to be handed to its HandlerJobBuilder,
+ * which is called on the lane thread instead of the transport thread,
+ * or an already-created job, such as a reply job.
+ * Either way the job runs on the lane thread.
+ *
+ * When the queue is full, the policy decides:
+ *<ul>
+ *<li>oldest: drop the entry at the head, it has waited the longest and is the least useful
+ *<li>newest: drop the new entry
+ *<li>jobqueue: the caller handles it as before, on the JobQueue
+ *</ul>
+ *
+ * Threads, queue size, and policy may be overridden with
+ * router.inNetLane.(name).threads, .maxQueue, and .policy.
+ *
+ * @since 0.9.65
+ */
+class InNetLane {
+    private final RouterContext _context;
+    private final Log _log;
+    private final String _name;
+    private final LinkedBlockingQueue<Entry> _queue;
+    private final int _threads;
+    private final int _policy;
+    private final List<Runner> _runners;
+    private volatile boolean _alive;
+
+    private static final int POLICY_DROP_OLDEST = 0;
+    private static final int POLICY_DROP_NEWEST = 1;
+    private static final int POLICY_JOB_QUEUE = 2;
+    private static final String PROP_PREFIX = "router.inNetLane.";
+
+    private final String _statDepth;
+    private final String _statWait;
+    private final String _statDropped;
+    private final String _statOverflow;
+
+    /**
+     *  @param policy "oldest", "newest", or "jobqueue"
+     */
+    public InNetLane(RouterContext ctx, String name, int threads, int maxQueue, String policy) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(InNetLane.class);
+        _name = name;
+        _threads = Math.max(1, ctx.getProperty(PROP_PREFIX + name + ".threads", threads));
+        _queue = new LinkedBlockingQueue<Entry>(Math.max(1, ctx.getProperty(PROP_PREFIX + name + ".maxQueue", maxQueue)));
+        String p = ctx.getProperty(PROP_PREFIX + name + ".policy", policy);
+        if (p.equals("newest"))
+            _policy = POLICY_DROP_NEWEST;
+        else if (p.equals("jobqueue"))
+            _policy = POLICY_JOB_QUEUE;
+        else
+            _policy = POLICY_DROP_OLDEST;
+        _runners = new CopyOnWriteArrayList<Runner>();
+        _statDepth = "inNetPool.laneDepth." + name;
+        _statWait = "inNetPool.laneWait." + name;
+        _statDropped = "inNetPool.laneDropped." + name;
+        _statOverflow = "inNetPool.laneOverflow." + name;
+        long[] rates = new long[] { 60*1000, 10*60*1000l, 60*60*1000l };
+        ctx.statManager().createRateStat(_statDepth, "Queued messages in the " + name + " lane", "InNetPool", rates);
+        ctx.statManager().createRateStat(_statWait, "Time in the " + name + " lane queue (ms)", "InNetPool", rates);
+        ctx.statManager().createRateStat(_statDropped, "Messages dropped from the full " + name + " lane", "InNetPool", rates);
+        ctx.statManager().createRateStat(_statOverflow, "Messages sent to the job queue from the full " + name + " lane", "InNetPool", rates);
+    }
+
+    public String getName() { return _name; }
+
+    /** @return current number queued */
+    public int getQueueSize() { return _queue.size(); }
+
+    /**
+     *  Starts new runners. Runners from before a shutdown()
+     *  that are still in a job exit when it's done, they are not reused.
+     */
+    public synchronized void startup() {
+        if (_alive)
+            return;
+        _alive = true;
+        for (int i = 0; i < _threads; i++) {
+            Runner r = new Runner();
+            _runners.add(r);
+            Thread t = new I2PThread(r, "InNet " + _name + ' ' + (i+1) + '/' + _threads, true);
+            t.start();
+        }
+    }
+
+    /**
+     *  Clears the queue and stops the runners.
+     *  Runners waiting for an entry are interrupted,
+     *  runners in a job finish it first.
+     */
+    public synchronized void shutdown() {
+        _alive = false;
+        _queue.clear();
+        for (Runner r : _runners) {
+            r.stop();
+        }
+        _runners.clear();
+    }
+
+    /**
+     *  Queue the message for its builder, to be called on a lane thread.
+     *
+     *  @return false if the caller must handle it, because we are not running
+     *          or we are full and the policy is jobqueue
+     */
+    public boolean offer(HandlerJobBuilder builder, I2NPMessage msg, RouterIdentity from, Hash fromHash) {
+        return offer(new Entry(builder, msg, from, fromHash, null, _context.clock().now()));
+    }
+
+    /**
+     *  Queue the job, to be run on a lane thread.
+     *  If it is already queued here, does nothing.
+     *
+     *  @return false if the caller must handle it, because we are not running,
+     *          the job is scheduled for later, or we are full and the policy is jobqueue
+     */
+    public boolean offer(Job job) {
+        if (!_alive)
+            return false;
+        long now = _context.clock().now();
+        if (job.getTiming().getStartAfter() > now)
+            return false;
+        // weakly consistent but as good as the JobQueue's check
+        for (Entry e : _queue) {
+            if (e.job == job)
+                return true;
+        }
+        job.getTiming().setStartAfter(now);
+        if (job instanceof JobImpl)
+            ((JobImpl) job).madeReady(now);
+        return offer(new Entry(null, null, null, null, job, now));
+    }
+
+    private boolean offer(Entry e) {
+        if (!_alive)
+            return false;
+        _context.statManager().addRateData(_statDepth, _queue.size());
+        if (_queue.offer(e))
+            return true;
+        switch (_policy) {
+          case POLICY_JOB_QUEUE:
+            _context.statManager().addRateData(_statOverflow, 1);
+            return false;
+
+          case POLICY_DROP_OLDEST:
+            Entry old = _queue.poll();
+            if (old != null)
+                dropped(old);
+            if (_queue.offer(e))
+                return true;
+            // another thread got it first
+            dropped(e);
+            return true;
+
+          case POLICY_DROP_NEWEST:
+          default:
+            dropped(e);
+            return true;
+        }
+    }
+
+    private void dropped(Entry e) {
+        _context.statManager().addRateData(_statDropped, 1);
+        if (e.job != null)
+            e.job.dropped();
+        if (_log.shouldInfo())
+            _log.info("Lane " + _name + " full, dropping " +
+                      (e.job != null ? e.job.getName() : e.msg.getClass().getSimpleName()));
+    }
+
+    /** one of builder or job is non-null */
+    private static class Entry {
+        final HandlerJobBuilder builder;
+        final I2NPMessage msg;
+        final RouterIdentity from;
+        final Hash fromHash;
+        final Job job;
+        final long queued;
+
+        public Entry(HandlerJobBuilder b, I2NPMessage m, RouterIdentity f, Hash h, Job j, long now) {
+            builder = b;
+            msg = m;
+            from = f;
+            fromHash = h;
+            job = j;
+            queued = now;
+        }
+    }
+
+    /**
+     *  Each runner has its own stop flag, so one from before a restart
+     *  can't keep running after the new ones start.
+     */
+    private class Runner implements Runnable {
+        // all guarded by this
+        private Thread _thread;
+        private boolean _waiting;
+        private boolean _stopped;
+
+        /**
+         *  Interrupts only if blocked in take(), not in a job.
+         */
+        public synchronized void stop() {
+            _stopped = true;
+            if (_waiting)
+                _thread.interrupt();
+        }
+
+        public void run() {
+            while (true) {
+                synchronized (this) {
+                    if (_stopped)
+                        break;
+                    _thread = Thread.currentThread();
+                    _waiting = true;
+                }
+                Entry e;
+                try {
+                    e = _queue.take();
+                } catch (InterruptedException ie) {
+                    e = null;
+                } finally {
+                    synchronized (this) {
+                        _waiting = false;
+                        // clear an interrupt from stop() that came after take() returned
+                        Thread.interrupted();
+                        if (_stopped)
+                            e = null;
+                    }
+                }
+                if (e == null)
+                    continue;
+                _context.statManager().addRateData(_statWait, _context.clock().now() - e.queued);
+                try {
+                    Job job = e.job;
+                    if (job == null) {
+                        job = e.builder.createJob(e.msg, e.from, e.fromHash);
+                        if (job == null)
+                            continue;
+                    }
+                    runJob(job);
+                } catch (OutOfMemoryError oome) {
+                    throw oome;
+                } catch (RuntimeException re) {
+                    if (_log.shouldLog(Log.CRIT))
+                        _log.log(Log.CRIT, "Error in the " + _name + " lane", re);
+                }
+            }
+        }
+
+        /**
+         *  As in JobQueueRunner, so it shows up in the job stats
+         */
+        private void runJob(Job job) {
+            JobTiming timing = job.getTiming();
+            long origStartAfter = timing.getStartAfter();
+            long doStart = _context.clock().now();
+            timing.start();
+            job.runJob();
+            timing.end();
+            long duration = timing.getActualEnd() - timing.getActualStart();
+            _context.jobQueue().updateStats(job, doStart, origStartAfter, duration);
+        }
+    }
+}
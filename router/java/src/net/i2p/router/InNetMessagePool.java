@@ -18,12 +18,21 @@ import net.i2p.data.router.RouterIdentity;
 import net.i2p.data.i2np.DatabaseLookupMessage;
 import net.i2p.data.i2np.DatabaseSearchReplyMessage;
 import net.i2p.data.i2np.DatabaseStoreMessage;
+import net.i2p.data.i2np.DataMessage;
 import net.i2p.data.i2np.DeliveryStatusMessage;
+import net.i2p.data.i2np.GarlicMessage;
 import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.i2np.OutboundTunnelBuildReplyMessage;
+import net.i2p.data.i2np.ShortTunnelBuildMessage;
+import net.i2p.data.i2np.TunnelBuildMessage;
+import net.i2p.data.i2np.TunnelBuildReplyMessage;
 import net.i2p.data.i2np.TunnelDataMessage;
 import net.i2p.data.i2np.TunnelGatewayMessage;
+import net.i2p.data.i2np.VariableTunnelBuildMessage;
+import net.i2p.data.i2np.VariableTunnelBuildReplyMessage;
 import net.i2p.util.I2PThread;
 import net.i2p.util.Log;
+import net.i2p.util.SystemVersion;
 
 /**
  * Manage a pool of inbound InNetMessages.  This pool is filled by the 
@@ -31,6 +40,12 @@ import net.i2p.util.Log;
  * periodically retrieve them for processing.
  *
  * Actually, this doesn't 'pool' anything, since DISPATCH_DIRECT = true.
+ *
+ * As of 0.9.65, with DISPATCH_DIRECT, the handler jobs for netDb, tunnel build,
+ * and garlic messages, and the reply jobs for delivery status messages,
+ * each go through their own InNetLane instead of the JobQueue,
+ * so a flood of lookups can't delay client traffic or tunnel builds.
+ * Disable with router.inNetLanes=false.
  */
 public class InNetMessagePool implements Service {
     private final Log _log;
@@ -46,6 +61,12 @@ public class InNetMessagePool implements Service {
 
     private boolean _alive;
     private final boolean _dispatchThreaded;
+
+    /** following 4 null if lanes disabled */
+    private final InNetLane _netDbLane;
+    private final InNetLane _buildLane;
+    private final InNetLane _garlicLane;
+    private final InNetLane _statusLane;
     
     /** Make this >= the max I2NP message type number (currently 24) */
     private static final int MAX_I2NP_MESSAGE_TYPE = 31;
@@ -84,6 +105,13 @@ public class InNetMessagePool implements Service {
     private static final String PROP_DISPATCH_DIRECT = "router.dispatchDirect";
     private static final boolean DEFAULT_DISPATCH_DIRECT = true;
     private final boolean DISPATCH_DIRECT;
+
+    /**
+     * Only if DISPATCH_DIRECT
+     * @since 0.9.65
+     */
+    private static final String PROP_LANES = "router.inNetLanes";
+    private static final boolean DEFAULT_LANES = true;
     
     public InNetMessagePool(RouterContext context) {
         _context = context;
@@ -103,6 +131,20 @@ public class InNetMessagePool implements Service {
             _shortCircuitDataJob = new SharedShortCircuitDataJob(context);
             _shortCircuitGatewayJob = new SharedShortCircuitGatewayJob(context);
         }
+        if (DISPATCH_DIRECT && _context.getProperty(PROP_LANES, DEFAULT_LANES)) {
+            int threads = SystemVersion.getMaxMemory() >= 256*1024*1024L ? 2 : 1;
+            // lookups and garlic to floodfills may be dropped, as the JobQueue did when lagged
+            _netDbLane = new InNetLane(context, "netDb", threads, 256, "oldest");
+            _garlicLane = new InNetLane(context, "garlic", threads, 256, "oldest");
+            // BuildHandler has its own CoDel queue for requests, don't drop replies
+            _buildLane = new InNetLane(context, "build", 1, 128, "jobqueue");
+            _statusLane = new InNetLane(context, "status", 1, 512, "jobqueue");
+        } else {
+            _netDbLane = null;
+            _garlicLane = null;
+            _buildLane = null;
+            _statusLane = null;
+        }
         _log = _context.logManager().getLog(InNetMessagePool.class);
         _context.statManager().createRateStat("inNetPool.dropped", "How often do we drop a message", "InNetPool", new long[] { 60*60*1000l });
         _context.statManager().createRateStat("inNetPool.droppedDeliveryStatusDelay", "How long after a delivery status message is created do we receive it back again (for messages that are too slow to be handled)", "InNetPool", new long[] { 60*60*1000l });
@@ -258,7 +300,7 @@ public class InNetMessagePool implements Service {
                 }
             } else {
                // DSM on queue, no reply jobs
-               if (dsmjob != null)
+               if (dsmjob != null && (_netDbLane == null || !_netDbLane.offer(dsmjob)))
                    _context.jobQueue().addJob(dsmjob);
             }
             allowMatches = false;
@@ -279,13 +321,16 @@ public class InNetMessagePool implements Service {
                                + " type: " + messageBody.getClass().getSimpleName());
 
                 if (builder != null) {
-                    Job job = builder.createJob(messageBody, fromRouter, 
-                                                fromRouterHash);
-                    if (job != null) {
-                        _context.jobQueue().addJob(job);
-                    } else {
-                        // ok, we may not have *found* a job, per se, but we could have, the
-                        // job may have just executed inline
+                    InNetLane lane = getLane(type);
+                    if (lane == null || !lane.offer(builder, messageBody, fromRouter, fromRouterHash)) {
+                        Job job = builder.createJob(messageBody, fromRouter, 
+                                                    fromRouterHash);
+                        if (job != null) {
+                            _context.jobQueue().addJob(job);
+                        } else {
+                            // ok, we may not have *found* a job, per se, but we could have, the
+                            // job may have just executed inline
+                        }
                     }
                     jobFound = true;
                 }
@@ -359,7 +404,40 @@ public class InNetMessagePool implements Service {
         }
         return 0; // no queue
     }
+
+    /**
+     *  Package private for testing
+     *
+     *  @return null if none for this type or lanes disabled
+     *  @since 0.9.65
+     */
+    InNetLane getLane(int type) {
+        switch (type) {
+          case DatabaseLookupMessage.MESSAGE_TYPE:
+          case DatabaseStoreMessage.MESSAGE_TYPE:
+            return _netDbLane;
+
+          case GarlicMessage.MESSAGE_TYPE:
+          case DataMessage.MESSAGE_TYPE:
+            return _garlicLane;
+
+          case TunnelBuildMessage.MESSAGE_TYPE:
+          case TunnelBuildReplyMessage.MESSAGE_TYPE:
+          case VariableTunnelBuildMessage.MESSAGE_TYPE:
+          case VariableTunnelBuildReplyMessage.MESSAGE_TYPE:
+          case ShortTunnelBuildMessage.MESSAGE_TYPE:
+          case OutboundTunnelBuildReplyMessage.MESSAGE_TYPE:
+            return _buildLane;
+
+          default:
+            return null;
+        }
+    }
     
+    /**
+     *  Reply jobs for delivery status messages go through the status lane,
+     *  others to the JobQueue.
+     */
     public int handleReplies(I2NPMessage messageBody) {
         List<OutNetMessage> origMessages = _context.messageRegistry().getOriginalMessages(messageBody);
         int sz = origMessages.size();
@@ -380,7 +458,10 @@ public class InNetMessagePool implements Service {
 
             if (job != null) {
                 job.setMessage(messageBody);
-                _context.jobQueue().addJob(job);
+                if (_statusLane == null ||
+                    messageBody.getType() != DeliveryStatusMessage.MESSAGE_TYPE ||
+                    !_statusLane.offer(job))
+                    _context.jobQueue().addJob(job);
             }
         }
         return sz;
@@ -431,16 +512,21 @@ public class InNetMessagePool implements Service {
     
     public void renderStatusHTML(Writer out) {}
 
-    /** does nothing since we aren't threaded */
     public synchronized void restart() { 
         shutdown(); 
         try { Thread.sleep(100); } catch (InterruptedException ie) {}
         startup(); 
     }
 
-    /** does nothing since we aren't threaded */
+    /** stops the lanes, and the dispatchers if threaded */
     public synchronized void shutdown() {
         _alive = false;
+        if (_netDbLane != null) {
+            _netDbLane.shutdown();
+            _garlicLane.shutdown();
+            _buildLane.shutdown();
+            _statusLane.shutdown();
+        }
         if (!DISPATCH_DIRECT) {
             synchronized (_pendingDataMessages) {
                 _pendingDataMessages.clear();
@@ -450,9 +536,15 @@ public class InNetMessagePool implements Service {
         }
     }
     
-    /** does nothing since we aren't threaded */
+    /** starts the lanes, and the dispatchers if threaded */
     public synchronized void startup() {
         _alive = true;
+        if (_netDbLane != null) {
+            _netDbLane.startup();
+            _garlicLane.startup();
+            _buildLane.startup();
+            _statusLane.startup();
+        }
         if (_dispatchThreaded) {
             _context.statManager().createRateStat("pool.dispatchDataTime", "How long a tunnel dispatch takes", "Tunnels", new long[] { 10*60*1000l, 60*60*1000l, 24*60*60*1000l });
             _context.statManager().createRateStat("pool.dispatchGatewayTime", "How long a tunnel gateway dispatch takes", "Tunnels", new long[] { 10*60*1000l, 60*60*1000l, 24*60*60*1000l });
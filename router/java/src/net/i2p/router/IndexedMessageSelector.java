@@ -0,0 +1,30 @@
+package net.i2p.router;
+
+/**
+ * A MessageSelector that only matches messages with a known key,
+ * so that the OutboundMessageRegistry can find it with a map lookup,
+ * instead of calling isMatch() on every outstanding selector
+ * for every received message.
+ *
+ * isMatch() is still called for every message with the same key,
+ * and must still check everything it cares about.
+ *
+ * @since 0.9.65
+ */
+public interface IndexedMessageSelector extends MessageSelector {
+
+    /**
+     * The key of the only messages that can match.
+     * Must not change while the selector is registered.
+     *
+     * One of:
+     *<ul>
+     *<li>A Long, the message ID of a DeliveryStatusMessage
+     *<li>A Hash, the key of a DatabaseStoreMessage or the search key of a DatabaseSearchReplyMessage
+     *<li>null, if not known; the selector will be checked against every message
+     *</ul>
+     *
+     * @see net.i2p.router.transport.OutboundMessageRegistry#getMatchKey(net.i2p.data.i2np.I2NPMessage)
+     */
+    public Object getMatchKey();
+}
@@ -17,6 +17,7 @@ import java.util.Map;
 
 import net.i2p.data.router.RouterInfo;
 import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
 import net.i2p.router.util.CDPQEntry;
 import net.i2p.util.Log;
 
@@ -376,6 +377,9 @@ public class OutNetMessage implements CDPQEntry {
      * we may keep the object around for a while to use its ID, jobs, etc.
      */
     public void discardData() {
+        // received tunnel data we're forwarding goes back to the cache
+        if (_message != null && _message.getType() == TunnelDataMessage.MESSAGE_TYPE)
+            ((TunnelDataMessage) _message).releaseData();
     }
     
     @Override
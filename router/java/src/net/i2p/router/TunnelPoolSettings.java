@@ -35,6 +35,7 @@ public class TunnelPoolSettings {
     private final Properties _unknownOptions;
     private SessionKey _randomKey;
     private int _priority;
+    private int _batchLatency;
     private final Set<Hash> _aliases;
     private Hash _aliasOf;
     
@@ -60,6 +61,14 @@ public class TunnelPoolSettings {
     public static final String  PROP_PRIORITY = "priority";
     /** @since 0.9.17 */
     public static final String  PROP_RANDOM_KEY = "randomKey";
+    /**
+     *  Outbound only. How long, in ms, a message may wait at our gateway
+     *  to be batched with others into a tunnel message.
+     *  The batching delay adapts to the traffic, up to this.
+     *  Lower trades bandwidth for latency.
+     *  @since 0.9.65
+     */
+    public static final String  PROP_BATCH_LATENCY = "batchLatency";
     
     public static final int     DEFAULT_QUANTITY = 2;
     public static final int     DEFAULT_BACKUP_QUANTITY = 0;
@@ -286,6 +295,19 @@ public class TunnelPoolSettings {
      */
     public int getPriority() { return _priority; }
 
+    /**
+     *  Batching latency target - for outbound tunnels only
+     *  @return ms, or 0 for the router default
+     *  @since 0.9.65
+     */
+    public int getBatchLatency() { return _batchLatency; }
+
+    /**
+     *  @param ms 0 for the router default
+     *  @since 0.9.65
+     */
+    public void setBatchLatency(int ms) { _batchLatency = Math.max(0, ms); }
+
     /**
      *  @return non-null
      */
@@ -338,6 +360,8 @@ public class TunnelPoolSettings {
                      int def = _isExploratory ? EXPLORATORY_PRIORITY : 0;
                      int max = _isExploratory ? EXPLORATORY_PRIORITY : MAX_PRIORITY;
                     _priority = Math.min(max, Math.max(MIN_PRIORITY, getInt(value, def)));
+                } else if ((!_isInbound) && name.equalsIgnoreCase(prefix + PROP_BATCH_LATENCY)) {
+                    _batchLatency = Math.max(0, getInt(value, 0));
                 } else if (name.equalsIgnoreCase(prefix + PROP_RANDOM_KEY)) {
                     byte[] rk = Base64.decode(value);
                     if (rk != null && rk.length == SessionKey.KEYSIZE_BYTES)
@@ -365,6 +389,8 @@ public class TunnelPoolSettings {
         props.setProperty(prefix + PROP_IP_RESTRICTION, Integer.toString(_IPRestriction));
         if (!_isInbound)
             props.setProperty(prefix + PROP_PRIORITY, Integer.toString(_priority));
+        if (!_isInbound && _batchLatency > 0)
+            props.setProperty(prefix + PROP_BATCH_LATENCY, Integer.toString(_batchLatency));
         for (Map.Entry<Object, Object> e : _unknownOptions.entrySet()) {
             String name = (String) e.getKey();
             String val = (String) e.getValue();
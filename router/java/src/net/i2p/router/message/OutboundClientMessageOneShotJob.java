@@ -34,7 +34,7 @@ import net.i2p.data.i2np.I2NPMessage;
 import net.i2p.router.ClientMessage;
 import net.i2p.router.JobImpl;
 import net.i2p.router.LeaseSetKeys;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.NetworkDatabaseFacade;
 import net.i2p.router.ReplyJob;
 import net.i2p.router.Router;
@@ -1028,7 +1028,7 @@ public class OutboundClientMessageOneShotJob extends JobImpl {
      * sent down the various tunnels to deliver this message
      *
      */
-    private static class ReplySelector implements MessageSelector {
+    private static class ReplySelector implements IndexedMessageSelector {
         private final long _pendingToken;
         private final long _expiration;
 
@@ -1042,6 +1042,9 @@ public class OutboundClientMessageOneShotJob extends JobImpl {
         }
 
         public long getExpiration() { return _expiration; }
+
+        /** @since 0.9.65 */
+        public Object getMatchKey() { return Long.valueOf(_pendingToken); }
         
         public boolean isMatch(I2NPMessage inMsg) {
             if (inMsg.getType() == DeliveryStatusMessage.MESSAGE_TYPE) {
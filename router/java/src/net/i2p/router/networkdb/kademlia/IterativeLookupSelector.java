@@ -4,7 +4,7 @@ import net.i2p.data.Hash;
 import net.i2p.data.i2np.DatabaseSearchReplyMessage;
 import net.i2p.data.i2np.DatabaseStoreMessage;
 import net.i2p.data.i2np.I2NPMessage;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
@@ -14,7 +14,7 @@ import net.i2p.util.Log;
  *
  *  @since 0.8.9
  */
-class IterativeLookupSelector implements MessageSelector {
+class IterativeLookupSelector implements IndexedMessageSelector {
     private final RouterContext _context;
     private final IterativeSearchJob _search;
     private boolean _matchFound;
@@ -33,6 +33,9 @@ class IterativeLookupSelector implements MessageSelector {
 
     public long getExpiration() { return (_matchFound ? -1 : _search.getExpiration()); }
 
+    /** @since 0.9.65 */
+    public Object getMatchKey() { return _search.getKey(); }
+
     /**
      *  This only returns true for DSMs, not for DSRMs.
      */
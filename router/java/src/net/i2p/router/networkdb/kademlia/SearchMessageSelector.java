@@ -7,7 +7,7 @@ import net.i2p.data.router.RouterInfo;
 import net.i2p.data.i2np.DatabaseSearchReplyMessage;
 import net.i2p.data.i2np.DatabaseStoreMessage;
 import net.i2p.data.i2np.I2NPMessage;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
@@ -16,7 +16,7 @@ import net.i2p.util.Log;
  * search
  *
  */
-class SearchMessageSelector implements MessageSelector {
+class SearchMessageSelector implements IndexedMessageSelector {
     private final Log _log;
     private final RouterContext _context;
     private static final AtomicInteger __searchSelectorId = new AtomicInteger();
@@ -64,6 +64,9 @@ class SearchMessageSelector implements MessageSelector {
 
     public long getExpiration() { return _exp; }
 
+    /** @since 0.9.65 */
+    public Object getMatchKey() { return _state.getTarget(); }
+
     public boolean isMatch(I2NPMessage message) {
         int type = message.getType();
         if (type == DatabaseStoreMessage.MESSAGE_TYPE) {
@@ -4,7 +4,7 @@ import net.i2p.data.Hash;
 import net.i2p.data.router.RouterInfo;
 import net.i2p.data.i2np.DeliveryStatusMessage;
 import net.i2p.data.i2np.I2NPMessage;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
@@ -13,7 +13,7 @@ import net.i2p.util.Log;
  * store
  *
  */
-class StoreMessageSelector implements MessageSelector {
+class StoreMessageSelector implements IndexedMessageSelector {
     private final Log _log;
     private final Hash _peer;
     private final long _storeJobId;
@@ -38,6 +38,9 @@ class StoreMessageSelector implements MessageSelector {
 
     public long getExpiration() { return _expiration; }
 
+    /** @since 0.9.65 */
+    public Object getMatchKey() { return Long.valueOf(_waitingForId); }
+
     public boolean isMatch(I2NPMessage message) {
         if (message.getType() == DeliveryStatusMessage.MESSAGE_TYPE) {
             DeliveryStatusMessage msg = (DeliveryStatusMessage)message;
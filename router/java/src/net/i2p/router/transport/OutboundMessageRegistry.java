@@ -16,8 +16,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import net.i2p.data.i2np.DatabaseSearchReplyMessage;
+import net.i2p.data.i2np.DatabaseStoreMessage;
+import net.i2p.data.i2np.DeliveryStatusMessage;
 import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.Job;
 import net.i2p.router.MessageSelector;
 import net.i2p.router.OutNetMessage;
@@ -32,8 +37,13 @@ import net.i2p.util.SimpleTimer2;
  */
 public class OutboundMessageRegistry {
     private final Log _log;
-    /** list of currently active MessageSelector instances */
+    /** list of currently active MessageSelector instances that must be checked against every message */
     private final List<MessageSelector> _selectors;
+    /**
+     *  currently active IndexedMessageSelector instances, by match key
+     *  @since 0.9.65
+     */
+    private final ConcurrentHashMap<Object, Bucket> _index;
     /** map of active MessageSelector to either an OutNetMessage or a List of OutNetMessages causing it (for quick removal) */
     private final Map<MessageSelector, Object> _selectorToMessage;
     /**
@@ -51,7 +61,8 @@ public class OutboundMessageRegistry {
     public OutboundMessageRegistry(RouterContext context) {
         _context = context;
         _log = _context.logManager().getLog(OutboundMessageRegistry.class);
-        _selectors = new ArrayList<MessageSelector>(64);
+        _selectors = new ArrayList<MessageSelector>(16);
+        _index = new ConcurrentHashMap<Object, Bucket>(64);
         _selectorToMessage = new HashMap<MessageSelector, Object>(64);
         _activeMessages = new ConcurrentHashSet<OutNetMessage>(64);
         _cleanupTask = new CleanupTask();
@@ -64,6 +75,7 @@ public class OutboundMessageRegistry {
         synchronized (_selectors) {
             _selectors.clear();
         }
+        _index.clear();
         synchronized (_selectorToMessage) { 
             _selectorToMessage.clear();
         }
@@ -88,7 +100,11 @@ public class OutboundMessageRegistry {
      *
      * This is called only by InNetMessagePool.
      *
-     * TODO this calls isMatch() in the selectors from inside the lock, which
+     * IndexedMessageSelectors are found by the message's match key,
+     * and only those with the same key are checked.
+     * Other selectors are checked against every message.
+     *
+     * TODO this calls isMatch() in the selectors from inside a lock, which
      * can lead to deadlocks if the selector does too much in isMatch().
      * Remove the lock if possible.
      *
@@ -98,30 +114,24 @@ public class OutboundMessageRegistry {
      */
     @SuppressWarnings("unchecked")
     public List<OutNetMessage> getOriginalMessages(I2NPMessage message) {
-        List<MessageSelector> matchedSelectors = null;
-        List<MessageSelector> removedSelectors = null;
-
-        synchronized (_selectors) {
-            // ConcurrentModificationException - why?
-            //for (Iterator<MessageSelector> iter = _selectors.iterator(); iter.hasNext(); ) {
-            //    MessageSelector sel = iter.next();
-            for (int i = 0; i < _selectors.size(); i++) {
-                MessageSelector sel = _selectors.get(i);
-                boolean isMatch = sel.isMatch(message);
-                if (isMatch) {
-                    if (matchedSelectors == null) matchedSelectors = new ArrayList<MessageSelector>(1);
-                    matchedSelectors.add(sel);
-                    if (!sel.continueMatching()) {
-                        if (removedSelectors == null) removedSelectors = new ArrayList<MessageSelector>(1);
-                        removedSelectors.add(sel);
-                        //iter.remove();
-                        _selectors.remove(i);
-                        i--;
-                    }
+        Matches matches = new Matches();
+        Object key = getMatchKey(message);
+        if (key != null) {
+            Bucket b = _index.get(key);
+            if (b != null) {
+                synchronized (b) {
+                    match(b.selectors, message, matches);
+                    if (b.selectors.isEmpty())
+                        retire(key, b);
                 }
-            }  
+            }
+        }
+        synchronized (_selectors) {
+            match(_selectors, message, matches);
         }
 
+        List<MessageSelector> matchedSelectors = matches.matched;
+        List<MessageSelector> removedSelectors = matches.removed;
         List<OutNetMessage> rv;
         if (matchedSelectors != null) {
             rv = new ArrayList<OutNetMessage>(matchedSelectors.size());
@@ -160,6 +170,146 @@ public class OutboundMessageRegistry {
 
         return rv;
     }
+
+    /**
+     *  The key under which IndexedMessageSelectors that may match this message are indexed.
+     *
+     *  @return a Long for a DeliveryStatusMessage, a Hash for a DatabaseStoreMessage
+     *          or DatabaseSearchReplyMessage, otherwise null
+     *  @since 0.9.65
+     */
+    public static Object getMatchKey(I2NPMessage message) {
+        switch (message.getType()) {
+            case DeliveryStatusMessage.MESSAGE_TYPE:
+                return Long.valueOf(((DeliveryStatusMessage) message).getMessageId());
+            case DatabaseStoreMessage.MESSAGE_TYPE:
+                return ((DatabaseStoreMessage) message).getKey();
+            case DatabaseSearchReplyMessage.MESSAGE_TYPE:
+                return ((DatabaseSearchReplyMessage) message).getSearchKey();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     *  Call isMatch() on each selector, and remove the ones that are done.
+     *  Caller must synch on selectors.
+     *
+     *  @since 0.9.65 split out of getOriginalMessages()
+     */
+    private static void match(List<MessageSelector> selectors, I2NPMessage message, Matches matches) {
+        // ConcurrentModificationException - why?
+        //for (Iterator<MessageSelector> iter = _selectors.iterator(); iter.hasNext(); ) {
+        //    MessageSelector sel = iter.next();
+        for (int i = 0; i < selectors.size(); i++) {
+            MessageSelector sel = selectors.get(i);
+            boolean isMatch = sel.isMatch(message);
+            if (isMatch) {
+                if (matches.matched == null) matches.matched = new ArrayList<MessageSelector>(1);
+                matches.matched.add(sel);
+                if (!sel.continueMatching()) {
+                    if (matches.removed == null) matches.removed = new ArrayList<MessageSelector>(1);
+                    matches.removed.add(sel);
+                    //iter.remove();
+                    selectors.remove(i);
+                    i--;
+                }
+            }
+        }
+    }
+
+    /**
+     *  @return the match key or null
+     *  @since 0.9.65
+     */
+    private static Object getIndexKey(MessageSelector sel) {
+        if (sel instanceof IndexedMessageSelector)
+            return ((IndexedMessageSelector) sel).getMatchKey();
+        return null;
+    }
+
+    /**
+     *  Add to the index if it has a match key, otherwise to the list
+     *
+     *  @since 0.9.65
+     */
+    private void addSelector(MessageSelector sel) {
+        Object key = getIndexKey(sel);
+        if (key == null) {
+            synchronized (_selectors) { _selectors.add(sel); }
+            return;
+        }
+        while (true) {
+            Bucket b = _index.get(key);
+            if (b == null) {
+                b = new Bucket();
+                Bucket old = _index.putIfAbsent(key, b);
+                if (old != null)
+                    b = old;
+            }
+            synchronized (b) {
+                // else it was emptied and removed from the index, get a new one
+                if (!b.dead) {
+                    b.selectors.add(sel);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     *  Remove from the index or the list
+     *
+     *  @since 0.9.65
+     */
+    private void removeSelector(MessageSelector sel) {
+        Object key = getIndexKey(sel);
+        if (key == null) {
+            synchronized (_selectors) { _selectors.remove(sel); }
+            return;
+        }
+        Bucket b = _index.get(key);
+        if (b != null) {
+            synchronized (b) {
+                b.selectors.remove(sel);
+                if (b.selectors.isEmpty())
+                    retire(key, b);
+            }
+        }
+    }
+
+    /**
+     *  Caller must synch on b, which must be empty
+     *
+     *  @since 0.9.65
+     */
+    private void retire(Object key, Bucket b) {
+        b.dead = true;
+        _index.remove(key, b);
+    }
+
+    /**
+     *  The IndexedMessageSelectors with the same match key.
+     *  Usually only one.
+     *
+     *  @since 0.9.65
+     */
+    private static class Bucket {
+        /** LOCKING: this */
+        public final List<MessageSelector> selectors = new ArrayList<MessageSelector>(2);
+        /** LOCKING: this; if true, no longer in the index and must not be added to */
+        public boolean dead;
+    }
+
+    /**
+     *  Results of match()
+     *
+     *  @since 0.9.65
+     */
+    private static class Matches {
+        public List<MessageSelector> matched;
+        public List<MessageSelector> removed;
+    }
     
     /**
      *  Registers a new, empty OutNetMessage, with the reply and timeout jobs specified.
@@ -204,8 +354,9 @@ public class OutboundMessageRegistry {
         if (!_activeMessages.add(msg))
             return; // dont add dups
 
+        Object oldMsg;
         synchronized (_selectorToMessage) { 
-            Object oldMsg = _selectorToMessage.put(sel, msg);
+            oldMsg = _selectorToMessage.put(sel, msg);
             if (oldMsg != null) {
                 List<OutNetMessage> multi = null;
                 if (oldMsg instanceof OutNetMessage) {
@@ -223,7 +374,9 @@ public class OutboundMessageRegistry {
                     _log.warn("a single message selector [" + sel + "] with multiple messages ("+ multi + ")");
             }
         }
-        synchronized (_selectors) { _selectors.add(sel); }
+        // a selector shared by several messages is only checked once
+        if (oldMsg == null)
+            addSelector(sel);
 
         _cleanupTask.scheduleExpiration(sel);
     }
@@ -250,7 +403,7 @@ public class OutboundMessageRegistry {
             }
         }
         if (!stillActive)
-            synchronized (_selectors) { _selectors.remove(sel); }
+            removeSelector(sel);
         _activeMessages.remove(msg);
     }
 
@@ -271,7 +424,32 @@ public class OutboundMessageRegistry {
         public void timeReached() {
             long now = _context.clock().now();
             List<MessageSelector> removing = new ArrayList<MessageSelector>(8);
+            long soonest = Long.MAX_VALUE;
+            int indexed = 0;
+            for (Map.Entry<Object, Bucket> e : _index.entrySet()) {
+                Bucket b = e.getValue();
+                synchronized (b) {
+                    List<MessageSelector> sels = b.selectors;
+                    for (int i = 0; i < sels.size(); i++) {
+                        MessageSelector sel = sels.get(i);
+                        long expiration = sel.getExpiration();
+                        if (expiration <= now) {
+                            removing.add(sel);
+                            sels.remove(i);
+                            i--;
+                        } else if (expiration < soonest) {
+                            soonest = expiration;
+                        }
+                    }
+                    if (sels.isEmpty())
+                        retire(e.getKey(), b);
+                    else
+                        indexed += sels.size();
+                }
+            }
             synchronized (_selectors) {
+                if (soonest < Long.MAX_VALUE && (soonest < _nextExpire || _nextExpire < now))
+                    _nextExpire = soonest;
                 // CME?
                 //for (Iterator<MessageSelector> iter = _selectors.iterator(); iter.hasNext(); ) {
                 //    MessageSelector sel = iter.next();
@@ -329,7 +507,7 @@ public class OutboundMessageRegistry {
                 int e = removing.size();
                 int r;
                 synchronized(_selectors) {
-                    r = _selectors.size();
+                    r = _selectors.size() + indexed;
                 }
                 int a = _activeMessages.size();
                 if (r > 0 || e > 0 || a > 0)
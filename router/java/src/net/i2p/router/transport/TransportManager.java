@@ -435,9 +435,9 @@ public class TransportManager implements TransportEventListener {
     }
 
     synchronized void startListening() {
-        if (_dhThread != null && _dhThread.getState() == Thread.State.NEW)
+        if (_dhThread != null)
             _dhThread.start();
-        if (_xdhThread != null && _xdhThread.getState() == Thread.State.NEW)
+        if (_xdhThread != null)
             _xdhThread.start();
         // For now, only start UPnP if we have no publicly-routable addresses
         // so we don't open the listener ports to the world.
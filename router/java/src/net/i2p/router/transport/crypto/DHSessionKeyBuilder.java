@@ -13,21 +13,21 @@ package net.i2p.router.transport.crypto;
 //import java.io.OutputStream;
 import java.math.BigInteger;
 import java.security.InvalidKeyException;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import net.i2p.I2PAppContext;
 import net.i2p.I2PException;
 import net.i2p.crypto.CryptoConstants;
+import net.i2p.crypto.KeyPrecalcService;
 import net.i2p.crypto.SHA256Generator;
 import net.i2p.crypto.SigUtil;
 import net.i2p.data.ByteArray;
 //import net.i2p.data.DataHelper;
 import net.i2p.data.SessionKey;
-import net.i2p.util.I2PThread;
 import net.i2p.util.Log;
 import net.i2p.util.NativeBigInteger;
 import net.i2p.util.RandomSource;
 import net.i2p.util.SystemVersion;
+import net.i2p.util.TryCache;
 
 /**
  * Generate a new session key through a diffie hellman exchange.  This uses the
@@ -434,21 +434,19 @@ public class DHSessionKeyBuilder {
      *  It's important to do this in a separate thread, because if we run out,
      *  the pairs are generated in the NTCP Pumper thread,
      *  and it can fall behind.
+     *
+     *  As of 0.9.65, the pairs are generated by the context's KeyPrecalcService.
      */
-    public static class PrecalcRunner extends I2PThread implements Factory {
+    public static class PrecalcRunner implements Factory {
         private final I2PAppContext _context;
         private final Log _log;
         private final int _minSize;
         private final int _maxSize;
         private final int _calcDelay;
-        private final LinkedBlockingQueue<DHSessionKeyBuilder> _builders;
-        private volatile boolean _isRunning;
-
-        /** check periodically whether we have less than the minimum */
-        private long _checkDelay = 10 * 1000;
+        /** null when not running */
+        private volatile KeyPrecalcService.Stock<DHSessionKeyBuilder> _builders;
 
         public PrecalcRunner(I2PAppContext ctx) {
-            super("DH Precalc");
             _context = ctx;
             _log = ctx.logManager().getLog(DHSessionKeyBuilder.class);
             ctx.statManager().createRateStat("crypto.dhGeneratePublicTime", "How long it takes to create x and X", "Encryption", new long[] { 60*60*1000 });
@@ -471,74 +469,42 @@ public class DHSessionKeyBuilder {
             if (_log.shouldLog(Log.DEBUG))
                 _log.debug("DH Precalc (minimum: " + _minSize + " max: " + _maxSize + ", delay: "
                            + _calcDelay + ")");
-            _builders = new LinkedBlockingQueue<DHSessionKeyBuilder>(_maxSize);
-            if (!SystemVersion.isWindows())
-                setPriority(Thread.NORM_PRIORITY - 1);
         }
-        
+
+        /**
+         *  Start the background precalculation.
+         *  If not called, all generation happens in the foreground.
+         *  Does nothing if already started.
+         *
+         *  @since 0.9.65, was Thread.start()
+         */
+        public synchronized void start() {
+            if (_builders != null)
+                return;
+            _builders = _context.keyPrecalcService().register("DH", new BuilderFactory(), _minSize, _maxSize, _calcDelay);
+        }
+
         /**
-         *  Note that this stops the singleton precalc thread.
+         *  Note that this stops the precalculation for the context.
          *  You don't want to do this if there are multiple routers in the JVM.
          *  Fix this if you care. See Router.shutdown().
          *  @since 0.8.8
          */
-        public void shutdown() {
-            _isRunning = false;
-            this.interrupt();
-            _builders.clear();
-        }
-
-        public void run() {
-            try {
-                run2();
-            } catch (IllegalStateException ise) {
-                if (_isRunning)
-                    throw ise;
-                // else ignore, thread can be slow to shutdown on Android,
-                // PRNG gets stopped first and throws ISE
+        public synchronized void shutdown() {
+            if (_builders != null) {
+                _builders.shutdown();
+                _builders = null;
             }
         }
 
-        private void run2() {
-            _isRunning = true;
-            while (_isRunning) {
-                //long start = System.currentTimeMillis();
-                int startSize = getSize();
-                // Adjust delay
-                if (startSize <= (_minSize * 2 / 3) && _checkDelay > 1000)
-                    _checkDelay -= 1000;
-                else if (startSize > (_minSize * 3 / 2) && _checkDelay < 60*1000)
-                    _checkDelay += 1000;
-                if (startSize < _minSize) {
-                    // fill all the way up, do the check here so we don't
-                    // throw away one when full in addValues()
-                    while (getSize() < _maxSize && _isRunning) {
-                        long curStart = System.currentTimeMillis();
-                        if (!addBuilder(precalc()))
-                            break;
-                        long curCalc = System.currentTimeMillis() - curStart;
-                        // for some relief...
-                        if (!interrupted()) {
-                            try {
-                                Thread.sleep(Math.min(200, Math.max(10, _calcDelay + (curCalc * 3))));
-                            } catch (InterruptedException ie) {}
-                        }
-                    }
-                }
-                //long end = System.currentTimeMillis();
-                //int numCalc = curSize - startSize;
-                //if (numCalc > 0) {
-                //    if (_log.shouldLog(Log.DEBUG))
-                //        _log.debug("Precalced " + numCalc + " to " + curSize + " in "
-                //                   + (end - start - CALC_DELAY * numCalc) + "ms (not counting "
-                //                   + (CALC_DELAY * numCalc) + "ms relief).  now sleeping");
-                //}
-                if (!_isRunning)
-                    break;
-                try {
-                    Thread.sleep(_checkDelay);
-                } catch (InterruptedException ie) { // nop
-                }
+        /**
+         *  For the precalc service
+         *
+         *  @since 0.9.65
+         */
+        private class BuilderFactory implements TryCache.ObjectFactory<DHSessionKeyBuilder> {
+            public DHSessionKeyBuilder newInstance() {
+                return precalc();
             }
         }
 
@@ -550,13 +516,12 @@ public class DHSessionKeyBuilder {
          */
         public DHSessionKeyBuilder getBuilder() {
             _context.statManager().addRateData("crypto.DHUsed", 1);
-            DHSessionKeyBuilder builder = _builders.poll();
+            KeyPrecalcService.Stock<DHSessionKeyBuilder> builders = _builders;
+            DHSessionKeyBuilder builder = builders != null ? builders.poll() : null;
             if (builder == null) {
                 if (_log.shouldLog(Log.INFO)) _log.info("No more builders, creating one now");
                 _context.statManager().addRateData("crypto.DHEmpty", 1);
                 builder = precalc();
-                // stop sleeping, wake up, make some more
-                this.interrupt();
             }
             return builder;
         }
@@ -589,20 +554,11 @@ public class DHSessionKeyBuilder {
                 _log.error("builder returned used", new Exception());
                 return;
             }
-            if (_builders.offer(builder))
+            KeyPrecalcService.Stock<DHSessionKeyBuilder> builders = _builders;
+            if (builders != null && builders.offer(builder))
                 _context.statManager().addRateData("crypto.DHReused", 1);
 */
         }
-
-        /** @return true if successful, false if full */
-        private final boolean addBuilder(DHSessionKeyBuilder builder) {
-            return _builders.offer(builder);
-        }
-
-        private final int getSize() {
-            return _builders.size();
-        }
-
     }
     
     public static class InvalidPublicParameterException extends I2PException {
@@ -1,16 +1,15 @@
 package net.i2p.router.transport.crypto;
 
-import java.util.concurrent.LinkedBlockingQueue;
-
 import net.i2p.I2PAppContext;
 import net.i2p.crypto.EncType;
 import net.i2p.crypto.KeyFactory;
 import net.i2p.crypto.KeyPair;
+import net.i2p.crypto.KeyPrecalcService;
 import net.i2p.data.PrivateKey;
 import net.i2p.data.PublicKey;
-import net.i2p.util.I2PThread;
 import net.i2p.util.Log;
 import net.i2p.util.SystemVersion;
+import net.i2p.util.TryCache;
 
 /**
  *  Try to keep DH pairs at the ready.
@@ -18,18 +17,20 @@ import net.i2p.util.SystemVersion;
  *  the pairs are generated in the NTCP Pumper thread,
  *  and it can fall behind.
  *
+ *  As of 0.9.65, the pairs are generated by the context's KeyPrecalcService,
+ *  which sizes the stock by usage, and adds worker threads under load.
+ *
  *  @since 0.9.36 from DHSessionKeyFactory.PrecalcRunner
  */
-public class X25519KeyFactory extends I2PThread implements KeyFactory {
+public class X25519KeyFactory implements KeyFactory {
 
     private final I2PAppContext _context;
     private final Log _log;
     private final int _minSize;
     private final int _maxSize;
     private final int _calcDelay;
-    private final LinkedBlockingQueue<KeyPair> _keys;
-    private volatile boolean _isRunning;
-    private long _checkDelay = 10 * 1000;
+    /** null when not running */
+    private volatile KeyPrecalcService.Stock<KeyPair> _keys;
 
     private final static String PROP_DH_PRECALC_MIN = "crypto.xdh.precalc.min";
     private final static String PROP_DH_PRECALC_MAX = "crypto.xdh.precalc.max";
@@ -39,7 +40,6 @@ public class X25519KeyFactory extends I2PThread implements KeyFactory {
     private final static int DEFAULT_DH_PRECALC_DELAY = 25;
 
     public X25519KeyFactory(I2PAppContext ctx) {
-        super("XDH Precalc");
         _context = ctx;
         _log = ctx.logManager().getLog(X25519KeyFactory.class);
         ctx.statManager().createRateStat("crypto.XDHGenerateTime", "How long it takes to create x and X", "Encryption", new long[] { 60*60*1000 });
@@ -61,64 +61,40 @@ public class X25519KeyFactory extends I2PThread implements KeyFactory {
         if (_log.shouldLog(Log.DEBUG))
             _log.debug("XDH Precalc (minimum: " + _minSize + " max: " + _maxSize + ", delay: "
                        + _calcDelay + ")");
-        _keys = new LinkedBlockingQueue<KeyPair>(_maxSize);
-        if (!SystemVersion.isWindows())
-            setPriority(Thread.NORM_PRIORITY - 1);
     }
-        
+
     /**
-     *  Note that this stops the singleton precalc thread.
-     *  You don't want to do this if there are multiple routers in the JVM.
-     *  Fix this if you care. See Router.shutdown().
+     *  Start the background precalculation.
+     *  If not called, all generation happens in the foreground.
+     *  Does nothing if already started.
+     *
+     *  @since 0.9.65, was Thread.start()
      */
-    public void shutdown() {
-        _isRunning = false;
-        this.interrupt();
-        _keys.clear();
+    public synchronized void start() {
+        if (_keys != null)
+            return;
+        _keys = _context.keyPrecalcService().register("XDH", new XDHFactory(), _minSize, _maxSize, _calcDelay);
     }
 
-    public void run() {
-        try {
-            run2();
-        } catch (IllegalStateException ise) {
-            if (_isRunning)
-                throw ise;
-            // else ignore, thread can be slow to shutdown on Android,
-            // PRNG gets stopped first and throws ISE
+    /**
+     *  Stop the background precalculation and discard the stock.
+     *  Can be restarted.
+     */
+    public synchronized void shutdown() {
+        if (_keys != null) {
+            _keys.shutdown();
+            _keys = null;
         }
     }
 
-    private void run2() {
-        _isRunning = true;
-        while (_isRunning) {
-            int startSize = getSize();
-            // Adjust delay
-            if (startSize <= (_minSize * 2 / 3) && _checkDelay > 1000)
-                _checkDelay -= 1000;
-            else if (startSize > (_minSize * 3 / 2) && _checkDelay < 60*1000)
-                _checkDelay += 1000;
-            if (startSize < _minSize) {
-                // fill all the way up, do the check here so we don't
-                // throw away one when full in addValues()
-                while (getSize() < _maxSize && _isRunning) {
-                    long curStart = System.currentTimeMillis();
-                    if (!addKeys(precalc()))
-                        break;
-                    long curCalc = System.currentTimeMillis() - curStart;
-                    // for some relief...
-                    if (!interrupted()) {
-                        try {
-                            Thread.sleep(Math.min(200, Math.max(10, _calcDelay + (curCalc * 3))));
-                        } catch (InterruptedException ie) {}
-                    }
-                }
-            }
-            if (!_isRunning)
-                break;
-            try {
-                Thread.sleep(_checkDelay);
-            } catch (InterruptedException ie) { // nop
-            }
+    /**
+     *  For the precalc service
+     *
+     *  @since 0.9.65
+     */
+    private class XDHFactory implements TryCache.ObjectFactory<KeyPair> {
+        public KeyPair newInstance() {
+            return precalc();
         }
     }
 
@@ -128,12 +104,11 @@ public class X25519KeyFactory extends I2PThread implements KeyFactory {
      */
     public KeyPair getKeys() {
         _context.statManager().addRateData("crypto.XDHUsed", 1);
-        KeyPair rv = _keys.poll();
+        KeyPrecalcService.Stock<KeyPair> keys = _keys;
+        KeyPair rv = keys != null ? keys.poll() : null;
         if (rv == null) {
             _context.statManager().addRateData("crypto.XDHEmpty", 1);
             rv = precalc();
-            // stop sleeping, wake up, make some more
-            this.interrupt();
         }
         return rv;
     }
@@ -154,17 +129,8 @@ public class X25519KeyFactory extends I2PThread implements KeyFactory {
      * to be put back onto the queue for reuse.
      */
     public void returnUnused(KeyPair kp) {
-        if (_keys.offer(kp))
+        KeyPrecalcService.Stock<KeyPair> keys = _keys;
+        if (keys != null && keys.offer(kp))
             _context.statManager().addRateData("crypto.XDHReused", 1);
     }
-
-    /** @return true if successful, false if full */
-    private final boolean addKeys(KeyPair kp) {
-        return _keys.offer(kp);
-    }
-
-    private final int getSize() {
-        return _keys.size();
-    }
-
 }
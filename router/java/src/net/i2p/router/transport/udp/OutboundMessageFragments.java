@@ -92,6 +92,11 @@ class OutboundMessageFragments {
         _context.statManager().createRateStat("udp.blockedRetransmissions", "How packets have been transmitted to the peer when we blocked a retransmission to them?", "udp", UDPTransport.RATES);
         _context.statManager().createRateStat("udp.sendCycleTime", "How long it takes to cycle through all of the active messages?", "udp", UDPTransport.RATES);
         _context.statManager().createRateStat("udp.sendCycleTimeSlow", "How long it takes to cycle through all of the active messages, when its going slowly?", "udp", UDPTransport.RATES);
+        // following 4 since 0.9.65
+        _context.statManager().createRateStat("udp.sendPacketsPerMessage", "100 * Data packets / messages in a volley", "udp", UDPTransport.RATES);
+        _context.statManager().createRateStat("udp.sendDataOverhead", "Percent of a data packet that is not I2NP data, incl. IP/UDP headers", "udp", UDPTransport.RATES);
+        _context.statManager().createRateStat("udp.sendACKOnly", "How often the ack timer sent an ack-only packet", "udp", UDPTransport.RATES);
+        _context.statManager().createRateStat("udp.sendACKDeferred", "How often the ack timer waited for data to carry the acks", "udp", UDPTransport.RATES);
     }
 
     public synchronized void startup() { _alive = true; }
@@ -432,6 +437,7 @@ class OutboundMessageFragments {
             if (_log.shouldDebug())
                 _log.debug("Building packet for " + next + " to " + peer);
             int curTotalDataSize = state.fragmentSize(next.num);
+            int i2npSize = curTotalDataSize;
             curTotalDataSize += SSU2Util.FIRST_FRAGMENT_HEADER_SIZE;
             if (next.num > 0)
                 curTotalDataSize += SSU2Util.DATA_FOLLOWON_EXTRA_SIZE;
@@ -453,6 +459,7 @@ class OutboundMessageFragments {
                             j--;
                             sendNext.add(next);
                             curTotalDataSize += nextDataSize;
+                            i2npSize += next.state.fragmentSize(next.num);
                             maxAvail = PacketBuilder2.getMaxAdditionalFragmentSize(peer, sendNext.size(), curTotalDataSize);
                             if (_log.shouldLog(Log.INFO))
                                 _log.info("Adding in additional " + next + " to " + peer);
@@ -475,6 +482,9 @@ class OutboundMessageFragments {
                     _log.debug("Built packet with " + sendNext.size() + " fragments totalling " + curTotalDataSize +
                               " data bytes to " + peer);
                 _context.statManager().addRateData("udp.sendFragmentsPerPacket", sendNext.size());
+                int len = pkt.getPacket().getLength() + PacketBuilder2.UDP_HEADER_SIZE +
+                          (peer.isIPv6() ? PacketBuilder2.IPV6_HEADER_SIZE : PacketBuilder2.IP_HEADER_SIZE);
+                _context.statManager().addRateData("udp.sendDataOverhead", 100 * (len - i2npSize) / len);
             } else {
                 if (_log.shouldLog(Log.WARN))
                     _log.warn("Build packet FAIL for " + DataHelper.toString(sendNext) + " to " + peer);
@@ -492,6 +502,8 @@ class OutboundMessageFragments {
 
 
         int sent = rv.size();
+        if (sent > 0)
+            _context.statManager().addRateData("udp.sendPacketsPerMessage", 100 * sent / states.size());
         peer.packetsTransmitted(sent);
         peer.clearWantedACKSendSince();
         if (_log.shouldDebug())
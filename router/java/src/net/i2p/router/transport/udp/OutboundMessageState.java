@@ -6,6 +6,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import net.i2p.I2PAppContext;
 import net.i2p.data.Base64;
 import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
 import net.i2p.router.OutNetMessage;
 import net.i2p.router.transport.udp.PacketBuilder.Fragment;
 import net.i2p.router.util.CDPQEntry;
@@ -26,7 +27,12 @@ class OutboundMessageState implements CDPQEntry {
     /** will be null, unless we are part of the establishment */
     private final PeerState _peer;
     private final long _expiration;
+    /**
+     *  The serialized message, or null if written directly from _i2npMessage,
+     *  see writeFragment()
+     */
     private final byte[] _messageBuf;
+    private final int _messageSize;
     /** fixed fragment size across the message */
     private final int _fragmentSize;
     /** bitmask, 0 if acked, all 0 = complete */
@@ -94,11 +100,7 @@ class OutboundMessageState implements CDPQEntry {
             totalSize = _i2npMessage.getRawMessageSize();
         if (totalSize > MAX_MSG_SIZE)
             throw new IllegalArgumentException("Size too large! " + totalSize);
-        _messageBuf = new byte[totalSize];
-        if (_peer.getVersion() == 2)
-            _i2npMessage.toRawByteArrayNTCP2(_messageBuf, 0);  // NTCP2 style, 9 byte header
-        else
-            _i2npMessage.toRawByteArray(_messageBuf);
+        _messageSize = totalSize;
         _fragmentSize = _peer.fragmentSize();
         // SSU2 first frag can be 5 bytes bigger
         int first = _fragmentSize;
@@ -114,6 +116,18 @@ class OutboundMessageState implements CDPQEntry {
         if (numFragments > InboundMessageState.MAX_FRAGMENTS)
             throw new IllegalArgumentException("Fragmenting a " + totalSize + " message into " + numFragments + " fragments - too many!");
         _numFragments = numFragments;
+        if (numFragments == 1 && _peer.getVersion() == 2 &&
+            _i2npMessage instanceof TunnelDataMessage) {
+            // Participating traffic, write it straight into the packet, see writeFragment().
+            // The data is fixed and it's cheap to write again for a retransmission.
+            _messageBuf = null;
+        } else {
+            _messageBuf = new byte[totalSize];
+            if (_peer.getVersion() == 2)
+                _i2npMessage.toRawByteArrayNTCP2(_messageBuf, 0);  // NTCP2 style, 9 byte header
+            else
+                _i2npMessage.toRawByteArray(_messageBuf);
+        }
         // all 1's where we care
         _fragmentAcks = _numFragments < 64 ? mask(_numFragments) - 1L : -1L;
         _fragmentSends = (numFragments > 1) ? new byte[numFragments] : null;
@@ -175,7 +189,7 @@ class OutboundMessageState implements CDPQEntry {
         int rv = 0;
         if (isComplete())
             return rv;
-        int lastSize = _messageBuf.length % _fragmentSize;
+        int lastSize = _messageSize % _fragmentSize;
         if (lastSize == 0)
             lastSize = _fragmentSize;
         int overhead = _peer.fragmentOverhead();
@@ -256,7 +270,7 @@ class OutboundMessageState implements CDPQEntry {
             return 0;
         int overhead = _peer.fragmentOverhead();
         if (_numFragments == 1)
-            return _messageBuf.length + overhead;
+            return _messageSize + overhead;
         if (_pushCount == 0)
             return fragmentSize(_numFragments - 1) + overhead;
         int minSendCount = getMinSendCount();
@@ -289,7 +303,7 @@ class OutboundMessageState implements CDPQEntry {
             return 0;
         int overhead = _peer.fragmentOverhead();
         if (_numFragments == 1) {
-            int rv = _messageBuf.length + overhead;
+            int rv = _messageSize + overhead;
             return rv <= max ? rv : 0;
         }
         // find the fragments we've sent the least
@@ -444,7 +458,7 @@ class OutboundMessageState implements CDPQEntry {
     /**
      * The size of the I2NP message. Does not include any SSU overhead.
      */
-    public int getMessageSize() { return _messageBuf.length; }
+    public int getMessageSize() { return _messageSize; }
 
     /**
      * The size in bytes of the fragment.
@@ -459,9 +473,9 @@ class OutboundMessageState implements CDPQEntry {
             int fs = _fragmentSize;
             if (_peer.getVersion() > 1)
                 fs += SSU2Util.DATA_FOLLOWON_EXTRA_SIZE;
-            return Math.min(_messageBuf.length, fs);
+            return Math.min(_messageSize, fs);
         } else if (fragmentNum + 1 == _numFragments) {
-            int last = _messageBuf.length - (fragmentNum * _fragmentSize);
+            int last = _messageSize - (fragmentNum * _fragmentSize);
             if (_peer.getVersion() > 1)
                 last -= SSU2Util.DATA_FOLLOWON_EXTRA_SIZE;
             return last;
@@ -470,6 +484,30 @@ class OutboundMessageState implements CDPQEntry {
         }
     }
 
+    /**
+     *  Keep a directly-written message from being released
+     *  between sizing the packet and writeFragment().
+     *  Must be followed by unpinData() if it returns true.
+     *
+     *  @return false if the message was already released and must not be written
+     *  @since 0.9.65
+     */
+    public boolean pinData() {
+        if (_messageBuf != null)
+            return true;
+        return ((TunnelDataMessage) _i2npMessage).pinData();
+    }
+
+    /**
+     *  Undo a successful pinData().
+     *
+     *  @since 0.9.65
+     */
+    public void unpinData() {
+        if (_messageBuf == null)
+            ((TunnelDataMessage) _i2npMessage).unpinData();
+    }
+
     /**
      * Write a part of the the message onto the specified buffer.
      *
@@ -485,6 +523,19 @@ class OutboundMessageState implements CDPQEntry {
             start += SSU2Util.DATA_FOLLOWON_EXTRA_SIZE;
         int toSend = fragmentSize(fragmentNum);
         int end = start + toSend;
+        if (_messageBuf == null) {
+            if (fragmentNum == 0 && outOffset + toSend <= out.length) {
+                // pinned by PacketBuilder2, so this won't fail unless the caller didn't pin it
+                if (((TunnelDataMessage) _i2npMessage).writeIfAvailable(out, outOffset))
+                    return toSend;
+                if (_log.shouldLog(Log.WARN))
+                    _log.warn("Released before write: " + this);
+                return -1;
+            }
+            if (_log.shouldLog(Log.WARN))
+                _log.warn("Error: " + fragmentNum + '/' + outOffset + '/' + out.length);
+            return -1;
+        }
         if (end <= _messageBuf.length && outOffset + toSend <= out.length) {
             System.arraycopy(_messageBuf, start, out, outOffset, toSend);
             return toSend;
@@ -550,7 +601,7 @@ class OutboundMessageState implements CDPQEntry {
         buf.append("OB Message ").append(_i2npMessage.getUniqueId());
         buf.append(" seq ").append(_seqNum);
         buf.append(" type ").append(_i2npMessage.getType());
-        buf.append(" size ").append(_messageBuf.length);
+        buf.append(" size ").append(_messageSize);
         if (_numFragments > 1)
             buf.append(" fragments: ").append(_numFragments);
         buf.append(" volleys: ").append(_maxSends);
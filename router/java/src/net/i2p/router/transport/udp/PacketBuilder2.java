@@ -223,9 +223,20 @@ class PacketBuilder2 {
         }
         
         // now write each fragment
+        // Directly-written tunnel data may be released at any time by an ack or failure,
+        // pin it until the payload is written, and leave it out if it's already gone.
+        List<OutboundMessageState> pinned = null;
         for (int i = 0; i < numFragments; i++) {
             Fragment frag = fragments.get(i);
             OutboundMessageState state = frag.state;
+            if (!state.pinData()) {
+                if (_log.shouldDebug())
+                    _log.debug("Skipping released " + frag + " to " + peer);
+                continue;
+            }
+            if (pinned == null)
+                pinned = new ArrayList<OutboundMessageState>(numFragments);
+            pinned.add(state);
             int fragment = frag.num;
             int count = state.getFragmentCount();
             Block block;
@@ -274,7 +285,15 @@ class PacketBuilder2 {
             off += sz;
             sizeWritten += sz;
         }
-        SSU2Payload.writePayload(data, SHORT_HEADER_SIZE, blocks);
+        try {
+            SSU2Payload.writePayload(data, SHORT_HEADER_SIZE, blocks);
+        } finally {
+            if (pinned != null) {
+                for (OutboundMessageState state : pinned) {
+                    state.unpinData();
+                }
+            }
+        }
         pkt.setLength(off);
         int length = off + ipHeaderSize;
         //if (_log.shouldDebug())
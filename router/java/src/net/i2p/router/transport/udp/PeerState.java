@@ -1084,6 +1084,14 @@ public class PeerState {
         return _outboundMessages.size() + _outboundQueue.size();
     }
 
+    /**
+     * @return true if there are new messages not yet allocated (unsynchronized)
+     * @since 0.9.65
+     */
+    boolean hasQueuedMessages() {
+        return !_dead && !_outboundQueue.isEmpty();
+    }
+
     /**
      * Sets to true.
      * @since 0.9.24
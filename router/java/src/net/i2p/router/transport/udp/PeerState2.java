@@ -64,6 +64,8 @@ public class PeerState2 extends PeerState implements SSU2Payload.PayloadCallback
     private final SSU2Bitfield _ackedMessages;
     private final ConcurrentHashMap<Long, List<PacketBuilder.Fragment>> _sentMessages;
     private final ACKTimer _ackTimer;
+    /** the ack timer waited once for data to carry the acks. LOCKING: this */
+    private boolean _ackDeferred;
 
     private long _sentMessagesLastExpired;
     private byte[] _ourIP;
@@ -95,6 +97,11 @@ public class PeerState2 extends PeerState implements SSU2Payload.PayloadCallback
     private static final int MAX_PATH_CHALLENGE_SENDS = 4;
     private static final long MAX_PATH_CHALLENGE_TIME = 30*1000;
     private static final long PATH_CHALLENGE_DELAY = 5*1000;
+    /**
+     *  How long the ack timer waits for queued data to carry the acks
+     *  @since 0.9.65
+     */
+    private static final long ACK_COALESCE_DELAY = 3;
 
 
     // As SSU
@@ -439,6 +446,7 @@ public class PeerState2 extends PeerState implements SSU2Payload.PayloadCallback
         synchronized(this) {
             // cancel the ack timer
             _wantACKSendSince = 0;
+            _ackDeferred = false;
             _lastACKSend = _context.clock().now();
         }
         return _receivedMessages;
@@ -1159,20 +1167,42 @@ public class PeerState2 extends PeerState implements SSU2Payload.PayloadCallback
          *  Send an ack-only packet, unless acks were already sent
          *  as indicated by _wantACKSendSince == 0.
          *  Will not requeue unless the acks don't all fit (unlikely).
+         *
+         *  As of 0.9.65, if new messages are queued and the window is open,
+         *  wait ACK_COALESCE_DELAY once for the packet pusher to send them,
+         *  as the data packets will carry the acks.
          */
         public void timeReached() {
+            boolean dataReady = hasQueuedMessages() && getSendWindowBytesRemaining() > 0;
+            boolean defer = false;
             synchronized(PeerState2.this) {
                 if (_wantACKSendSince <= 0) {
+                    _ackDeferred = false;
                     if (_log.shouldDebug())
                         _log.debug("Already acked:" + PeerState2.this);
                     return;
                 }
-                _wantACKSendSince = 0;
+                if (dataReady && !_ackDeferred) {
+                    _ackDeferred = true;
+                    defer = true;
+                } else {
+                    _ackDeferred = false;
+                    _wantACKSendSince = 0;
+                }
+            }
+            if (defer) {
+                if (_log.shouldDebug())
+                    _log.debug("ACKTimer waiting for data to " + PeerState2.this);
+                _context.statManager().addRateData("udp.sendACKDeferred", 1);
+                _transport.getOMF().nudge();
+                schedule(ACK_COALESCE_DELAY);
+                return;
             }
             try {
                 UDPPacket ack = _transport.getBuilder2().buildACK(PeerState2.this);
                 if (_log.shouldDebug())
                     _log.debug("ACKTimer sending acks to " + PeerState2.this);
+                _context.statManager().addRateData("udp.sendACKOnly", 1);
                 _transport.send(ack);
             } catch (IOException ioe) {}
         }
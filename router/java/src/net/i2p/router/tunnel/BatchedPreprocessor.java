@@ -29,6 +29,14 @@ import net.i2p.util.Log;
  * especially if it will fit perfectly if we do that (a 964 or 1956 byte
  * message, for example).
  *
+ * As of 0.9.65, if getLatencyTarget() is positive, the delay adapts.
+ * Each time we wait, we check whether more data arrived while waiting.
+ * If it did, and messages haven't been waiting longer than the target on average,
+ * the delay goes up a little, to at most the target.
+ * If nothing arrived, waiting only added latency, so the delay goes down.
+ * We also keep an average of how full each tunnel message is,
+ * and how long messages wait, for the stats and logs.
+ *
  * An idea for the future...
  *
  * If we are in the middle of a tunnel msg and starting a new i2np msg,
@@ -47,6 +55,14 @@ import net.i2p.util.Log;
 class BatchedPreprocessor extends TrivialPreprocessor {
     private long _pendingSince;
     private final String _name;
+    /** current adaptive flush delay, or -1 if fixed, or 0 if not initialized */
+    private long _adaptiveDelay;
+    /** how much we had when we started waiting */
+    private int _allocatedAtWait;
+    /** moving average, percent of FULL_SIZE */
+    private float _fillAvg = 100;
+    /** moving average, ms */
+    private float _queueDelayAvg;
     
     private static final boolean DEBUG = false;
 
@@ -71,6 +87,71 @@ class BatchedPreprocessor extends TrivialPreprocessor {
      *  Warning - overridden in BatchedRouterPreprocessor
      */
     protected long getSendDelay() { return DEFAULT_DELAY; }
+
+    /**
+     *  The most a message should wait to be batched, in ms.
+     *  If positive, the flush delay adapts between MIN_ADAPTIVE_DELAY and this,
+     *  and getSendDelay() is ignored.
+     *  If zero, we always wait getSendDelay().
+     *  Called once, on first use.
+     *
+     *  @return 0 here, override to enable adaptive batching
+     *  @since 0.9.65
+     */
+    protected long getLatencyTarget() { return 0; }
+
+    /**
+     *  Floor for the adaptive delay, so we keep trying to wait a little
+     *  and can find out if it helps again.
+     *  @since 0.9.65
+     */
+    private static final long MIN_ADAPTIVE_DELAY = 5;
+    /** moving average weight of each new sample */
+    private static final float AVG_WEIGHT = 1/8f;
+
+    /**
+     *  @return the adaptive delay, or getSendDelay() if not adaptive
+     *  @since 0.9.65
+     */
+    private long getFlushDelay() {
+        if (_adaptiveDelay == 0) {
+            long target = getLatencyTarget();
+            _adaptiveDelay = target > 0 ? Math.max(MIN_ADAPTIVE_DELAY, target) : -1;
+        }
+        return _adaptiveDelay > 0 ? _adaptiveDelay : getSendDelay();
+    }
+
+    /**
+     *  Adjust the delay after a wait.
+     *
+     *  @param productive did more data arrive while we waited
+     *  @since 0.9.65
+     */
+    private void adapt(boolean productive) {
+        if (_adaptiveDelay <= 0)
+            return;
+        long target = getLatencyTarget();
+        if (productive && _queueDelayAvg <= target)
+            _adaptiveDelay = Math.min(target, _adaptiveDelay + Math.max(1, target / 8));
+        else
+            _adaptiveDelay = Math.max(MIN_ADAPTIVE_DELAY, _adaptiveDelay * 3 / 4);
+    }
+
+    /**
+     *  Moving average of how full our tunnel messages are
+     *
+     *  @return percent
+     *  @since 0.9.65
+     */
+    public int getFillEfficiency() { return Math.round(_fillAvg); }
+
+    /**
+     *  Moving average of how long the first message in each tunnel message waited
+     *
+     *  @return ms
+     *  @since 0.9.65
+     */
+    public long getQueueDelay() { return Math.round(_queueDelayAvg); }
     
     /**
      *  if we have this many messages queued that are too small, flush them anyway
@@ -94,7 +175,7 @@ class BatchedPreprocessor extends TrivialPreprocessor {
     public long getDelayAmount() { return getDelayAmount(true); }
     private long getDelayAmount(boolean shouldStat) {
         long rv = -1;
-        long defaultAmount = getSendDelay();
+        long defaultAmount = getFlushDelay();
         if (_pendingSince > 0)
             rv = _pendingSince + defaultAmount - _context.clock().now();
         if (rv > defaultAmount)
@@ -167,6 +248,8 @@ class BatchedPreprocessor extends TrivialPreprocessor {
                     if (_pendingSince > 0) {
                         long waited = _context.clock().now() - _pendingSince;
                         _context.statManager().addRateData("tunnel.batchDelaySent", pending.size(), waited);
+                        // it filled up while we waited
+                        adapt(true);
                     }
 
                     // Send the message
@@ -248,6 +331,8 @@ class BatchedPreprocessor extends TrivialPreprocessor {
                      //                                                           // which would be the first fragment in the message
 
                     // not even a full message, but we want to flush it anyway
+                    if (_pendingSince > 0)
+                        adapt(allocated > _allocatedAtWait);
                     
                     if (pending.size() > 1)
                         _context.statManager().addRateData("tunnel.batchMultipleCount", pending.size());
@@ -306,8 +391,10 @@ class BatchedPreprocessor extends TrivialPreprocessor {
                 } else {
                      // We didn't flush. Note that the messages remain on the pending list.
                     _context.statManager().addRateData("tunnel.batchDelay", pending.size());
-                    if (_pendingSince <= 0)
+                    if (_pendingSince <= 0) {
                         _pendingSince = _context.clock().now();
+                        _allocatedAtWait = allocated;
+                    }
                     if (batchCount > 1)
                         _context.statManager().addRateData("tunnel.batchCount", batchCount);
                     // not yet time to send the delayed flush
@@ -359,6 +446,8 @@ class BatchedPreprocessor extends TrivialPreprocessor {
             buf.append(" pending: ").append(pending.size());
             if (_pendingSince > 0)
                 buf.append(" delay: ").append(getDelayAmount(false));
+            buf.append(" fill: ").append(getFillEfficiency()).append('%');
+            buf.append(" queue delay: ").append(getQueueDelay());
             for (int i = 0; i < pending.size(); i++) {
                 PendingGatewayMessage curPending = pending.get(i);
                 buf.append(" [").append(i).append("]:");
@@ -407,6 +496,13 @@ class BatchedPreprocessor extends TrivialPreprocessor {
             return;
         }
         
+        int fill = Math.min(100, offset * 100 / FULL_SIZE);
+        _fillAvg += (fill - _fillAvg) * AVG_WEIGHT;
+        _queueDelayAvg += (pending.get(startAt).getLifetime() - _queueDelayAvg) * AVG_WEIGHT;
+        _context.statManager().addRateData("tunnel.batchFillRatio", fill);
+        if (_adaptiveDelay > 0)
+            _context.statManager().addRateData("tunnel.batchAdaptiveDelay", _adaptiveDelay);
+
         try {
             preprocess(preprocessed, offset);
         } catch (ArrayIndexOutOfBoundsException aioobe) {
@@ -4,16 +4,22 @@ import java.util.List;
 import java.util.Properties;
 
 import net.i2p.router.RouterContext;
+import net.i2p.router.TunnelPoolSettings;
 
 /** 
  * Honor the 'batchFrequency' tunnel pool setting or the 'router.batchFrequency'
  * router config setting, and track fragmentation.
  *
+ * As of 0.9.65, the delay adapts, up to the 'batchLatency' tunnel pool setting
+ * or the 'router.batchLatency' router config setting, which default to the
+ * batch frequency. Setting 'batchFrequency' for a pool gives a fixed delay as before.
+ *
  */
 class BatchedRouterPreprocessor extends BatchedPreprocessor {
     private final TunnelCreatorConfig _config;
     protected final HopConfig _hopConfig;
     private final long _sendDelay;
+    private final long _latencyTarget;
     
     /** 
      * How frequently should we flush non-full messages, in milliseconds
@@ -29,6 +35,13 @@ class BatchedRouterPreprocessor extends BatchedPreprocessor {
     public static final int OB_EXPL_BATCH_FREQ = 100;
     /** for IBGWs for efficiency (not our data) */
     public static final int DEFAULT_BATCH_FREQUENCY = 75;
+    /**
+     *  Router advanced config, for IBGWs and for OBGWs
+     *  without the batchLatency pool setting.
+     *  0 to disable adaptive batching.
+     *  @since 0.9.65
+     */
+    public static final String PROP_ROUTER_BATCH_LATENCY = "router.batchLatency";
     
     /** for OBGWs */
     public BatchedRouterPreprocessor(RouterContext ctx, TunnelCreatorConfig cfg) {
@@ -36,6 +49,7 @@ class BatchedRouterPreprocessor extends BatchedPreprocessor {
         _config = cfg;
         _hopConfig = null;
         _sendDelay = initialSendDelay();
+        _latencyTarget = initialLatencyTarget();
     }
 
     /** for IBGWs */
@@ -44,6 +58,7 @@ class BatchedRouterPreprocessor extends BatchedPreprocessor {
         _config = null;
         _hopConfig = cfg;
         _sendDelay = initialSendDelay();
+        _latencyTarget = initialLatencyTarget();
     }
     
     private static String getName(HopConfig cfg) {
@@ -76,6 +91,12 @@ class BatchedRouterPreprocessor extends BatchedPreprocessor {
     @Override
     protected long getSendDelay() { return _sendDelay; }
 
+    /**
+     *  @since 0.9.65
+     */
+    @Override
+    protected long getLatencyTarget() { return _latencyTarget; }
+
     /*
      *  Extend the batching time for exploratory OBGWs, they have a lot of small
      *  tunnel test messages, and build messages that don't fit perfectly.
@@ -109,6 +130,31 @@ class BatchedRouterPreprocessor extends BatchedPreprocessor {
         return _context.getProperty(PROP_ROUTER_BATCH_FREQUENCY, def);
     }
     
+    /**
+     *  Adaptive batching target, from the pool settings or the router config.
+     *  0 (fixed delay) if batchFrequency is set for the pool.
+     *
+     *  @since 0.9.65
+     */
+    private long initialLatencyTarget() {
+        if (_config != null) {
+            Properties opts = _config.getOptions();
+            if (opts != null && opts.getProperty(PROP_BATCH_FREQUENCY) != null)
+                return 0;
+            TunnelPoolSettings tps;
+            if (_config.getDestination() != null)
+                tps = _context.tunnelManager().getOutboundSettings(_config.getDestination());
+            else
+                tps = _context.tunnelManager().getOutboundSettings();
+            if (tps != null) {
+                int rv = tps.getBatchLatency();
+                if (rv > 0)
+                    return rv;
+            }
+        }
+        return Math.max(0, _context.getProperty(PROP_ROUTER_BATCH_LATENCY, (int) _sendDelay));
+    }
+    
     @Override
     protected void notePreprocessing(long messageId, int numFragments, int totalLength, List<Long> messageIds, String msg) {
         if (_config != null)
@@ -1,7 +1,7 @@
 package net.i2p.router.tunnel;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.i2p.data.Base64;
@@ -95,7 +95,9 @@ The total size, including the tunnel ID and IV, is 1028 bytes.
 class FragmentHandler {
     protected final RouterContext _context;
     protected final Log _log;
-    private final Map<Long, FragmentedMessage> _fragmentedMessages;
+    /** LOCKING: itself */
+    private final ReassemblyArena _fragmentedMessages;
+    private final Sweeper _sweeper;
     private final DefragmentedReceiver _receiver;
     private final AtomicInteger _completed = new AtomicInteger();
     private final AtomicInteger _failed = new AtomicInteger();
@@ -103,6 +105,11 @@ class FragmentHandler {
     
     /** don't wait more than this long to completely receive a fragmented message */
     static long MAX_DEFRAGMENT_TIME = 45*1000;
+    /**
+     *  Partial messages are expired in a single pass this often,
+     *  so they are dropped after MAX_DEFRAGMENT_TIME to 5/4 of that.
+     */
+    private static long sweepInterval() { return MAX_DEFRAGMENT_TIME / 4; }
     private static final ByteCache _cache = ByteCache.getInstance(512, TrivialPreprocessor.PREPROCESSED_SIZE);
 
     /**
@@ -121,7 +128,8 @@ class FragmentHandler {
     public FragmentHandler(RouterContext context, DefragmentedReceiver receiver, boolean isInbound) {
         _context = context;
         _log = context.logManager().getLog(FragmentHandler.class);
-        _fragmentedMessages = new HashMap<Long, FragmentedMessage>(16);
+        _fragmentedMessages = new ReassemblyArena(context);
+        _sweeper = new Sweeper();
         _receiver = receiver;
         _isInbound = isInbound;
         // all createRateStat in TunnelDispatcher
@@ -405,36 +413,22 @@ class FragmentHandler {
                           " type: " + (preprocessed[offset] & 0xff));
             _context.statManager().addRateData("tunnel.corruptMessage", 1);
         } else if (fragmented) {
-            FragmentedMessage msg;
-            synchronized (_fragmentedMessages) {
-                msg = _fragmentedMessages.get(Long.valueOf(messageId));
-                if (msg == null) {
-                    msg = new FragmentedMessage(_context, messageId);
-                    _fragmentedMessages.put(Long.valueOf(messageId), msg);
-                }
-            }
-
+            byte[] data;
             // synchronized is required, fragments may be arriving in different threads
-            synchronized(msg) {
+            synchronized (_fragmentedMessages) {
+                FragmentedMessage msg = getPartial(messageId);
                 boolean ok = msg.receive(preprocessed, offset, size, false, router, tunnelId);
                 if (!ok) return -1;
                 if (msg.isComplete()) {
-                    synchronized (_fragmentedMessages) {
-                        _fragmentedMessages.remove(Long.valueOf(messageId));
-                    }
-                    if (msg.getExpireEvent() != null)
-                        msg.getExpireEvent().cancel();
-                    receiveComplete(msg);
+                    // toByteArray destroys the contents of the message completely
+                    data = msg.toByteArray();
+                    _fragmentedMessages.remove(msg);
                 } else {
-                    if (msg.getExpireEvent() == null) {
-                        RemoveFailed evt = new RemoveFailed(msg);
-                        msg.setExpireEvent(evt);
-                        if (_log.shouldLog(Log.DEBUG))
-                            _log.debug("In " + MAX_DEFRAGMENT_TIME + " dropping " + messageId);
-                        evt.schedule(MAX_DEFRAGMENT_TIME);
-                    }
+                    data = null;
                 }
             }
+            if (data != null)
+                receiveComplete(data, messageId, router, tunnelId);
         } else {
             // Unfragmented
             // synchronized not required
@@ -472,52 +466,59 @@ class FragmentHandler {
             throw new RuntimeException("Preprocessed message was invalid [messageId =" + messageId + " size=" 
                                        + size + " offset=" + offset + " fragment=" + fragmentNum);
         
-        FragmentedMessage msg = null;
-        synchronized (_fragmentedMessages) {
-            msg = _fragmentedMessages.get(Long.valueOf(messageId));
-            if (msg == null) {
-                msg = new FragmentedMessage(_context, messageId);
-                _fragmentedMessages.put(Long.valueOf(messageId), msg);
-            }
-        }
-        
+        byte[] data;
+        Hash router;
+        TunnelId tunnelId;
         // synchronized is required, fragments may be arriving in different threads
-        synchronized(msg) {
+        synchronized (_fragmentedMessages) {
+            FragmentedMessage msg = getPartial(messageId);
             boolean ok = msg.receive(fragmentNum, preprocessed, offset, size, isLast);
             if (!ok) return -1;
             
             if (msg.isComplete()) {
-                synchronized (_fragmentedMessages) {
-                    _fragmentedMessages.remove(Long.valueOf(messageId));
-                }
-                if (msg.getExpireEvent() != null)
-                    msg.getExpireEvent().cancel();
                 _context.statManager().addRateData("tunnel.fragmentedComplete", msg.getFragmentCount(), msg.getLifetime());
-                receiveComplete(msg);
+                router = msg.getTargetRouter();
+                tunnelId = msg.getTargetTunnel();
+                // toByteArray destroys the contents of the message completely
+                data = msg.toByteArray();
+                _fragmentedMessages.remove(msg);
             } else {
-                if (msg.getExpireEvent() == null) {
-                    RemoveFailed evt = new RemoveFailed(msg);
-                    msg.setExpireEvent(evt);
-                    if (_log.shouldLog(Log.DEBUG))
-                        _log.debug("In " + MAX_DEFRAGMENT_TIME + " dropping " + msg.getMessageId() + "/" + fragmentNum);
-                    evt.schedule(MAX_DEFRAGMENT_TIME);
-                }
+                data = null;
+                router = null;
+                tunnelId = null;
             }
         }
+        if (data != null)
+            receiveComplete(data, messageId, router, tunnelId);
         
         offset += size;
         return offset;
     }
     
     
-    private void receiveComplete(FragmentedMessage msg) {
-        if (msg == null)
-            return;
+    /**
+     *  Caller must synch on _fragmentedMessages
+     *
+     *  @return the partial message, new if not found, non-null
+     *  @since 0.9.65
+     */
+    private FragmentedMessage getPartial(long messageId) {
+        boolean wasEmpty = _fragmentedMessages.size() == 0;
+        FragmentedMessage rv = _fragmentedMessages.getOrCreate(messageId);
+        if (wasEmpty) {
+            // first one, start sweeping
+            _sweeper.schedule(sweepInterval());
+        }
+        return rv;
+    }
+    
+    /**
+     *  @param data the reassembled message, from FragmentedMessage.toByteArray()
+     *  @since 0.9.65 was receiveComplete(FragmentedMessage)
+     */
+    private void receiveComplete(byte[] data, long messageId, Hash router, TunnelId tunnelId) {
         _completed.incrementAndGet();
-        byte data[] = null;
         try {
-            // toByteArray destroys the contents of the message completely
-            data = msg.toByteArray();
             if (data == null)
                 throw new I2NPMessageException("null data");   // fragments already released???
             if (_log.shouldLog(Log.DEBUG))
@@ -538,10 +539,10 @@ class FragmentHandler {
                 m = new UnknownI2NPMessage(_context, utype);
                 m.readBytes(data, utype, 1);
             }
-            _receiver.receiveComplete(m, msg.getTargetRouter(), msg.getTargetTunnel());
+            _receiver.receiveComplete(m, router, tunnelId);
         } catch (I2NPMessageException ime) {
             if (_log.shouldLog(Log.WARN)) {
-                _log.warn("Error receiving fragmented message (corrupt?): " + msg, ime);
+                _log.warn("Error receiving fragmented message " + messageId + " (corrupt?)", ime);
                 _log.warn("DUMP:\n" + HexDump.dump(data));
                 _log.warn("RAW:\n" + Base64.encode(data));
             }
@@ -602,31 +603,39 @@ class FragmentHandler {
         public void receiveComplete(I2NPMessage msg, Hash toRouter, TunnelId toTunnel);
     }
     
-    private class RemoveFailed extends SimpleTimer2.TimedEvent {
-        private final FragmentedMessage _msg;
+    /**
+     *  Drop the partial messages that have been around too long,
+     *  all at once, instead of a timer for each message.
+     *  Runs while there are any partial messages.
+     *
+     *  @since 0.9.65 replaces per-message RemoveFailed events
+     */
+    private class Sweeper extends SimpleTimer2.TimedEvent {
+        /** LOCKING: _fragmentedMessages */
+        private final List<FragmentedMessage> _expired = new ArrayList<FragmentedMessage>(4);
 
-        public RemoveFailed(FragmentedMessage msg) {
+        public Sweeper() {
             super(_context.simpleTimer2());
-            _msg = msg;
         }
 
         public void timeReached() {
-            boolean removed;
             synchronized (_fragmentedMessages) {
-                removed = (null != _fragmentedMessages.remove(Long.valueOf(_msg.getMessageId())));
-            }
-            synchronized (_msg) {
-                if (removed && !_msg.getReleased()) {
+                if (_fragmentedMessages.size() <= 0)
+                    return;
+                _fragmentedMessages.getExpired(_context.clock().now() - MAX_DEFRAGMENT_TIME, _expired);
+                for (int i = 0; i < _expired.size(); i++) {
+                    FragmentedMessage msg = _expired.get(i);
                     _failed.incrementAndGet();
                     if (_log.shouldLog(Log.WARN))
-                        _log.warn("Dropped incomplete fragmented message: " + _msg);
-                    _context.statManager().addRateData("tunnel.fragmentedDropped", _msg.getFragmentCount(), _msg.getLifetime());
-                    _msg.failed();
-                } else {
-                    // succeeded before timeout
+                        _log.warn("Dropped incomplete fragmented message: " + msg);
+                    _context.statManager().addRateData("tunnel.fragmentedDropped", msg.getFragmentCount(), msg.getLifetime());
+                    msg.failed();
+                    _fragmentedMessages.remove(msg);
                 }
+                _expired.clear();
+                if (_fragmentedMessages.size() > 0)
+                    schedule(sweepInterval());
             }
         }
-        
     }
 }
@@ -7,7 +7,6 @@ import net.i2p.data.Hash;
 import net.i2p.data.TunnelId;
 import net.i2p.util.ByteCache;
 import net.i2p.util.Log;
-import net.i2p.util.SimpleTimer2;
 
 /**
  * Gather fragments of I2NPMessages at a tunnel endpoint, making them available 
@@ -15,20 +14,21 @@ import net.i2p.util.SimpleTimer2;
  *
  * Warning - this is all unsynchronized here - receivers must implement synchronization
  *
+ * As of 0.9.65, instances are reused via reset(), see ReassemblyArena.
+ *
  */
 class FragmentedMessage {
     private final I2PAppContext _context;
     private final Log _log;
-    private final long _messageId;
+    private long _messageId;
     private Hash _toRouter;
     private TunnelId _toTunnel;
     private final ByteArray _fragments[];
     private boolean _lastReceived;
     private int _highFragmentNum;
-    private final long _createdOn;
+    private long _createdOn;
     private boolean _completed;
     private long _releasedAfter;
-    private SimpleTimer2.TimedEvent _expireEvent;
     
     private static final ByteCache _cache = ByteCache.getInstance(512, TrivialPreprocessor.PREPROCESSED_SIZE);
     // 64 is pretty absurd, 32 is too, most likely
@@ -44,6 +44,29 @@ class FragmentedMessage {
         _releasedAfter = -1;
         _createdOn = ctx.clock().now();
     }
+
+    /**
+     * Reuse this for another message, with the same fragment slots.
+     * Only after toByteArray() or failed().
+     *
+     * @throws IllegalStateException if not released
+     * @since 0.9.65
+     */
+    public void reset(long messageId) {
+        if (_releasedAfter < 0)
+            throw new IllegalStateException("reset before release: " + this);
+        for (int i = 0; i <= _highFragmentNum; i++) {
+            _fragments[i] = null;
+        }
+        _messageId = messageId;
+        _toRouter = null;
+        _toTunnel = null;
+        _lastReceived = false;
+        _highFragmentNum = -1;
+        _completed = false;
+        _releasedAfter = -1;
+        _createdOn = _context.clock().now();
+    }
     
     /**
      * Receive a followup fragment, though one of these may arrive at the endpoint
@@ -143,11 +166,6 @@ class FragmentedMessage {
         return found;
     }
 
-    /** used in the fragment handler so we can cancel the expire event on success */
-    public SimpleTimer2.TimedEvent getExpireEvent() { return _expireEvent; }
-
-    public void setExpireEvent(SimpleTimer2.TimedEvent evt) { _expireEvent = evt; }
-    
     /** have we received all of the fragments? */
     public boolean isComplete() {
         if (!_lastReceived)
@@ -176,6 +194,9 @@ class FragmentedMessage {
         return size;
     }
     
+    /** @since 0.9.65 */
+    public long getCreatedOn() { return _createdOn; }
+
     /** how long has this fragmented message been alive?  */
     public long getLifetime() { return _context.clock().now() - _createdOn; }
     public boolean getReleased() { return _completed; }
@@ -50,6 +50,19 @@ class PumpedTunnelGateway extends TunnelGateway {
     private static final int INITIAL_OB_QUEUE = 64;
     private static final int MAX_IB_QUEUE = 1024;
 
+    /** pump() return value */
+    static final int PUMP_BACKLOGGED = -1;
+
+    // following are scheduling state for the TunnelGatewayPumper. LOCKING: the pumper's lock
+    /** deficit round robin credit, in bytes */
+    int _deficit;
+    /** when it last went into the pumper's line */
+    long _activeSince;
+    /** a pumper thread is in pump() */
+    boolean _pumping;
+    /** wantsPumping() was called while pumping */
+    boolean _pumpAgain;
+
     /**
      * @param preprocessor this pulls Pending messages off a list, builds some
      *                     full preprocessed messages, and pumps those into the sender
@@ -74,7 +87,7 @@ class PumpedTunnelGateway extends TunnelGateway {
             _nextHop = receiver.getSendTo();
             _isInbound = true;
         } else {
-            // Poison PTG
+            // unused
             _prequeue = null;
             _nextHop = null;
             _isInbound = true;
@@ -116,11 +129,16 @@ class PumpedTunnelGateway extends TunnelGateway {
      * go quickly, rather than blocking its callers on potentially substantial
      * processing.
      *
+     * As of 0.9.65, stops at maxBytes, but always takes at least one message.
+     *
      * @param queueBuf Empty list for convenience, to use as a temporary buffer.
      *                 Must be empty when called; will always be emptied before return.
-     * @return true if we did not finish, and the pumper should be requeued.
+     * @param maxBytes the pumper's deficit for us
+     * @return the number of bytes taken off the prequeue, or PUMP_BACKLOGGED
+     *         if the next hop is backlogged and there are messages remaining.
+     *         Call hasPending() to see if there are messages remaining otherwise.
      */
-    public boolean pump(List<PendingGatewayMessage> queueBuf) {
+    public int pump(List<PendingGatewayMessage> queueBuf, int maxBytes) {
         // If the next hop is backlogged,
         // drain only a little... better to let things back up here,
         // before fragmentation, where we have priority queueing (for OBGW)
@@ -133,9 +151,22 @@ class PumpedTunnelGateway extends TunnelGateway {
             max = _isInbound ? 1 : 2;
         else
             max = _isInbound ? MAX_IB_MSGS_PER_PUMP : MAX_OB_MSGS_PER_PUMP;
-        _prequeue.drainTo(queueBuf, max);
+        int bytes = 0;
+        while (queueBuf.size() < max) {
+            PendingGatewayMessage head = _prequeue.peek();
+            if (head == null)
+                break;
+            if (bytes > 0 && bytes + head.getData().length > maxBytes)
+                break;
+            // CoDel may drop the head and return a different one
+            PendingGatewayMessage m = _prequeue.poll();
+            if (m == null)
+                break;
+            queueBuf.add(m);
+            bytes += m.getData().length;
+        }
         if (queueBuf.isEmpty())
-            return false;
+            return 0;
         boolean rv = !_prequeue.isEmpty();
 
         final boolean debug = _log.shouldDebug();
@@ -199,7 +230,23 @@ class PumpedTunnelGateway extends TunnelGateway {
         if (rv && _log.shouldLog(Log.INFO))
             _log.info("PTG remaining to " + _nextHop + " : " + _prequeue.size() +
                       " IB? " + _isInbound + " backlogged? " + backlogged);
-        return rv;
+        return (rv && backlogged) ? PUMP_BACKLOGGED : bytes;
+    }
+
+    /**
+     *  Are there messages waiting to be pumped?
+     *  @since 0.9.65
+     */
+    public boolean hasPending() {
+        return !_prequeue.isEmpty();
+    }
+
+    /**
+     *  Inbound gateways are participating, outbound gateways are ours.
+     *  @since 0.9.65
+     */
+    public boolean isInbound() {
+        return _isInbound;
     }
     
 }
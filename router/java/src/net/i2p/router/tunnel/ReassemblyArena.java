@@ -0,0 +1,166 @@
+package net.i2p.router.tunnel;
+
+import java.util.List;
+
+import net.i2p.I2PAppContext;
+
+/**
+ * The partially received fragmented messages at one tunnel endpoint,
+ * by message ID, for FragmentHandler.
+ *
+ * An open addressing table with linear probing on the primitive message ID,
+ * so lookups don't box or create map entries,
+ * and a small free list of released FragmentedMessages,
+ * so the next message reuses the object and its fragment slots.
+ * The fragment data itself comes from the ByteCache as before.
+ *
+ * Not thread safe, caller must synchronize.
+ *
+ * @since 0.9.65
+ */
+class ReassemblyArena {
+    private final I2PAppContext _context;
+    private long[] _keys;
+    private FragmentedMessage[] _values;
+    private int _mask;
+    private int _size;
+    private final FragmentedMessage[] _free;
+    private int _freeCount;
+
+    /** power of 2 */
+    private static final int MIN_CAPACITY = 8;
+    /** shrink back when empty and larger than this */
+    private static final int MAX_IDLE_CAPACITY = 64;
+    /** there's one of these per tunnel, don't hold on to too many */
+    private static final int MAX_FREE = 4;
+
+    public ReassemblyArena(I2PAppContext ctx) {
+        _context = ctx;
+        _free = new FragmentedMessage[MAX_FREE];
+        allocate(MIN_CAPACITY);
+    }
+
+    public int size() { return _size; }
+
+    /**
+     * Get the message, or start a new one, reusing a free one if available.
+     *
+     * @return non-null
+     */
+    public FragmentedMessage getOrCreate(long messageId) {
+        int i = slot(messageId);
+        for ( ; ; i = (i + 1) & _mask) {
+            FragmentedMessage v = _values[i];
+            if (v == null)
+                break;
+            if (_keys[i] == messageId)
+                return v;
+        }
+        FragmentedMessage rv;
+        if (_freeCount > 0) {
+            rv = _free[--_freeCount];
+            _free[_freeCount] = null;
+            rv.reset(messageId);
+        } else {
+            rv = new FragmentedMessage(_context, messageId);
+        }
+        _keys[i] = messageId;
+        _values[i] = rv;
+        if (++_size * 2 > _values.length)
+            rehash(_values.length * 2);
+        return rv;
+    }
+
+    /**
+     * Remove the message from the table.
+     * If it has been released with toByteArray() or failed(),
+     * it may be reused, and the caller must not keep a reference.
+     *
+     * @return true if it was present
+     */
+    public boolean remove(FragmentedMessage msg) {
+        long messageId = msg.getMessageId();
+        boolean rv = false;
+        for (int i = slot(messageId); ; i = (i + 1) & _mask) {
+            FragmentedMessage v = _values[i];
+            if (v == null)
+                break;
+            if (_keys[i] == messageId) {
+                if (v == msg) {
+                    removeAt(i);
+                    rv = true;
+                }
+                break;
+            }
+        }
+        if (rv && msg.getReleasedAfter() >= 0 && _freeCount < MAX_FREE)
+            _free[_freeCount++] = msg;
+        if (_size == 0 && _values.length > MAX_IDLE_CAPACITY)
+            allocate(MIN_CAPACITY);
+        return rv;
+    }
+
+    /**
+     * Add all the messages created before the cutoff to the list.
+     * Does not remove them.
+     */
+    public void getExpired(long createdBefore, List<FragmentedMessage> rv) {
+        for (int i = 0; i < _values.length; i++) {
+            FragmentedMessage v = _values[i];
+            if (v != null && v.getCreatedOn() < createdBefore)
+                rv.add(v);
+        }
+    }
+
+    private int slot(long messageId) {
+        // message IDs are random 32 bit values, but don't count on it
+        int h = (int) (messageId ^ (messageId >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & _mask;
+    }
+
+    private void allocate(int capacity) {
+        _keys = new long[capacity];
+        _values = new FragmentedMessage[capacity];
+        _mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = _keys;
+        FragmentedMessage[] values = _values;
+        allocate(capacity);
+        for (int j = 0; j < values.length; j++) {
+            FragmentedMessage v = values[j];
+            if (v == null)
+                continue;
+            int i = slot(keys[j]);
+            while (_values[i] != null) {
+                i = (i + 1) & _mask;
+            }
+            _keys[i] = keys[j];
+            _values[i] = v;
+        }
+    }
+
+    /**
+     * Backward shift deletion, so there are no tombstones
+     */
+    private void removeAt(int i) {
+        _values[i] = null;
+        _size--;
+        int j = i;
+        while (true) {
+            j = (j + 1) & _mask;
+            FragmentedMessage v = _values[j];
+            if (v == null)
+                return;
+            int k = slot(_keys[j]);
+            // leave it if its home slot is cyclically in (i, j]
+            if (i <= j ? (i < k && k <= j) : (i < k || k <= j))
+                continue;
+            _keys[i] = _keys[j];
+            _values[i] = v;
+            _values[j] = null;
+            i = j;
+        }
+    }
+}
@@ -198,6 +198,8 @@ public class TunnelDispatcher implements Service {
         ctx.statManager().createRateStat("tunnel.batchFullFragments", "How many outgoing tunnel messages use the full data area?", 
                                          "Tunnels", new long[] { 10*60*1000l, 60*60*1000l });
         ctx.statManager().createRateStat("tunnel.batchFragmentation", "Avg. number of fragments per msg", "Tunnels", new long[] { 10*60*1000, 60*60*1000 });
+        ctx.statManager().createRateStat("tunnel.batchFillRatio", "How full each outgoing tunnel message is (percent)", "Tunnels", new long[] { 10*60*1000, 60*60*1000 });
+        ctx.statManager().createRateStat("tunnel.batchAdaptiveDelay", "Adaptive batching delay when sending a tunnel message", "Tunnels", new long[] { 10*60*1000, 60*60*1000 });
         // following is for OutboundMessageDistributor
         ctx.statManager().createRateStat("tunnel.distributeLookupSuccess", "Was a deferred lookup successful?", "Tunnels", new long[] { 60*60*1000 });
         ctx.statManager().createRateStat("tunnel.dropAtOBEP", "New conn throttle", "Tunnels", new long[] { 60*60*1000 });
@@ -559,6 +561,7 @@ public class TunnelDispatcher implements Service {
                     _log.log(level, "no matching participant/endpoint for id=" + msg.getTunnelId() 
                              + " expiring in " + DataHelper.formatDuration(msg.getMessageExpiration()-_context.clock().now())
                              + ": existing = " + _participants.size() + " / " + _outboundEndpoints.size());
+                msg.releaseData();
             }
         }
         
@@ -10,6 +10,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.i2p.router.RouterContext;
 import net.i2p.util.I2PThread;
+import net.i2p.util.Log;
 import net.i2p.util.SimpleTimer;
 import net.i2p.util.SystemVersion;
 
@@ -17,14 +18,32 @@ import net.i2p.util.SystemVersion;
  * Run through the tunnel gateways that have had messages added to them and push
  * those messages through the preprocessing and sending process.
  *
+ * As of 0.9.65, gateways are scheduled by deficit round robin.
+ * Each time a gateway comes up it gets a quantum of bytes to add to its deficit,
+ * and may pump messages until the deficit is used up. If it still has messages,
+ * it goes to the back of the line, so a busy gateway gets no more than its share,
+ * and a quiet gateway waits for at most one turn of each busy one.
+ *
+ * Our outbound gateways and participating inbound gateways are in separate lines.
+ * Our gateways get a larger quantum and more turns, but the participating line
+ * is never starved.
+ *
+ * A gateway whose next hop is backlogged still waits REQUEUE_TIME before its next turn.
+ *
  * TODO do we need this many threads?
- * TODO this combines IBGWs and OBGWs, do we wish to separate the two
- * and/or prioritize OBGWs (i.e. our outbound traffic) over IBGWs (participating)?
  */
 class TunnelGatewayPumper implements Runnable {
     private final RouterContext _context;
-    private final Set<PumpedTunnelGateway> _wantsPumping;
+    private final Log _log;
+    /** our outbound gateways with messages, in turn order. LOCKING: _lock */
+    private final Set<PumpedTunnelGateway> _ourGateways;
+    /** participating inbound gateways with messages, in turn order. LOCKING: _lock */
+    private final Set<PumpedTunnelGateway> _partGateways;
+    /** LOCKING: _lock */
     private final Set<PumpedTunnelGateway> _backlogged;
+    private final Object _lock = new Object();
+    /** consecutive turns given to our gateways while participating ones waited. LOCKING: _lock */
+    private int _ourTurns;
     private final List<Thread> _threads;
     private volatile boolean _stop;
     private static final int MIN_PUMPERS = 1;
@@ -36,13 +55,29 @@ class TunnelGatewayPumper implements Runnable {
      *  See additional comments in PTG.
      */
     private static final long REQUEUE_TIME = 50;
-    
+
+    /**
+     *  Bytes added to the deficit each turn.
+     *  About the MAX_xx_MSGS_PER_PUMP in PTG of typical messages.
+     */
+    private static final int OUR_QUANTUM = 32*1024;
+    private static final int PART_QUANTUM = 12*1024;
+    /** turns for our gateways per turn for participating gateways, when both are waiting */
+    private static final int OUR_WEIGHT = 3;
+
+    private static final String STAT_DELAY_OURS = "tunnel.gatewayPumpDelayClient";
+    private static final String STAT_DELAY_PART = "tunnel.gatewayPumpDelayParticipating";
+
     /** Creates a new instance of TunnelGatewayPumper */
     public TunnelGatewayPumper(RouterContext ctx) {
         _context = ctx;
-        _wantsPumping = new LinkedHashSet<PumpedTunnelGateway>(16);
+        _log = ctx.logManager().getLog(TunnelGatewayPumper.class);
+        _ourGateways = new LinkedHashSet<PumpedTunnelGateway>(16);
+        _partGateways = new LinkedHashSet<PumpedTunnelGateway>(16);
         _backlogged = new HashSet<PumpedTunnelGateway>(16);
         _threads = new CopyOnWriteArrayList<Thread>();
+        ctx.statManager().createRateStat(STAT_DELAY_OURS, "Time our outbound gateway waited to be pumped (ms)", "Tunnels", new long[] { 60*1000, 10*60*1000 });
+        ctx.statManager().createRateStat(STAT_DELAY_PART, "Time participating inbound gateway waited to be pumped (ms)", "Tunnels", new long[] { 60*1000, 10*60*1000 });
         if (ctx.getBooleanProperty("i2p.dummyTunnelManager")) {
             _pumpers = 1;
         } else {
@@ -58,32 +93,97 @@ class TunnelGatewayPumper implements Runnable {
 
     public void stopPumping() {
         _stop=true;
-        _wantsPumping.clear();
-        for (int i = 0; i < _pumpers; i++) {
-            PumpedTunnelGateway poison = new PoisonPTG(_context);
-            wantsPumping(poison);
-        }
-        for (int i = 1; i <= 5 && !_wantsPumping.isEmpty(); i++) {
-            try {
-                Thread.sleep(i * 50);
-            } catch (InterruptedException ie) {}
+        synchronized (_lock) {
+            _ourGateways.clear();
+            _partGateways.clear();
+            _lock.notifyAll();
         }
         for (Thread t : _threads) {
             t.interrupt();
         }
         _threads.clear();
-        _wantsPumping.clear();
     }
-    
+
     public void wantsPumping(PumpedTunnelGateway gw) {
         if (!_stop) {
-            synchronized (_wantsPumping) {
-                if ((!_backlogged.contains(gw)) && _wantsPumping.add(gw))
-                    _wantsPumping.notify();
+            synchronized (_lock) {
+                if (gw._pumping) {
+                    // the pumping thread will requeue it
+                    gw._pumpAgain = true;
+                } else if (!_backlogged.contains(gw)) {
+                    activate(gw);
+                }
             }
         }
     }
-    
+
+    /**
+     *  Put at the back of its line, if not already in it.
+     *  Caller must synch on _lock
+     */
+    private void activate(PumpedTunnelGateway gw) {
+        Set<PumpedTunnelGateway> line = gw.isInbound() ? _partGateways : _ourGateways;
+        if (line.add(gw)) {
+            gw._activeSince = _context.clock().now();
+            _lock.notify();
+        }
+    }
+
+    /**
+     *  Take the gateway whose turn it is, and add a quantum to its deficit.
+     *  Caller must synch on _lock
+     *
+     *  @return null if none
+     */
+    private PumpedTunnelGateway next() {
+        boolean haveOurs = !_ourGateways.isEmpty();
+        boolean havePart = !_partGateways.isEmpty();
+        Set<PumpedTunnelGateway> line;
+        if (haveOurs && (!havePart || _ourTurns < OUR_WEIGHT)) {
+            line = _ourGateways;
+            if (havePart)
+                _ourTurns++;
+        } else if (havePart) {
+            line = _partGateways;
+            _ourTurns = 0;
+        } else {
+            return null;
+        }
+        Iterator<PumpedTunnelGateway> iter = line.iterator();
+        PumpedTunnelGateway rv = iter.next();
+        iter.remove();
+        boolean isInbound = rv.isInbound();
+        rv._deficit += isInbound ? PART_QUANTUM : OUR_QUANTUM;
+        rv._pumping = true;
+        rv._pumpAgain = false;
+        long delay = _context.clock().now() - rv._activeSince;
+        _context.statManager().addRateData(isInbound ? STAT_DELAY_PART : STAT_DELAY_OURS, delay);
+        return rv;
+    }
+
+    /**
+     *  Back of the line if it has more, wait if the next hop is backlogged,
+     *  or reset the deficit if it's done.
+     *  Caller must synch on _lock
+     *
+     *  @param result from pump()
+     */
+    private void finished(PumpedTunnelGateway gw, int result) {
+        gw._pumping = false;
+        if (result == PumpedTunnelGateway.PUMP_BACKLOGGED) {
+            gw._deficit = 0;
+            if (_backlogged.add(gw))
+                _context.simpleTimer2().addEvent(new Requeue(gw), REQUEUE_TIME);
+        } else if (gw.hasPending() || gw._pumpAgain) {
+            // can't go below zero unless a message was larger than the deficit
+            gw._deficit = Math.max(0, gw._deficit - result);
+            activate(gw);
+        } else {
+            // standard DRR, an idle gateway doesn't keep its credit
+            gw._deficit = 0;
+        }
+    }
+
     public void run() {
         try {
             run2();
@@ -93,32 +193,29 @@ class TunnelGatewayPumper implements Runnable {
     }
 
     private void run2() {
-        PumpedTunnelGateway gw = null;
         List<PendingGatewayMessage> queueBuf = new ArrayList<PendingGatewayMessage>(32);
-        boolean requeue = false;
         while (!_stop) {
+            PumpedTunnelGateway gw = null;
             try {
-                synchronized (_wantsPumping) {
-                    if (requeue && gw != null) {
-                        // in case another packet came in
-                        _wantsPumping.remove(gw);
-                        if (_backlogged.add(gw))
-                            _context.simpleTimer2().addEvent(new Requeue(gw), REQUEUE_TIME);
-                    }
-                    gw = null;
-                    if (_wantsPumping.isEmpty()) {
-                        _wantsPumping.wait();
-                    } else {
-                        Iterator<PumpedTunnelGateway> iter = _wantsPumping.iterator();
-                        gw = iter.next();
-                        iter.remove();
-                    }
+                synchronized (_lock) {
+                    gw = next();
+                    if (gw == null)
+                        _lock.wait();
                 }
             } catch (InterruptedException ie) {}
             if (gw != null) {
-                if (gw.getMessagesSent() == POISON_PTG)
-                    break;
-                requeue = gw.pump(queueBuf);
+                // next() set _pumping, we must clear it or the gateway never gets another turn
+                int result = 0;
+                try {
+                    result = gw.pump(queueBuf, gw._deficit);
+                } catch (RuntimeException re) {
+                    _log.error("Error pumping " + gw, re);
+                    queueBuf.clear();
+                } finally {
+                    synchronized (_lock) {
+                        finished(gw, result);
+                    }
+                }
             }
         }
     }
@@ -131,23 +228,11 @@ class TunnelGatewayPumper implements Runnable {
         }
 
         public void timeReached() {
-            synchronized (_wantsPumping) {
+            synchronized (_lock) {
                 _backlogged.remove(_ptg);
-                if (_wantsPumping.add(_ptg))
-                    _wantsPumping.notify();
+                if (!_stop && !_ptg._pumping)
+                    activate(_ptg);
             }
         }
     }
-
-
-    private static final int POISON_PTG = -99999;
-
-    private static class PoisonPTG extends PumpedTunnelGateway {
-        public PoisonPTG(RouterContext ctx) {
-            super(ctx, null, null, null, null);
-        }
-
-        @Override
-        public int getMessagesSent() { return POISON_PTG; }
-    }
 }
@@ -3,7 +3,6 @@ package net.i2p.router.tunnel.pool;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.i2p.crypto.EncType;
@@ -36,6 +35,7 @@ import net.i2p.router.tunnel.HopConfig;
 import net.i2p.router.tunnel.TunnelDispatcher;
 import static net.i2p.router.tunnel.pool.BuildExecutor.Result.*;
 import net.i2p.router.util.CDQEntry;
+import net.i2p.router.util.CoDelBlockingQueue;
 import net.i2p.util.Log;
 
 /**
@@ -48,6 +48,13 @@ import net.i2p.util.Log;
  * As of 0.8.11 the request queue is handled in a separate thread,
  * it used to be called from the BuildExecutor thread loop.
  *
+ * As of 0.9.65, requests are handled in two stages.
+ * On reception, the checks that don't need the request decrypted
+ * (banlist, request throttle, replay) drop requests before they are queued.
+ * The remaining requests are decrypted and handled by the handler threads,
+ * from a CoDel queue, so that during a flood requests that have waited too long
+ * are dropped rather than making the ones behind them wait too.
+ *
  * Note that 10 minute tunnel expiration is hardcoded in here.
  *
  * There is only one of these objects but there may be multiple
@@ -76,6 +83,13 @@ class BuildHandler implements Runnable {
     /** TODO these may be too high, review and adjust */
     private static final int MIN_QUEUE = 18;
     private static final int MAX_QUEUE = 192;
+    /**
+     *  CoDel target and interval (ms).
+     *  Well under the REQUEST_TIMEOUT/4 at which the head of the queue
+     *  stops all new requests, see createJob()
+     */
+    private static final int CODEL_TARGET = BuildRequestor.REQUEST_TIMEOUT / 20;
+    private static final int CODEL_INTERVAL = BuildRequestor.REQUEST_TIMEOUT / 5;
 
     private static final int NEXT_HOP_LOOKUP_TIMEOUT = 15*1000;
     private static final int PRIORITY = OutNetMessage.PRIORITY_BUILD_REPLY;
@@ -109,8 +123,8 @@ class BuildHandler implements Runnable {
         _exec = exec;
         // Queue size = 12 * share BW / 48K
         int sz = Math.min(MAX_QUEUE, Math.max(MIN_QUEUE, TunnelDispatcher.getShareBandwidth(ctx) * MIN_QUEUE / 48));
-        //_inboundBuildMessages = new CoDelBlockingQueue(ctx, "BuildHandler", sz);
-        _inboundBuildMessages = new LinkedBlockingQueue<BuildMessageState>(sz);
+        _inboundBuildMessages = new CoDelBlockingQueue<BuildMessageState>(ctx, "BuildHandler", sz,
+                                                                          CODEL_TARGET, CODEL_INTERVAL);
     
         _context.statManager().createRateStat("tunnel.reject.10", "How often we reject a tunnel probabalistically", "Tunnels", new long[] { 60*1000, 10*60*1000 });
         _context.statManager().createRateStat("tunnel.reject.20", "How often we reject a tunnel because of transient overload", "Tunnels", new long[] { 60*1000, 10*60*1000 });
@@ -129,6 +143,8 @@ class BuildHandler implements Runnable {
         _context.statManager().createRequiredRateStat("tunnel.dropReqThrottle", "Drop per-hop limit", "Tunnels", new long[] { 60*60*1000 });
         _context.statManager().createRequiredRateStat("tunnel.dropLookupThrottle", "Drop next hop lookup", "Tunnels", new long[] { 60*60*1000 });
         _context.statManager().createRateStat("tunnel.dropDecryptFail", "Can't find our slot", "Tunnels", new long[] { 60*60*1000 });
+        _context.statManager().createRateStat("tunnel.dropBanned", "Drop, previous or next hop banned", "Tunnels", new long[] { 60*60*1000 });
+        _context.statManager().createRateStat("tunnel.handleRequestTime", "Time to handle a decrypted build request (ms)", "Tunnels", new long[] { 60*1000, 10*60*1000 });
 
         _context.statManager().createRequiredRateStat("tunnel.rejectOverloaded", "Delay to process rejected request (ms)", "Tunnels", new long[] { 60*1000, 10*60*1000 });
         _context.statManager().createRequiredRateStat("tunnel.acceptLoad", "Delay to process accepted request (ms)", "Tunnels", new long[] { 60*1000, 10*60*1000 });
@@ -459,13 +475,7 @@ class BuildHandler implements Runnable {
         Hash from = state.fromHash;
         if (from == null && state.from != null)
             from = state.from.calculateHash();
-        if (from != null && _context.banlist().isBanlisted(from)) {
-            // Usually won't have connected, but may have been banlisted after connect
-            if (_log.shouldWarn())
-                _log.warn("Drop request, previous peer is banned: " + from);
-            _context.commSystem().mayDisconnect(from);
-            return -1;
-        }
+        // previous hop banlist checked in prefilter()
 
         if (timeSinceReceived > (BuildRequestor.REQUEST_TIMEOUT*3)) {
             // don't even bother, since we are so overloaded locally
@@ -502,6 +512,7 @@ class BuildHandler implements Runnable {
         if (_context.banlist().isBanlisted(nextPeer)) {
             if (_log.shouldWarn())
                 _log.warn("Drop request, next peer is banned: " + nextPeer);
+            _context.statManager().addRateData("tunnel.dropBanned", 1);
             if (from != null)
                 _context.commSystem().mayDisconnect(from);
             return -1;
@@ -544,6 +555,7 @@ class BuildHandler implements Runnable {
             long beforeHandle = System.currentTimeMillis();
             handleReq(nextPeerInfo, state, req, nextPeer);
             long handleTime = System.currentTimeMillis() - beforeHandle;
+            _context.statManager().addRateData("tunnel.handleRequestTime", handleTime);
             if (_log.shouldLog(Log.DEBUG))
                 _log.debug("Request " + req
                            + " From: " + from
@@ -1124,20 +1136,8 @@ class BuildHandler implements Runnable {
                             accept = false;
                         }
                     }
-                    if (accept && _requestThrottler != null) {
-                        // early request throttle check, before queueing and decryption
-                        Hash fh = fromHash;
-                        if (fh == null && from != null)
-                            fh = from.calculateHash();
-                        if (fh != null && _requestThrottler.shouldThrottle(fh)) {
-                            if (_log.shouldLog(Log.WARN))
-                                _log.warn("Dropping tunnel request (from throttle) id " + reqId + ", previous hop: " + fh);
-                            _context.statManager().addRateData("tunnel.dropReqThrottle", 1);
-                            // fake failed so we won't use him for our tunnels
-                            _context.profileManager().tunnelFailed(fh, 400);
-                            accept = false;
-                        }
-                    }
+                    if (accept)
+                        accept = prefilter((TunnelBuildMessage) receivedMessage, from, fromHash);
                     if (accept) {
                         // This is expensive and rarely seen, use CoDel instead
                         //int queueTime = estimateQueueTime(sz);
@@ -1165,6 +1165,50 @@ class BuildHandler implements Runnable {
         }
     }
     
+    /**
+     *  The first stage. Checks that don't require decryption,
+     *  so requests we would drop anyway don't wait in the queue
+     *  or use the handler threads.
+     *
+     *  @param from may be null
+     *  @param fromHash may be null
+     *  @return true to queue the request
+     *  @since 0.9.65, request throttle check moved from createJob()
+     */
+    private boolean prefilter(TunnelBuildMessage msg, RouterIdentity from, Hash fromHash) {
+        Hash fh = fromHash;
+        if (fh == null && from != null)
+            fh = from.calculateHash();
+        if (fh != null) {
+            if (_context.banlist().isBanlisted(fh)) {
+                // Usually won't have connected, but may have been banlisted after connect
+                if (_log.shouldWarn())
+                    _log.warn("Drop request, previous peer is banned: " + fh);
+                _context.statManager().addRateData("tunnel.dropBanned", 1);
+                _context.commSystem().mayDisconnect(fh);
+                return false;
+            }
+            if (_requestThrottler != null && _requestThrottler.shouldThrottle(fh)) {
+                if (_log.shouldLog(Log.WARN))
+                    _log.warn("Dropping tunnel request (from throttle) id " + msg.getUniqueId() + ", previous hop: " + fh);
+                _context.statManager().addRateData("tunnel.dropReqThrottle", 1);
+                // fake failed so we won't use him for our tunnels
+                _context.profileManager().tunnelFailed(fh, 400);
+                return false;
+            }
+        }
+        // last, so dropped requests aren't added to the filter
+        if (_processor.isReplay(msg, _context.routerHash())) {
+            if (_log.shouldWarn())
+                _log.warn("Dropping replayed tunnel request id " + msg.getUniqueId() + ", previous hop: " + fh);
+            _context.statManager().addRateData("tunnel.buildRequestDup", 1);
+            if (fh != null)
+                _context.commSystem().mayDisconnect(fh);
+            return false;
+        }
+        return true;
+    }
+    
 /****
     private boolean allowProactiveDrop() {
         boolean rv = _context.getBooleanPropertyDefaultTrue("router.allowProactiveDrop");
@@ -18,6 +18,7 @@ import net.i2p.data.i2np.TunnelBuildMessage;
 import net.i2p.router.RouterContext;
 import net.i2p.router.RouterThrottleImpl;
 import net.i2p.router.util.DecayingBloomFilter;
+import net.i2p.router.util.DecayingBlockedBloomFilter;
 import net.i2p.router.util.DecayingHashSet;
 import net.i2p.util.Log;
 import net.i2p.util.SystemVersion;
@@ -37,11 +38,20 @@ class BuildMessageProcessor {
     private final RouterContext ctx;
     private final Log log;
     private final DecayingBloomFilter _filter;
+    /** @since 0.9.65 */
+    private final DecayingBloomFilter _replayFilter;
+
+    /**
+     *  Bytes of the encrypted record, after the peer hash, fed to the replay filter.
+     *  The ephemeral key for ECIES, the start of the ciphertext for ElGamal.
+     */
+    private static final int REPLAY_CHECK_LEN = 32;
     
     public BuildMessageProcessor(RouterContext ctx) {
         this.ctx = ctx;
         log = ctx.logManager().getLog(getClass());
-        _filter = selectFilter();
+        _filter = selectFilter("TunnelBMP");
+        _replayFilter = selectFilter("TunnelBMPReplay");
         // all createRateStat in TunnelDispatcher
     }
 
@@ -51,9 +61,10 @@ class BuildMessageProcessor {
      *
      *  Target false positive rate is 1E-5 or lower
      *
+     *  @param name for stats
      *  @since 0.9.24
      */
-    private DecayingBloomFilter selectFilter() {
+    private DecayingBloomFilter selectFilter(String name) {
         long maxMemory = SystemVersion.getMaxMemory();
         int m;
         if (SystemVersion.isAndroid() || SystemVersion.isARM() || maxMemory < 96*1024*1024L) {
@@ -98,7 +109,29 @@ class BuildMessageProcessor {
         }
         if (log.shouldInfo())
             log.info("Selected Bloom filter m = " + m);
-        return new DecayingBloomFilter(ctx, duration, 32, "TunnelBMP", m);
+        return new DecayingBlockedBloomFilter(ctx, duration, 32, name, m);
+    }
+
+    /**
+     * Cheap replay check, before any decryption.
+     * A replayed request has the same encrypted record for us, including the
+     * ephemeral key (ECIES) or the start of the ElGamal ciphertext.
+     *
+     * This does not replace the check on the reply key in decrypt(),
+     * as ElGamal ciphertexts may be rerandomized.
+     *
+     * @return true if the record for us was seen before; false if not, or if there is no record for us
+     * @since 0.9.65
+     */
+    public boolean isReplay(TunnelBuildMessage msg, Hash ourHash) {
+        byte[] ourHashData = ourHash.getData();
+        for (int i = 0; i < msg.getRecordCount(); i++) {
+            EncryptedBuildRecord rec = msg.getRecord(i);
+            byte[] data = rec.getData();
+            if (DataHelper.eq(ourHashData, 0, data, 0, BuildRequestRecord.PEER_SIZE))
+                return _replayFilter.add(data, BuildRequestRecord.PEER_SIZE, REPLAY_CHECK_LEN);
+        }
+        return false;
     }
 
     /**
@@ -8,7 +8,7 @@ import net.i2p.data.i2np.DeliveryStatusMessage;
 import net.i2p.data.i2np.GarlicMessage;
 import net.i2p.data.i2np.I2NPMessage;
 import net.i2p.router.JobImpl;
-import net.i2p.router.MessageSelector;
+import net.i2p.router.IndexedMessageSelector;
 import net.i2p.router.OutNetMessage;
 import net.i2p.router.ReplyJob;
 import net.i2p.router.RouterContext;
@@ -258,7 +258,7 @@ class TestJob extends JobImpl {
         }
     }
     
-    private class ReplySelector implements MessageSelector {
+    private class ReplySelector implements IndexedMessageSelector {
         private final long _id;
         private final long _expiration;
 
@@ -272,6 +272,9 @@ class TestJob extends JobImpl {
 
         public long getExpiration() { return _expiration; }
 
+        /** @since 0.9.65 */
+        public Object getMatchKey() { return Long.valueOf(_id); }
+
         public boolean isMatch(I2NPMessage message) {
             if (message.getType() == DeliveryStatusMessage.MESSAGE_TYPE) {
                 return ((DeliveryStatusMessage)message).getMessageId() == _id;
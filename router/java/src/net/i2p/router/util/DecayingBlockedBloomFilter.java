@@ -0,0 +1,296 @@
+package net.i2p.router.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.i2p.I2PAppContext;
+import net.i2p.crypto.SipHashInline;
+import net.i2p.data.DataHelper;
+import net.i2p.util.Log;
+
+/**
+ * A DecayingBloomFilter using a split block Bloom filter,
+ * in place of the two BloomSHA1 filters.
+ *
+ * Each entry is hashed once with SipHash, keyed with random keys
+ * for each filter, so the bit positions can't be chosen by others.
+ * The high 32 bits of the hash select a block of 512 bits, one cache line
+ * (but the JVM doesn't let us align it to one),
+ * and the low 32 bits set one bit in each of the block's eight longs,
+ * so every lookup touches one cache line instead of k random ones.
+ *
+ * Bits are set with CAS, without locking.
+ * Like the old filter under its read lock, two threads adding the same entry
+ * at the same moment may both be told it is new.
+ *
+ * On decay, the previous generation is cleared and becomes the current one,
+ * and both are published in a single volatile write.
+ * A thread that read the generations just before that may miss an entry
+ * that is already at least durationMs old, and may add an entry to
+ * what is now the previous generation; neither breaks the guarantee that entries
+ * are remembered for at least durationMs.
+ *
+ * Memory usage and the m parameter are the same as for DecayingBloomFilter.
+ * The false positive rate is a little higher than a standard Bloom filter
+ * of the same size and k, see DecayingBloomFilterBench.
+ *
+ * @since 0.9.65
+ */
+public class DecayingBlockedBloomFilter extends DecayingBloomFilter {
+    private volatile Generations _gens;
+    private final int _blocks;
+    private final long _k0, _k1;
+
+    private static final int DEFAULT_M = 23;
+    private static final int MIN_M = 12;
+    private static final int MAX_M = 29;
+    /** longs per block */
+    private static final int BLOCK_LONGS = 8;
+    /** 512 */
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+    /**
+     * Odd multipliers to get a bit for each long from the same 32 bit hash,
+     * from the Parquet split block Bloom filter spec
+     */
+    private static final int[] SALT = {
+        0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+        0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31 };
+
+    /**
+     *  Current and previous. Immutable, replaced on decay.
+     */
+    private static class Generations {
+        final AtomicLongArray current, previous;
+        final AtomicInteger currentCount, previousCount;
+
+        Generations(AtomicLongArray cur, AtomicInteger curCount, AtomicLongArray prev, AtomicInteger prevCount) {
+            current = cur;
+            currentCount = curCount;
+            previous = prev;
+            previousCount = prevCount;
+        }
+    }
+
+    /**
+     * Uses default m of 23, memory usage is 2 MB, or set by router.decayingBloomFilterM.
+     *
+     * @param durationMs entries last for at least this long, but no more than twice this long
+     * @param entryBytes how large are the entries to be added? 1 to 32 bytes
+     * @param name just for logging / debugging / stats
+     */
+    public DecayingBlockedBloomFilter(I2PAppContext context, int durationMs, int entryBytes, String name) {
+        this(context, durationMs, entryBytes, name, context.getProperty("router.decayingBloomFilterM", DEFAULT_M));
+    }
+
+    /**
+     * Memory usage is 2 * (2**m) bits or 2**(m-2) bytes.
+     *
+     * @param durationMs entries last for at least this long, but no more than twice this long
+     * @param entryBytes how large are the entries to be added? 1 to 32 bytes
+     * @param name just for logging / debugging / stats
+     * @param m filter size exponent, 12 to 29
+     */
+    public DecayingBlockedBloomFilter(I2PAppContext context, int durationMs, int entryBytes, String name, int m) {
+        super(durationMs, entryBytes, name, context);
+        if (entryBytes <= 0 || entryBytes > 32)
+            throw new IllegalArgumentException("Bad size");
+        if (m < MIN_M || m > MAX_M)
+            throw new IllegalArgumentException("Bad m " + m);
+        _blocks = (1 << m) / BLOCK_BITS;
+        byte[] k = new byte[16];
+        context.random().nextBytes(k);
+        _k0 = DataHelper.fromLong8(k, 0);
+        _k1 = DataHelper.fromLong8(k, 8);
+        _gens = new Generations(new AtomicLongArray(_blocks * BLOCK_LONGS), new AtomicInteger(),
+                                new AtomicLongArray(_blocks * BLOCK_LONGS), new AtomicInteger());
+        if (_log.shouldLog(Log.WARN))
+           _log.warn("New DBBF " + name + " m = " + m + " entryBytes = " + entryBytes +
+                     " cycle (s) = " + (durationMs / 1000));
+        // same stats as DBF
+        context.statManager().createRateStat("router.decayingBloomFilter." + name + ".size",
+             "Size", "Router", new long[] { 10 * Math.max(60*1000, durationMs) });
+        context.statManager().createRateStat("router.decayingBloomFilter." + name + ".dups",
+             "1000000 * Duplicates/Size", "Router", new long[] { 10 * Math.max(60*1000, durationMs) });
+        context.statManager().createRateStat("router.decayingBloomFilter." + name + ".log10(falsePos)",
+             "log10 of the false positive rate (must have net.i2p.util.DecayingBloomFilter=DEBUG)",
+             "Router", new long[] { 10 * Math.max(60*1000, durationMs) });
+    }
+
+    /** unsynchronized but only used for logging elsewhere */
+    @Override
+    public int getInsertedCount() {
+        Generations g = _gens;
+        return g.currentCount.get() + g.previousCount.get();
+    }
+
+    /**
+     *  Estimated for the current generation, only used for logging elsewhere
+     */
+    @Override
+    public double getFalsePositiveRate() {
+        return falsePositives(_gens.currentCount.get());
+    }
+
+    /**
+     *  Expected false positive rate after n inserts,
+     *  summed over the Poisson distribution of entries per block.
+     */
+    private double falsePositives(int n) {
+        if (n <= 0)
+            return 0d;
+        double lambda = ((double) n) / _blocks;
+        int max = (int) (lambda + 10 * Math.sqrt(lambda) + 20);
+        double p = Math.exp(-lambda);
+        double rv = 0d;
+        for (int j = 0; j <= max; j++) {
+            if (j > 0)
+                p *= lambda / j;
+            // each of the 8 longs has j bits set, at most
+            rv += p * Math.pow(1d - Math.pow(1d - 1d/64, j), BLOCK_LONGS);
+        }
+        return rv;
+    }
+
+    /**
+     * @return true if the entry added is a duplicate
+     */
+    @Override
+    public boolean add(byte entry[], int off, int len) {
+        if (entry == null)
+            throw new IllegalArgumentException("Null entry");
+        if (len != _entryBytes)
+            throw new IllegalArgumentException("Bad entry [" + len + ", expected "
+                                               + _entryBytes + "]");
+        return add(SipHashInline.hash24(_k0, _k1, entry, off, len), true);
+    }
+
+    /**
+     * @return true if the entry added is a duplicate. the number of low order
+     * bits used is determined by the entryBytes parameter used on creation of the
+     * filter.
+     */
+    @Override
+    public boolean add(long entry) {
+        return add(hash(entry), true);
+    }
+
+    /**
+     * @return true if the entry is already known. this does NOT add the
+     * entry however.
+     */
+    @Override
+    public boolean isKnown(long entry) {
+        return add(hash(entry), false);
+    }
+
+    private long hash(long entry) {
+        byte[] b = new byte[Math.max(8, _entryBytes)];
+        DataHelper.toLong8(b, b.length - 8, entry);
+        // low order entryBytes only
+        return SipHashInline.hash24(_k0, _k1, b, b.length - _entryBytes, _entryBytes);
+    }
+
+    /**
+     *  @param h the SipHash of the entry
+     *  @return if the entry is in either generation
+     */
+    private boolean add(long h, boolean addIfNew) {
+        Generations g = _gens;
+        int start = (int) (((h >>> 32) * _blocks) >>> 32) * BLOCK_LONGS;
+        int lo = (int) h;
+        boolean seen = contains(g.previous, start, lo);
+        if (!seen) {
+            if (addIfNew)
+                seen = !insert(g.current, start, lo);
+            else
+                seen = contains(g.current, start, lo);
+            if (!seen && addIfNew)
+                g.currentCount.incrementAndGet();
+        }
+        if (seen) {
+            // only used for stats
+            _currentDuplicates++;
+        }
+        return seen;
+    }
+
+    private static boolean contains(AtomicLongArray bits, int start, int lo) {
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            long mask = 1L << ((lo * SALT[i]) >>> 26);
+            if ((bits.get(start + i) & mask) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     *  @return true if any bit was newly set
+     */
+    private static boolean insert(AtomicLongArray bits, int start, int lo) {
+        boolean rv = false;
+        for (int i = 0; i < BLOCK_LONGS; i++) {
+            long mask = 1L << ((lo * SALT[i]) >>> 26);
+            int idx = start + i;
+            long old = bits.get(idx);
+            while ((old & mask) == 0) {
+                if (bits.compareAndSet(idx, old, old | mask)) {
+                    rv = true;
+                    break;
+                }
+                old = bits.get(idx);
+            }
+        }
+        return rv;
+    }
+
+    @Override
+    public void clear() {
+        Generations g = _gens;
+        clear(g.current);
+        clear(g.previous);
+        g.currentCount.set(0);
+        g.previousCount.set(0);
+        _currentDuplicates = 0;
+    }
+
+    private static void clear(AtomicLongArray bits) {
+        for (int i = 0; i < bits.length(); i++) {
+            bits.lazySet(i, 0);
+        }
+    }
+
+    /** super doesn't call clear, but neither do the users, so it seems like we should here */
+    @Override
+    public void stopDecaying() {
+        super.stopDecaying();
+        clear();
+    }
+
+    @Override
+    protected void decay() {
+        Generations old = _gens;
+        int currentCount = old.currentCount.get();
+        double fpr = 0d;
+        if (_log.shouldLog(Log.DEBUG) && currentCount > 0)
+            fpr = falsePositives(currentCount);
+        // clear before publishing, nobody should be adding to it now
+        clear(old.previous);
+        old.previousCount.set(0);
+        _gens = new Generations(old.previous, old.previousCount, old.current, old.currentCount);
+        long dups = _currentDuplicates;
+        _currentDuplicates = 0;
+        if (_log.shouldLog(Log.DEBUG))
+            _log.debug("Decaying the filter " + _name + " after inserting " + currentCount
+                       + " elements and " + dups + " false positives with FPR = " + fpr);
+        _context.statManager().addRateData("router.decayingBloomFilter." + _name + ".size",
+                                           currentCount);
+        if (currentCount > 0)
+            _context.statManager().addRateData("router.decayingBloomFilter." + _name + ".dups",
+                                               1000l*1000*dups/currentCount);
+        if (fpr > 0d) {
+            long exponent = (long) Math.log10(fpr);
+            _context.statManager().addRateData("router.decayingBloomFilter." + _name + ".log10(falsePos)",
+                                               exponent);
+        }
+    }
+}
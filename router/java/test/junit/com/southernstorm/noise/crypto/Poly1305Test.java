@@ -0,0 +1,144 @@
+package com.southernstorm.noise.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import net.i2p.crypto.eddsa.Utils;
+
+import org.junit.Test;
+
+/**
+ * RFC 7539 test vectors for Poly1305, section 2.5.2 and appendix A.3.
+ * The A.3 vectors exercise the carries and the final reduction mod 2^130 - 5.
+ *
+ * @since 0.9.65
+ */
+public class Poly1305Test {
+
+    private static final String ZERO16 = "00000000000000000000000000000000";
+
+    @Test
+    public void testSection252() {
+        byte[] key = Utils.hexToBytes("85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b");
+        byte[] msg = "Cryptographic Forum Research Group".getBytes();
+        check("a8061dc1305136c6c22b8baf0c0127a9", key, msg);
+    }
+
+    /** A.3 #5, h reaches p exactly after one block */
+    @Test
+    public void testA3Vector5() {
+        check("03000000000000000000000000000000",
+              key("02" + rep("00", 15), ZERO16), Utils.hexToBytes(rep("ff", 16)));
+    }
+
+    /** A.3 #6, the s addition wraps */
+    @Test
+    public void testA3Vector6() {
+        check("03000000000000000000000000000000",
+              key("02" + rep("00", 15), rep("ff", 16)), Utils.hexToBytes("02" + rep("00", 15)));
+    }
+
+    /** A.3 #7 */
+    @Test
+    public void testA3Vector7() {
+        check("05000000000000000000000000000000",
+              key("01" + rep("00", 15), ZERO16),
+              Utils.hexToBytes(rep("ff", 16) + "f0" + rep("ff", 15) + "11" + rep("00", 15)));
+    }
+
+    /** A.3 #8, the result is exactly p */
+    @Test
+    public void testA3Vector8() {
+        check(ZERO16,
+              key("01" + rep("00", 15), ZERO16),
+              Utils.hexToBytes(rep("ff", 16) + "fb" + rep("fe", 15) + rep("01", 16)));
+    }
+
+    /** A.3 #9 */
+    @Test
+    public void testA3Vector9() {
+        check("faffffffffffffffffffffffffffffff",
+              key("02" + rep("00", 15), ZERO16), Utils.hexToBytes("fd" + rep("ff", 15)));
+    }
+
+    /** A.3 #10 */
+    @Test
+    public void testA3Vector10() {
+        check("14000000000000005500000000000000",
+              key("0100000000000000" + "0400000000000000", ZERO16),
+              Utils.hexToBytes("e33594d7505e43b9" + "0000000000000000" +
+                               "3394d7505e4379cd" + "0100000000000000" +
+                               ZERO16 + "01" + rep("00", 15)));
+    }
+
+    /** A.3 #11 */
+    @Test
+    public void testA3Vector11() {
+        check("13000000000000000000000000000000",
+              key("0100000000000000" + "0400000000000000", ZERO16),
+              Utils.hexToBytes("e33594d7505e43b9" + "0000000000000000" +
+                               "3394d7505e4379cd" + "0100000000000000" +
+                               ZERO16));
+    }
+
+    /**
+     * Any split of the input across update() calls gives the same tag
+     * as one update(), and reset() starts over.
+     */
+    @Test
+    public void testSplitUpdates() {
+        Random rand = new Random(1234);
+        byte[] key = new byte[32];
+        byte[] msg = new byte[300];
+        Poly1305 poly = new Poly1305();
+        for (int len = 0; len <= msg.length; len += 23) {
+            rand.nextBytes(key);
+            rand.nextBytes(msg);
+            byte[] expected = new byte[16];
+            poly.reset(key, 0);
+            poly.update(msg, 0, len);
+            poly.finish(expected, 0);
+            for (int chunk = 1; chunk <= 33; chunk += 4) {
+                poly.reset(key, 0);
+                for (int off = 0; off < len; off += chunk) {
+                    poly.update(msg, off, Math.min(chunk, len - off));
+                }
+                byte[] tag = new byte[16];
+                poly.finish(tag, 0);
+                assertArrayEquals("len " + len + " chunk " + chunk, expected, tag);
+            }
+        }
+    }
+
+    private static void check(String expected, byte[] key, byte[] msg) {
+        Poly1305 poly = new Poly1305();
+        poly.reset(key, 0);
+        poly.update(msg, 0, msg.length);
+        byte[] tag = new byte[16];
+        poly.finish(tag, 0);
+        assertArrayEquals(Utils.hexToBytes(expected), tag);
+        // at an offset in the key and token buffers
+        byte[] key2 = new byte[key.length + 5];
+        System.arraycopy(key, 0, key2, 5, key.length);
+        poly.reset(key2, 5);
+        poly.update(msg, 0, msg.length);
+        byte[] tag2 = new byte[16 + 3];
+        poly.finish(tag2, 3);
+        byte[] t = new byte[16];
+        System.arraycopy(tag2, 3, t, 0, 16);
+        assertArrayEquals(Utils.hexToBytes(expected), t);
+    }
+
+    private static byte[] key(String r, String s) {
+        return Utils.hexToBytes(r + s);
+    }
+
+    private static String rep(String s, int n) {
+        StringBuilder buf = new StringBuilder(s.length() * n);
+        for (int i = 0; i < n; i++) {
+            buf.append(s);
+        }
+        return buf.toString();
+    }
+}
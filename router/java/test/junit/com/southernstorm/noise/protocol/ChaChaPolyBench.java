@@ -0,0 +1,96 @@
+package com.southernstorm.noise.protocol;
+
+import java.nio.ByteBuffer;
+
+import net.i2p.crypto.ChaCha20;
+
+/**
+ * Throughput of ChaChaPolyCipherState encrypt and decrypt,
+ * with byte arrays and in place with a ByteBuffer,
+ * and of plain ChaCha20, for 64 byte to 64 KB payloads.
+ *
+ * Results (2026-10, x86_64, MB/s, noisy):
+ * <pre>
+ *  size  aead 0.9.64  aead 0.9.65  chacha20 0.9.64  chacha20 0.9.65
+ *    64      55           60             75               145
+ *   256      85          105            125               160
+ *  1024      95          120            145               170
+ *  4096      95          125            145               185
+ * 16384     100          130            150               215
+ * 65536     135          170            200               220
+ * </pre>
+ *
+ * Not a unit test, run with main().
+ *
+ * @since 0.9.65
+ */
+public class ChaChaPolyBench {
+
+    private static final int[] SIZES = { 64, 256, 1024, 4096, 16384, 65536 };
+    /** bytes per measurement */
+    private static final long TOTAL = 64*1024*1024;
+
+    public static void main(String[] args) throws Exception {
+        byte[] key = new byte[32];
+        net.i2p.util.RandomSource.getInstance().nextBytes(key);
+        // warmup
+        for (int sz : SIZES) {
+            run(key, sz, TOTAL / 8);
+        }
+        System.out.println("size\tencrypt\tdecrypt\tbuffer\tchacha20  (MB/s)");
+        for (int sz : SIZES) {
+            run(key, sz, TOTAL);
+        }
+    }
+
+    private static void run(byte[] key, int sz, long total) throws Exception {
+        ChaChaPolyCipherState enc = new ChaChaPolyCipherState();
+        ChaChaPolyCipherState dec = new ChaChaPolyCipherState();
+        enc.initializeKey(key, 0);
+        dec.initializeKey(key, 0);
+        byte[] pt = new byte[sz];
+        byte[] ct = new byte[sz + 16];
+        byte[] iv = new byte[12];
+        ByteBuffer buf = ByteBuffer.allocate(sz + 16);
+        int runs = (int) Math.max(1, total / sz);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            enc.setNonce(i);
+            enc.encryptWithAd(null, pt, 0, ct, 0, sz);
+        }
+        long encTime = System.nanoTime() - start;
+
+        enc.setNonce(0);
+        enc.encryptWithAd(null, pt, 0, ct, 0, sz);
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            dec.setNonce(0);
+            dec.decryptWithAd(null, ct, 0, pt, 0, sz + 16);
+        }
+        long decTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            buf.clear();
+            buf.limit(sz);
+            enc.setNonce(i);
+            enc.encryptWithAd(null, 0, 0, buf);
+        }
+        long bufTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            ChaCha20.encrypt(key, iv, pt, 0, pt, 0, sz);
+        }
+        long chachaTime = System.nanoTime() - start;
+
+        if (total == TOTAL)
+            System.out.println(sz + "\t" + mbps(runs, sz, encTime) + '\t' + mbps(runs, sz, decTime) + '\t' +
+                               mbps(runs, sz, bufTime) + '\t' + mbps(runs, sz, chachaTime));
+    }
+
+    private static long mbps(int runs, int sz, long ns) {
+        return (runs * (long) sz * 1000L) / Math.max(1, ns);
+    }
+}
@@ -0,0 +1,319 @@
+package com.southernstorm.noise.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
+
+import com.southernstorm.noise.crypto.Poly1305;
+import com.southernstorm.noise.crypto.chacha20.ChaChaCore;
+
+import net.i2p.crypto.eddsa.Utils;
+
+import org.junit.Test;
+
+/**
+ * ChaChaPoly AEAD: the RFC 7539 section 2.8.2 vector, and
+ * the byte array and in-place ByteBuffer APIs of ChaChaPolyCipherState.
+ *
+ * The 2.8.2 nonce starts with 07000000, which a Noise cipher state can't express,
+ * as its nonce is 32 zero bits and a 64-bit counter.
+ * So the vector is checked against the RFC construction built from
+ * ChaChaCore and Poly1305, and that is then the reference for the cipher state.
+ *
+ * @since 0.9.65
+ */
+public class ChaChaPolyCipherStateTest {
+
+    private static final byte[] KEY = Utils.hexToBytes("808182838485868788898a8b8c8d8e8f909192939495969798999a9b9c9d9e9f");
+    private static final byte[] NONCE = Utils.hexToBytes("070000004041424344454647");
+    private static final byte[] AAD = Utils.hexToBytes("50515253c0c1c2c3c4c5c6c7");
+    private static final byte[] PLAINTEXT = ("Ladies and Gentlemen of the class of '99: If I could offer you " +
+                                             "only one tip for the future, sunscreen would be it.").getBytes();
+    private static final byte[] CIPHERTEXT = Utils.hexToBytes(
+        "d31a8d34648e60db7b86afbc53ef7ec2a4aded51296e08fea9e2b5a736ee62d6" +
+        "3dbea45e8ca9671282fafb69da92728b1a71de0a9e060b2905d6a5b67ecd3b36" +
+        "92ddbd7f2d778b8c9803aee328091b58fab324e4fad675945585808b4831d7bc" +
+        "3ff4def08e4b7a9de576d26586cec64b6116" +
+        "1ae10b594f09e26a7e902ecbd0600691");
+    /** the 64-bit counter for the last 8 bytes of NONCE */
+    private static final long N = 0x4746454443424140L;
+
+    @Test
+    public void testSection282() {
+        assertArrayEquals(CIPHERTEXT, seal(KEY, NONCE, AAD, PLAINTEXT));
+    }
+
+    /**
+     * Same as the RFC construction with a nonce of 00000000 || little endian n,
+     * for lengths around the 16 and 64 byte boundaries.
+     */
+    @Test
+    public void testMatchesReference() throws Exception {
+        ChaChaPolyCipherState enc = new ChaChaPolyCipherState();
+        ChaChaPolyCipherState dec = new ChaChaPolyCipherState();
+        enc.initializeKey(KEY, 0);
+        dec.initializeKey(KEY, 0);
+        Random rand = new Random(5678);
+        for (int len = 0; len <= 200; len++) {
+            byte[] pt = new byte[len];
+            rand.nextBytes(pt);
+            byte[] ad = (len & 1) == 0 ? AAD : null;
+            long n = N + len;
+            enc.setNonce(n);
+            byte[] ct = new byte[len + 16];
+            assertEquals(len + 16, enc.encryptWithAd(ad, pt, 0, ct, 0, len));
+            assertArrayEquals("len " + len, seal(KEY, nonce(n), ad, pt), ct);
+            dec.setNonce(n);
+            byte[] out = new byte[len];
+            assertEquals(len, dec.decryptWithAd(ad, ct, 0, out, 0, ct.length));
+            assertArrayEquals(pt, out);
+        }
+    }
+
+    /**
+     * Offsets and lengths into the AD, source and destination arrays,
+     * and in place in one array.
+     */
+    @Test
+    public void testArraySlices() throws Exception {
+        ChaChaPolyCipherState cs = new ChaChaPolyCipherState();
+        cs.initializeKey(KEY, 0);
+        byte[] ad = new byte[3 + AAD.length + 5];
+        System.arraycopy(AAD, 0, ad, 3, AAD.length);
+        byte[] pt = new byte[7 + PLAINTEXT.length + 4];
+        System.arraycopy(PLAINTEXT, 0, pt, 7, PLAINTEXT.length);
+        byte[] ct = new byte[11 + CIPHERTEXT.length + 2];
+        byte[] expected = seal(KEY, nonce(N), AAD, PLAINTEXT);
+
+        cs.setNonce(N);
+        cs.encryptWithAd(ad, 3, AAD.length, pt, 7, ct, 11, PLAINTEXT.length);
+        assertArrayEquals(expected, copy(ct, 11, expected.length));
+        assertEquals(0, ct[10]);
+        assertEquals(0, ct[11 + expected.length]);
+
+        byte[] out = new byte[PLAINTEXT.length + 1];
+        cs.setNonce(N);
+        cs.decryptWithAd(ad, 3, AAD.length, ct, 11, out, 1, expected.length);
+        assertArrayEquals(PLAINTEXT, copy(out, 1, PLAINTEXT.length));
+
+        // in place
+        System.arraycopy(PLAINTEXT, 0, ct, 11, PLAINTEXT.length);
+        cs.setNonce(N);
+        cs.encryptWithAd(ad, 3, AAD.length, ct, 11, ct, 11, PLAINTEXT.length);
+        assertArrayEquals(expected, copy(ct, 11, expected.length));
+        cs.setNonce(N);
+        cs.decryptWithAd(ad, 3, AAD.length, ct, 11, ct, 11, expected.length);
+        assertArrayEquals(PLAINTEXT, copy(ct, 11, PLAINTEXT.length));
+    }
+
+    @Test
+    public void testHeapBuffer() throws Exception {
+        testBuffer(ByteBuffer.allocate(300));
+    }
+
+    @Test
+    public void testDirectBuffer() throws Exception {
+        testBuffer(ByteBuffer.allocateDirect(300));
+    }
+
+    /** a slice has a non-zero array offset */
+    @Test
+    public void testSlicedHeapBuffer() throws Exception {
+        ByteBuffer b = ByteBuffer.allocate(320);
+        b.position(13);
+        testBuffer(b.slice());
+    }
+
+    @Test
+    public void testSlicedDirectBuffer() throws Exception {
+        ByteBuffer b = ByteBuffer.allocateDirect(320);
+        b.position(13);
+        testBuffer(b.slice());
+    }
+
+    /**
+     * Encrypt and decrypt in place between position 9 and the limit,
+     * the AD is a slice of a larger array.
+     */
+    private static void testBuffer(ByteBuffer buf) throws Exception {
+        ChaChaPolyCipherState cs = new ChaChaPolyCipherState();
+        cs.initializeKey(KEY, 0);
+        byte[] ad = new byte[AAD.length + 2];
+        System.arraycopy(AAD, 0, ad, 2, AAD.length);
+        byte[] expected = seal(KEY, nonce(N), AAD, PLAINTEXT);
+        int pos = 9;
+        fill(buf, (byte) 0x5a);
+        buf.position(pos);
+        buf.put(PLAINTEXT);
+        buf.flip();
+        buf.position(pos);
+
+        cs.setNonce(N);
+        assertEquals(expected.length, cs.encryptWithAd(ad, 2, AAD.length, buf));
+        assertEquals(pos, buf.position());
+        assertEquals(pos + expected.length, buf.limit());
+        assertArrayEquals(expected, get(buf));
+        checkFill(buf, 0, pos);
+        checkFill(buf, pos + expected.length, buf.capacity());
+
+        cs.setNonce(N);
+        assertEquals(PLAINTEXT.length, cs.decryptWithAd(ad, 2, AAD.length, buf));
+        assertEquals(pos, buf.position());
+        assertEquals(pos + PLAINTEXT.length, buf.limit());
+        assertArrayEquals(PLAINTEXT, get(buf));
+        checkFill(buf, 0, pos);
+    }
+
+    /**
+     * A flipped bit in the ciphertext, tag, or AD is rejected,
+     * and the ciphertext is left as it was.
+     */
+    @Test
+    public void testBadTag() throws Exception {
+        ChaChaPolyCipherState cs = new ChaChaPolyCipherState();
+        cs.initializeKey(KEY, 0);
+        byte[] good = seal(KEY, nonce(N), AAD, PLAINTEXT);
+        int[] flips = { 0, PLAINTEXT.length - 1, PLAINTEXT.length, good.length - 1 };
+        for (int i : flips) {
+            byte[] ct = good.clone();
+            ct[i] ^= 0x01;
+            checkBad(cs, AAD, ct, ByteBuffer.wrap(ct.clone()));
+            ByteBuffer direct = ByteBuffer.allocateDirect(ct.length);
+            direct.put(ct);
+            direct.flip();
+            checkBad(cs, AAD, ct, direct);
+        }
+        byte[] ad = AAD.clone();
+        ad[4] ^= (byte) 0x80;
+        checkBad(cs, ad, good, ByteBuffer.wrap(good.clone()));
+        checkBad(cs, null, good, ByteBuffer.wrap(good.clone()));
+    }
+
+    private static void checkBad(ChaChaPolyCipherState cs, byte[] ad, byte[] ct, ByteBuffer buf) throws Exception {
+        int adlen = ad != null ? ad.length : 0;
+        byte[] in = ct.clone();
+        byte[] out = new byte[ct.length];
+        cs.setNonce(N);
+        try {
+            cs.decryptWithAd(ad, 0, adlen, in, 0, out, 0, in.length);
+            fail("bad tag accepted");
+        } catch (BadPaddingException expected) {}
+        assertArrayEquals(ct, in);
+        cs.setNonce(N);
+        try {
+            cs.decryptWithAd(ad, 0, adlen, buf);
+            fail("bad tag accepted");
+        } catch (BadPaddingException expected) {}
+        assertEquals(0, buf.position());
+        assertEquals(ct.length, buf.limit());
+        assertArrayEquals(ct, get(buf));
+    }
+
+    @Test
+    public void testBufferErrors() throws Exception {
+        ChaChaPolyCipherState cs = new ChaChaPolyCipherState();
+        cs.initializeKey(KEY, 0);
+        ByteBuffer buf = ByteBuffer.allocate(PLAINTEXT.length + 15);
+        buf.put(PLAINTEXT);
+        buf.flip();
+        try {
+            cs.encryptWithAd(null, 0, 0, buf);
+            fail("no room for the MAC");
+        } catch (ShortBufferException expected) {}
+        try {
+            cs.encryptWithAd(null, 0, 0, ByteBuffer.allocate(64).asReadOnlyBuffer());
+            fail("read-only");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+    /**
+     * RFC 7539 section 2.8 AEAD encryption, from the ChaCha20 and Poly1305 primitives.
+     *
+     * @param nonce 12 bytes
+     * @param aad may be null
+     * @return ciphertext || tag
+     */
+    private static byte[] seal(byte[] key, byte[] nonce, byte[] aad, byte[] pt) {
+        int[] input = new int[16];
+        int[] block = new int[16];
+        ChaChaCore.initKey256(input, key, 0);
+        input[12] = 0;
+        input[13] = getInt(nonce, 0);
+        input[14] = getInt(nonce, 4);
+        input[15] = getInt(nonce, 8);
+        ChaChaCore.hash(block, input);
+        byte[] polyKey = new byte[32];
+        ChaChaCore.xorBlock(polyKey, 0, polyKey, 0, 32, block);
+        input[12] = 1;
+        byte[] rv = new byte[pt.length + 16];
+        ChaChaCore.xorKeyStream(input, block, pt, 0, rv, 0, pt.length);
+        int adlen = aad != null ? aad.length : 0;
+        Poly1305 poly = new Poly1305();
+        poly.reset(polyKey, 0);
+        if (aad != null)
+            poly.update(aad, 0, adlen);
+        poly.pad();
+        poly.update(rv, 0, pt.length);
+        poly.pad();
+        byte[] lengths = new byte[16];
+        putLong(lengths, 0, adlen);
+        putLong(lengths, 8, pt.length);
+        poly.update(lengths, 0, 16);
+        poly.finish(rv, pt.length);
+        return rv;
+    }
+
+    /** 00000000 || little endian n */
+    private static byte[] nonce(long n) {
+        byte[] rv = new byte[12];
+        putLong(rv, 4, n);
+        return rv;
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8) |
+               ((b[off + 2] & 0xff) << 16) | ((b[off + 3] & 0xff) << 24);
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        for (int i = 0; i < 8; i++) {
+            b[off + i] = (byte) (v >> (8 * i));
+        }
+    }
+
+    private static byte[] copy(byte[] b, int off, int len) {
+        byte[] rv = new byte[len];
+        System.arraycopy(b, off, rv, 0, len);
+        return rv;
+    }
+
+    /** position to limit, doesn't change the position */
+    private static byte[] get(ByteBuffer buf) {
+        byte[] rv = new byte[buf.remaining()];
+        buf.duplicate().get(rv);
+        return rv;
+    }
+
+    private static void fill(ByteBuffer buf, byte v) {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            buf.put(v);
+        }
+        buf.clear();
+    }
+
+    /** absolute indexes, ignores the limit */
+    private static void checkFill(ByteBuffer buf, int from, int to) {
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        for (int i = from; i < to; i++) {
+            assertEquals("index " + i, (byte) 0x5a, b.get(i));
+        }
+    }
+}
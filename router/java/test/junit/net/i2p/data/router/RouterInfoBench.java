@@ -0,0 +1,180 @@
+package net.i2p.data.router;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import net.i2p.I2PAppContext;
+import net.i2p.crypto.EncType;
+import net.i2p.crypto.KeyGenerator;
+import net.i2p.crypto.KeyPair;
+import net.i2p.crypto.SigType;
+import net.i2p.data.Base64;
+import net.i2p.data.KeyCertificate;
+import net.i2p.data.SigningPrivateKey;
+import net.i2p.data.SigningPublicKey;
+import net.i2p.data.SimpleDataStructure;
+import net.i2p.util.OrderedProperties;
+
+/**
+ * RouterInfo serialization, streams vs. ByteBuffers,
+ * for a typical X25519/Ed25519 RouterInfo with NTCP2 and SSU2 addresses
+ * and a few stats, about 1 KB.
+ * The stream write serializes it again each time,
+ * the buffer write copies the bytes cached when it was signed.
+ *
+ * Results (2026-10, ns per op, 1 core VM, noisy, each op in its own JVM):
+ * <pre>
+ *            stream   buffer
+ * write        2950      130
+ * read         4500     2900
+ * </pre>
+ *
+ * Not a unit test, run with main().
+ * The JIT optimizes for whatever runs first, the later ones
+ * in the same JVM pay for the mixed stream types, so for comparable numbers
+ * run each in its own JVM, with the op name as the argument.
+ * See DataStructureBench in the core benchmarks for Destinations and LeaseSet2s.
+ *
+ * @since 0.9.65
+ */
+public class RouterInfoBench {
+
+    private static final int WARMUP = 100000;
+    private static final int RUNS = 5;
+    private static final int ITERATIONS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        final RouterInfo ri = create(ctx);
+        final byte[] data = ri.toByteArray();
+        final ByteBuffer buf = ByteBuffer.allocate(4096);
+        System.out.println("RouterInfo size: " + data.length);
+
+        Op writeStream = new Op() {
+            public void run() throws Exception {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+                ri.writeBytes(out);
+            }
+        };
+        Op writeBuffer = new Op() {
+            public void run() throws Exception {
+                buf.clear();
+                ri.writeBytes(buf);
+            }
+        };
+        Op readStream = new Op() {
+            public void run() throws Exception {
+                RouterInfo r = new RouterInfo();
+                r.readBytes(new ByteArrayInputStream(data));
+            }
+        };
+        Op readBuffer = new Op() {
+            public void run() throws Exception {
+                RouterInfo r = new RouterInfo();
+                r.readBytes(ByteBuffer.wrap(data));
+            }
+        };
+        if (args.length > 0) {
+            Op op;
+            if (args[0].equals("writeStream"))
+                op = writeStream;
+            else if (args[0].equals("writeBuffer"))
+                op = writeBuffer;
+            else if (args[0].equals("readStream"))
+                op = readStream;
+            else if (args[0].equals("readBuffer"))
+                op = readBuffer;
+            else
+                throw new IllegalArgumentException("Usage: RouterInfoBench [writeStream|writeBuffer|readStream|readBuffer]");
+            System.out.println(args[0] + "\t" + time(op) + " ns");
+        } else {
+            System.out.println("\tstream ns\tbuffer ns");
+            System.out.println("write\t" + time(writeStream) + "\t\t" + time(writeBuffer));
+            System.out.println("read\t" + time(readStream) + "\t\t" + time(readBuffer));
+        }
+        System.exit(0);
+    }
+
+    private interface Op {
+        public void run() throws Exception;
+    }
+
+    /**
+     *  @return best ns per op
+     */
+    private static long time(Op op) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            op.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < RUNS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                op.run();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / ITERATIONS);
+        }
+        return best;
+    }
+
+    private static RouterInfo create(I2PAppContext ctx) throws Exception {
+        KeyGenerator kg = KeyGenerator.getInstance();
+        KeyPair enc = kg.generatePKIKeys(EncType.ECIES_X25519);
+        SimpleDataStructure[] sign = kg.generateSigningKeys(SigType.EdDSA_SHA512_Ed25519);
+        RouterIdentity ident = new RouterIdentity();
+        ident.setPublicKey(enc.getPublic());
+        ident.setSigningPublicKey((SigningPublicKey) sign[0]);
+        byte[] padding = new byte[32];
+        ctx.random().nextBytes(padding);
+        byte[] pad = new byte[384 - 32 - 32];
+        for (int i = 0; i < pad.length; i += 32) {
+            System.arraycopy(padding, 0, pad, i, 32);
+        }
+        ident.setPadding(pad);
+        ident.setCertificate(KeyCertificate.X25519_Ed25519_CERT);
+
+        RouterInfo ri = new RouterInfo();
+        ri.setIdentity(ident);
+        ri.setPublished(ctx.clock().now());
+        List<RouterAddress> addrs = new ArrayList<RouterAddress>(2);
+        addrs.add(address(ctx, "NTCP2", 3, true));
+        addrs.add(address(ctx, "SSU2", 8, false));
+        ri.setAddresses(addrs);
+        Properties opts = new Properties();
+        opts.setProperty("caps", "XfR");
+        opts.setProperty("netId", "2");
+        opts.setProperty("router.version", "0.9.65");
+        opts.setProperty("netdb.knownLeaseSets", "114");
+        opts.setProperty("netdb.knownRouters", "3342");
+        opts.setProperty("stat_uptime", "90m");
+        opts.setProperty("family", "test");
+        ri.setOptions(opts);
+        ri.sign((SigningPrivateKey) sign[1]);
+        return ri;
+    }
+
+    private static RouterAddress address(I2PAppContext ctx, String style, int cost, boolean iv) {
+        OrderedProperties opts = new OrderedProperties();
+        opts.setProperty("host", "192.0.2.1");
+        opts.setProperty("port", Integer.toString(10000 + ctx.random().nextInt(20000)));
+        byte[] b = new byte[32];
+        ctx.random().nextBytes(b);
+        opts.setProperty("s", Base64.encode(b));
+        if (iv) {
+            b = new byte[16];
+            ctx.random().nextBytes(b);
+            opts.setProperty("i", Base64.encode(b));
+        } else {
+            b = new byte[32];
+            ctx.random().nextBytes(b);
+            opts.setProperty("i", Base64.encode(b));
+            opts.setProperty("mtu", "1500");
+        }
+        opts.setProperty("v", "2");
+        return new RouterAddress(style, opts, cost);
+    }
+}
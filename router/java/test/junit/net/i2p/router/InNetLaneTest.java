@@ -0,0 +1,293 @@
+package net.i2p.router;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.i2p.data.Hash;
+import net.i2p.data.i2np.DataMessage;
+import net.i2p.data.i2np.DatabaseLookupMessage;
+import net.i2p.data.i2np.DatabaseStoreMessage;
+import net.i2p.data.i2np.DeliveryStatusMessage;
+import net.i2p.data.i2np.GarlicMessage;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.data.i2np.ShortTunnelBuildMessage;
+import net.i2p.data.i2np.TunnelDataMessage;
+import net.i2p.data.i2np.TunnelGatewayMessage;
+import net.i2p.data.i2np.VariableTunnelBuildReplyMessage;
+import net.i2p.data.router.RouterIdentity;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * InNetLane full-queue policies, property overrides, and restarts,
+ * and which messages InNetMessagePool sends to which lane.
+ *
+ * The runners are held in a blocking HandlerJobBuilder, so nothing
+ * here needs a JobQueue. Each test uses its own lane name.
+ *
+ * @since 0.9.65
+ */
+public class InNetLaneTest {
+
+    private static RouterContext _context;
+
+    @BeforeClass
+    public static void globalSetUp() {
+        _context = new RouterContext(null);
+    }
+
+    @Test
+    public void testDispatch() {
+        InNetMessagePool pool = new InNetMessagePool(_context);
+        assertEquals("netDb", pool.getLane(DatabaseLookupMessage.MESSAGE_TYPE).getName());
+        assertEquals("netDb", pool.getLane(DatabaseStoreMessage.MESSAGE_TYPE).getName());
+        assertEquals("garlic", pool.getLane(GarlicMessage.MESSAGE_TYPE).getName());
+        assertEquals("garlic", pool.getLane(DataMessage.MESSAGE_TYPE).getName());
+        assertEquals("build", pool.getLane(ShortTunnelBuildMessage.MESSAGE_TYPE).getName());
+        assertEquals("build", pool.getLane(VariableTunnelBuildReplyMessage.MESSAGE_TYPE).getName());
+        // these stay on the transport thread or the JobQueue
+        assertNull(pool.getLane(TunnelDataMessage.MESSAGE_TYPE));
+        assertNull(pool.getLane(TunnelGatewayMessage.MESSAGE_TYPE));
+        assertNull(pool.getLane(DeliveryStatusMessage.MESSAGE_TYPE));
+    }
+
+    @Test
+    public void testDispatchDisabled() {
+        _context.setProperty("router.inNetLanes", "false");
+        try {
+            InNetMessagePool pool = new InNetMessagePool(_context);
+            assertNull(pool.getLane(DatabaseLookupMessage.MESSAGE_TYPE));
+            assertNull(pool.getLane(GarlicMessage.MESSAGE_TYPE));
+        } finally {
+            _context.removeProperty("router.inNetLanes");
+        }
+    }
+
+    @Test
+    public void testNotRunning() {
+        InNetLane lane = new InNetLane(_context, "stopped", 1, 4, "oldest");
+        assertFalse(lane.offer(new TestJob()));
+        lane.startup();
+        lane.shutdown();
+        assertFalse(lane.offer(new TestJob()));
+    }
+
+    /**
+     * The properties override the constructor's 4 threads, 100 queue, newest.
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        String name = "testOldest";
+        setProps(name, 2, "oldest");
+        InNetLane lane = new InNetLane(_context, name, 4, 100, "newest");
+        lane.startup();
+        Blocker b = new Blocker(1);
+        try {
+            assertTrue(lane.offer(b, msg(), null, null));
+            b.awaitEntered();
+            TestJob j1 = new TestJob();
+            TestJob j2 = new TestJob();
+            TestJob j3 = new TestJob();
+            assertTrue(lane.offer(j1));
+            assertTrue(lane.offer(j2));
+            // already queued
+            assertTrue(lane.offer(j2));
+            assertEquals(2, lane.getQueueSize());
+            assertTrue(lane.offer(j3));
+            assertEquals(2, lane.getQueueSize());
+            assertTrue(j1.wasDropped());
+            assertFalse(j2.wasDropped());
+            assertFalse(j3.wasDropped());
+        } finally {
+            lane.shutdown();
+            b.release();
+        }
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        String name = "testNewest";
+        setProps(name, 2, "newest");
+        InNetLane lane = new InNetLane(_context, name, 4, 100, "oldest");
+        lane.startup();
+        Blocker b = new Blocker(1);
+        try {
+            assertTrue(lane.offer(b, msg(), null, null));
+            b.awaitEntered();
+            TestJob j1 = new TestJob();
+            TestJob j2 = new TestJob();
+            TestJob j3 = new TestJob();
+            assertTrue(lane.offer(j1));
+            assertTrue(lane.offer(j2));
+            assertTrue(lane.offer(j3));
+            assertEquals(2, lane.getQueueSize());
+            assertFalse(j1.wasDropped());
+            assertFalse(j2.wasDropped());
+            assertTrue(j3.wasDropped());
+        } finally {
+            lane.shutdown();
+            b.release();
+        }
+    }
+
+    /**
+     * When full, the caller gets it back, and nothing is dropped.
+     */
+    @Test
+    public void testJobQueuePolicy() throws Exception {
+        String name = "testJobQueue";
+        setProps(name, 1, "jobqueue");
+        InNetLane lane = new InNetLane(_context, name, 4, 100, "oldest");
+        lane.startup();
+        Blocker b = new Blocker(1);
+        try {
+            assertTrue(lane.offer(b, msg(), null, null));
+            b.awaitEntered();
+            TestJob j1 = new TestJob();
+            TestJob j2 = new TestJob();
+            assertTrue(lane.offer(j1));
+            assertFalse(lane.offer(j2));
+            assertFalse(lane.offer(b, msg(), null, null));
+            assertEquals(1, lane.getQueueSize());
+            assertFalse(j1.wasDropped());
+            assertFalse(j2.wasDropped());
+        } finally {
+            lane.shutdown();
+            b.release();
+        }
+    }
+
+    /**
+     * A runner in a handler during shutdown() is not interrupted,
+     * and after a restart it exits when done, so the lane has only
+     * the new runners, which take the new entries.
+     */
+    @Test
+    public void testRestart() throws Exception {
+        String name = "testRestart";
+        setProps(name, 16, "oldest");
+        _context.setProperty("router.inNetLane." + name + ".threads", "2");
+        InNetLane lane = new InNetLane(_context, name, 4, 100, "oldest");
+        lane.startup();
+        Blocker b = new Blocker(2);
+        assertTrue(lane.offer(b, msg(), null, null));
+        assertTrue(lane.offer(b, msg(), null, null));
+        b.awaitEntered();
+        assertEquals(2, countThreads(name));
+
+        lane.shutdown();
+        lane.startup();
+        assertEquals(4, countThreads(name));
+        b.release();
+        assertTrue(b.awaitDone());
+        assertEquals(0, b.interrupted.get());
+        waitForThreads(name, 2);
+
+        Blocker b2 = new Blocker(2);
+        assertTrue(lane.offer(b2, msg(), null, null));
+        assertTrue(lane.offer(b2, msg(), null, null));
+        b2.awaitEntered();
+        b2.release();
+        assertTrue(b2.awaitDone());
+        assertEquals(2, countThreads(name));
+
+        // idle runners are interrupted and exit
+        lane.shutdown();
+        waitForThreads(name, 0);
+    }
+
+    private static void setProps(String name, int maxQueue, String policy) {
+        String pfx = "router.inNetLane." + name;
+        _context.setProperty(pfx + ".threads", "1");
+        _context.setProperty(pfx + ".maxQueue", Integer.toString(maxQueue));
+        _context.setProperty(pfx + ".policy", policy);
+    }
+
+    private static I2NPMessage msg() {
+        return new DataMessage(_context);
+    }
+
+    /** live runner threads of the lane */
+    private static int countThreads(String name) {
+        int rv = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && t.getName().startsWith("InNet " + name + ' '))
+                rv++;
+        }
+        return rv;
+    }
+
+    private static void waitForThreads(String name, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && countThreads(name) != count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, countThreads(name));
+    }
+
+    /**
+     * Holds the runner in createJob() until released.
+     * Returns no job, so there's nothing for the JobQueue.
+     */
+    private static class Blocker implements HandlerJobBuilder {
+        private final CountDownLatch entered;
+        private final CountDownLatch done;
+        private final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger interrupted = new AtomicInteger();
+
+        public Blocker(int count) {
+            entered = new CountDownLatch(count);
+            done = new CountDownLatch(count);
+        }
+
+        public Job createJob(I2NPMessage msg, RouterIdentity from, Hash fromHash) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                interrupted.incrementAndGet();
+            }
+            done.countDown();
+            return null;
+        }
+
+        public void awaitEntered() throws InterruptedException {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+        }
+
+        public void release() {
+            release.countDown();
+        }
+
+        public boolean awaitDone() throws InterruptedException {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class TestJob extends JobImpl {
+        private volatile boolean _dropped;
+
+        public TestJob() {
+            super(_context);
+        }
+
+        public String getName() { return "Test job"; }
+
+        public void runJob() {}
+
+        @Override
+        public void dropped() {
+            _dropped = true;
+        }
+
+        public boolean wasDropped() {
+            return _dropped;
+        }
+    }
+}
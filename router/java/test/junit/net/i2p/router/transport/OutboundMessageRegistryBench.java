@@ -0,0 +1,110 @@
+package net.i2p.router.transport;
+
+import net.i2p.data.i2np.DeliveryStatusMessage;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.IndexedMessageSelector;
+import net.i2p.router.JobTiming;
+import net.i2p.router.MessageSelector;
+import net.i2p.router.ReplyJob;
+import net.i2p.router.RouterContext;
+
+/**
+ * Reports the cost of OutboundMessageRegistry.getOriginalMessages()
+ * against the number of outstanding selectors,
+ * for indexed selectors and for plain selectors that must be scanned.
+ *
+ * Not a unit test, run with main().
+ *
+ * @since 0.9.65
+ */
+public class OutboundMessageRegistryBench {
+
+    private static final int[] COUNTS = { 10, 100, 1000, 10000 };
+    private static final int ITERATIONS = 200000;
+
+    public static void main(String[] args) {
+        RouterContext ctx = new RouterContext(null);
+        System.out.println("selectors\tindexed ns/msg\tscanned ns/msg");
+        for (int count : COUNTS) {
+            long indexed = run(ctx, count, true);
+            long scanned = run(ctx, count, false);
+            System.out.println(count + "\t\t" + indexed + "\t\t" + scanned);
+        }
+        System.exit(0);
+    }
+
+    /**
+     *  Half the messages match a selector, half match nothing.
+     *
+     *  @return ns per message
+     */
+    private static long run(RouterContext ctx, int count, boolean index) {
+        OutboundMessageRegistry reg = new OutboundMessageRegistry(ctx);
+        long expiration = ctx.clock().now() + 10*60*1000;
+        ReplyJob onReply = new NullReplyJob();
+        for (int i = 0; i < count; i++) {
+            MessageSelector sel = index ? new IdSelector(i, expiration) : new ScanSelector(i, expiration);
+            reg.registerPending(sel, onReply, null);
+        }
+        DeliveryStatusMessage[] msgs = new DeliveryStatusMessage[1024];
+        for (int i = 0; i < msgs.length; i++) {
+            msgs[i] = new DeliveryStatusMessage(ctx);
+            // odd ones miss
+            long id = (i & 0x01) != 0 ? count + i : ctx.random().nextInt(count);
+            msgs[i].setMessageId(id);
+        }
+        int matched = 0;
+        // warmup
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            matched += reg.getOriginalMessages(msgs[i & 1023]).size();
+        }
+        int iterations = count >= 10000 && !index ? ITERATIONS / 20 : ITERATIONS;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            matched += reg.getOriginalMessages(msgs[i & 1023]).size();
+        }
+        long rv = (System.nanoTime() - start) / iterations;
+        reg.shutdown();
+        if (matched == 0)
+            throw new IllegalStateException("no matches");
+        return rv;
+    }
+
+    private static class ScanSelector implements MessageSelector {
+        protected final long _id;
+        private final long _expiration;
+
+        public ScanSelector(long id, long expiration) {
+            _id = id;
+            _expiration = expiration;
+        }
+
+        public boolean isMatch(I2NPMessage message) {
+            return message.getType() == DeliveryStatusMessage.MESSAGE_TYPE &&
+                   ((DeliveryStatusMessage) message).getMessageId() == _id;
+        }
+
+        /** stay registered */
+        public boolean continueMatching() { return true; }
+
+        public long getExpiration() { return _expiration; }
+    }
+
+    private static class IdSelector extends ScanSelector implements IndexedMessageSelector {
+        public IdSelector(long id, long expiration) {
+            super(id, expiration);
+        }
+
+        public Object getMatchKey() { return Long.valueOf(_id); }
+    }
+
+    private static class NullReplyJob implements ReplyJob {
+        public void setMessage(I2NPMessage message) {}
+        public String getName() { return "null"; }
+        public long getJobId() { return 0; }
+        public JobTiming getTiming() { return null; }
+        public void runJob() {}
+        public Exception getAddedBy() { return null; }
+        public void dropped() {}
+    }
+}
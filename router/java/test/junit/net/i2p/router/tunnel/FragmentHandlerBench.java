@@ -0,0 +1,175 @@
+package net.i2p.router.tunnel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.i2p.data.Hash;
+import net.i2p.data.TunnelId;
+import net.i2p.data.i2np.DataMessage;
+import net.i2p.data.i2np.I2NPMessage;
+import net.i2p.router.RouterContext;
+import net.i2p.util.ByteCache;
+
+/**
+ * Reports the cost of reassembly in FragmentHandler,
+ * per tunnel message and per reassembled message.
+ *
+ * The tunnel messages are captured from the BatchedPreprocessor
+ * for a mix of typical client message sizes, and replayed:
+ *<ul>
+ *<li>in order
+ *<li>interleaved across several messages, as from a busy gateway
+ *<li>with each message's fragments reversed, so the first fragment arrives last
+ *</ul>
+ *
+ * Each pass replays the same message IDs, so every message must complete
+ * or the next pass would mix them up.
+ *
+ * Not a unit test, run with main().
+ *
+ * @since 0.9.65
+ */
+public class FragmentHandlerBench {
+
+    /** bytes, mostly garlic messages of a few fragments */
+    private static final int[] SIZES = { 1100, 1800, 2400, 3200, 4096, 6000, 9000, 16*1024 };
+    private static final int MESSAGES = 256;
+    private static final int INTERLEAVE = 8;
+    private static final int PASSES = 400;
+
+    public static void main(String[] args) {
+        RouterContext ctx = new RouterContext(null);
+        // flush partial tunnel messages immediately
+        BatchedPreprocessor.DEFAULT_DELAY = 0;
+        List<List<byte[]>> captured = capture(ctx);
+        int total = 0;
+        for (List<byte[]> msgs : captured) {
+            total += msgs.size();
+        }
+        System.out.println(MESSAGES + " messages in " + total + " tunnel messages");
+        System.out.println("pattern\t\tns/tunnel msg\tns/message\tbytes/message");
+        run(ctx, "in order", inOrder(captured), MESSAGES);
+        run(ctx, "interleaved", interleaved(captured), MESSAGES);
+        run(ctx, "reversed", reversed(captured), MESSAGES);
+        System.exit(0);
+    }
+
+    /**
+     *  @return the tunnel messages for each message
+     */
+    private static List<List<byte[]>> capture(RouterContext ctx) {
+        List<List<byte[]>> rv = new ArrayList<List<byte[]>>(MESSAGES);
+        TunnelGateway.QueuePreprocessor pre = new BatchedPreprocessor(ctx, "bench");
+        CaptureSender sender = new CaptureSender();
+        List<PendingGatewayMessage> pending = new ArrayList<PendingGatewayMessage>(1);
+        for (int i = 0; i < MESSAGES; i++) {
+            DataMessage m = new DataMessage(ctx);
+            byte[] data = new byte[SIZES[i % SIZES.length]];
+            ctx.random().nextBytes(data);
+            m.setData(data);
+            m.setUniqueId(ctx.random().nextLong(I2NPMessage.MAX_ID_VALUE));
+            m.setMessageExpiration(ctx.clock().now() + 60*1000);
+            pending.add(new PendingGatewayMessage(m, null, null));
+            sender.captured = new ArrayList<byte[]>(8);
+            while (pre.preprocessQueue(pending, sender, null)) {
+                try { Thread.sleep(1); } catch (InterruptedException ie) {}
+            }
+            rv.add(sender.captured);
+        }
+        return rv;
+    }
+
+    private static List<byte[]> inOrder(List<List<byte[]>> captured) {
+        List<byte[]> rv = new ArrayList<byte[]>();
+        for (List<byte[]> msgs : captured) {
+            rv.addAll(msgs);
+        }
+        return rv;
+    }
+
+    private static List<byte[]> interleaved(List<List<byte[]>> captured) {
+        List<byte[]> rv = new ArrayList<byte[]>();
+        for (int i = 0; i < captured.size(); i += INTERLEAVE) {
+            int end = Math.min(i + INTERLEAVE, captured.size());
+            for (int j = 0; ; j++) {
+                boolean any = false;
+                for (int k = i; k < end; k++) {
+                    List<byte[]> msgs = captured.get(k);
+                    if (j < msgs.size()) {
+                        rv.add(msgs.get(j));
+                        any = true;
+                    }
+                }
+                if (!any)
+                    break;
+            }
+        }
+        return rv;
+    }
+
+    private static List<byte[]> reversed(List<List<byte[]>> captured) {
+        List<byte[]> rv = new ArrayList<byte[]>();
+        for (List<byte[]> msgs : captured) {
+            for (int j = msgs.size() - 1; j >= 0; j--) {
+                rv.add(msgs.get(j));
+            }
+        }
+        return rv;
+    }
+
+    private static void run(RouterContext ctx, String name, List<byte[]> pattern, int perPass) {
+        CountingReceiver rcvr = new CountingReceiver();
+        // OBEP, so the messages are not parsed, only reassembled
+        FragmentHandler handler = new FragmentHandler(ctx, rcvr, false);
+        ByteCache cache = ByteCache.getInstance(512, TrivialPreprocessor.PREPROCESSED_SIZE);
+        // warmup
+        for (int i = 0; i < PASSES / 4; i++) {
+            replay(handler, cache, pattern);
+        }
+        rcvr.count = 0;
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        boolean alloc = mx instanceof com.sun.management.ThreadMXBean;
+        long tid = Thread.currentThread().getId();
+        long startAlloc = alloc ? ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(tid) : 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < PASSES; i++) {
+            replay(handler, cache, pattern);
+        }
+        long time = System.nanoTime() - start;
+        long bytes = alloc ? ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(tid) - startAlloc : -1;
+        int expected = PASSES * perPass;
+        if (rcvr.count != expected || handler.getFailedCount() != 0)
+            throw new IllegalStateException(name + ": received " + rcvr.count + " of " + expected);
+        System.out.println(name + "\t" + (time / (PASSES * (long) pattern.size())) + "\t\t" +
+                           (time / expected) + "\t\t" + (alloc ? String.valueOf(bytes / expected) : "n/a"));
+    }
+
+    private static void replay(FragmentHandler handler, ByteCache cache, List<byte[]> pattern) {
+        for (int i = 0; i < pattern.size(); i++) {
+            byte[] msg = pattern.get(i);
+            // the handler releases it to the cache, as from the tunnel
+            byte[] buf = cache.acquire().getData();
+            System.arraycopy(msg, 0, buf, 0, msg.length);
+            handler.receiveTunnelMessage(buf, 0, msg.length);
+        }
+    }
+
+    private static class CaptureSender implements TunnelGateway.Sender {
+        List<byte[]> captured;
+
+        public long sendPreprocessed(byte[] preprocessed, TunnelGateway.Receiver receiver) {
+            captured.add(preprocessed.clone());
+            return -1;
+        }
+    }
+
+    private static class CountingReceiver implements FragmentHandler.DefragmentedReceiver {
+        int count;
+
+        public void receiveComplete(I2NPMessage msg, Hash toRouter, TunnelId toTunnel) {
+            count++;
+        }
+    }
+}
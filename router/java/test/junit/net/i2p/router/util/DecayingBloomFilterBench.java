@@ -0,0 +1,133 @@
+package net.i2p.router.util;
+
+import net.i2p.I2PAppContext;
+
+/**
+ * Compares DecayingBloomFilter (BloomSHA1) and DecayingBlockedBloomFilter
+ * for 16 byte entries, as used for tunnel IVs:
+ *<ul>
+ *<li>measured false positive rate at several fill levels
+ *<li>single threaded add() time
+ *<li>add() time with several threads sharing one filter
+ *</ul>
+ *
+ * The fill levels are the entries per generation
+ * at the given tunnel throughput for 10 minutes.
+ *
+ * Not a unit test, run with main().
+ *
+ * @since 0.9.65
+ */
+public class DecayingBloomFilterBench {
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int DURATION = 10*60*1000;
+    /** KBps of tunnel messages, for a 10 minute generation */
+    private static final int[] RATES = { 64, 256, 1024 };
+    private static final int[] MS = { 23, 25 };
+    private static final int PROBES = 1000000;
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        System.out.println("m\tKBps\tentries\tDBF fpr\t\tDBBF fpr\tDBF ns/add\tDBBF ns/add\tDBF MT ns/add\tDBBF MT ns/add");
+        for (int m : MS) {
+            for (int rate : RATES) {
+                // one 1 KB tunnel message per entry
+                int entries = rate * (DURATION / 1000);
+                DecayingBloomFilter dbf = new DecayingBloomFilter(ctx, DURATION, ENTRY_BYTES, "bench", m);
+                DecayingBloomFilter dbbf = new DecayingBlockedBloomFilter(ctx, DURATION, ENTRY_BYTES, "bench", m);
+                byte[][] data = random(ctx, entries);
+                long dbfAdd = fill(dbf, data);
+                long dbbfAdd = fill(dbbf, data);
+                byte[][] probes = random(ctx, PROBES);
+                double dbfFpr = fpr(dbf, data, probes);
+                double dbbfFpr = fpr(dbbf, data, probes);
+                dbf.clear();
+                dbbf.clear();
+                long dbfMT = threaded(dbf, data);
+                long dbbfMT = threaded(dbbf, data);
+                dbf.stopDecaying();
+                dbbf.stopDecaying();
+                System.out.println(m + "\t" + rate + "\t" + entries + "\t" +
+                                   String.format("%.2e\t%.2e", dbfFpr, dbbfFpr) + "\t" +
+                                   dbfAdd + "\t\t" + dbbfAdd + "\t\t" + dbfMT + "\t\t" + dbbfMT);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static byte[][] random(I2PAppContext ctx, int count) {
+        byte[][] rv = new byte[count][ENTRY_BYTES];
+        for (int i = 0; i < count; i++) {
+            ctx.random().nextBytes(rv[i]);
+        }
+        return rv;
+    }
+
+    /**
+     *  @return ns per add
+     */
+    private static long fill(DecayingBloomFilter filter, byte[][] data) {
+        // warmup
+        for (int i = 0; i < Math.min(data.length, 50000); i++) {
+            filter.add(data[i], 0, ENTRY_BYTES);
+        }
+        filter.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < data.length; i++) {
+            filter.add(data[i], 0, ENTRY_BYTES);
+        }
+        return (System.nanoTime() - start) / data.length;
+    }
+
+    /**
+     *  There's no lookup by byte array, and probing with add() fills the filter,
+     *  so probe in rounds of 5% of the entries, refilling each time.
+     *
+     *  @return fraction of random entries reported as known
+     */
+    private static double fpr(DecayingBloomFilter filter, byte[][] data, byte[][] probes) {
+        int dups = 0;
+        int round = Math.max(1, data.length / 20);
+        for (int i = 0; i < probes.length; i++) {
+            if (i % round == 0) {
+                filter.clear();
+                for (int j = 0; j < data.length; j++) {
+                    filter.add(data[j], 0, ENTRY_BYTES);
+                }
+            }
+            if (filter.add(probes[i], 0, ENTRY_BYTES))
+                dups++;
+        }
+        return ((double) dups) / probes.length;
+    }
+
+    /**
+     *  Each thread adds its own slice of the data.
+     *
+     *  @return total ns per add
+     */
+    private static long threaded(final DecayingBloomFilter filter, final byte[][] data) {
+        Thread[] threads = new Thread[THREADS];
+        final int slice = data.length / THREADS;
+        for (int t = 0; t < THREADS; t++) {
+            final int from = t * slice;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = from; i < from + slice; i++) {
+                        filter.add(data[i], 0, ENTRY_BYTES);
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            try { t.join(); } catch (InterruptedException ie) {}
+        }
+        return (System.nanoTime() - start) / (slice * (long) THREADS);
+    }
+}